@@ -0,0 +1,81 @@
+package com.totorovan.transfer.account;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.totorovan.transfer.account.Account.GetAccount;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static akka.pattern.PatternsCS.ask;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+
+/**
+ * Latency of reading an account while a flood of transfers keeps {@value #IN_FLIGHT} of them queued at the
+ * AccountService and the accounts, with FIFO mailboxes and with the priority mailbox of application.properties.
+ * Compare the {@code p0.99} of the sample time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MailboxPriorityBenchmark {
+    private static final int ACCOUNTS = 16;
+    private static final int IN_FLIGHT = 2000;
+
+    @Param({"fifo", "priority"})
+    public String mailbox;
+
+    private ActorSystem system;
+    private ActorRef accountService;
+    private Duration timeout;
+    private Thread flood;
+    private volatile boolean flooding;
+
+    @Setup
+    public void setup() {
+        Config config = ConfigFactory.parseString("akka.loglevel = WARNING").withFallback(ConfigFactory.load());
+        if (mailbox.equals("fifo")) {
+            // the deployments of akka's reference config come back with the fallback
+            config = config.withoutPath("akka.actor.deployment").withFallback(ConfigFactory.defaultReference());
+        }
+        system = ActorSystem.create("benchmark", config);
+        timeout = Duration.ofSeconds(30);
+        accountService = system.actorOf(AccountService.props(new AccountFactory(), timeout), "accountService");
+        for (long id = 0; id < ACCOUNTS; id++) {
+            ask(accountService, new AccountInfo(id, BigDecimal.valueOf(1_000_000_000_000L)), timeout).toCompletableFuture().join();
+        }
+        flooding = true;
+        flood = new Thread(this::flood, "flood");
+        flood.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        flooding = false;
+        flood.join();
+        system.terminate();
+    }
+
+    private void flood() {
+        Semaphore inFlight = new Semaphore(IN_FLIGHT);
+        long transactionId = 0;
+        while (flooding) {
+            inFlight.acquireUninterruptibly();
+            long id = transactionId++;
+            ask(accountService, new TransactionInfo(id, id % ACCOUNTS, (id + 1) % ACCOUNTS, BigDecimal.ONE, NEW), timeout)
+                    .whenComplete((reply, e) -> inFlight.release());
+        }
+        inFlight.acquireUninterruptibly(IN_FLIGHT);
+    }
+
+    @Benchmark
+    public Object getAccount() {
+        return ask(accountService, new GetAccount(0), timeout).toCompletableFuture().join();
+    }
+}
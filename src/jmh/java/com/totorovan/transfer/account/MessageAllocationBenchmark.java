@@ -0,0 +1,64 @@
+package com.totorovan.transfer.account;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.totorovan.transfer.account.Account.GetAccount;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static akka.pattern.PatternsCS.ask;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+
+/**
+ * Allocation of the account protocol per transfer, run with {@code -prof gc} and compare {@code gc.alloc.rate.norm}.
+ * The GC profiler sums allocations of all threads, so the bytes of the actors handling the transfer are included.
+ * Logging is turned down to warnings so only the messages are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageAllocationBenchmark {
+    private static final long RICH = 1L;
+    private static final long POOR = 2L;
+
+    private ActorSystem system;
+    private ActorRef accountService;
+    private Duration timeout;
+    private long transactionId;
+
+    @Setup
+    public void setup() {
+        system = ActorSystem.create("benchmark", ConfigFactory.parseString("akka.loglevel = WARNING"));
+        timeout = Duration.ofSeconds(10);
+        accountService = system.actorOf(AccountService.props(new AccountFactory(), timeout));
+        ask(accountService, new AccountInfo(RICH, BigDecimal.valueOf(1_000_000_000_000L)), timeout).toCompletableFuture().join();
+        ask(accountService, new AccountInfo(POOR, BigDecimal.ZERO), timeout).toCompletableFuture().join();
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    public Object transfer() {
+        return ask(accountService, new TransactionInfo(transactionId++, RICH, RICH, BigDecimal.ONE, NEW), timeout)
+                .toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Object insufficientBalance() {
+        return ask(accountService, new TransactionInfo(transactionId++, POOR, RICH, BigDecimal.ONE, NEW), timeout)
+                .toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Object getAccount() {
+        return ask(accountService, new GetAccount(RICH), timeout).toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,178 @@
+package com.totorovan.transfer.capacity;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.totorovan.transfer.account.AccountFactory;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.account.BalanceIndex;
+import com.totorovan.transfer.capture.LatencyHistogram;
+import com.totorovan.transfer.engine.ActorTransferEngine;
+import com.totorovan.transfer.engine.LedgerTransferEngine;
+import com.totorovan.transfer.engine.TransferEngine;
+import com.totorovan.transfer.event.LedgerEvents;
+import com.totorovan.transfer.footprint.GetFootprint;
+import com.totorovan.transfer.footprint.StoreFootprintDto;
+import com.totorovan.transfer.transaction.TransactionFactory;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import com.totorovan.transfer.transaction.TransactionService;
+import com.typesafe.config.ConfigFactory;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static akka.pattern.PatternsCS.ask;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+
+/**
+ * Loads accounts and as many transfers between them in steps, e.g. 1M, 10M and 50M of each, and reports per step
+ * the heap after a full collection per account and per transfer, the GC pauses of the step, the latencies of
+ * creating accounts, transferring and reading accounts, and the footprint the services estimate for their entities.
+ * The estimates of {@code /debug/footprint} are calibrated against the measured heap.
+ * <p>
+ * Run with {@code gradle capacity -Psteps=1000000,10000000,50000000 -Pengine=actor -Pheap=48g}.
+ */
+public class CapacitySuite {
+    private static final int IN_FLIGHT = 1024;
+    private static final int READS = 100_000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final ActorSystem system = ActorSystem.create("capacity", ConfigFactory.parseString("akka.loglevel = WARNING")
+            .withFallback(ConfigFactory.load()));
+    private final TransferEngine transferEngine;
+    private final ActorRef transactionService;
+    // pauses in millis while loading, the collections made to measure the heap are left out
+    private volatile LatencyHistogram pauses;
+    private long accounts;
+    private long transactions;
+
+    private CapacitySuite(String engine) {
+        switch (engine) {
+            case "actor":
+                transferEngine = new ActorTransferEngine(system.actorOf(AccountService.props(new AccountFactory(), TIMEOUT)), TIMEOUT);
+                break;
+            case "ledger":
+                transferEngine = new LedgerTransferEngine(64, LedgerEvents.get(system), BalanceIndex.get(system));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown transfer engine " + engine);
+        }
+        transactionService = system.actorOf(TransactionService.props(transferEngine, new TransactionFactory(), TIMEOUT));
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, x) -> {
+                LatencyHistogram loading = pauses;
+                if (loading != null && GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    loading.record(GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+                            .getGcInfo().getDuration());
+                }
+            }, null, null);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] steps = (args.length > 0 ? args[0] : "100000,1000000").split(",");
+        CapacitySuite suite = new CapacitySuite(args.length > 1 ? args[1] : "actor");
+        try {
+            System.out.println("entities  heap MB  bytes/account  bytes/transfer   GCs  p99 pause ms  max pause ms"
+                    + "  create p50/p99/max us  transfer p50/p99/max us  read p50/p99/max us  estimated MB");
+            for (String step : steps) {
+                suite.step(Long.parseLong(step.trim()));
+            }
+        } finally {
+            suite.system.terminate();
+        }
+    }
+
+    /**
+     * The heap of an entity is the growth of the heap after a full collection while loading, so the heap per transfer
+     * includes the balance history checkpoints it adds to its accounts.
+     */
+    private void step(long size) throws Exception {
+        LatencyHistogram creates = new LatencyHistogram();
+        LatencyHistogram transfers = new LatencyHistogram();
+        LatencyHistogram reads = new LatencyHistogram();
+        LatencyHistogram stepPauses = new LatencyHistogram();
+
+        long heapBefore = heapAfterCollection();
+        load(accounts, size, creates, stepPauses, id -> transferEngine.createAccount(new AccountInfo(id, BigDecimal.valueOf(1_000_000L))));
+        long accountsAdded = size - accounts;
+        accounts = size;
+        long heapWithAccounts = heapAfterCollection();
+        load(transactions, size, transfers, stepPauses, id -> ask(transactionService, new TransactionInfo(id, randomAccount(),
+                randomAccount(), BigDecimal.ONE, NEW), TIMEOUT));
+        long transactionsAdded = size - transactions;
+        transactions = size;
+        load(0, Math.min(READS, size), reads, stepPauses, id -> transferEngine.getAccount(randomAccount()));
+        long heap = heapAfterCollection();
+
+        System.out.printf("%8d  %7d  %13d  %14d  %4d  %12d  %12d  %21s  %23s  %19s  %12d%n", size, heap >> 20,
+                (heapWithAccounts - heapBefore) / Math.max(1, accountsAdded),
+                (heap - heapWithAccounts) / Math.max(1, transactionsAdded),
+                stepPauses.count(), stepPauses.percentile(99), stepPauses.max(),
+                latencies(creates), latencies(transfers), latencies(reads), estimatedBytes() >> 20);
+    }
+
+    private long randomAccount() {
+        return ThreadLocalRandom.current().nextLong(accounts);
+    }
+
+    /**
+     * Runs the requests for the ids {@code from} until {@code to} with at most {@value #IN_FLIGHT} at a time.
+     */
+    private void load(long from, long to, LatencyHistogram latencies, LatencyHistogram pauses, Request request)
+            throws InterruptedException {
+        this.pauses = pauses;
+        Semaphore inFlight = new Semaphore(IN_FLIGHT);
+        for (long id = from; id < to; id++) {
+            inFlight.acquire();
+            long start = System.nanoTime();
+            request.send(id).whenComplete((response, e) -> {
+                latencies.record((System.nanoTime() - start) / 1000);
+                inFlight.release();
+            });
+        }
+        inFlight.acquire(IN_FLIGHT);
+        this.pauses = null;
+    }
+
+    private long estimatedBytes() {
+        List<StoreFootprintDto> stores = new ArrayList<>();
+        stores.addAll(footprints(() -> transferEngine.footprint()));
+        stores.addAll(footprints(() -> ask(transactionService, GetFootprint.INSTANCE, TIMEOUT)));
+        BalanceIndex balanceIndex = BalanceIndex.get(system);
+        return stores.stream().mapToLong(StoreFootprintDto::getBytes).sum() + (long) balanceIndex.size() * BalanceIndex.ENTRY_BYTES;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<StoreFootprintDto> footprints(Supplier<CompletionStage<Object>> request) {
+        Object reply = request.get().toCompletableFuture().join();
+        return reply instanceof List ? (List<StoreFootprintDto>) reply : new ArrayList<>();
+    }
+
+    private static long heapAfterCollection() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static String latencies(LatencyHistogram latencies) {
+        return latencies.percentile(50) + "/" + latencies.percentile(99) + "/" + latencies.max();
+    }
+
+    private interface Request {
+        CompletionStage<Object> send(long id);
+    }
+}
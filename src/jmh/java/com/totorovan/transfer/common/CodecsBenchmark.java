@@ -0,0 +1,94 @@
+package com.totorovan.transfer.common;
+
+import akka.util.ByteString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.totorovan.transfer.account.AccountDto;
+import com.totorovan.transfer.transaction.TransactionDto;
+import com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares JSON and CBOR encodings of the REST payloads.
+ * Time per op approximates the server CPU spent on (un)marshalling a request,
+ * the {@code payloadBytes} counter reports the size of the encoded entity (run with a single thread).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecsBenchmark {
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final AccountDto accountDto = new AccountDto(42L, new BigDecimal("1234567.89"));
+    private final TransactionDto transactionDto =
+            new TransactionDto(4242L, 42L, 43L, new BigDecimal("100.25"), TransactionStatus.COMMITTED, null);
+
+    private byte[] accountJson;
+    private ByteString accountCbor;
+    private byte[] transactionJson;
+    private ByteString transactionCbor;
+
+    @Setup
+    public void setup() throws Exception {
+        accountJson = jsonMapper.writeValueAsBytes(accountDto);
+        accountCbor = Codecs.toCbor(accountDto);
+        transactionJson = jsonMapper.writeValueAsBytes(transactionDto);
+        transactionCbor = Codecs.toCbor(transactionDto);
+    }
+
+    @Benchmark
+    public byte[] encodeTransactionJson(PayloadSize size) throws Exception {
+        byte[] bytes = jsonMapper.writeValueAsBytes(transactionDto);
+        size.payloadBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public ByteString encodeTransactionCbor(PayloadSize size) {
+        ByteString bytes = Codecs.toCbor(transactionDto);
+        size.payloadBytes = bytes.length();
+        return bytes;
+    }
+
+    @Benchmark
+    public TransactionDto decodeTransactionJson() throws Exception {
+        return jsonMapper.readValue(transactionJson, TransactionDto.class);
+    }
+
+    @Benchmark
+    public TransactionDto decodeTransactionCbor() {
+        return Codecs.fromCbor(transactionCbor, TransactionDto.class);
+    }
+
+    @Benchmark
+    public byte[] encodeAccountJson(PayloadSize size) throws Exception {
+        byte[] bytes = jsonMapper.writeValueAsBytes(accountDto);
+        size.payloadBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public ByteString encodeAccountCbor(PayloadSize size) {
+        ByteString bytes = Codecs.toCbor(accountDto);
+        size.payloadBytes = bytes.length();
+        return bytes;
+    }
+
+    @Benchmark
+    public AccountDto decodeAccountJson() throws Exception {
+        return jsonMapper.readValue(accountJson, AccountDto.class);
+    }
+
+    @Benchmark
+    public AccountDto decodeAccountCbor() {
+        return Codecs.fromCbor(accountCbor, AccountDto.class);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class PayloadSize {
+        public long payloadBytes;
+    }
+}
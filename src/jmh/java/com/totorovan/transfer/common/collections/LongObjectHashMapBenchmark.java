@@ -0,0 +1,67 @@
+package com.totorovan.transfer.common.collections;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency of registries keyed by id, {@link HashMap} with boxed keys against {@link LongObjectHashMap}.
+ * Heap per entry is measured once per fork after filling the map and printed to the benchmark output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LongObjectHashMapBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param({"hashMap", "longObjectHashMap"})
+    private String map;
+
+    @Param({"10000000"})
+    private int entries;
+
+    private Map<Long, Object> hashMap;
+    private LongObjectHashMap<Object> longObjectHashMap;
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Setup
+    public void setup() {
+        long before = usedHeap();
+        if ("hashMap".equals(map)) {
+            hashMap = new HashMap<>();
+            for (long id = 0; id < entries; id++) {
+                hashMap.put(id, VALUE);
+            }
+        } else {
+            longObjectHashMap = new LongObjectHashMap<>();
+            for (long id = 0; id < entries; id++) {
+                longObjectHashMap.put(id, VALUE);
+            }
+        }
+        System.out.printf("%n%s heap per entry: %.1f bytes%n", map, (double) (usedHeap() - before) / entries);
+    }
+
+    @Benchmark
+    public Object get() {
+        long id = ThreadLocalRandom.current().nextInt(entries);
+        return hashMap != null ? hashMap.get(id) : longObjectHashMap.get(id);
+    }
+
+    @Benchmark
+    public Object getMissing() {
+        long id = entries + ThreadLocalRandom.current().nextInt(entries);
+        return hashMap != null ? hashMap.get(id) : longObjectHashMap.get(id);
+    }
+}
@@ -0,0 +1,61 @@
+package com.totorovan.transfer.engine;
+
+import akka.actor.ActorSystem;
+import com.totorovan.transfer.account.AccountFactory;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.event.LedgerEvents;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+
+/**
+ * Transfer throughput of the actor and the ledger engines between random pairs of accounts.
+ * Run with {@code -t} to see how each engine scales with concurrent callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class TransferEngineBenchmark {
+
+    @Param({"actor", "ledger"})
+    private String engine;
+
+    @Param({"10000"})
+    private int accounts;
+
+    private ActorSystem system;
+    private TransferEngine transferEngine;
+
+    @Setup
+    public void setup() {
+        system = ActorSystem.create("benchmark");
+        Duration timeout = Duration.ofSeconds(10);
+        transferEngine = "actor".equals(engine)
+                ? new ActorTransferEngine(system.actorOf(AccountService.props(new AccountFactory(), timeout)), timeout)
+                : new LedgerTransferEngine(64, LedgerEvents.get(system));
+        for (long id = 0; id < accounts; id++) {
+            transferEngine.createAccount(new AccountInfo(id, BigDecimal.valueOf(1_000_000_000L))).toCompletableFuture().join();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    public Object transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        TransactionInfo transactionInfo = new TransactionInfo(random.nextLong(), random.nextInt(accounts),
+                random.nextInt(accounts), BigDecimal.ONE, NEW);
+        return transferEngine.transfer(transactionInfo).toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,64 @@
+package com.totorovan.transfer.history;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a point-in-time balance query of an account with {@code operations} checkpoints, kept in memory or
+ * spilled to a file but for the last segments. Memory per checkpoint is printed once the history is built.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BalanceHistoryBenchmark {
+
+    @Param({"1000000", "5000000"})
+    private int operations;
+
+    @Param({"memory", "spill"})
+    private String segments;
+
+    private BalanceHistory history;
+    private Path directory;
+    private HistorySpill spill;
+
+    @Setup
+    public void setup() throws IOException {
+        if ("spill".equals(segments)) {
+            directory = Files.createTempDirectory("history-benchmark");
+            spill = HistorySpill.open(directory.resolve("history.spill"), 16);
+        }
+        history = new BalanceHistory(spill);
+        Random random = new Random(42);
+        long timestamp = 1_500_000_000_000L;
+        long balance = 1_000_000_000L;
+        for (int i = 0; i < operations; i++) {
+            // a transfer every few millis, of up to 1000 in either direction
+            timestamp += random.nextInt(10);
+            balance += random.nextInt(20_000_001) - 10_000_000;
+            history.append(timestamp, balance);
+        }
+        System.out.printf("%n%d checkpoints in %d segments, %.2f bytes per checkpoint in memory%n", history.checkpoints(),
+                history.segments(), (double) history.memoryBytes() / history.checkpoints());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (spill != null) {
+            spill.close();
+            Files.delete(directory.resolve("history.spill"));
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public Long balanceAt() {
+        return history.balanceAt(1_500_000_000_000L + ThreadLocalRandom.current().nextLong(operations * 5L));
+    }
+}
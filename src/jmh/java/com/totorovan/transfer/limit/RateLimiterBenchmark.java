@@ -0,0 +1,54 @@
+package com.totorovan.transfer.limit;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost the rate limiter adds to a request: finding the route, the bucket of the client and taking a token, for few
+ * and for many clients. {@code lookupOnly} is the bare map lookup for comparison. The limit is high enough that
+ * no request is rejected.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RateLimiterBenchmark {
+    @Param({"16", "100000"})
+    public int clients;
+
+    private RateLimiter limiter;
+    private ConcurrentHashMap<String, Object> map;
+    private String[] keys;
+    private int next;
+
+    @Setup
+    public void setup() {
+        limiter = new RateLimiter(RateLimiter.DEFAULT_KEY_HEADER, clients,
+                Collections.singletonMap("transactions", new RateLimiter.Rate(1e9, Integer.MAX_VALUE / 2)));
+        map = new ConcurrentHashMap<>();
+        keys = new String[clients];
+        for (int client = 0; client < clients; client++) {
+            keys[client] = "client-" + client;
+            limiter.acquire("/transactions", keys[client]);
+            map.put(keys[client], keys[client]);
+        }
+    }
+
+    private String nextKey() {
+        String key = keys[next];
+        next = next + 1 == keys.length ? 0 : next + 1;
+        return key;
+    }
+
+    @Benchmark
+    public long acquire() {
+        return limiter.acquire("/transactions", nextKey());
+    }
+
+    @Benchmark
+    public Object lookupOnly() {
+        return map.get(nextKey());
+    }
+}
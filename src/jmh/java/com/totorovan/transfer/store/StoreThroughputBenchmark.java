@@ -0,0 +1,90 @@
+package com.totorovan.transfer.store;
+
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import com.totorovan.transfer.account.AccountFactory;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.engine.ActorTransferEngine;
+import com.totorovan.transfer.engine.TransferEngine;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+
+/**
+ * Sustained transfer throughput of the actor engine with accounts in memory only and with their state written
+ * behind to an {@link AccountStore} flushed every {@code flushInterval}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class StoreThroughputBenchmark {
+
+    @Param({"memory", "store"})
+    private String accountState;
+
+    @Param({"10000"})
+    private int accounts;
+
+    @Param({"PT0.05S"})
+    private String flushInterval;
+
+    private ActorSystem system;
+    private TransferEngine transferEngine;
+    private Path directory;
+    private AccountStore store;
+    private Cancellable flush;
+
+    @Setup
+    public void setup() throws IOException {
+        system = ActorSystem.create("benchmark");
+        if ("store".equals(accountState)) {
+            directory = Files.createTempDirectory("store-benchmark");
+            store = AccountStore.open(directory.resolve("accounts.log"), 100_000);
+            Duration interval = Duration.parse(flushInterval);
+            flush = system.scheduler().schedule(interval, interval, () -> {
+                try {
+                    store.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, system.dispatcher());
+        }
+        Duration timeout = Duration.ofSeconds(10);
+        transferEngine = new ActorTransferEngine(system.actorOf(AccountService.props(new AccountFactory(store), timeout)), timeout);
+        for (long id = 0; id < accounts; id++) {
+            transferEngine.createAccount(new AccountInfo(id, BigDecimal.valueOf(1_000_000_000L))).toCompletableFuture().join();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        system.terminate();
+        if (store != null) {
+            flush.cancel();
+            System.out.println("Account store: " + store.stats());
+            store.close();
+            Files.delete(directory.resolve("accounts.log"));
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public Object transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        TransactionInfo transactionInfo = new TransactionInfo(random.nextLong(), random.nextInt(accounts),
+                random.nextInt(accounts), BigDecimal.ONE, NEW);
+        return transferEngine.transfer(transactionInfo).toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,71 @@
+package com.totorovan.transfer.trace;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.totorovan.transfer.account.AccountFactory;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.engine.ActorTransferEngine;
+import com.totorovan.transfer.transaction.TransactionFactory;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import com.totorovan.transfer.transaction.TransactionService;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static akka.pattern.PatternsCS.ask;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+
+/**
+ * Transfer latency through {@link TransactionService} and the account actors with and without a {@link TransferTrace},
+ * the traced transfer is finished into the tracer's ring buffer like the HTTP route does.
+ * Run with {@code -prof gc} to compare the bytes allocated per transfer as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TracingOverheadBenchmark {
+    private static final long SRC = 1L;
+    private static final long TARGET = 2L;
+
+    @Param({"false", "true"})
+    private boolean tracing;
+
+    private ActorSystem system;
+    private ActorRef transactionService;
+    private TransferTracer tracer;
+    private Duration timeout;
+    private long transactionId;
+
+    @Setup
+    public void setup() {
+        system = ActorSystem.create("benchmark", ConfigFactory.parseString("akka.loglevel = WARNING"));
+        timeout = Duration.ofSeconds(10);
+        ActorRef accountService = system.actorOf(AccountService.props(new AccountFactory(), timeout));
+        ask(accountService, new AccountInfo(SRC, BigDecimal.valueOf(1_000_000_000_000L)), timeout).toCompletableFuture().join();
+        ask(accountService, new AccountInfo(TARGET, BigDecimal.ZERO), timeout).toCompletableFuture().join();
+        transactionService = system.actorOf(TransactionService.props(new ActorTransferEngine(accountService, timeout),
+                new TransactionFactory(), timeout));
+        tracer = new TransferTracer(tracing, 4096);
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    public Object transfer() {
+        TransactionInfo transactionInfo = new TransactionInfo(transactionId++, SRC, TARGET, BigDecimal.ONE, NEW);
+        TransferTrace trace = tracer.start(transactionInfo.getId());
+        if (trace == null) {
+            return ask(transactionService, transactionInfo, timeout).toCompletableFuture().join();
+        }
+        Object response = ask(transactionService, new TracedTransfer(transactionInfo, trace), timeout).toCompletableFuture().join();
+        tracer.finish(trace, "COMMITTED");
+        return response;
+    }
+}
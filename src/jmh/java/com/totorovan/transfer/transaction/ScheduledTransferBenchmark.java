@@ -0,0 +1,162 @@
+package com.totorovan.transfer.transaction;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.engine.LedgerTransferEngine;
+import com.totorovan.transfer.event.LedgerEvents;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static akka.pattern.PatternsCS.ask;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.COMMITTED;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+
+/**
+ * Scheduled transfers parked in the {@link TransactionService} timing wheel against one Akka scheduler task per transfer.
+ * Heap per pending transfer is measured once per fork after scheduling {@code pending} transfers an hour ahead.
+ * Each invocation schedules {@code batch} transfers due within the next half second and waits until all are committed,
+ * the dispatch jitter (commit time minus due time) of the iteration is printed to the benchmark output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ScheduledTransferBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+    private static final long TICK_MILLIS = 10;
+
+    @Param({"wheel", "akka"})
+    private String scheduler;
+
+    @Param({"1000000"})
+    private int pending;
+
+    @Param({"2000"})
+    private int batch;
+
+    private ActorSystem system;
+    private ActorRef transactionService;
+    private long nextId;
+    private long batchStart;
+    private long[] deadlines;
+    private long[] jitter;
+    private CountDownLatch committed;
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Setup
+    public void setup() {
+        system = ActorSystem.create("benchmark", ConfigFactory.parseString("akka.loglevel = WARNING"));
+        LedgerTransferEngine engine = new LedgerTransferEngine(64, LedgerEvents.get(system));
+        for (long id = 0; id < ACCOUNTS; id++) {
+            engine.createAccount(new AccountInfo(id, BigDecimal.valueOf(1_000_000_000L)));
+        }
+        Duration timeout = Duration.ofSeconds(10);
+        transactionService = system.actorOf(TransactionService.props(engine, new TransactionFactory(), timeout,
+                Duration.ofMillis(TICK_MILLIS), null));
+        LedgerEvents.get(system).subscribe(system.actorOf(Props.create(Recorder.class, () -> new Recorder(this))),
+                LedgerEvents.FIREHOSE);
+
+        long before = usedHeap();
+        long later = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        for (int i = 0; i < pending; i++) {
+            schedule(nextId++, later);
+        }
+        ask(transactionService, new Transaction.GetTransaction(0L), timeout).toCompletableFuture().join();
+        System.out.printf("%n%s heap per pending transfer: %.1f bytes%n", scheduler, (double) (usedHeap() - before) / pending);
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.terminate();
+    }
+
+    private void schedule(long id, long executeAt) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(1000));
+        int src = random.nextInt(ACCOUNTS);
+        int target = (src + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        if ("wheel".equals(scheduler)) {
+            transactionService.tell(new TransactionInfo(id, src, target, amount, NEW, executeAt), ActorRef.noSender());
+        } else {
+            TransactionInfo transactionInfo = new TransactionInfo(id, src, target, amount, NEW);
+            system.scheduler().scheduleOnce(Duration.ofMillis(Math.max(0, executeAt - System.currentTimeMillis())),
+                    transactionService, transactionInfo, system.dispatcher(), ActorRef.noSender());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareBatch() {
+        batchStart = nextId;
+        deadlines = new long[batch];
+        jitter = new long[batch];
+        committed = new CountDownLatch(batch);
+    }
+
+    @Benchmark
+    public void dispatch() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < batch; i++) {
+            deadlines[i] = now + 100 + random.nextInt(500);
+            schedule(nextId++, deadlines[i]);
+        }
+        committed.await();
+    }
+
+    @TearDown(Level.Invocation)
+    public void reportJitter() {
+        long[] sorted = jitter.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%njitter ms p50=%d p99=%d max=%d%n", sorted[sorted.length / 2],
+                sorted[(int) (sorted.length * 0.99)], sorted[sorted.length - 1]);
+    }
+
+    private void onCommitted(long id) {
+        int index = (int) (id - batchStart);
+        if (index >= 0 && index < batch) {
+            jitter[index] = System.currentTimeMillis() - deadlines[index];
+            committed.countDown();
+        }
+    }
+
+    private static class Recorder extends AbstractActor {
+        private final ScheduledTransferBenchmark benchmark;
+
+        Recorder(ScheduledTransferBenchmark benchmark) {
+            this.benchmark = benchmark;
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(TransactionStatusChanged.class, changed -> {
+                        if (changed.getTransactionInfo().getStatus() == COMMITTED) {
+                            benchmark.onCommitted(changed.getTransactionInfo().getId());
+                        }
+                    })
+                    .matchAny(event -> {
+                    })
+                    .build();
+        }
+    }
+}
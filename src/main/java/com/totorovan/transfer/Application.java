@@ -17,39 +17,248 @@ import akka.stream.javadsl.Flow;
 import com.totorovan.transfer.account.AccountFactory;
 import com.totorovan.transfer.account.AccountRoutes;
 import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.account.BalanceIndex;
+import com.totorovan.transfer.bulk.BulkOperations;
+import com.totorovan.transfer.bulk.BulkRoutes;
+import com.totorovan.transfer.capture.TrafficCapture;
+import com.totorovan.transfer.engine.ActorTransferEngine;
+import com.totorovan.transfer.engine.LedgerTransferEngine;
+import com.totorovan.transfer.engine.TransferEngine;
+import com.totorovan.transfer.event.EventRoutes;
+import com.totorovan.transfer.event.LedgerEvents;
+import com.totorovan.transfer.footprint.FootprintRoutes;
+import com.totorovan.transfer.history.HistorySpill;
+import com.totorovan.transfer.id.IdAllocator;
+import com.totorovan.transfer.id.IdAssignment;
+import com.totorovan.transfer.limit.RateLimiter;
+import com.totorovan.transfer.read.ReadMetrics;
+import com.totorovan.transfer.read.ReadMetricsRoutes;
+import com.totorovan.transfer.reconcile.MoneySupply;
+import com.totorovan.transfer.reconcile.ReconciliationRoutes;
+import com.totorovan.transfer.store.AccountStore;
+import com.totorovan.transfer.store.TransactionStore;
+import com.totorovan.transfer.store.WriteBehindStore;
+import com.totorovan.transfer.tenant.Tenant;
+import com.totorovan.transfer.tenant.TenantRoutes;
+import com.totorovan.transfer.tenant.Tenants;
+import com.totorovan.transfer.trace.OtlpFileExporter;
+import com.totorovan.transfer.trace.TraceRoutes;
+import com.totorovan.transfer.trace.TransferTracer;
+import com.totorovan.transfer.transaction.IngestionRoutes;
 import com.totorovan.transfer.transaction.TransactionFactory;
+import com.totorovan.transfer.transaction.TransactionIngestion;
 import com.totorovan.transfer.transaction.TransactionRoutes;
 import com.totorovan.transfer.transaction.TransactionService;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletionStage;
 
 public class Application extends AllDirectives {
+    private static final int DEFAULT_EVENT_BUFFER_SIZE = 64;
+    private static final int DEFAULT_LEDGER_STRIPES = 64;
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+    private static final int DEFAULT_TRACE_BUFFER_SIZE = 4096;
+    private static final int DEFAULT_STORE_MAX_PENDING = 100_000;
+    private static final int DEFAULT_BULK_BATCH_SIZE = 1000;
+    private static final int DEFAULT_BULK_MAX_ACCOUNTS_PER_SECOND = 10_000;
+    private static final int DEFAULT_HISTORY_MEMORY_SEGMENTS = 16;
+    private static final int DEFAULT_ID_SHARDS = 64;
+    private static final int DEFAULT_ID_BLOCK_SIZE = 1024;
+    private static final int DEFAULT_ID_RESERVE_BLOCKS = 16;
+    private static final int DEFAULT_RATE_LIMIT_MAX_CLIENTS = 100_000;
+    private static final double DEFAULT_TENANT_PER_SECOND = 5000;
+    private static final int DEFAULT_TENANT_BURST = 10_000;
+    private static final int DEFAULT_TENANT_MAX_IN_FLIGHT = 1000;
+
     private final LoggingAdapter log;
+    private final ActorSystem system = ActorSystem.create("transfer");
     private final ActorRef accountService;
+    private final TransferEngine transferEngine;
     private final ActorRef transactionService;
-    private final ActorSystem system = ActorSystem.create("transfer");
     private final String address;
     private final Duration timeout;
+    private final int eventBufferSize;
+    private final TransactionIngestion ingestion;
+    private final IngestionRoutes ingestionRoutes;
+    private final Path ingestDirectory;
+    private final String ingestFile;
+    private final TransferTracer tracer;
+    private final Duration traceExportInterval;
+    private final String traceExportFile;
+    private final ReadMetrics accountReads = new ReadMetrics();
+    private final ReadMetrics transactionReads = new ReadMetrics();
+    private final Duration reconciliationInterval;
+    private final BulkOperations bulkOperations;
+    private final Tenants tenants;
+    private TrafficCapture capture;
+    private final int idMaxKeys;
+    private final Duration idKeyTtl;
+    private IdAssignment accountIds;
+    private IdAssignment transactionIds;
+    private RateLimiter rateLimiter;
 
     Application(AccountFactory accountFactory, TransactionFactory transactionFactory, String address, Duration timeout) {
-        accountService = system.actorOf(AccountService.props(accountFactory, timeout), "accountService");
-        transactionService = system.actorOf(TransactionService.props(accountService, transactionFactory, timeout), "transactionService");
-        this.timeout = timeout;
-        this.address = address;
+        this(accountFactory, transactionFactory, ConfigFactory.empty()
+                .withValue("server.address", ConfigValueFactory.fromAnyRef(address))
+                .withValue("actor.timeout", ConfigValueFactory.fromAnyRef(timeout.toString())));
+    }
+
+    Application(AccountFactory accountFactory, TransactionFactory transactionFactory, Config conf) {
+        this.address = conf.hasPath("server.address") ? conf.getString("server.address") : "localhost:8080";
+        this.timeout = conf.hasPath("actor.timeout") ? Duration.parse(conf.getString("actor.timeout")) : Duration.ofSeconds(1);
+        this.eventBufferSize = conf.hasPath("events.buffer-size") ? conf.getInt("events.buffer-size") : DEFAULT_EVENT_BUFFER_SIZE;
+        Duration readCacheTtl = conf.hasPath("read-coalescing.cache-ttl") ? Duration.parse(conf.getString("read-coalescing.cache-ttl")) : Duration.ZERO;
+        String engine = conf.hasPath("transfer.engine") ? conf.getString("transfer.engine") : "actor";
+        switch (engine) {
+            case "actor":
+                accountService = system.actorOf(AccountService.props(accountFactory, timeout, readCacheTtl, accountReads), "accountService");
+                transferEngine = new ActorTransferEngine(accountService, timeout);
+                break;
+            case "ledger":
+                int stripes = conf.hasPath("ledger.stripes") ? conf.getInt("ledger.stripes") : DEFAULT_LEDGER_STRIPES;
+                accountService = null;
+                transferEngine = new LedgerTransferEngine(stripes, LedgerEvents.get(system), BalanceIndex.get(system));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown transfer engine " + engine);
+        }
+        Duration scheduleTick = conf.hasPath("schedule.tick") ? Duration.parse(conf.getString("schedule.tick")) : TransactionService.DEFAULT_TICK;
+        String scheduleJournal = conf.hasPath("schedule.journal") ? conf.getString("schedule.journal") : "";
+        transactionService = system.actorOf(TransactionService.props(transferEngine, transactionFactory, timeout, scheduleTick,
+                scheduleJournal.isEmpty() ? null : Paths.get(scheduleJournal), readCacheTtl, transactionReads), "transactionService");
+        int parallelism = conf.hasPath("ingest.parallelism") ? conf.getInt("ingest.parallelism") : Runtime.getRuntime().availableProcessors();
+        int checkpointInterval = conf.hasPath("ingest.checkpoint-interval") ? conf.getInt("ingest.checkpoint-interval") : DEFAULT_CHECKPOINT_INTERVAL;
+        this.ingestDirectory = Paths.get(conf.hasPath("ingest.directory") ? conf.getString("ingest.directory") : "ingest");
+        this.ingestFile = conf.hasPath("ingest.file") ? conf.getString("ingest.file") : "";
+        this.ingestion = new TransactionIngestion(transactionService, timeout, parallelism, checkpointInterval);
+        this.ingestionRoutes = new IngestionRoutes(ingestion, ingestDirectory);
+        boolean tracing = !conf.hasPath("tracing.enabled") || conf.getBoolean("tracing.enabled");
+        this.tracer = new TransferTracer(tracing, conf.hasPath("tracing.buffer-size") ? conf.getInt("tracing.buffer-size") : DEFAULT_TRACE_BUFFER_SIZE);
+        this.traceExportFile = conf.hasPath("tracing.otlp-file") ? conf.getString("tracing.otlp-file") : "";
+        this.traceExportInterval = conf.hasPath("tracing.export-interval") ? Duration.parse(conf.getString("tracing.export-interval")) : Duration.ofSeconds(1);
+        int bulkBatchSize = conf.hasPath("bulk.batch-size") ? conf.getInt("bulk.batch-size") : DEFAULT_BULK_BATCH_SIZE;
+        int bulkParallelism = conf.hasPath("bulk.parallelism") ? conf.getInt("bulk.parallelism") : Runtime.getRuntime().availableProcessors();
+        int bulkMaxAccountsPerSecond = conf.hasPath("bulk.max-accounts-per-second") ? conf.getInt("bulk.max-accounts-per-second") : DEFAULT_BULK_MAX_ACCOUNTS_PER_SECOND;
+        Duration bulkRetention = conf.hasPath("bulk.retention") ? Duration.parse(conf.getString("bulk.retention")) : BulkOperations.DEFAULT_RETENTION;
+        this.bulkOperations = accountService == null ? null
+                : new BulkOperations(accountService, timeout, bulkBatchSize, bulkParallelism, bulkMaxAccountsPerSecond, bulkRetention);
+        this.idMaxKeys = conf.hasPath("ids.max-keys") ? conf.getInt("ids.max-keys") : IdAssignment.DEFAULT_MAX_KEYS;
+        this.idKeyTtl = conf.hasPath("ids.key-ttl") ? Duration.parse(conf.getString("ids.key-ttl")) : IdAssignment.DEFAULT_KEY_TTL;
+        this.reconciliationInterval = conf.hasPath("reconciliation.interval") ? Duration.parse(conf.getString("reconciliation.interval")) : Duration.ofMinutes(1);
+        String tenantNames = conf.hasPath("tenancy.tenants") ? conf.getString("tenancy.tenants").trim() : "";
+        List<Tenant> tenantList = new ArrayList<>();
+        if (!tenantNames.isEmpty()) {
+            int stripes = conf.hasPath("ledger.stripes") ? conf.getInt("ledger.stripes") : DEFAULT_LEDGER_STRIPES;
+            for (String name : tenantNames.split(",")) {
+                tenantList.add(startTenant(name.trim(), conf, engine, stripes, readCacheTtl, scheduleTick));
+            }
+        }
+        this.tenants = tenantList.isEmpty() ? null
+                : new Tenants(conf.hasPath("tenancy.header") ? conf.getString("tenancy.header") : Tenants.DEFAULT_HEADER, tenantList);
         this.log = Logging.getLogger(system, this);
     }
 
+    /**
+     * Starts the actor system of a tenant from {@code tenant.<name>} falling back to {@code tenant-defaults}, so the
+     * system can be given its own dispatcher and mailbox settings. Tenants are kept in memory only and their system
+     * terminates with the application.
+     */
+    private Tenant startTenant(String name, Config conf, String engine, int stripes, Duration readCacheTtl, Duration scheduleTick) {
+        if (!name.matches("[A-Za-z0-9_-]+")) {
+            throw new IllegalArgumentException("Tenant names may only contain letters, digits, '_' and '-', but was " + name);
+        }
+        Config tenantConf = (conf.hasPath("tenant." + name) ? conf.getConfig("tenant." + name) : ConfigFactory.empty())
+                .withFallback(conf.hasPath("tenant-defaults") ? conf.getConfig("tenant-defaults") : ConfigFactory.empty());
+        ActorSystem tenantSystem = ActorSystem.create("transfer-" + name, tenantConf.withFallback(ConfigFactory.load()));
+        system.registerOnTermination(tenantSystem::terminate);
+        ReadMetrics tenantAccountReads = new ReadMetrics();
+        ReadMetrics tenantTransactionReads = new ReadMetrics();
+        ActorRef tenantAccountService = null;
+        TransferEngine tenantEngine;
+        if (engine.equals("ledger")) {
+            tenantEngine = new LedgerTransferEngine(stripes, LedgerEvents.get(tenantSystem), BalanceIndex.get(tenantSystem));
+        } else {
+            tenantAccountService = tenantSystem.actorOf(AccountService.props(new AccountFactory(), timeout, readCacheTtl,
+                    tenantAccountReads), "accountService");
+            tenantEngine = new ActorTransferEngine(tenantAccountService, timeout);
+        }
+        ActorRef tenantTransactionService = tenantSystem.actorOf(TransactionService.props(tenantEngine, new TransactionFactory(),
+                timeout, scheduleTick, null, readCacheTtl, tenantTransactionReads), "transactionService");
+        return new Tenant(name, tenantSystem, tenantAccountService, tenantEngine, tenantTransactionService,
+                tenantAccountReads, tenantTransactionReads,
+                tenantConf.hasPath("per-second") ? tenantConf.getDouble("per-second") : DEFAULT_TENANT_PER_SECOND,
+                tenantConf.hasPath("burst") ? tenantConf.getInt("burst") : DEFAULT_TENANT_BURST,
+                tenantConf.hasPath("max-in-flight") ? tenantConf.getInt("max-in-flight") : DEFAULT_TENANT_MAX_IN_FLIGHT);
+    }
+
     public static void main(String[] args) throws IOException {
         Config conf = ConfigFactory.load();
-        String address = conf.hasPath("server.address") ? conf.getString("server.address") : "localhost:8080";
-        Duration timeout = conf.hasPath("actor.timeout") ? Duration.parse(conf.getString("actor.timeout")) : Duration.ofSeconds(1);
-
-        Application application = new Application(new AccountFactory(), new TransactionFactory(), address, timeout);
-        CompletionStage<ServerBinding> binding = application.createServerBinding();
+        String storeDirectory = conf.hasPath("store.directory") ? conf.getString("store.directory") : "";
+        AccountStore accountStore = null;
+        TransactionStore transactionStore = null;
+        boolean serverAssignedIds = conf.hasPath("ids.server-assigned") && conf.getBoolean("ids.server-assigned");
+        int idShards = conf.hasPath("ids.shards") ? conf.getInt("ids.shards") : DEFAULT_ID_SHARDS;
+        int idBlockSize = conf.hasPath("ids.block-size") ? conf.getInt("ids.block-size") : DEFAULT_ID_BLOCK_SIZE;
+        IdAllocator idAllocator = serverAssignedIds ? IdAllocator.inMemory(idShards, idBlockSize) : null;
+        Path keyDirectory = null;
+        if (!storeDirectory.isEmpty()) {
+            Path directory = Files.createDirectories(Paths.get(storeDirectory));
+            int maxPending = conf.hasPath("store.max-pending") ? conf.getInt("store.max-pending") : DEFAULT_STORE_MAX_PENDING;
+            accountStore = AccountStore.open(directory.resolve("accounts.log"), maxPending);
+            transactionStore = TransactionStore.open(directory.resolve("transactions.log"), maxPending);
+            if (serverAssignedIds) {
+                int reserveBlocks = conf.hasPath("ids.reserve-blocks") ? conf.getInt("ids.reserve-blocks") : DEFAULT_ID_RESERVE_BLOCKS;
+                idAllocator = IdAllocator.open(directory.resolve("ids.properties"), idShards, idBlockSize, reserveBlocks);
+                // accounts and transactions stored with the ids clients chose
+                idAllocator.startAbove(Math.max(accountStore.maxStoredKey(), transactionStore.maxStoredKey()));
+                keyDirectory = directory;
+            }
+        }
+        String historySpillFile = conf.hasPath("history.spill-file") ? conf.getString("history.spill-file") : "";
+        HistorySpill historySpill = null;
+        if (!historySpillFile.isEmpty()) {
+            int memorySegments = conf.hasPath("history.memory-segments") ? conf.getInt("history.memory-segments") : DEFAULT_HISTORY_MEMORY_SEGMENTS;
+            historySpill = HistorySpill.open(Paths.get(historySpillFile), memorySegments);
+        }
+        Application application = new Application(new AccountFactory(accountStore, historySpill), new TransactionFactory(transactionStore), conf);
+        String captureFile = conf.hasPath("capture.file") ? conf.getString("capture.file") : "";
+        if (!captureFile.isEmpty()) {
+            application.captureTraffic(TrafficCapture.open(Paths.get(captureFile)));
+            application.log.info("Capturing requests to {}", captureFile);
+        }
+        if (idAllocator != null && keyDirectory != null) {
+            application.assignIds(idAllocator, keyDirectory);
+        } else if (idAllocator != null) {
+            application.assignIds(idAllocator);
+        }
+        if (conf.hasPath("rate-limit.enabled") && conf.getBoolean("rate-limit.enabled")) {
+            application.limitRates(rateLimiter(conf));
+        }
+        ActorMaterializer materializer = ActorMaterializer.create(application.system);
+        CompletionStage<ServerBinding> binding = application.createServerBinding(materializer);
+        application.ingestOnStartup(materializer);
+        application.exportTraces();
+        application.reconcilePeriodically();
+        if (accountStore != null) {
+            Duration flushInterval = conf.hasPath("store.flush-interval") ? Duration.parse(conf.getString("store.flush-interval")) : Duration.ofMillis(50);
+            application.flushBehind(flushInterval, accountStore, transactionStore);
+            application.log.info("Keeping accounts and transfers in {}", storeDirectory);
+        }
+        if (historySpill != null) {
+            application.closeOnTermination(historySpill);
+            application.log.info("Spilling balance history to {}", historySpillFile);
+        }
 
         application.log.info("Server online at {}\nPress RETURN to stop...", application.address);
         System.in.read();
@@ -59,16 +268,29 @@ public class Application extends AllDirectives {
                 .thenAccept(unbound -> application.system.terminate());
     }
 
+    /**
+     * @return account service actor or {@code null} if the engine does not use actors for accounts
+     */
     public ActorRef getAccountService() {
         return accountService;
     }
 
+    public TransferEngine getTransferEngine() {
+        return transferEngine;
+    }
+
     public ActorRef getTransactionService() {
         return transactionService;
     }
 
-    private CompletionStage<ServerBinding> createServerBinding() {
-        ActorMaterializer materializer = ActorMaterializer.create(system);
+    /**
+     * @return the tenants or {@code null} if there are none
+     */
+    public Tenants getTenants() {
+        return tenants;
+    }
+
+    private CompletionStage<ServerBinding> createServerBinding(ActorMaterializer materializer) {
         Flow<HttpRequest, HttpResponse, NotUsed> routeFlow = buildRoutes().flow(system, materializer);
         Http http = Http.get(system);
 
@@ -76,8 +298,171 @@ public class Application extends AllDirectives {
                 ConnectHttp.toHost(address), materializer);
     }
 
+    private void ingestOnStartup(ActorMaterializer materializer) {
+        if (ingestFile.isEmpty()) {
+            return;
+        }
+        Path file = ingestDirectory.resolve(ingestFile).toAbsolutePath().normalize();
+        log.info("Ingesting transfers from {}", file);
+        ingestionRoutes.start(file, materializer).whenComplete((report, e) -> {
+            if (e != null) {
+                log.error(e, "Ingestion of {} failed", file);
+            } else {
+                log.info("Ingestion of {} finished: {}", file, report);
+            }
+        });
+    }
+
+    private void exportTraces() throws IOException {
+        if (traceExportFile.isEmpty()) {
+            return;
+        }
+        OtlpFileExporter exporter = new OtlpFileExporter(tracer, Paths.get(traceExportFile));
+        system.scheduler().schedule(traceExportInterval, traceExportInterval, exporter,
+                system.dispatchers().lookup("akka.stream.default-blocking-io-dispatcher"));
+        system.registerOnTermination(() -> {
+            exporter.run();
+            try {
+                exporter.close();
+            } catch (IOException e) {
+                log.error(e, "Could not close trace export file {}", traceExportFile);
+            }
+        });
+        log.info("Exporting traces to {}", traceExportFile);
+    }
+
+    /**
+     * Scans the accounts every interval, the actor engine is the only one keeping a {@link MoneySupply}.
+     */
+    private void reconcilePeriodically() {
+        if (accountService == null || reconciliationInterval.isZero()) {
+            return;
+        }
+        system.scheduler().schedule(reconciliationInterval, reconciliationInterval, accountService,
+                AccountService.Reconcile.INSTANCE, system.dispatcher(), ActorRef.noSender());
+    }
+
+    /**
+     * Flushes the stores every interval and once more when the system terminates.
+     */
+    private void flushBehind(Duration interval, WriteBehindStore... stores) {
+        for (WriteBehindStore store : stores) {
+            system.scheduler().schedule(interval, interval, () -> {
+                try {
+                    store.flush();
+                } catch (IOException e) {
+                    log.error(e, "Could not flush store, retrying with the next flush");
+                }
+            }, system.dispatchers().lookup("akka.stream.default-blocking-io-dispatcher"));
+            system.registerOnTermination(() -> {
+                try {
+                    store.close();
+                    log.info("Store closed: {}", store.stats());
+                } catch (IOException e) {
+                    log.error(e, "Could not close store");
+                }
+            });
+        }
+    }
+
+    /**
+     * Must be called before the routes are built. The capture is flushed every second and closed on termination.
+     */
+    void captureTraffic(TrafficCapture capture) {
+        this.capture = capture;
+        system.scheduler().schedule(Duration.ofSeconds(1), Duration.ofSeconds(1), () -> {
+            try {
+                capture.flush();
+            } catch (IOException e) {
+                log.error(e, "Could not flush traffic capture");
+            }
+        }, system.dispatchers().lookup("akka.stream.default-blocking-io-dispatcher"));
+        system.registerOnTermination(() -> {
+            try {
+                capture.close();
+                log.info("Traffic capture closed after {} requests", capture.records());
+            } catch (IOException e) {
+                log.error(e, "Could not close traffic capture");
+            }
+        });
+    }
+
+    /**
+     * Must be called before the routes are built. The ids clients send become idempotency keys.
+     */
+    void assignIds(IdAllocator allocator) {
+        assignIds(allocator, new IdAssignment(allocator, idMaxKeys, idKeyTtl), new IdAssignment(allocator, idMaxKeys, idKeyTtl));
+    }
+
+    /**
+     * Must be called before the routes are built. The ids clients send become idempotency keys, journaled in
+     * {@code keyDirectory} so they survive restarts.
+     */
+    void assignIds(IdAllocator allocator, Path keyDirectory) throws IOException {
+        assignIds(allocator, IdAssignment.open(allocator, idMaxKeys, idKeyTtl, keyDirectory.resolve("account-keys.log")),
+                IdAssignment.open(allocator, idMaxKeys, idKeyTtl, keyDirectory.resolve("transaction-keys.log")));
+    }
+
+    private void assignIds(IdAllocator allocator, IdAssignment accountIds, IdAssignment transactionIds) {
+        this.accountIds = accountIds;
+        this.transactionIds = transactionIds;
+        ingestion.assignIds(transactionIds);
+        if (tenants != null) {
+            tenants.all().forEach(tenant -> tenant.assignIds(allocator, idMaxKeys, idKeyTtl));
+        }
+    }
+
+    /**
+     * Must be called before the routes are built. Limits the account and transaction routes.
+     */
+    void limitRates(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    private static RateLimiter rateLimiter(Config conf) {
+        String keyHeader = conf.hasPath("rate-limit.key-header") ? conf.getString("rate-limit.key-header") : RateLimiter.DEFAULT_KEY_HEADER;
+        int maxClients = conf.hasPath("rate-limit.max-clients") ? conf.getInt("rate-limit.max-clients") : DEFAULT_RATE_LIMIT_MAX_CLIENTS;
+        Map<String, RateLimiter.Rate> rates = new LinkedHashMap<>();
+        if (conf.hasPath("rate-limit.routes")) {
+            Config routes = conf.getConfig("rate-limit.routes");
+            for (String route : routes.root().keySet()) {
+                Config rate = routes.getConfig(route);
+                rates.put(route, new RateLimiter.Rate(rate.getDouble("per-second"), rate.getInt("burst")));
+            }
+        }
+        RateLimiter.Rate newKeys = conf.hasPath("rate-limit.new-keys")
+                ? new RateLimiter.Rate(conf.getDouble("rate-limit.new-keys.per-second"), conf.getInt("rate-limit.new-keys.burst"))
+                : RateLimiter.DEFAULT_NEW_KEYS;
+        return new RateLimiter(keyHeader, maxClients, newKeys, rates);
+    }
+
+    private void closeOnTermination(HistorySpill historySpill) {
+        system.registerOnTermination(() -> {
+            try {
+                historySpill.close();
+            } catch (IOException e) {
+                log.error(e, "Could not close balance history spill file");
+            }
+        });
+    }
+
     Route buildRoutes() {
-        return route(new AccountRoutes(accountService, timeout).routes(), new TransactionRoutes(transactionService, timeout).routes());
+        Route api = apiRoutes(transferEngine, BalanceIndex.get(system), transactionService, accountIds, transactionIds);
+        Route routes = route(tenants == null ? api : tenants.select(api, tenant -> apiRoutes(tenant.getTransferEngine(),
+                        BalanceIndex.get(tenant.getSystem()), tenant.getTransactionService(), tenant.getAccountIds(), tenant.getTransactionIds())),
+                tenants == null ? reject() : new TenantRoutes(tenants).routes(),
+                new EventRoutes(system, eventBufferSize).routes(), ingestionRoutes.routes(), new TraceRoutes(tracer).routes(),
+                new ReadMetricsRoutes(accountReads, transactionReads).routes(),
+                new FootprintRoutes(transferEngine, transactionService, timeout, BalanceIndex.get(system)).routes(),
+                new ReconciliationRoutes(transferEngine, MoneySupply.get(system)).routes(), new BulkRoutes(bulkOperations).routes());
+        return capture == null ? routes : capture.capture(routes);
+    }
+
+    private Route apiRoutes(TransferEngine engine, BalanceIndex balanceIndex, ActorRef transactionService,
+                            IdAssignment accountIds, IdAssignment transactionIds) {
+        Route api = route(new AccountRoutes(engine, balanceIndex, accountIds).routes(),
+                new TransactionRoutes(transactionService, timeout, tracer, transactionIds).routes());
+        return rateLimiter == null ? api : rateLimiter.limit(api);
     }
 
 }
@@ -2,80 +2,332 @@ package com.totorovan.transfer.account;
 
 import akka.actor.AbstractLoggingActor;
 import akka.actor.Props;
+import akka.actor.Status;
+import com.totorovan.transfer.bulk.BulkRule;
 import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.FailureCode;
 import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.common.Messages.Urgent;
+import com.totorovan.transfer.event.LedgerEvents;
+import com.totorovan.transfer.history.BalanceHistory;
+import com.totorovan.transfer.history.HistorySpill;
+import com.totorovan.transfer.reconcile.MoneySupply;
+import com.totorovan.transfer.store.AccountStore;
+import com.totorovan.transfer.trace.TransferTrace;
+import com.totorovan.transfer.trace.TransferTrace.Stage;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 
 import java.io.Serializable;
-import java.math.BigDecimal;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.LongAdder;
 
+import static com.totorovan.transfer.common.Amounts.toDecimal;
+import static com.totorovan.transfer.common.Amounts.toUnits;
+
+/**
+ * Balance of one account in units, {@link AccountInfo} is only built when the account is read.
+ * Every change is counted in the {@link MoneySupply}, together with the balance as of the last cut a scan made,
+ * and moves the account in the {@link BalanceIndex}. Every balance the account had since it started is kept
+ * in its {@link BalanceHistory}.
+ */
 public class Account extends AbstractLoggingActor {
 
-    private AccountInfo accountInfo;
+    private final long id;
+    private final AccountStore store;
+    private final MoneySupply supply = MoneySupply.get(context().system());
+    private final BalanceIndex balanceIndex = BalanceIndex.get(context().system());
+    private final BalanceHistory history;
+    private final LongAdder historyBytes;
+    private long balance;
+    private long version;
+    // new with every start, so a restarted or recreated account does not match tags of the one before
+    private final long incarnation = AccountInfo.newIncarnation();
+    private boolean frozen;
+    private long snapshotEpoch;
+    private long snapshotBalance;
+
+    private Account(AccountInfo accountInfo, AccountStore store, HistorySpill historySpill, LongAdder historyBytes) {
+        this.id = accountInfo.getId();
+        this.store = store;
+        this.history = new BalanceHistory(historySpill);
+        this.historyBytes = historyBytes;
+        this.balance = toUnits(accountInfo.getBalance());
+        this.version = accountInfo.getVersion();
+    }
 
-    private Account(AccountInfo accountInfo) {
-        this.accountInfo = accountInfo;
+    /**
+     * @param store        keeps the state of the account after every change, {@code null} to keep it in memory only
+     * @param historySpill takes older segments of the balance history, {@code null} to keep it in memory only
+     * @param historyBytes sum of the bytes the balance histories of the accounts hold in memory
+     */
+    static Props props(AccountInfo accountInfo, AccountStore store, HistorySpill historySpill, LongAdder historyBytes) {
+        return Props.create(Account.class, () -> new Account(accountInfo, store, historySpill, historyBytes));
     }
 
     static Props props(AccountInfo accountInfo) {
-        return Props.create(Account.class, () -> new Account(accountInfo));
+        return Account.props(accountInfo, null, null, new LongAdder());
     }
 
-    private BigDecimal getBalance() {
-        return accountInfo.getBalance();
+    /**
+     * Called again after a restart, which starts over from the opening balance.
+     */
+    @Override
+    public void preStart() {
+        // the account did not exist before the epoch it opened in
+        snapshotEpoch = supply.epoch();
+        snapshotBalance = 0L;
+        supply.opened(snapshotEpoch, balance);
+        balanceIndex.added(id, balance);
+        appendHistory();
+    }
+
+    @Override
+    public void postStop() {
+        long epoch = observeEpoch();
+        supply.closed(id, epoch, balance, snapshotBalance);
+        balanceIndex.removed(id, balance);
+        historyBytes.add(-history.memoryBytes());
     }
 
     @Override
     public Receive createReceive() {
         return receiveBuilder()
-                .match(Withdraw.class, withdraw -> this.withdraw(withdraw.getAmount()))
-                .match(Deposit.class, deposit -> this.deposit(deposit.getAmount()))
+                .match(Withdraw.class, this::withdraw)
+                .match(Deposit.class, deposit -> this.deposit(deposit.getAmount(), deposit.getTrace()))
                 .match(GetAccount.class, this::onGetAccountInfo)
+                .match(GetBalanceAt.class, this::onGetBalanceAt)
+                .match(ApplyRule.class, applyRule -> applyRule(applyRule.getRule()))
+                .match(MoneySupply.GetSnapshot.class, getSnapshot -> {
+                    observeEpoch();
+                    sender().tell(snapshotBalance, self());
+                })
                 .build();
     }
 
-    private void withdraw(BigDecimal amount) {
-        BigDecimal balance = getBalance();
-        if (amount.compareTo(balance) > 0) {
-            notifyInsufficientBalance(amount);
+    private void withdraw(Withdraw withdraw) {
+        long amount = withdraw.getAmount();
+        TransferTrace trace = withdraw.getTrace();
+        long expectedVersion = withdraw.getExpectedVersion();
+        long expectedIncarnation = withdraw.getExpectedIncarnation();
+        if (expectedVersion != Withdraw.ANY_VERSION && (expectedVersion != version
+                || expectedIncarnation != AccountInfo.ANY_INCARNATION && expectedIncarnation != incarnation)) {
+            TransferTrace.mark(trace, Stage.WITHDRAWN);
+            sender().tell(new Failure(FailureCode.VERSION_MISMATCH, id, expectedVersion, version), self());
+        } else if (frozen && !withdraw.isRevert()) {
+            TransferTrace.mark(trace, Stage.WITHDRAWN);
+            sender().tell(new Failure(FailureCode.ACCOUNT_FROZEN, id), self());
+        } else if (amount > balance) {
+            notifyInsufficientBalance(amount, trace);
         } else {
-            updateBalance(balance.subtract(amount), "Withdraw");
+            updateBalance(balance - amount, -amount, BalanceChanged.WITHDRAW, trace, Stage.WITHDRAWN);
+        }
+    }
+
+    private void notifyInsufficientBalance(long amount, TransferTrace trace) {
+        Failure failure = new Failure(FailureCode.INSUFFICIENT_BALANCE, amount, id, balance);
+        log().info("Withdraw failed for account {}: {}", id, failure);
+        TransferTrace.mark(trace, Stage.WITHDRAWN);
+        sender().tell(failure, self());
+    }
+
+    private void deposit(long amount, TransferTrace trace) {
+        if (balance > Long.MAX_VALUE - amount) {
+            TransferTrace.mark(trace, Stage.DEPOSITED);
+            sender().tell(new Failure(FailureCode.BALANCE_OVERFLOW, id), self());
+            return;
+        }
+        updateBalance(balance + amount, amount, BalanceChanged.DEPOSIT, trace, Stage.DEPOSITED);
+    }
+
+    /**
+     * The stage is stamped before replying, the stamp must be visible to whoever handles the reply.
+     */
+    private void updateBalance(long newBalance, long amount, String operation, TransferTrace trace, Stage stage) {
+        supply.changed(changeBalance(newBalance), amount);
+        log().info("{} succeeded for account {}", operation, id);
+        TransferTrace.mark(trace, stage);
+        sender().tell(Success.INSTANCE, self());
+        LedgerEvents.get(context().system()).publish(new BalanceChanged(id, amount, newBalance, operation), id);
+    }
+
+    /**
+     * @return epoch the change is counted in
+     */
+    private long changeBalance(long newBalance) {
+        long epoch = observeEpoch();
+        balanceIndex.moved(id, balance, newBalance);
+        balance = newBalance;
+        version++;
+        appendHistory();
+        if (store != null) {
+            store.put(id, balance, version);
         }
+        return epoch;
     }
 
-    private void notifyInsufficientBalance(BigDecimal amount) {
-        String errorMsg = "Insufficient balance to withdraw " + amount + " from account " + accountInfo;
-        log().info(errorMsg);
-        sender().tell(new Failure(errorMsg), self());
+    /**
+     * Replies with {@link Success} if the rule was applied, with a {@link Failure} if the account was left as it was.
+     */
+    private void applyRule(BulkRule rule) {
+        if (rule.getType() == BulkRule.Type.FREEZE || rule.getType() == BulkRule.Type.UNFREEZE) {
+            frozen = rule.getType() == BulkRule.Type.FREEZE;
+            sender().tell(Success.INSTANCE, self());
+            return;
+        }
+        long amount = rule.change(balance);
+        if (amount == BulkRule.INSUFFICIENT) {
+            sender().tell(new Failure(FailureCode.INSUFFICIENT_BALANCE, rule.getFee(), id, balance), self());
+            return;
+        }
+        if (amount > 0 && balance > Long.MAX_VALUE - amount) {
+            sender().tell(new Failure(FailureCode.BALANCE_OVERFLOW, id), self());
+            return;
+        }
+        if (amount != 0) {
+            long newBalance = balance + amount;
+            supply.adjusted(changeBalance(newBalance), amount);
+            // the rule does not pass the service, which must forget reads of the old balance before the reply
+            context().parent().tell(new AccountService.AccountsChanged(new long[]{id}), self());
+            String operation = rule.getType() == BulkRule.Type.INTEREST ? BalanceChanged.INTEREST : BalanceChanged.FEE;
+            LedgerEvents.get(context().system()).publish(new BalanceChanged(id, amount, newBalance, operation), id);
+        }
+        sender().tell(Success.INSTANCE, self());
     }
 
-    private void deposit(BigDecimal amount) {
-        BigDecimal balance = getBalance();
-        updateBalance(balance.add(amount), "Deposit");
+    /**
+     * Keeps the balance as of a cut made since the last change, must be called before every change.
+     *
+     * @return epoch the change is counted in
+     */
+    private long observeEpoch() {
+        long epoch = supply.epoch();
+        if (epoch != snapshotEpoch) {
+            snapshotEpoch = epoch;
+            snapshotBalance = balance;
+        }
+        return epoch;
     }
 
-    private void updateBalance(BigDecimal newBalance, String operation) {
-        accountInfo = new AccountInfo(accountInfo.getId(), newBalance);
-        log().info("{} succeeded for {}", operation, accountInfo);
-        sender().tell(new Success(), self());
+    private void appendHistory() {
+        long bytes = history.memoryBytes();
+        history.append(System.currentTimeMillis(), balance);
+        historyBytes.add(history.memoryBytes() - bytes);
     }
 
     private void onGetAccountInfo(GetAccount getAccount) {
-        sender().tell(accountInfo, self());
+        sender().tell(new AccountInfo(id, toDecimal(balance), version, incarnation), self());
+    }
+
+    private void onGetBalanceAt(GetBalanceAt getBalanceAt) {
+        long at = getBalanceAt.getAt();
+        try {
+            Long balanceAt = history.balanceAt(at);
+            sender().tell(balanceAt == null ? new Failure(FailureCode.NO_BALANCE_AT, id, at, 0L)
+                    : new BalanceAtDto(id, at, toDecimal(balanceAt)), self());
+        } catch (UncheckedIOException e) {
+            log().error(e, "Could not read the balance history of account {}", id);
+            sender().tell(new Status.Failure(e), self());
+        }
     }
 
+    /**
+     * Withdrawal only done if the account is at {@code expectedVersion}, unless that is {@link #ANY_VERSION}, and in
+     * {@code expectedIncarnation}, unless that is {@link AccountInfo#ANY_INCARNATION}.
+     *
+     * @see com.totorovan.transfer.common.Amounts amount in units
+     */
     @Data
-    static class Withdraw implements Serializable {
-        private final BigDecimal amount;
+    @AllArgsConstructor
+    static class Withdraw implements Serializable, Urgent {
+        static final long ANY_VERSION = 0L;
+
+        private final long amount;
+        private final long expectedVersion;
+        private final long expectedIncarnation;
+        private final TransferTrace trace;
+        /**
+         * Takes back a deposit of a failed transfer, which a frozen account does not refuse.
+         */
+        private final boolean revert;
+        /**
+         * Whether the withdrawal goes ahead of queued transfers.
+         */
+        private final boolean urgent;
+
+        Withdraw(long amount, long expectedVersion, long expectedIncarnation, TransferTrace trace) {
+            this(amount, expectedVersion, expectedIncarnation, trace, false, false);
+        }
+
+        Withdraw(long amount) {
+            this(amount, ANY_VERSION, AccountInfo.ANY_INCARNATION, null);
+        }
+
+        static Withdraw revert(long amount) {
+            return new Withdraw(amount, ANY_VERSION, AccountInfo.ANY_INCARNATION, null, true, true);
+        }
+
+        /**
+         * Takes back a deposit whose outcome is unknown, queued behind it in case it was not applied yet.
+         */
+        static Withdraw revertQueued(long amount) {
+            return new Withdraw(amount, ANY_VERSION, AccountInfo.ANY_INCARNATION, null, true, false);
+        }
+
+        @Override
+        public boolean isUrgent() {
+            return urgent;
+        }
     }
 
+    /**
+     * @see com.totorovan.transfer.common.Amounts amount in units
+     */
     @Data
-    static class Deposit implements Serializable {
-        private final BigDecimal amount;
+    @AllArgsConstructor
+    static class Deposit implements Serializable, Urgent {
+        private final long amount;
+        private final TransferTrace trace;
+        /**
+         * Gives back a withdrawal of a failed transfer.
+         */
+        private final boolean revert;
+
+        Deposit(long amount, TransferTrace trace) {
+            this(amount, trace, false);
+        }
+
+        Deposit(long amount) {
+            this(amount, null);
+        }
+
+        static Deposit revert(long amount) {
+            return new Deposit(amount, null, true);
+        }
+
+        @Override
+        public boolean isUrgent() {
+            return revert;
+        }
+    }
+
+    @Data
+    public static class GetAccount implements Serializable, Urgent {
+        private final long id;
     }
 
+    /**
+     * Asks for the balance at {@code at} in epoch millis, answered with a {@link BalanceAtDto} or a {@link Failure}
+     * if the account did not have a balance then.
+     */
     @Data
-    public static class GetAccount implements Serializable {
+    public static class GetBalanceAt implements Serializable, Urgent {
         private final long id;
+        private final long at;
+    }
+
+    @Data
+    public static class ApplyRule implements Serializable {
+        private final BulkRule rule;
     }
 }
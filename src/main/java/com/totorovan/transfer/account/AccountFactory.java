@@ -2,9 +2,92 @@ package com.totorovan.transfer.account;
 
 import akka.actor.ActorContext;
 import akka.actor.ActorRef;
+import com.totorovan.transfer.footprint.StoreFootprintDto;
+import com.totorovan.transfer.history.HistorySpill;
+import com.totorovan.transfer.store.AccountStore;
 
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.totorovan.transfer.common.Amounts.toUnits;
+
+/**
+ * Creates account actors, with an {@link AccountStore} they keep their state in it and accounts are loaded
+ * from it on first access. With a {@link HistorySpill} they spill older segments of their balance history to it.
+ */
 public class AccountFactory {
+    private final AccountStore store;
+    private final HistorySpill historySpill;
+    private final LongAdder historyBytes = new LongAdder();
+
+    public AccountFactory() {
+        this(null);
+    }
+
+    /**
+     * @param store keeps account state, {@code null} to keep it in memory only
+     */
+    public AccountFactory(AccountStore store) {
+        this(store, null);
+    }
+
+    /**
+     * @param historySpill takes older balance history segments, {@code null} to keep the history in memory only
+     */
+    public AccountFactory(AccountStore store, HistorySpill historySpill) {
+        this.store = store;
+        this.historySpill = historySpill;
+    }
+
     ActorRef get(ActorContext context, AccountInfo accountInfo) {
-        return context.actorOf(Account.props(accountInfo), "account_" + accountInfo.getId());
+        if (store != null) {
+            store.put(accountInfo.getId(), toUnits(accountInfo.getBalance()), accountInfo.getVersion());
+        }
+        return create(context, accountInfo);
+    }
+
+    /**
+     * @return actor of a stored account or {@code null} if the account is not stored
+     */
+    ActorRef load(ActorContext context, long id) {
+        AccountInfo accountInfo = store == null ? null : store.get(id);
+        return accountInfo == null ? null : create(context, accountInfo);
+    }
+
+    /**
+     * @return the stored state of an account, without loading it, or {@code null} if the account is not stored
+     */
+    AccountInfo stored(long id) {
+        return store == null ? null : store.get(id);
+    }
+
+    /**
+     * @return ids of the stored accounts, loaded or not
+     */
+    long[] storedIds() {
+        return store == null ? new long[0] : store.ids();
+    }
+
+    void delete(long id) {
+        if (store != null) {
+            store.delete(id);
+        }
+    }
+
+    /**
+     * @return footprint of the store, {@code null} without a store
+     */
+    StoreFootprintDto storeFootprint() {
+        return store == null ? null : store.footprint("accountStore");
+    }
+
+    /**
+     * @return bytes the balance histories of the running accounts hold in memory
+     */
+    long historyBytes() {
+        return historyBytes.sum();
+    }
+
+    private ActorRef create(ActorContext context, AccountInfo accountInfo) {
+        return context.actorOf(Account.props(accountInfo, store, historySpill, historyBytes), "account_" + accountInfo.getId());
     }
 }
@@ -1,12 +1,58 @@
 package com.totorovan.transfer.account;
 
+import com.totorovan.transfer.common.Messages.Sheddable;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import lombok.Value;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Account state as read. The version starts at 1 and grows with every balance change, it is left out of equality
+ * so accounts with the same id and balance are equal however many changes led there. The incarnation tells apart
+ * accounts which had the same id, a recreated account starts at version 1 again but under a new incarnation.
+ */
 @Value
-public class AccountInfo implements Serializable {
+@AllArgsConstructor
+@EqualsAndHashCode(exclude = {"version", "incarnation"})
+@ToString(exclude = {"version", "incarnation"})
+public class AccountInfo implements Serializable, Sheddable {
+    public static final long INITIAL_VERSION = 1L;
+    public static final long ANY_INCARNATION = 0L;
+
+    // seeded from the clock so incarnations are not handed out again after a restart
+    private static final AtomicLong INCARNATIONS = new AtomicLong(System.currentTimeMillis() * 1000);
+
     private final long id;
     private final BigDecimal balance;
+    private final long version;
+    /**
+     * {@link #ANY_INCARNATION} where the account is only being created or loaded.
+     */
+    private final long incarnation;
+
+    public AccountInfo(long id, BigDecimal balance) {
+        this(id, balance, INITIAL_VERSION);
+    }
+
+    public AccountInfo(long id, BigDecimal balance, long version) {
+        this(id, balance, version, ANY_INCARNATION);
+    }
+
+    /**
+     * @return the entity tag value of the account, {@code <incarnation>.<version>}
+     */
+    public String entityTag() {
+        return incarnation + "." + version;
+    }
+
+    /**
+     * @return an incarnation no other account got since the process started, nor likely before
+     */
+    public static long newIncarnation() {
+        return INCARNATIONS.incrementAndGet();
+    }
 }
@@ -0,0 +1,15 @@
+package com.totorovan.transfer.account;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AccountPageDto {
+    private List<AccountDto> accounts;
+    private String nextCursor;
+}
@@ -1,19 +1,32 @@
 package com.totorovan.transfer.account;
 
-import akka.actor.ActorRef;
-import akka.http.javadsl.marshallers.jackson.Jackson;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.EntityTag;
 import akka.http.javadsl.server.AllDirectives;
 import akka.http.javadsl.server.PathMatchers;
 import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.StringUnmarshallers;
+import com.totorovan.transfer.common.Amounts;
+import com.totorovan.transfer.common.Codecs;
 import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.FailureCode;
 import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.engine.TransferEngine;
+import com.totorovan.transfer.id.IdAssignment;
+import com.totorovan.transfer.id.IdSettlement;
 import lombok.RequiredArgsConstructor;
 
-import java.time.Duration;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
 
-import static akka.pattern.PatternsCS.ask;
+import static com.totorovan.transfer.common.Amounts.toDecimal;
+import static com.totorovan.transfer.common.Amounts.toUnits;
 import static io.vavr.API.*;
 import static io.vavr.API.Match.Pattern0.any;
 import static io.vavr.Predicates.instanceOf;
@@ -21,8 +34,19 @@ import static io.vavr.Predicates.instanceOf;
 @RequiredArgsConstructor
 public class AccountRoutes extends AllDirectives {
 
-    private final ActorRef accountService;
-    private final Duration timeout;
+    private static final int DEFAULT_PAGE_LIMIT = 20;
+    private static final int MAX_PAGE_LIMIT = 100;
+
+    private final TransferEngine transferEngine;
+    private final BalanceIndex balanceIndex;
+    /**
+     * assigns the ids of new accounts, {@code null} to take the ids the clients send
+     */
+    private final IdAssignment ids;
+
+    public AccountRoutes(TransferEngine transferEngine, BalanceIndex balanceIndex) {
+        this(transferEngine, balanceIndex, null);
+    }
 
     private static AccountInfo mapToAccountInfo(AccountDto accountDto) {
         return new AccountInfo(accountDto.getId(), accountDto.getBalance());
@@ -32,10 +56,42 @@ public class AccountRoutes extends AllDirectives {
         return new AccountDto(accountInfo.getId(), accountInfo.getBalance());
     }
 
+    private static List<AccountDto> mapToAccountDtos(List<BalanceIndex.Entry> entries) {
+        return entries.stream().map(entry -> new AccountDto(entry.getId(), toDecimal(entry.getBalance()))).collect(Collectors.toList());
+    }
+
+    /**
+     * @return units of the amount, {@code null} if it is not a representable amount
+     */
+    private static Long parseUnits(String amount) {
+        try {
+            return toUnits(new BigDecimal(amount));
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cursors are the balance in units and the id of the last account of a page.
+     *
+     * @return the entry or {@code null} if the cursor is malformed
+     */
+    private static BalanceIndex.Entry parseCursor(String cursor) {
+        int separator = cursor.indexOf(':');
+        try {
+            return new BalanceIndex.Entry(Long.parseLong(cursor.substring(0, separator)), Long.parseLong(cursor.substring(separator + 1)));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
     public Route routes() {
         return pathPrefix("accounts", () ->
                 route(
                         postAccount(),
+                        getAccounts(),
+                        path("top", this::getTopAccounts),
+                        path(PathMatchers.longSegment().slash("balance"), this::getBalanceAt),
                         path(PathMatchers.longSegment(), id ->
                                 route(
                                         getAccount(id),
@@ -49,40 +105,97 @@ public class AccountRoutes extends AllDirectives {
     private Route postAccount() {
         return pathEnd(() ->
                 post(() ->
-                        entity(Jackson.unmarshaller(AccountDto.class), accountDto -> {
-                            CompletionStage<Object> createAccountResponse = ask(accountService, mapToAccountInfo(accountDto), timeout);
+                        entity(Codecs.unmarshaller(AccountDto.class), accountDto -> {
+                            if (ids != null) {
+                                return createAccountWithAssignedId(accountDto);
+                            }
+                            CompletionStage<Object> createAccountResponse = transferEngine.createAccount(mapToAccountInfo(accountDto));
                             return onSuccess(createAccountResponse, this::handleCreateAccountResponse);
                         })
                 )
         );
     }
 
+    /**
+     * The id sent is an idempotency key: a repeated key answers the account created for it with 200, or creates it
+     * if the first request with the key did not, and 409 while the first request is still creating it.
+     * A created account is answered with its id.
+     */
+    private Route createAccountWithAssignedId(AccountDto accountDto) {
+        long key = accountDto.getId();
+        IdAssignment.Assigned assigned;
+        try {
+            assigned = ids.assign(key);
+        } catch (UncheckedIOException e) {
+            return complete(StatusCodes.SERVICE_UNAVAILABLE, "Could not assign an account id");
+        }
+        AccountDto account = new AccountDto(assigned.getId(), accountDto.getBalance());
+        if (assigned.getStatus() == IdAssignment.Status.IN_PROGRESS) {
+            return complete(StatusCodes.CONFLICT, "An account with this id is still being created");
+        }
+        if (assigned.getStatus() == IdAssignment.Status.FRESH) {
+            return IdSettlement.settling(ids, key, account.getId(), () -> createAssignedAccount(account));
+        }
+        return onSuccess(transferEngine.getAccount(account.getId()), existing ->
+                existing instanceof AccountInfo
+                        ? complete(StatusCodes.OK, mapToAccountDto((AccountInfo) existing), Codecs.marshaller())
+                        : createAssignedAccount(account));
+    }
+
+    private Route createAssignedAccount(AccountDto account) {
+        return onSuccess(transferEngine.createAccount(mapToAccountInfo(account)), createAccountResponse ->
+                createAccountResponse instanceof Success
+                        ? complete(StatusCodes.CREATED, account, Codecs.marshaller())
+                        : handleCreateAccountResponse(createAccountResponse));
+    }
+
     private Route handleCreateAccountResponse(Object createAccountResponse) {
         return Match(createAccountResponse).of(
                 Case($(instanceOf(Success.class)), success -> complete(StatusCodes.CREATED)),
-                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.BAD_REQUEST, failure, Jackson.marshaller())),
+                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.BAD_REQUEST, failure, Codecs.marshaller())),
                 Case($(any()), x -> complete(StatusCodes.INTERNAL_SERVER_ERROR))
         );
     }
 
     private Route getAccount(long id) {
         return get(() -> {
-            CompletionStage<Object> getAccountInfoResponse = ask(accountService, new Account.GetAccount(id), timeout);
+            CompletionStage<Object> getAccountInfoResponse = transferEngine.getAccount(id);
             return onSuccess(() -> getAccountInfoResponse, this::handleGetAccountInfoResponse);
         });
     }
 
     private Route handleGetAccountInfoResponse(Object getAccountInfoResponse) {
         return Match(getAccountInfoResponse).of(
-                Case($(instanceOf(AccountInfo.class)), accountInfo -> complete(StatusCodes.OK, mapToAccountDto(accountInfo), Jackson.marshaller())),
-                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.NOT_FOUND, failure, Jackson.marshaller())),
+                Case($(instanceOf(AccountInfo.class)), accountInfo ->
+                        // sets incarnation and version as ETag and answers a matching If-None-Match with 304 without a body
+                        conditional(EntityTag.create(accountInfo.entityTag(), false), () ->
+                                complete(StatusCodes.OK, mapToAccountDto(accountInfo), Codecs.marshaller()))),
+                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.NOT_FOUND, failure, Codecs.marshaller())),
+                Case($(any()), x -> complete(StatusCodes.INTERNAL_SERVER_ERROR))
+        );
+    }
+
+    private Route getBalanceAt(long id) {
+        return get(() ->
+                parameterOptional(StringUnmarshallers.LONG, "at", at -> {
+                    CompletionStage<Object> balanceAtResponse = transferEngine.getBalanceAt(id, at.orElseGet(System::currentTimeMillis));
+                    return onSuccess(() -> balanceAtResponse, this::handleBalanceAtResponse);
+                })
+        );
+    }
+
+    private Route handleBalanceAtResponse(Object balanceAtResponse) {
+        return Match(balanceAtResponse).of(
+                Case($(instanceOf(BalanceAtDto.class)), balanceAt -> complete(StatusCodes.OK, balanceAt, Codecs.marshaller())),
+                Case($(instanceOf(Failure.class)), failure -> complete(failure.getCode() == FailureCode.OTHER
+                        ? StatusCodes.NOT_IMPLEMENTED : StatusCodes.NOT_FOUND, failure, Codecs.marshaller())),
                 Case($(any()), x -> complete(StatusCodes.INTERNAL_SERVER_ERROR))
         );
     }
 
     private Route deleteAccount(long id) {
         return delete(() -> {
-            CompletionStage<Object> deleteAccountResponse = ask(accountService, new AccountService.DeleteAccount(id), timeout);
+            CompletionStage<Object> deleteAccountResponse = transferEngine.deleteAccount(id);
             return onSuccess(() -> deleteAccountResponse, this::handleDeleteAccountResponse);
         });
     }
@@ -90,8 +203,103 @@ public class AccountRoutes extends AllDirectives {
     private Route handleDeleteAccountResponse(Object deleteAccountResponse) {
         return Match(deleteAccountResponse).of(
                 Case($(instanceOf(Success.class)), success -> complete(StatusCodes.OK)),
-                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.NOT_FOUND, failure, Jackson.marshaller())),
+                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.NOT_FOUND, failure, Codecs.marshaller())),
                 Case($(any()), x -> complete(StatusCodes.INTERNAL_SERVER_ERROR))
         );
     }
+
+    private Route getTopAccounts() {
+        return get(() ->
+                parameterOptional(StringUnmarshallers.INTEGER, "n", n -> {
+                    int count = n.orElse(DEFAULT_PAGE_LIMIT);
+                    if (count < 1 || count > MAX_PAGE_LIMIT) {
+                        return complete(StatusCodes.BAD_REQUEST, "n must be between 1 and " + MAX_PAGE_LIMIT);
+                    }
+                    return complete(StatusCodes.OK, mapToAccountDtos(balanceIndex.top(count)), Codecs.marshaller());
+                })
+        );
+    }
+
+    private Route getAccounts() {
+        return pathEnd(() ->
+                get(() ->
+                        parameterOptional("minBalance", minBalance ->
+                                parameterOptional("maxBalance", maxBalance ->
+                                        parameterOptional("cursor", cursor ->
+                                                parameterOptional(StringUnmarshallers.INTEGER, "limit", limit ->
+                                                        minBalance.isPresent() || maxBalance.isPresent()
+                                                                ? getAccountsByBalance(minBalance, maxBalance, cursor, limit.orElse(DEFAULT_PAGE_LIMIT))
+                                                                : getAccounts(cursor, limit.orElse(DEFAULT_PAGE_LIMIT))
+                                                )
+                                        )
+                                )
+                        )
+                )
+        );
+    }
+
+    /**
+     * Pages by id, the cursor is the id of the last account of a page, so accounts created or deleted while paging
+     * never shift the following pages.
+     */
+    private Route getAccounts(Optional<String> cursor, int limit) {
+        Long after;
+        try {
+            after = cursor.isPresent() ? Long.valueOf(cursor.get()) : null;
+        } catch (NumberFormatException e) {
+            return complete(StatusCodes.BAD_REQUEST, "Malformed cursor " + cursor.get());
+        }
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            return complete(StatusCodes.BAD_REQUEST, "Limit must be between 1 and " + MAX_PAGE_LIMIT);
+        }
+        CompletionStage<Object> accountIdsResponse = transferEngine.getAccountIds(after, limit);
+        return onSuccess(() -> accountIdsResponse, response -> handleAccountIdsResponse(response, limit));
+    }
+
+    private Route handleAccountIdsResponse(Object accountIdsResponse, int limit) {
+        return Match(accountIdsResponse).of(
+                Case($(instanceOf(long[].class)), ids -> onSuccess(() -> readAccounts(ids, limit), page ->
+                        complete(StatusCodes.OK, page, Codecs.marshaller()))),
+                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.NOT_IMPLEMENTED, failure, Codecs.marshaller())),
+                Case($(any()), x -> complete(StatusCodes.INTERNAL_SERVER_ERROR))
+        );
+    }
+
+    /**
+     * Accounts deleted since their ids were listed are left out of the page.
+     */
+    private CompletionStage<AccountPageDto> readAccounts(long[] ids, int limit) {
+        CompletableFuture<?>[] reads = new CompletableFuture[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            reads[i] = transferEngine.getAccount(ids[i]).toCompletableFuture();
+        }
+        return CompletableFuture.allOf(reads).thenApply(x -> new AccountPageDto(
+                Arrays.stream(reads).map(CompletableFuture::join)
+                        .filter(AccountInfo.class::isInstance)
+                        .map(accountInfo -> mapToAccountDto((AccountInfo) accountInfo))
+                        .collect(Collectors.toList()),
+                ids.length == limit ? Long.toString(ids[ids.length - 1]) : null));
+    }
+
+    private Route getAccountsByBalance(Optional<String> minBalance, Optional<String> maxBalance, Optional<String> cursor, int limit) {
+        Long min = minBalance.isPresent() ? parseUnits(minBalance.get()) : Long.valueOf(Long.MIN_VALUE);
+        Long max = maxBalance.isPresent() ? parseUnits(maxBalance.get()) : Long.valueOf(Long.MAX_VALUE);
+        if (min == null || max == null) {
+            return complete(StatusCodes.BAD_REQUEST, "Balances must be amounts with at most " + Amounts.SCALE + " decimal places");
+        }
+        if (min > max) {
+            return complete(StatusCodes.BAD_REQUEST, "Min balance can not be greater than max balance");
+        }
+        BalanceIndex.Entry after = cursor.isPresent() ? parseCursor(cursor.get()) : null;
+        if (cursor.isPresent() && after == null) {
+            return complete(StatusCodes.BAD_REQUEST, "Malformed cursor " + cursor.get());
+        }
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            return complete(StatusCodes.BAD_REQUEST, "Limit must be between 1 and " + MAX_PAGE_LIMIT);
+        }
+        List<BalanceIndex.Entry> page = balanceIndex.range(min, max, after, limit);
+        BalanceIndex.Entry last = page.size() == limit ? page.get(page.size() - 1) : null;
+        return complete(StatusCodes.OK, new AccountPageDto(mapToAccountDtos(page),
+                last == null ? null : last.getBalance() + ":" + last.getId()), Codecs.marshaller());
+    }
 }
@@ -3,91 +3,200 @@ package com.totorovan.transfer.account;
 import akka.actor.AbstractLoggingActor;
 import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.actor.Status;
+import akka.actor.Terminated;
+import com.totorovan.transfer.common.Amounts;
 import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.FailureCode;
 import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.common.Messages.Urgent;
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+import com.totorovan.transfer.common.collections.LongSortedSet;
+import com.totorovan.transfer.footprint.GetFootprint;
+import com.totorovan.transfer.footprint.StoreFootprintDto;
+import com.totorovan.transfer.read.ReadCoalescer;
+import com.totorovan.transfer.read.ReadMetrics;
+import com.totorovan.transfer.reconcile.FullScan;
+import com.totorovan.transfer.reconcile.MoneySupply;
+import com.totorovan.transfer.reconcile.ScanDto;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo.Leg;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo.LegsFailed;
 import com.totorovan.transfer.transaction.TransactionInfo;
+import com.totorovan.transfer.trace.TransferTrace;
+import com.totorovan.transfer.trace.TransferTrace.Stage;
+import com.totorovan.transfer.transaction.TransactionRecord;
 import lombok.Data;
 
 import java.io.Serializable;
-import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static akka.pattern.PatternsCS.ask;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.COMMITTED;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.ROLLEDBACK;
 
+/**
+ * Routes transfers to the account actors. Concurrent reads of an account are coalesced by a {@link ReadCoalescer},
+ * which is invalidated for the accounts of a transfer when it starts and before it is acknowledged.
+ * A transfer holds an obligation in the {@link MoneySupply} from before it withdraws until it finished, and
+ * {@link Reconcile} runs a {@link FullScan} of the accounts.
+ * The ids of all accounts, loaded from the store or not, are kept sorted to page through them by id.
+ */
 public class AccountService extends AbstractLoggingActor {
 
+    /**
+     * Heap of an account actor with its cell, mailbox, path and state, excluding its balance history.
+     * Measured with the capacity suite as the heap after a full collection per account.
+     */
+    static final long ACCOUNT_ACTOR_BYTES = 1650;
+
     private final AccountFactory accountFactory;
-    private final Map<Long, ActorRef> accountsById = new HashMap<>();
+    private final LongObjectHashMap<ActorRef> accountsById = new LongObjectHashMap<>();
+    private final LongSortedSet accountIds = new LongSortedSet();
     private final Duration timeout;
+    private final Executor dispatcher = context().dispatcher();
+    private final ReadCoalescer reads;
+    private final MoneySupply supply = MoneySupply.get(context().system());
+    private final Map<ActorRef, Long> closing = new HashMap<>();
+    private final List<ActorRef> scanWaiters = new ArrayList<>();
+    private boolean scanning;
 
-    private AccountService(AccountFactory accountFactory, Duration timeout) {
+    private AccountService(AccountFactory accountFactory, Duration timeout, Duration readCacheTtl, ReadMetrics readMetrics) {
         this.accountFactory = accountFactory;
         this.timeout = timeout;
+        this.reads = new ReadCoalescer(readCacheTtl, readMetrics);
+    }
+
+    /**
+     * @param readCacheTtl how long an account read answers later reads of the account, {@link Duration#ZERO} to only
+     *                     coalesce concurrent reads
+     */
+    public static Props props(AccountFactory accountFactory, Duration timeout, Duration readCacheTtl, ReadMetrics readMetrics) {
+        return Props.create(AccountService.class, () -> new AccountService(accountFactory, timeout, readCacheTtl, readMetrics));
     }
 
     public static Props props(AccountFactory accountFactory, Duration timeout) {
-        return Props.create(AccountService.class, () -> new AccountService(accountFactory, timeout));
+        return AccountService.props(accountFactory, timeout, Duration.ZERO, new ReadMetrics());
     }
 
     public static Props props(AccountFactory accountFactory) {
         return AccountService.props(accountFactory, Duration.ofSeconds(1));
     }
 
+    /**
+     * Lists the stored accounts and puts their stored balances in the {@link BalanceIndex}, so balance queries include
+     * the accounts which are not loaded yet. A loaded account takes over its entry.
+     */
+    @Override
+    public void preStart() {
+        BalanceIndex balanceIndex = BalanceIndex.get(context().system());
+        for (long id : accountFactory.storedIds()) {
+            accountIds.add(id);
+            AccountInfo stored = accountFactory.stored(id);
+            if (stored != null) {
+                balanceIndex.added(id, Amounts.toUnits(stored.getBalance()));
+            }
+        }
+    }
+
     @Override
     public Receive createReceive() {
         return receiveBuilder()
                 .match(AccountInfo.class, this::onAccountInfo)
                 .match(Account.GetAccount.class, this::onGetAccount)
+                .match(Account.GetBalanceAt.class, this::onGetBalanceAt)
                 .match(DeleteAccount.class, this::onDeleteAccount)
-                .match(TransactionInfo.class, this::onTransfer)
+                .match(TransactionInfo.class, transactionInfo -> onTransfer(transactionInfo, null))
+                .match(MultiLegTransactionInfo.class, this::onMultiLegTransfer)
+                .match(AcceptedTransfer.class, this::onAcceptedTransfer)
+                .match(ReadCoalescer.Completed.class, completed -> reads.complete(completed, self()))
+                .match(AccountsChanged.class, this::onAccountsChanged)
+                .match(GetAccounts.class, getAccounts -> onGetAccounts())
+                .match(GetAccountIds.class, this::onGetAccountIds)
+                .match(GetFootprint.class, getFootprint -> onGetFootprint())
+                .match(Reconcile.class, reconcile -> onReconcile())
+                .match(ScanDto.class, this::onScanCompleted)
+                .match(ScanFailed.class, this::onScanFailed)
+                .match(Terminated.class, terminated -> closing.remove(terminated.getActor()))
                 .build();
     }
 
+    /**
+     * @return the account actor, loaded from the store on first access, or {@code null} if there is no such account
+     */
+    private ActorRef account(long id) {
+        ActorRef account = accountsById.get(id);
+        if (account == null) {
+            account = accountFactory.load(context(), id);
+            if (account != null) {
+                accountsById.put(id, account);
+            }
+        }
+        return account;
+    }
+
     private void onAccountInfo(AccountInfo accountInfo) {
         long id = accountInfo.getId();
-        if (accountsById.containsKey(id)) {
+        if (account(id) != null) {
             replyAccountAlreadyExists(id);
             return;
         }
+        if (!Amounts.isRepresentable(accountInfo.getBalance())) {
+            sender().tell(Amounts.unsupportedAmount(accountInfo.getBalance()), self());
+            return;
+        }
         createAccount(accountInfo);
     }
 
     private void replyAccountAlreadyExists(long id) {
-        String errorMsg = "Account " + id + " already exists";
-        log().info(errorMsg);
-        sender().tell(new Failure(errorMsg), self());
+        log().info("Account {} already exists", id);
+        sender().tell(new Failure(FailureCode.ACCOUNT_ALREADY_EXISTS, id), self());
     }
 
     private void createAccount(AccountInfo accountInfo) {
         long id = accountInfo.getId();
         ActorRef actorRef = accountFactory.get(context(), accountInfo);
         accountsById.put(id, actorRef);
+        accountIds.add(id);
         log().info("Account {} created", id);
-        sender().tell(new Success(), self());
+        sender().tell(Success.INSTANCE, self());
     }
 
     private void onDeleteAccount(DeleteAccount deleteAccount) {
         long id = deleteAccount.getId();
-        ActorRef account = accountsById.remove(id);
+        ActorRef account = account(id);
         if (account == null) {
             replyAccountNotFound(id);
             return;
         }
+        accountsById.remove(id);
+        accountIds.remove(id);
+        accountFactory.delete(id);
+        // a scan started before the account stopped still asks it
+        closing.put(account, id);
+        context().watch(account);
         context().stop(account);
+        reads.invalidate(id);
         replyAccountDeleted(id);
     }
 
     private void replyAccountDeleted(long id) {
         log().info("Account {} deleted", id);
-        sender().tell(new Success(), self());
+        sender().tell(Success.INSTANCE, self());
     }
 
     private void onGetAccount(Account.GetAccount getAccount) {
         long id = getAccount.getId();
-        ActorRef account = accountsById.get(id);
+        ActorRef account = account(id);
         if (account == null) {
             replyAccountNotFound(id);
             return;
@@ -95,13 +204,51 @@ public class AccountService extends AbstractLoggingActor {
         forwardGetAccount(account, getAccount);
     }
 
+    private void onGetBalanceAt(Account.GetBalanceAt getBalanceAt) {
+        ActorRef account = account(getBalanceAt.getId());
+        if (account == null) {
+            replyAccountNotFound(getBalanceAt.getId());
+            return;
+        }
+        account.forward(getBalanceAt, context());
+    }
+
     private void forwardGetAccount(ActorRef account, Account.GetAccount getAccount) {
-        ActorRef replyTo = sender();
-        ask(account, getAccount, timeout)
-                .thenAcceptAsync(accountInfo -> replyTo.tell(accountInfo, self()));
+        ReadCoalescer.Flight flight = reads.join(getAccount.getId(), sender(), self());
+        if (flight != null) {
+            reads.read(flight, ask(account, getAccount, timeout), self());
+        }
+    }
+
+    private void onAccountsChanged(AccountsChanged accountsChanged) {
+        for (long id : accountsChanged.getIds()) {
+            reads.invalidate(id);
+        }
+    }
+
+    /**
+     * Must be called before the change is acknowledged, so reads made after the acknowledgement see it.
+     */
+    private void notifyAccountsChanged(long... ids) {
+        self().tell(new AccountsChanged(ids), self());
+    }
+
+    private void onAcceptedTransfer(AcceptedTransfer acceptedTransfer) {
+        TransactionRecord transfer = acceptedTransfer.getTransfer();
+        if (System.nanoTime() - acceptedTransfer.getDeadline() > 0) {
+            replyTransferFailed(transfer, new Failure("Transaction " + transfer.getId() + " timed out before it started"),
+                    sender());
+            return;
+        }
+        if (transfer instanceof MultiLegTransactionInfo) {
+            onMultiLegTransfer((MultiLegTransactionInfo) transfer);
+        } else {
+            TransferTrace.mark(acceptedTransfer.getTrace(), Stage.ACCOUNT_SERVICE);
+            onTransfer((TransactionInfo) transfer, acceptedTransfer.getTrace());
+        }
     }
 
-    private void onTransfer(TransactionInfo transactionInfo) {
+    private void onTransfer(TransactionInfo transactionInfo, TransferTrace trace) {
         log().info("Processing transaction {}", transactionInfo);
 
         ActorRef srcAccount = tryGetAccount(transactionInfo.getSrcAccountId(), transactionInfo);
@@ -110,11 +257,15 @@ public class AccountService extends AbstractLoggingActor {
         ActorRef targetAccount = tryGetAccount(transactionInfo.getTargetAccountId(), transactionInfo);
         if (targetAccount == null) return;
 
-        transfer(transactionInfo, srcAccount, targetAccount);
+        if (!Amounts.isRepresentable(transactionInfo.getAmount())) {
+            replyTransferFailed(transactionInfo, Amounts.unsupportedAmount(transactionInfo.getAmount()), sender());
+            return;
+        }
+        transfer(transactionInfo, Amounts.toUnits(transactionInfo.getAmount()), srcAccount, targetAccount, trace);
     }
 
-    private ActorRef tryGetAccount(long srcAccountId, TransactionInfo transactionInfo) {
-        ActorRef srcAccount = accountsById.get(srcAccountId);
+    private ActorRef tryGetAccount(long srcAccountId, TransactionRecord transactionInfo) {
+        ActorRef srcAccount = account(srcAccountId);
         if (srcAccount == null) {
             replyTransactionWithNonExistingAccount(srcAccountId, transactionInfo);
             return null;
@@ -122,57 +273,386 @@ public class AccountService extends AbstractLoggingActor {
         return srcAccount;
     }
 
-    private void replyTransactionWithNonExistingAccount(long targetAccountId, TransactionInfo transactionInfo) {
+    private void replyTransactionWithNonExistingAccount(long targetAccountId, TransactionRecord transactionInfo) {
         log().warning("Transaction {} failed", transactionInfo);
         replyAccountNotFound(targetAccountId);
     }
 
     private void replyAccountNotFound(long id) {
-        String errorMsg = "Account " + id + " not found";
-        log().warning(errorMsg);
-        sender().tell(new Failure(errorMsg), self());
+        log().warning("Account {} not found", id);
+        sender().tell(new Failure(FailureCode.ACCOUNT_NOT_FOUND, id), self());
     }
 
-    private void transfer(TransactionInfo transactionInfo, ActorRef srcAccount, ActorRef targetAccount) {
+    private void transfer(TransactionInfo transactionInfo, long amount, ActorRef srcAccount, ActorRef targetAccount,
+                          TransferTrace trace) {
         ActorRef replyTo = sender();
-        withdrawSrcAccount(srcAccount, transactionInfo.getAmount())
+        reads.invalidate(transactionInfo.getSrcAccountId());
+        reads.invalidate(transactionInfo.getTargetAccountId());
+        supply.reserve(amount);
+        releaseOnTimeout(withdrawSrcAccount(srcAccount, amount, transactionInfo.getExpectedSrcVersion(),
+                transactionInfo.getExpectedSrcIncarnation(), trace), amount)
                 .thenAcceptAsync(responseFromSrc -> {
                     if (responseFromSrc instanceof Failure) {
+                        supply.release(amount);
                         replyTransferFailed(transactionInfo, (Failure) responseFromSrc, replyTo);
                     } else {
-                        depositTargetAccount(transactionInfo, srcAccount, targetAccount, replyTo);
+                        depositTargetAccount(transactionInfo, amount, srcAccount, targetAccount, replyTo, trace);
                     }
-                });
+                }, dispatcher);
     }
 
-    private CompletionStage<Object> withdrawSrcAccount(ActorRef srcAccount, BigDecimal amount) {
-        return ask(srcAccount, new Account.Withdraw(amount), timeout);
+    private CompletionStage<Object> withdrawSrcAccount(ActorRef srcAccount, long amount, long expectedVersion,
+                                                       long expectedIncarnation, TransferTrace trace) {
+        return ask(srcAccount, new Account.Withdraw(amount, expectedVersion, expectedIncarnation, trace), timeout);
     }
 
-    private void depositTargetAccount(TransactionInfo transactionInfo, ActorRef srcAccount, ActorRef targetAccount, ActorRef replyTo) {
-        ask(targetAccount, new Account.Deposit(transactionInfo.getAmount()), timeout)
+    private void depositTargetAccount(TransactionInfo transactionInfo, long amount, ActorRef srcAccount, ActorRef targetAccount,
+                                      ActorRef replyTo, TransferTrace trace) {
+        releaseOnTimeout(ask(targetAccount, new Account.Deposit(amount, trace), timeout), amount)
                 .thenAcceptAsync(depositResponse -> {
+                    notifyAccountsChanged(transactionInfo.getSrcAccountId(), transactionInfo.getTargetAccountId());
                     if (depositResponse instanceof Failure) {
+                        revertSrcAccountBalance(transactionInfo, amount, srcAccount);
                         replyTransferFailed(transactionInfo, (Failure) depositResponse, replyTo);
-                        revertSrcAccountBalance(transactionInfo, srcAccount);
                     } else {
+                        supply.release(amount);
                         log().info("Transaction {} succeeded", transactionInfo.getId());
-                        replyTo.tell(new Success(), self());
+                        replyTo.tell(Success.INSTANCE, self());
                     }
-                });
+                }, dispatcher);
     }
 
-    private void replyTransferFailed(TransactionInfo transactionInfo, Failure failure, ActorRef replyTo) {
+    private void replyTransferFailed(TransactionRecord transactionInfo, Failure failure, ActorRef replyTo) {
         log().warning("Transaction {} failed with reason: {}", transactionInfo.getId(), failure.getMessage());
         replyTo.tell(failure, self());
     }
 
-    private void revertSrcAccountBalance(TransactionInfo transactionInfo, ActorRef srcAccount) {
-        srcAccount.tell(new Account.Deposit(transactionInfo.getAmount()), self());
+    private void revertSrcAccountBalance(TransactionInfo transactionInfo, long amount, ActorRef srcAccount) {
+        ask(srcAccount, Account.Deposit.revert(amount), timeout).whenCompleteAsync((response, e) -> {
+            if (e != null || response instanceof Failure) {
+                log().error("Failed to revert transaction {} on account {}: {}", transactionInfo.getId(),
+                        transactionInfo.getSrcAccountId(), e != null ? e.getMessage() : ((Failure) response).getMessage());
+            }
+            supply.release(amount);
+        }, dispatcher);
+    }
+
+    /**
+     * A transfer which timed out is finished, money it left in transit is unaccounted for from then on.
+     */
+    private CompletionStage<Object> releaseOnTimeout(CompletionStage<Object> response, long amount) {
+        return response.whenComplete((x, e) -> {
+            if (e != null) {
+                supply.release(amount);
+            }
+        });
+    }
+
+    private void onMultiLegTransfer(MultiLegTransactionInfo transactionInfo) {
+        log().info("Processing multi-leg transaction {}", transactionInfo.getId());
+
+        ActorRef srcAccount = tryGetAccount(transactionInfo.getSrcAccountId(), transactionInfo);
+        if (srcAccount == null) return;
+
+        List<ActorRef> targetAccounts = new ArrayList<>(transactionInfo.getLegs().size());
+        for (Leg leg : transactionInfo.getLegs()) {
+            ActorRef targetAccount = tryGetAccount(leg.getTargetAccountId(), transactionInfo);
+            if (targetAccount == null) return;
+            targetAccounts.add(targetAccount);
+        }
+
+        long[] amounts = new long[transactionInfo.getLegs().size()];
+        long totalAmount = 0;
+        try {
+            for (int i = 0; i < amounts.length; i++) {
+                amounts[i] = Amounts.toUnits(transactionInfo.getLegs().get(i).getAmount());
+                totalAmount = Math.addExact(totalAmount, amounts[i]);
+            }
+        } catch (ArithmeticException e) {
+            replyTransferFailed(transactionInfo, Amounts.unsupportedAmount(transactionInfo.getTotalAmount()), sender());
+            return;
+        }
+
+        ActorRef replyTo = sender();
+        long total = totalAmount;
+        long[] accountIds = transactionInfo.accountIds();
+        for (long id : accountIds) {
+            reads.invalidate(id);
+        }
+        supply.reserve(total);
+        releaseOnTimeout(withdrawSrcAccount(srcAccount, total, Account.Withdraw.ANY_VERSION, AccountInfo.ANY_INCARNATION, null), total)
+                .thenAcceptAsync(responseFromSrc -> {
+                    if (responseFromSrc instanceof Failure) {
+                        supply.release(total);
+                        replyTransferFailed(transactionInfo, (Failure) responseFromSrc, replyTo);
+                    } else {
+                        depositLegs(transactionInfo, amounts, total, srcAccount, targetAccounts, replyTo, accountIds);
+                    }
+                }, dispatcher);
+    }
+
+    private void depositLegs(MultiLegTransactionInfo transactionInfo, long[] amounts, long total, ActorRef srcAccount,
+                             List<ActorRef> targetAccounts, ActorRef replyTo, long[] accountIds) {
+        List<Leg> legs = transactionInfo.getLegs();
+        List<CompletableFuture<Object>> deposits = new ArrayList<>(legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            long targetAccountId = legs.get(i).getTargetAccountId();
+            deposits.add(ask(targetAccounts.get(i), new Account.Deposit(amounts[i]), timeout)
+                    // the account may still apply a deposit which timed out
+                    .exceptionally(e -> new DepositTimedOut(new Failure("Deposit to account " + targetAccountId + " timed out: " + e.getMessage())))
+                    .toCompletableFuture());
+        }
+        CompletableFuture.allOf(deposits.toArray(new CompletableFuture[0]))
+                .thenAcceptAsync(x -> {
+                    Failure failure = deposits.stream()
+                            .map(CompletableFuture::join)
+                            .map(deposit -> deposit instanceof DepositTimedOut ? ((DepositTimedOut) deposit).getFailure() : deposit)
+                            .filter(Failure.class::isInstance)
+                            .map(Failure.class::cast)
+                            .findFirst()
+                            .orElse(null);
+                    notifyAccountsChanged(accountIds);
+                    if (failure != null) {
+                        revertLegs(transactionInfo, amounts, total, srcAccount, targetAccounts, deposits)
+                                .thenAcceptAsync(outcomes -> {
+                                    notifyAccountsChanged(accountIds);
+                                    log().warning("Transaction {} failed with reason: {}", transactionInfo.getId(),
+                                            failure.getMessage());
+                                    replyTo.tell(new LegsFailed(failure, outcomes), self());
+                                }, dispatcher);
+                    } else {
+                        supply.release(total);
+                        log().info("Multi-leg transaction {} succeeded", transactionInfo.getId());
+                        replyTo.tell(Success.INSTANCE, self());
+                    }
+                }, dispatcher);
+    }
+
+    /**
+     * Takes back every leg which was or may have been deposited, a leg whose deposit timed out queued behind the
+     * deposit. The source is refunded all but the legs which could not be taken back, so a failed revert never
+     * creates money. What is neither refunded nor taken back stays in transit, where reconciliation reports it as
+     * unaccounted once the transfer is released.
+     *
+     * @return the outcome of every leg, a leg which could not be taken back stays committed
+     */
+    private CompletionStage<List<Leg>> revertLegs(MultiLegTransactionInfo transactionInfo, long[] amounts, long total,
+                                                  ActorRef srcAccount, List<ActorRef> targetAccounts,
+                                                  List<CompletableFuture<Object>> deposits) {
+        List<Leg> legs = transactionInfo.getLegs();
+        Leg[] outcomes = new Leg[legs.size()];
+        AtomicLong outstanding = new AtomicLong();
+        List<CompletableFuture<Object>> reverts = new ArrayList<>(legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            Object deposit = deposits.get(i).join();
+            Leg leg = legs.get(i);
+            if (deposit instanceof Failure) {
+                outcomes[i] = leg.withStatus(ROLLEDBACK, ((Failure) deposit).getMessage());
+                continue;
+            }
+            int index = i;
+            long amount = amounts[i];
+            long targetAccountId = leg.getTargetAccountId();
+            Account.Withdraw revert = deposit instanceof DepositTimedOut ? Account.Withdraw.revertQueued(amount) : Account.Withdraw.revert(amount);
+            reverts.add(ask(targetAccounts.get(i), revert, timeout)
+                    .whenCompleteAsync((response, e) -> {
+                        if (e != null || response instanceof Failure) {
+                            String reason = e != null ? e.getMessage() : ((Failure) response).getMessage();
+                            outstanding.addAndGet(amount);
+                            outcomes[index] = leg.withStatus(COMMITTED, "Not reverted: " + reason);
+                            log().error("Failed to revert leg to account {} of transaction {}: {}", targetAccountId,
+                                    transactionInfo.getId(), reason);
+                        } else {
+                            outcomes[index] = leg.withStatus(ROLLEDBACK, null);
+                        }
+                    }, dispatcher)
+                    .toCompletableFuture());
+        }
+        return CompletableFuture.allOf(reverts.toArray(new CompletableFuture[0]))
+                .handle((x, e) -> total - outstanding.get())
+                .thenCompose(refund -> refund == 0
+                        ? CompletableFuture.completedFuture(Success.INSTANCE)
+                        : ask(srcAccount, Account.Deposit.revert(refund), timeout)
+                        .handle((response, e) -> e != null || response instanceof Failure ? new Failure("Refund failed") : response))
+                .thenApplyAsync(response -> {
+                    long shortfall = response instanceof Failure ? total : outstanding.get();
+                    if (shortfall != 0) {
+                        log().error("Multi-leg transaction {} left {} in transit after reverting it", transactionInfo.getId(),
+                                Amounts.toDecimal(shortfall));
+                    }
+                    supply.release(total);
+                    return Arrays.asList(outcomes);
+                }, dispatcher);
+    }
+
+    private void onReconcile() {
+        if (!sender().equals(context().system().deadLetters())) {
+            scanWaiters.add(sender());
+        }
+        supply.sampleTransit();
+        if (scanning) {
+            return;
+        }
+        scanning = true;
+        Accounts accounts = accounts(true);
+        FullScan.start(supply, accounts.getIds(), accounts.getAccounts(), Runtime.getRuntime().availableProcessors(), timeout)
+                .whenComplete((scan, e) -> self().tell(e == null ? scan : new ScanFailed(e), self()));
+    }
+
+    /**
+     * Loads the stored accounts which were not accessed yet, so the reply covers every account.
+     */
+    private void onGetAccounts() {
+        for (long id : accountFactory.storedIds()) {
+            account(id);
+        }
+        sender().tell(accounts(false), self());
+    }
+
+    private void onGetAccountIds(GetAccountIds getAccountIds) {
+        Long after = getAccountIds.getAfter();
+        int limit = getAccountIds.getLimit();
+        sender().tell(after == null ? accountIds.first(limit) : accountIds.higher(after, limit), self());
+    }
+
+    /**
+     * Accounts stored but not accessed yet have no actor, they only take their id. The balance histories of the
+     * running accounts are counted by the bytes their segments hold in memory.
+     */
+    private void onGetFootprint() {
+        List<StoreFootprintDto> footprints = new ArrayList<>(2);
+        footprints.add(StoreFootprintDto.of("accounts", accountIds.size(), accountsById.memoryBytes()
+                + accountIds.memoryBytes() + accountsById.size() * ACCOUNT_ACTOR_BYTES + accountFactory.historyBytes()));
+        StoreFootprintDto store = accountFactory.storeFootprint();
+        if (store != null) {
+            footprints.add(store);
+        }
+        sender().tell(footprints, self());
+    }
+
+    /**
+     * @param withClosing whether to include deleted accounts which did not stop yet
+     */
+    private Accounts accounts(boolean withClosing) {
+        int size = accountsById.size() + (withClosing ? closing.size() : 0);
+        long[] ids = new long[size];
+        ActorRef[] accounts = new ActorRef[size];
+        int[] count = new int[1];
+        accountsById.forEach((id, account) -> {
+            ids[count[0]] = id;
+            accounts[count[0]++] = account;
+        });
+        if (withClosing) {
+            closing.forEach((account, id) -> {
+                ids[count[0]] = id;
+                accounts[count[0]++] = account;
+            });
+        }
+        return new Accounts(ids, accounts);
+    }
+
+    private void onScanCompleted(ScanDto scan) {
+        scanning = false;
+        if (scan.getDrift() == null) {
+            log().warning("Reconciliation scan {} incomplete, {} accounts did not answer", scan.getEpoch(), scan.getMissingAccounts());
+        } else if (scan.getDrift().signum() != 0) {
+            log().error("Reconciliation scan {} found a drift of {}: {}", scan.getEpoch(), scan.getDrift(), scan);
+        } else {
+            log().info("Reconciliation scan {} of {} accounts balanced in {} ms", scan.getEpoch(), scan.getAccounts(), scan.getMillis());
+        }
+        for (ActorRef waiter : scanWaiters) {
+            waiter.tell(scan, self());
+        }
+        scanWaiters.clear();
+    }
+
+    /**
+     * Lets the next {@link Reconcile} start a new scan, the waiters of this one get the failure.
+     */
+    private void onScanFailed(ScanFailed scanFailed) {
+        scanning = false;
+        log().error(scanFailed.getCause(), "Reconciliation scan failed");
+        for (ActorRef waiter : scanWaiters) {
+            waiter.tell(new Status.Failure(scanFailed.getCause()), self());
+        }
+        scanWaiters.clear();
     }
 
     @Data
-    static class DeleteAccount implements Serializable {
+    public static class DeleteAccount implements Serializable, Urgent {
         private final long id;
     }
+
+    /**
+     * Asks for every account, answered with {@link Accounts}.
+     */
+    public static class GetAccounts implements Serializable, Urgent {
+        public static final GetAccounts INSTANCE = new GetAccounts();
+
+        private GetAccounts() {
+        }
+    }
+
+    /**
+     * Asks for up to {@code limit} account ids greater than {@code after}, answered with the ascending ids as a
+     * {@code long[]}.
+     */
+    @Data
+    public static class GetAccountIds implements Serializable, Urgent {
+        /**
+         * {@code null} for the first page
+         */
+        private final Long after;
+        private final int limit;
+    }
+
+    /**
+     * Ids and actors of the accounts at one point in time, {@code ids[i]} is the id of {@code accounts[i]}.
+     */
+    @Data
+    public static class Accounts {
+        private final long[] ids;
+        private final ActorRef[] accounts;
+    }
+
+    /**
+     * Starts a full scan of the accounts, answered with a {@link ScanDto}. Requests made while a scan runs join it.
+     */
+    public static class Reconcile implements Serializable, Urgent {
+        public static final Reconcile INSTANCE = new Reconcile();
+
+        private Reconcile() {
+        }
+    }
+
+    /**
+     * Transfer the {@code TransactionService} registered already, a {@link TransactionInfo} or a
+     * {@link MultiLegTransactionInfo}. Unlike the client request it carries it is never shed, which would leave the
+     * transaction NEW. A transfer still queued at its {@code deadline}, in {@link System#nanoTime()}, fails without
+     * touching the accounts, so the asker may roll it back once its ask times out.
+     */
+    @Data
+    public static class AcceptedTransfer implements Serializable {
+        private final TransactionRecord transfer;
+        private final TransferTrace trace;
+        private final long deadline;
+    }
+
+    @Data
+    private static class DepositTimedOut {
+        private final Failure failure;
+    }
+
+    @Data
+    private static class ScanFailed {
+        private final Throwable cause;
+    }
+
+    /**
+     * Sent by the service itself and by accounts changing their balance without it, e.g. applying a bulk rule.
+     */
+    @Data
+    static class AccountsChanged implements Urgent {
+        private final long[] ids;
+    }
 }
@@ -0,0 +1,19 @@
+package com.totorovan.transfer.account;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Balance of an account at {@code at} in epoch millis.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BalanceAtDto {
+    private long id;
+    private long at;
+    private BigDecimal balance;
+}
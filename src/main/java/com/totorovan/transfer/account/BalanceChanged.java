@@ -0,0 +1,48 @@
+package com.totorovan.transfer.account;
+
+import com.totorovan.transfer.common.Amounts;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Amounts are kept in units and only turned into decimals when the event is rendered.
+ */
+@EqualsAndHashCode
+@ToString
+public class BalanceChanged implements Serializable {
+    public static final String WITHDRAW = "Withdraw";
+    public static final String DEPOSIT = "Deposit";
+    public static final String INTEREST = "Interest";
+    public static final String FEE = "Fee";
+
+    private final long accountId;
+    private final long amount;
+    private final long balance;
+    private final String operation;
+
+    public BalanceChanged(long accountId, long amount, long balance, String operation) {
+        this.accountId = accountId;
+        this.amount = amount;
+        this.balance = balance;
+        this.operation = operation;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public BigDecimal getAmount() {
+        return Amounts.toDecimal(amount);
+    }
+
+    public BigDecimal getBalance() {
+        return Amounts.toDecimal(balance);
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+}
@@ -0,0 +1,130 @@
+package com.totorovan.transfer.account;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Actor system wide index of the accounts sorted by balance in units, then by id.
+ * The owner of a balance updates its entry on every change, so queries walk the skip list from where they start
+ * and never depend on the number of accounts beyond the logarithmic seek.
+ * <p>
+ * A change adds the new entry before removing the old one: an account is never missing while it exists,
+ * but a query may meet it twice, which the queries drop.
+ */
+public class BalanceIndex implements Extension {
+
+    /**
+     * Estimated heap of an entry: the skip list node, the entry and on average half an index node.
+     */
+    public static final int ENTRY_BYTES = 64;
+
+    private static final Id ID = new Id();
+
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>();
+
+    public BalanceIndex() {
+    }
+
+    public static BalanceIndex get(ActorSystem system) {
+        return ID.get(system);
+    }
+
+    public void added(long id, long balance) {
+        entries.add(new Entry(balance, id));
+    }
+
+    /**
+     * Must not run concurrently with another change of the same account.
+     */
+    public void moved(long id, long previousBalance, long balance) {
+        if (previousBalance != balance) {
+            entries.add(new Entry(balance, id));
+            entries.remove(new Entry(previousBalance, id));
+        }
+    }
+
+    public void removed(long id, long balance) {
+        entries.remove(new Entry(balance, id));
+    }
+
+    /**
+     * Walks the whole index, meant for reporting.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return up to {@code n} accounts with the highest balances, highest first
+     */
+    public List<Entry> top(int n) {
+        return take(entries.descendingSet(), n);
+    }
+
+    /**
+     * @param after last entry of the previous page, {@code null} for the first page
+     * @return up to {@code limit} accounts with {@code minBalance <= balance <= maxBalance} following {@code after},
+     * lowest balance first
+     */
+    public List<Entry> range(long minBalance, long maxBalance, Entry after, int limit) {
+        Entry from = new Entry(minBalance, Long.MIN_VALUE);
+        Entry to = new Entry(maxBalance, Long.MAX_VALUE);
+        if (after != null && after.compareTo(from) >= 0) {
+            if (after.compareTo(to) >= 0) {
+                return new ArrayList<>();
+            }
+            return take(entries.subSet(after, false, to, true), limit);
+        }
+        return take(entries.subSet(from, true, to, true), limit);
+    }
+
+    private static List<Entry> take(NavigableSet<Entry> view, int n) {
+        List<Entry> page = new ArrayList<>(Math.min(n, 1024));
+        Set<Long> ids = new HashSet<>();
+        Iterator<Entry> iterator = view.iterator();
+        while (page.size() < n && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (ids.add(entry.getId())) {
+                page.add(entry);
+            }
+        }
+        return page;
+    }
+
+    @Value
+    public static class Entry implements Comparable<Entry> {
+        long balance;
+        long id;
+
+        @Override
+        public int compareTo(Entry other) {
+            int byBalance = Long.compare(balance, other.balance);
+            return byBalance != 0 ? byBalance : Long.compare(id, other.id);
+        }
+    }
+
+    private static class Id extends AbstractExtensionId<BalanceIndex> implements ExtensionIdProvider {
+
+        @Override
+        public BalanceIndex createExtension(ExtendedActorSystem system) {
+            return new BalanceIndex();
+        }
+
+        @Override
+        public Id lookup() {
+            return ID;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.totorovan.transfer.bulk;
+
+import akka.actor.ActorRef;
+import akka.stream.Materializer;
+import akka.stream.ThrottleMode;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.totorovan.transfer.account.Account;
+import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.common.Messages.Failure;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static akka.pattern.PatternsCS.ask;
+
+/**
+ * Applies a {@link BulkRule} to every account of {@link AccountService}. The accounts are cut into batches,
+ * {@code parallelism} batches are in flight at a time and every account of a batch applies the rule itself,
+ * in between the transfers in its mailbox. Batches are throttled to {@code maxAccountsPerSecond}, so an operation
+ * takes a bounded share of the accounts' time from live traffic.
+ * <p>
+ * Finished operations can be read for {@code retention} after they finished, and only the last
+ * {@link #MAX_FINISHED_RUNS} of them, older ones are forgotten when the next operation starts.
+ */
+public class BulkOperations {
+    public static final Duration DEFAULT_RETENTION = Duration.ofHours(1);
+    static final int MAX_FINISHED_RUNS = 100;
+
+    private final ActorRef accountService;
+    private final Duration timeout;
+    private final int batchSize;
+    private final int parallelism;
+    private final int maxAccountsPerSecond;
+    private final long retentionNanos;
+    private final AtomicLong ids = new AtomicLong();
+    private final ConcurrentNavigableMap<Long, BulkProgress> runs = new ConcurrentSkipListMap<>();
+
+    public BulkOperations(ActorRef accountService, Duration timeout, int batchSize, int parallelism, int maxAccountsPerSecond) {
+        this(accountService, timeout, batchSize, parallelism, maxAccountsPerSecond, DEFAULT_RETENTION);
+    }
+
+    public BulkOperations(ActorRef accountService, Duration timeout, int batchSize, int parallelism, int maxAccountsPerSecond,
+                          Duration retention) {
+        this.accountService = accountService;
+        this.timeout = timeout;
+        // a batch never costs more than the throttle lets through in one go
+        this.batchSize = Math.max(1, Math.min(batchSize, maxAccountsPerSecond));
+        this.parallelism = parallelism;
+        this.maxAccountsPerSecond = maxAccountsPerSecond;
+        this.retentionNanos = retention.toNanos();
+    }
+
+    public CompletionStage<BulkProgress> start(BulkRule rule, Materializer materializer) {
+        return ask(accountService, AccountService.GetAccounts.INSTANCE, timeout).thenApply(reply -> {
+            ActorRef[] accounts = ((AccountService.Accounts) reply).getAccounts();
+            BulkProgress progress = new BulkProgress(ids.incrementAndGet(), rule.getType(), accounts.length);
+            evictFinished();
+            runs.put(progress.getId(), progress);
+            run(rule, accounts, progress, materializer);
+            return progress;
+        });
+    }
+
+    /**
+     * @return the operation or {@code null} if there is none with the id
+     */
+    public BulkProgress get(long id) {
+        return runs.get(id);
+    }
+
+    /**
+     * Walks the runs from the newest, running ones are always kept.
+     */
+    private void evictFinished() {
+        long now = System.nanoTime();
+        int finished = 0;
+        for (BulkProgress progress : runs.descendingMap().values()) {
+            if (progress.isFinished() && (++finished > MAX_FINISHED_RUNS || progress.finishedBefore(now, retentionNanos))) {
+                runs.remove(progress.getId());
+            }
+        }
+    }
+
+    private void run(BulkRule rule, ActorRef[] accounts, BulkProgress progress, Materializer materializer) {
+        int batches = (accounts.length + batchSize - 1) / batchSize;
+        if (batches == 0) {
+            progress.finish(null);
+            return;
+        }
+        Source.range(0, batches - 1)
+                .throttle(maxAccountsPerSecond, Duration.ofSeconds(1), maxAccountsPerSecond,
+                        batch -> batchEnd(batch, accounts.length) - batch * batchSize, ThrottleMode.shaping())
+                .mapAsyncUnordered(parallelism, batch -> applyBatch(rule, accounts, batch, progress))
+                .runWith(Sink.ignore(), materializer)
+                .whenComplete((done, e) -> progress.finish(e));
+    }
+
+    private int batchEnd(int batch, int accounts) {
+        return Math.min(accounts, (batch + 1) * batchSize);
+    }
+
+    /**
+     * @return number of accounts in the batch, streams do not carry {@code null}
+     */
+    private CompletableFuture<Integer> applyBatch(BulkRule rule, ActorRef[] accounts, int batch, BulkProgress progress) {
+        int from = batch * batchSize;
+        CompletableFuture<?>[] applied = new CompletableFuture[batchEnd(batch, accounts.length) - from];
+        Account.ApplyRule applyRule = new Account.ApplyRule(rule);
+        for (int i = 0; i < applied.length; i++) {
+            applied[i] = ask(accounts[from + i], applyRule, timeout)
+                    .handle((response, e) -> {
+                        if (e != null) {
+                            progress.failed();
+                        } else if (response instanceof Failure) {
+                            progress.skipped();
+                        } else {
+                            progress.applied();
+                        }
+                        return null;
+                    })
+                    .toCompletableFuture();
+        }
+        return CompletableFuture.allOf(applied).thenApply(x -> applied.length);
+    }
+}
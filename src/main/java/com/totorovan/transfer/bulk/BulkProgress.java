@@ -0,0 +1,79 @@
+package com.totorovan.transfer.bulk;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress of one bulk operation, updated by the batches in flight and read by anyone.
+ */
+public class BulkProgress {
+
+    private final long id;
+    private final BulkRule.Type type;
+    private final long accounts;
+    private final long startedAt = System.nanoTime();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile Status status = Status.RUNNING;
+    private volatile long finishedAt;
+    private volatile String error;
+
+    BulkProgress(long id, BulkRule.Type type, long accounts) {
+        this.id = id;
+        this.type = type;
+        this.accounts = accounts;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    void applied() {
+        applied.increment();
+    }
+
+    void skipped() {
+        skipped.increment();
+    }
+
+    void failed() {
+        failed.increment();
+    }
+
+    void finish(Throwable e) {
+        finishedAt = System.nanoTime();
+        if (e != null) {
+            error = e.getMessage();
+            status = Status.FAILED;
+        } else {
+            status = Status.DONE;
+        }
+    }
+
+    /**
+     * @return whether the operation finished more than {@code nanos} before {@code now}, both nano times
+     */
+    boolean finishedBefore(long now, long nanos) {
+        return status != Status.RUNNING && now - finishedAt > nanos;
+    }
+
+    boolean isFinished() {
+        return status != Status.RUNNING;
+    }
+
+    public BulkProgressDto snapshot() {
+        Status status = this.status;
+        long applied = this.applied.sum();
+        long skipped = this.skipped.sum();
+        long failed = this.failed.sum();
+        long processed = applied + skipped + failed;
+        long nanos = (status == Status.RUNNING ? System.nanoTime() : finishedAt) - startedAt;
+        return new BulkProgressDto(id, type, status, accounts, processed, applied, skipped, failed,
+                TimeUnit.NANOSECONDS.toMillis(nanos), nanos == 0 ? 0.0 : processed * 1e9 / nanos, error);
+    }
+
+    public enum Status {
+        RUNNING, DONE, FAILED
+    }
+}
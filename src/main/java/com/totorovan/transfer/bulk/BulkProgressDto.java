@@ -0,0 +1,25 @@
+package com.totorovan.transfer.bulk;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Accounts a bulk operation went through so far: applied, left as they were by the rule, or not reached in time.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkProgressDto {
+    private long id;
+    private BulkRule.Type type;
+    private BulkProgress.Status status;
+    private long accounts;
+    private long processed;
+    private long applied;
+    private long skipped;
+    private long failed;
+    private long millis;
+    private double accountsPerSecond;
+    private String error;
+}
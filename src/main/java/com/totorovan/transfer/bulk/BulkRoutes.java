@@ -0,0 +1,56 @@
+package com.totorovan.transfer.bulk;
+
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.PathMatchers;
+import akka.http.javadsl.server.Route;
+import com.totorovan.transfer.common.Codecs;
+import com.totorovan.transfer.common.Messages.Failure;
+
+/**
+ * Admin endpoints starting bulk operations and reporting their progress.
+ */
+public class BulkRoutes extends AllDirectives {
+
+    private final BulkOperations operations;
+
+    /**
+     * @param operations {@code null} if the transfer engine does not run bulk operations
+     */
+    public BulkRoutes(BulkOperations operations) {
+        this.operations = operations;
+    }
+
+    public Route routes() {
+        return pathPrefix("admin", () ->
+                pathPrefix("bulk-operations", () ->
+                        route(
+                                pathEnd(() -> post(() -> entity(Codecs.unmarshaller(BulkRuleDto.class), this::startOperation))),
+                                path(PathMatchers.longSegment(), id -> get(() -> getOperation(id)))
+                        )
+                )
+        );
+    }
+
+    private Route startOperation(BulkRuleDto ruleDto) {
+        if (operations == null) {
+            return complete(StatusCodes.NOT_IMPLEMENTED, new Failure("Bulk operations are not supported by this engine"),
+                    Codecs.marshaller());
+        }
+        String error = BulkRule.validate(ruleDto);
+        if (error != null) {
+            return complete(StatusCodes.BAD_REQUEST, new Failure(error), Codecs.marshaller());
+        }
+        return extractMaterializer(materializer ->
+                onSuccess(operations.start(BulkRule.of(ruleDto), materializer), progress ->
+                        complete(StatusCodes.ACCEPTED, progress.snapshot(), Codecs.marshaller())));
+    }
+
+    private Route getOperation(long id) {
+        BulkProgress progress = operations == null ? null : operations.get(id);
+        if (progress == null) {
+            return complete(StatusCodes.NOT_FOUND, "Bulk operation " + id + " not found");
+        }
+        return complete(StatusCodes.OK, progress.snapshot(), Codecs.marshaller());
+    }
+}
@@ -0,0 +1,89 @@
+package com.totorovan.transfer.bulk;
+
+import com.totorovan.transfer.common.Amounts;
+import lombok.Value;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Validated {@link BulkRuleDto}, evaluated by every account against its balance in units.
+ */
+@Value
+public class BulkRule implements Serializable {
+    public static final long INSUFFICIENT = Long.MIN_VALUE;
+
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+    private static final BigDecimal MAX_UNITS = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private final Type type;
+    private final BigDecimal rate;
+    private final long fee;
+    private final Overdraft overdraft;
+
+    /**
+     * @return the rule or {@code null} if the dto does not describe one, see {@link #validate(BulkRuleDto)}
+     */
+    public static BulkRule of(BulkRuleDto dto) {
+        if (validate(dto) != null) {
+            return null;
+        }
+        if (dto.getType() == Type.INTEREST) {
+            return new BulkRule(Type.INTEREST, dto.getRate().divide(HUNDRED), 0L, null);
+        }
+        if (dto.getType() == Type.FEE) {
+            return new BulkRule(Type.FEE, null, Amounts.toUnits(dto.getAmount()),
+                    dto.getOverdraft() == null ? Overdraft.SKIP : dto.getOverdraft());
+        }
+        return new BulkRule(dto.getType(), null, 0L, null);
+    }
+
+    /**
+     * @return why the dto does not describe a rule, {@code null} if it does
+     */
+    public static String validate(BulkRuleDto dto) {
+        if (dto.getType() == null) {
+            return "Rule type is required";
+        }
+        if (dto.getType() == Type.INTEREST && (dto.getRate() == null || dto.getRate().signum() < 0)) {
+            return "Interest needs a rate of at least zero percent";
+        }
+        if (dto.getType() == Type.FEE && (dto.getAmount() == null || dto.getAmount().signum() < 0
+                || !Amounts.isRepresentable(dto.getAmount()))) {
+            return "Fee needs an amount of at least zero with at most " + Amounts.SCALE + " decimal places";
+        }
+        return null;
+    }
+
+    /**
+     * @return signed change of the balance, {@link #INSUFFICIENT} if a fee can not be charged
+     */
+    public long change(long balance) {
+        switch (type) {
+            case INTEREST:
+                // interest on a balance near the maximum does not fit a long, the account rejects it as an overflow
+                BigDecimal interest = BigDecimal.valueOf(balance).multiply(rate).setScale(0, RoundingMode.DOWN);
+                return interest.compareTo(MAX_UNITS) > 0 ? Long.MAX_VALUE : interest.longValue();
+            case FEE:
+                if (fee <= balance) {
+                    return -fee;
+                }
+                return overdraft == Overdraft.PARTIAL ? -balance : INSUFFICIENT;
+            default:
+                return 0L;
+        }
+    }
+
+    public enum Type {
+        INTEREST, FEE, FREEZE, UNFREEZE
+    }
+
+    /**
+     * What a fee does to a balance lower than the fee: {@code SKIP} leaves it, {@code PARTIAL} charges all of it.
+     * Balances never go below zero.
+     */
+    public enum Overdraft {
+        SKIP, PARTIAL
+    }
+}
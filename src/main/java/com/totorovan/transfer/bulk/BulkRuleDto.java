@@ -0,0 +1,22 @@
+package com.totorovan.transfer.bulk;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Rule applied to every account: {@code INTEREST} credits {@code rate} percent of the balance, {@code FEE} charges
+ * {@code amount} as the {@code overdraft} policy allows, {@code FREEZE} and {@code UNFREEZE} block or allow transfers
+ * out of the account.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkRuleDto {
+    private BulkRule.Type type;
+    private BigDecimal rate;
+    private BigDecimal amount;
+    private BulkRule.Overdraft overdraft;
+}
@@ -0,0 +1,31 @@
+package com.totorovan.transfer.capture;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Request as it was captured, with the status it was answered with.
+ */
+@Value
+public class CapturedRequest {
+    /**
+     * Micros since the capture started at which the request arrived.
+     */
+    private final long arrivalMicros;
+    private final String method;
+    /**
+     * Path and query.
+     */
+    private final String uri;
+    /**
+     * Empty if the request had no entity.
+     */
+    private final String contentType;
+    /**
+     * Names and values of the replayed headers, alternating.
+     */
+    private final List<String> headers;
+    private final byte[] body;
+    private final int status;
+}
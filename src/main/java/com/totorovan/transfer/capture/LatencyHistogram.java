@@ -0,0 +1,64 @@
+package com.totorovan.transfer.capture;
+
+/**
+ * Histogram of latencies in micros with 8 linear buckets per power of two, so a percentile is off by at most
+ * an eighth of its value. Thread-safe.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+    private long count;
+    private long max;
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return smallest latency of the bucket
+     */
+    static long lowest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    public synchronized void record(long micros) {
+        counts[bucket(Math.max(0, micros))]++;
+        count++;
+        max = Math.max(max, micros);
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    public synchronized long max() {
+        return max;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return highest latency of the bucket the percentile falls into, 0 if nothing was recorded
+     */
+    public synchronized long percentile(double percentile) {
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank && seen > 0) {
+                return Math.min(max, bucket + 1 < counts.length ? lowest(bucket + 1) - 1 : Long.MAX_VALUE);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,42 @@
+package com.totorovan.transfer.capture;
+
+import lombok.Value;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a replay. Latencies are in micros, divergences count the requests answered with another status
+ * than recorded by recorded and replayed status, e.g. {@code "201 -> 400"}.
+ */
+@Value
+public class ReplayReport {
+    private final long requests;
+    private final long failed;
+    private final double speed;
+    private final long millis;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+    private final Map<String, Long> divergences;
+    /**
+     * First divergent requests, as method, uri and both statuses.
+     */
+    private final List<String> divergentSamples;
+
+    public long divergent() {
+        return divergences.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public String render() {
+        StringBuilder report = new StringBuilder()
+                .append(String.format("%d requests replayed at %.1fx in %d ms, %d failed%n", requests, speed, millis, failed))
+                .append(String.format("latency us: p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n", p50, p90, p99, p999, max))
+                .append(String.format("%d requests diverged from the recorded status%n", divergent()));
+        divergences.forEach((statuses, count) -> report.append(String.format("  %s: %d%n", statuses, count)));
+        divergentSamples.forEach(sample -> report.append("  e.g. ").append(sample).append(System.lineSeparator()));
+        return report.toString();
+    }
+}
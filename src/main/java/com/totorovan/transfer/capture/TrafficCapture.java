@@ -0,0 +1,264 @@
+package com.totorovan.transfer.capture;
+
+import akka.http.javadsl.model.HttpEntity;
+import akka.http.javadsl.model.HttpHeader;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.MediaTypes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.ExceptionHandler;
+import akka.http.javadsl.server.RejectionHandler;
+import akka.http.javadsl.server.Route;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every request answered by the wrapped routes into a file: arrival time, method, path and query,
+ * content type, the headers which change the answer, the body and the status of the response.
+ * Records are buffered and written in the order the responses complete, the arrival time is a varint delta
+ * to the record before. Event streams are never recorded, they do not end.
+ */
+public class TrafficCapture extends AllDirectives implements AutoCloseable {
+
+    private static final int MAGIC = 0x54434150;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final FiniteDuration STRICT_ENTITY_TIMEOUT = FiniteDuration.create(5, TimeUnit.SECONDS);
+    private static final List<String> REPLAYED_HEADERS = Arrays.asList("accept", "if-match", "if-none-match");
+
+    private final DataOutputStream out;
+    private final long startedAt = System.nanoTime();
+    private long lastArrivalMicros;
+    private long records;
+    private boolean closed;
+
+    private TrafficCapture(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+    }
+
+    public static TrafficCapture open(Path path) throws IOException {
+        return new TrafficCapture(Files.newOutputStream(path));
+    }
+
+    public static List<CapturedRequest> read(Path path) throws IOException {
+        try (Reader reader = reader(path)) {
+            List<CapturedRequest> requests = new ArrayList<>();
+            reader.forEachRemaining(requests::add);
+            return requests;
+        }
+    }
+
+    /**
+     * @return the records of the capture one at a time, in the order they were written
+     */
+    public static Reader reader(Path path) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(path + " is not a traffic capture of version " + VERSION);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new Reader(in);
+    }
+
+    private static CapturedRequest readRecord(DataInputStream in, long lastArrivalMicros) throws IOException {
+        long arrivalMicros = lastArrivalMicros + unZigZag(readVarLong(in));
+        String method = in.readUTF();
+        String uri = in.readUTF();
+        String contentType = in.readUTF();
+        int headerCount = in.readUnsignedByte();
+        List<String> headers = new ArrayList<>(headerCount * 2);
+        for (int i = 0; i < headerCount * 2; i++) {
+            headers.add(in.readUTF());
+        }
+        int status = in.readUnsignedShort();
+        byte[] body = new byte[(int) readVarLong(in)];
+        in.readFully(body);
+        return new CapturedRequest(arrivalMicros, method, uri, contentType, headers, body, status);
+    }
+
+    /**
+     * Rejections and exceptions are turned into responses inside, by the same default handlers the server seals the
+     * routes with, so they are recorded with the status they are answered with.
+     */
+    public Route capture(Route routes) {
+        return extractRequest(request -> {
+            long arrivalMicros = (System.nanoTime() - startedAt) / 1000;
+            return extractStrictEntity(STRICT_ENTITY_TIMEOUT, entity ->
+                    mapResponse(response -> {
+                        record(arrivalMicros, request, entity, response);
+                        return response;
+                    }, () -> extractSettings(settings ->
+                            handleExceptions(ExceptionHandler.newBuilder().build().seal(settings), () ->
+                                    handleRejections(RejectionHandler.defaultHandler(), () -> routes))))
+            );
+        });
+    }
+
+    private void record(long arrivalMicros, HttpRequest request, HttpEntity.Strict entity, HttpResponse response) {
+        if (response.entity().getContentType().mediaType().equals(MediaTypes.TEXT_EVENT_STREAM)) {
+            return;
+        }
+        List<String> headers = new ArrayList<>();
+        for (HttpHeader header : request.getHeaders()) {
+            if (REPLAYED_HEADERS.contains(header.lowercaseName())) {
+                headers.add(header.name());
+                headers.add(header.value());
+            }
+        }
+        byte[] body = entity.getData().toArray();
+        String contentType = body.length == 0 ? "" : entity.getContentType().toString();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                writeVarLong(out, zigZag(arrivalMicros - lastArrivalMicros));
+                out.writeUTF(request.method().name());
+                out.writeUTF(request.getUri().toRelative().toString());
+                out.writeUTF(contentType);
+                out.writeByte(headers.size() / 2);
+                for (String header : headers) {
+                    out.writeUTF(header);
+                }
+                out.writeShort(response.status().intValue());
+                writeVarLong(out, body.length);
+                out.write(body);
+            } catch (IOException e) {
+                // the capture stops at the first write which failed, the service goes on
+                closeQuietly();
+                return;
+            }
+            lastArrivalMicros = arrivalMicros;
+            records++;
+        }
+    }
+
+    public synchronized long records() {
+        return records;
+    }
+
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            out.flush();
+        }
+    }
+
+    private void closeQuietly() {
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            // already failed
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    /**
+     * Reads the records of a capture one at a time, a record torn by a crash ends the capture.
+     */
+    public static class Reader implements Iterator<CapturedRequest>, Closeable {
+        private final DataInputStream in;
+        private long lastArrivalMicros;
+        private CapturedRequest next;
+        private boolean ended;
+
+        private Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * @throws UncheckedIOException if the capture can not be read
+         */
+        @Override
+        public boolean hasNext() {
+            if (next == null && !ended) {
+                try {
+                    next = readRecord(in, lastArrivalMicros);
+                    lastArrivalMicros = next.getArrivalMicros();
+                } catch (EOFException e) {
+                    ended = true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public CapturedRequest next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            CapturedRequest request = next;
+            next = null;
+            return request;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
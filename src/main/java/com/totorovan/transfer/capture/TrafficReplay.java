@@ -0,0 +1,298 @@
+package com.totorovan.transfer.capture;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpMethods;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.typesafe.config.ConfigFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays captured requests against a server, {@code speed} times as fast as they arrived.
+ * A request waits for every earlier request of the same account or transaction to be answered, so requests
+ * of one account keep their order even when the server answers slower than it did when they were captured.
+ * Latency is measured from sending a request to its response headers.
+ * <p>
+ * The requests are streamed: a thread of the replay takes them shortly before they are due, so only the requests
+ * about to be sent or waiting for their answer are held, not the whole capture.
+ */
+public class TrafficReplay {
+
+    private static final int DIVERGENT_SAMPLES = 10;
+    /**
+     * Records are written as their responses complete, behind the requests answered while they were in flight,
+     * this many are read ahead to send them by arrival.
+     */
+    private static final int REORDER_WINDOW = 10_000;
+    private static final long LOOKAHEAD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+
+    private final ActorSystem system;
+    private final Materializer materializer;
+    private final String baseUri;
+    private final double speed;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder failed = new LongAdder();
+    private final Map<String, Long> divergences = new TreeMap<>();
+    private final List<String> divergentSamples = new ArrayList<>();
+    private final Map<String, CompletableFuture<Void>> lastByKey = new ConcurrentHashMap<>();
+    // the reader counts as one until it took the last request
+    private final AtomicLong outstanding = new AtomicLong(1);
+    private final CompletableFuture<ReplayReport> replayed = new CompletableFuture<>();
+    private volatile long startedAt;
+    private volatile long requests;
+
+    /**
+     * @param system  sends the requests over its host connection pool, which must allow as many open requests as
+     *                the replay keeps in flight
+     * @param baseUri scheme, host and port of the server, e.g. {@code http://localhost:8080}
+     */
+    public TrafficReplay(ActorSystem system, Materializer materializer, String baseUri, double speed) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Speed must be positive, but was " + speed);
+        }
+        this.system = system;
+        this.materializer = materializer;
+        this.baseUri = baseUri;
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TrafficReplay <capture file> [base uri, default http://localhost:8080] [speed, default 1]");
+            System.exit(2);
+        }
+        ActorSystem system = ActorSystem.create("replay", ConfigFactory.parseString(
+                "akka.http.host-connection-pool { max-connections = 64, max-open-requests = 8192 }")
+                .withFallback(ConfigFactory.load()));
+        try (TrafficCapture.Reader requests = TrafficCapture.reader(Paths.get(args[0]))) {
+            TrafficReplay replay = new TrafficReplay(system, ActorMaterializer.create(system),
+                    args.length > 1 ? args[1] : "http://localhost:8080", args.length > 2 ? Double.parseDouble(args[2]) : 1);
+            System.out.print(replay.replay(requests).toCompletableFuture().join().render());
+        } finally {
+            system.terminate();
+        }
+    }
+
+    /**
+     * Must be called once per instance.
+     */
+    public CompletionStage<ReplayReport> replay(List<CapturedRequest> requests) {
+        List<CapturedRequest> byArrival = new ArrayList<>(requests);
+        byArrival.sort(Comparator.comparingLong(CapturedRequest::getArrivalMicros));
+        return replay(byArrival.iterator());
+    }
+
+    /**
+     * Must be called once per instance, the requests must stay open until the replay completed.
+     */
+    public CompletionStage<ReplayReport> replay(Iterator<CapturedRequest> requests) {
+        Thread reader = new Thread(() -> {
+            try {
+                schedule(requests);
+                answered();
+            } catch (RuntimeException e) {
+                replayed.completeExceptionally(e);
+            } catch (InterruptedException e) {
+                replayed.completeExceptionally(e);
+                Thread.currentThread().interrupt();
+            }
+        }, "traffic-replay");
+        reader.setDaemon(true);
+        reader.start();
+        return replayed;
+    }
+
+    private void schedule(Iterator<CapturedRequest> requests) throws InterruptedException {
+        PriorityQueue<CapturedRequest> window = new PriorityQueue<>(Comparator.comparingLong(CapturedRequest::getArrivalMicros));
+        long firstArrivalMicros = 0;
+        long count = 0;
+        startedAt = System.nanoTime();
+        while (true) {
+            while (window.size() < REORDER_WINDOW && requests.hasNext()) {
+                window.add(requests.next());
+            }
+            CapturedRequest request = window.poll();
+            if (request == null) {
+                break;
+            }
+            if (count++ == 0) {
+                firstArrivalMicros = request.getArrivalMicros();
+            }
+            long dueAt = startedAt + (long) ((request.getArrivalMicros() - firstArrivalMicros) * 1000 / speed);
+            long ahead = dueAt - System.nanoTime() - LOOKAHEAD_NANOS;
+            if (ahead > 0) {
+                TimeUnit.NANOSECONDS.sleep(ahead);
+            }
+            schedule(request, dueAt);
+        }
+        this.requests = count;
+    }
+
+    /**
+     * Sends the request once it is due and every earlier request of its keys was answered.
+     */
+    private void schedule(CapturedRequest request, long dueAt) {
+        List<String> keys = orderingKeys(request);
+        List<CompletableFuture<Void>> before = new ArrayList<>(keys.size() + 1);
+        before.add(due(dueAt));
+        for (String key : keys) {
+            CompletableFuture<Void> last = lastByKey.get(key);
+            if (last != null) {
+                before.add(last);
+            }
+        }
+        outstanding.incrementAndGet();
+        CompletableFuture<Void> sent = CompletableFuture.allOf(before.toArray(new CompletableFuture[0]))
+                .thenCompose(x -> send(request));
+        for (String key : keys) {
+            lastByKey.put(key, sent);
+        }
+        sent.thenRun(() -> {
+            for (String key : keys) {
+                lastByKey.remove(key, sent);
+            }
+            answered();
+        });
+    }
+
+    private void answered() {
+        if (outstanding.decrementAndGet() == 0) {
+            replayed.complete(report(requests, startedAt));
+        }
+    }
+
+    private CompletableFuture<Void> due(long nanos) {
+        CompletableFuture<Void> due = new CompletableFuture<>();
+        long delay = nanos - System.nanoTime();
+        if (delay <= 0) {
+            due.complete(null);
+        } else {
+            system.scheduler().scheduleOnce(Duration.ofNanos(delay), () -> due.complete(null), system.dispatcher());
+        }
+        return due;
+    }
+
+    /**
+     * @return future completed once the request was answered or failed, never completed exceptionally
+     */
+    private CompletableFuture<Void> send(CapturedRequest request) {
+        HttpRequest httpRequest = HttpRequest.create(baseUri + request.getUri())
+                .withMethod(HttpMethods.lookup(request.getMethod()).orElse(HttpMethods.GET));
+        if (!request.getContentType().isEmpty()) {
+            httpRequest = httpRequest.withEntity(ContentTypes.parse(request.getContentType()), request.getBody());
+        }
+        List<String> headers = request.getHeaders();
+        for (int i = 0; i < headers.size(); i += 2) {
+            httpRequest = httpRequest.addHeader(RawHeader.create(headers.get(i), headers.get(i + 1)));
+        }
+        long sentAt = System.nanoTime();
+        return Http.get(system).singleRequest(httpRequest).toCompletableFuture().handle((response, e) -> {
+            if (e != null) {
+                failed.increment();
+            } else {
+                latencies.record((System.nanoTime() - sentAt) / 1000);
+                response.discardEntityBytes(materializer);
+                compare(request, response);
+            }
+            return null;
+        });
+    }
+
+    private synchronized void compare(CapturedRequest request, HttpResponse response) {
+        int status = response.status().intValue();
+        if (status != request.getStatus()) {
+            divergences.merge(request.getStatus() + " -> " + status, 1L, Long::sum);
+            if (divergentSamples.size() < DIVERGENT_SAMPLES) {
+                divergentSamples.add(request.getMethod() + " " + request.getUri() + ": " + request.getStatus() + " -> " + status);
+            }
+        }
+    }
+
+    private synchronized ReplayReport report(long requests, long startedAt) {
+        return new ReplayReport(requests, failed.sum(), speed, Duration.ofNanos(System.nanoTime() - startedAt).toMillis(),
+                latencies.percentile(50), latencies.percentile(90), latencies.percentile(99), latencies.percentile(99.9),
+                latencies.max(), new TreeMap<>(divergences), new ArrayList<>(divergentSamples));
+    }
+
+    /**
+     * Accounts and transactions the request reads or changes, from its path and for posts from its body.
+     */
+    static List<String> orderingKeys(CapturedRequest request) {
+        List<String> keys = new ArrayList<>(2);
+        String path = request.getUri().split("\\?", 2)[0];
+        String[] segments = path.split("/");
+        String resource = segments.length > 1 ? segments[1] : "";
+        if (segments.length > 2 && isId(segments[2])) {
+            keys.add(resource + ":" + segments[2]);
+        }
+        if (!"POST".equals(request.getMethod()) || request.getBody().length == 0) {
+            return keys;
+        }
+        JsonNode body;
+        try {
+            body = (request.getContentType().contains("cbor") ? CBOR_MAPPER : JSON_MAPPER).readTree(request.getBody());
+        } catch (IOException e) {
+            return keys;
+        }
+        if (body == null) {
+            return keys;
+        }
+        addKey(keys, resource, body.get("id"));
+        addKey(keys, "accounts", body.get("srcAccountId"));
+        addKey(keys, "accounts", body.get("targetAccountId"));
+        JsonNode legs = body.get("legs");
+        if (legs != null) {
+            for (JsonNode leg : legs) {
+                addKey(keys, "accounts", leg.get("targetAccountId"));
+            }
+        }
+        return keys;
+    }
+
+    private static void addKey(List<String> keys, String resource, JsonNode id) {
+        if (id != null && id.canConvertToLong()) {
+            String key = resource + ":" + id.asLong();
+            if (!keys.contains(key)) {
+                keys.add(key);
+            }
+        }
+    }
+
+    private static boolean isId(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (!Character.isDigit(segment.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
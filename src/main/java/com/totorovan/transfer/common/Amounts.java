@@ -0,0 +1,42 @@
+package com.totorovan.transfer.common;
+
+import com.totorovan.transfer.common.Messages.Failure;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point money amounts: a {@code long} of units of {@code 10^-}{@value #SCALE}.
+ * Balances and amounts inside actors and engines are kept as units, {@link BigDecimal} is only used at the edges.
+ */
+public final class Amounts {
+
+    public static final int SCALE = 4;
+
+    private Amounts() {
+    }
+
+    /**
+     * @throws ArithmeticException if the amount has more than {@value #SCALE} decimal places or does not fit a long
+     */
+    public static long toUnits(BigDecimal amount) {
+        return amount.setScale(SCALE).unscaledValue().longValueExact();
+    }
+
+    public static boolean isRepresentable(BigDecimal amount) {
+        try {
+            toUnits(amount);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    public static Failure unsupportedAmount(BigDecimal amount) {
+        return new Failure("Amount " + amount + " can not be represented with " + SCALE + " decimal places");
+    }
+
+    public static BigDecimal toDecimal(long units) {
+        BigDecimal decimal = BigDecimal.valueOf(units, SCALE).stripTrailingZeros();
+        return decimal.scale() < 0 ? decimal.setScale(0) : decimal;
+    }
+}
@@ -0,0 +1,73 @@
+package com.totorovan.transfer.common;
+
+import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.marshalling.Marshaller;
+import akka.http.javadsl.model.ContentType;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpEntity;
+import akka.http.javadsl.model.MediaType;
+import akka.http.javadsl.model.MediaTypes;
+import akka.http.javadsl.model.RequestEntity;
+import akka.http.javadsl.unmarshalling.Unmarshaller;
+import akka.util.ByteString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Content negotiated (un)marshallers shared by the routes.
+ * JSON stays the default; {@code application/cbor} is picked when the client asks for it
+ * via {@code Accept} or sends it as {@code Content-Type}.
+ */
+public class Codecs {
+
+    public static final MediaType.Binary APPLICATION_CBOR = MediaTypes.applicationBinary("cbor", false);
+
+    private static final ContentType CBOR_CONTENT_TYPE = ContentTypes.create(APPLICATION_CBOR);
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+
+    private Codecs() {
+    }
+
+    public static <T> Marshaller<T, RequestEntity> marshaller() {
+        return Marshaller.oneOf(Jackson.marshaller(), cborMarshaller());
+    }
+
+    public static <T> Unmarshaller<HttpEntity, T> unmarshaller(Class<T> type) {
+        return Unmarshaller.firstOf(Jackson.unmarshaller(type), cborUnmarshaller(type));
+    }
+
+    public static <T> Marshaller<T, RequestEntity> cborMarshaller() {
+        return Marshaller.withFixedContentType(CBOR_CONTENT_TYPE, Codecs::toCborEntity);
+    }
+
+    public static <T> Unmarshaller<HttpEntity, T> cborUnmarshaller(Class<T> type) {
+        return Unmarshaller.forMediaType(APPLICATION_CBOR, Unmarshaller.entityToByteString())
+                .thenApply(bytes -> fromCbor(bytes, type));
+    }
+
+    public static ByteString toCbor(Object value) {
+        try {
+            // the array is never shared, so there is no need for the defensive copy of ByteString.fromArray
+            return ByteString.fromArrayUnsafe(CBOR_MAPPER.writeValueAsBytes(value));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static <T> T fromCbor(ByteString bytes, Class<T> type) {
+        try {
+            return CBOR_MAPPER.readValue(new ByteBufferBackedInputStream(bytes.asByteBuffer()), type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot unmarshal CBOR as " + type.getSimpleName(), e);
+        }
+    }
+
+    private static RequestEntity toCborEntity(Object value) {
+        return HttpEntities.create(CBOR_CONTENT_TYPE, toCbor(value));
+    }
+}
@@ -1,20 +1,176 @@
 package com.totorovan.transfer.common;
 
-import lombok.Data;
-
 import java.io.Serializable;
 
+import static com.totorovan.transfer.common.Amounts.toDecimal;
+
 public class Messages {
 
     private Messages() {
     }
 
-    @Data
-    public static class Success implements Serializable {
+    /**
+     * Message a {@link PriorityMailbox} delivers ahead of the others: reads, deletes, compensations and the
+     * completions of work in flight, which should not wait behind new transfers.
+     */
+    public interface Urgent {
+        default boolean isUrgent() {
+            return true;
+        }
+    }
+
+    /**
+     * New request of a client, which a full {@link PriorityMailbox} may drop. Replies, completions and the other
+     * messages of work already accepted are never dropped, losing them would leave that work unfinished.
+     */
+    public interface Sheddable {
+    }
+
+    /**
+     * Stateless reply, always {@link #INSTANCE} so replying does not allocate.
+     */
+    public static final class Success implements Serializable {
+        public static final Success INSTANCE = new Success();
+
+        private Success() {
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+
+        @Override
+        public String toString() {
+            return "Success()";
+        }
+    }
+
+    /**
+     * Reasons of a {@link Failure}. Messages are formatted from the failure's primitive arguments, amounts are in units.
+     */
+    public enum FailureCode {
+        ACCOUNT_NOT_FOUND {
+            @Override
+            String format(long first, long second, long third) {
+                return "Account " + first + " not found";
+            }
+        },
+        ACCOUNT_ALREADY_EXISTS {
+            @Override
+            String format(long first, long second, long third) {
+                return "Account " + first + " already exists";
+            }
+        },
+        INSUFFICIENT_BALANCE {
+            @Override
+            String format(long amount, long accountId, long balance) {
+                return "Insufficient balance to withdraw " + toDecimal(amount) + " from account AccountInfo(id=" + accountId
+                        + ", balance=" + toDecimal(balance) + ")";
+            }
+        },
+        BALANCE_OVERFLOW {
+            @Override
+            String format(long first, long second, long third) {
+                return "Balance of account " + first + " would overflow";
+            }
+        },
+        TRANSACTION_ALREADY_EXISTS {
+            @Override
+            String format(long first, long second, long third) {
+                return "Transaction " + first + " already been processed";
+            }
+        },
+        TRANSACTION_NOT_FOUND {
+            @Override
+            String format(long first, long second, long third) {
+                return "Transaction " + first + " does not exist";
+            }
+        },
+        VERSION_MISMATCH {
+            @Override
+            String format(long accountId, long expectedVersion, long version) {
+                if (expectedVersion == version) {
+                    return "Account " + accountId + " was recreated since version " + expectedVersion;
+                }
+                return "Account " + accountId + " is at version " + version + ", expected version " + expectedVersion;
+            }
+        },
+        ACCOUNT_FROZEN {
+            @Override
+            String format(long first, long second, long third) {
+                return "Account " + first + " is frozen";
+            }
+        },
+        NO_BALANCE_AT {
+            @Override
+            String format(long accountId, long at, long third) {
+                return "Account " + accountId + " has no balance recorded at " + at;
+            }
+        },
+        /**
+         * Failure with a message given up front.
+         */
+        OTHER {
+            @Override
+            String format(long first, long second, long third) {
+                throw new IllegalStateException("Failure of code OTHER carries its message");
+            }
+        };
+
+        abstract String format(long first, long second, long third);
     }
 
-    @Data
-    public static class Failure implements Serializable {
-        private final String message;
+    /**
+     * Failed reply. The message is only formatted when asked for, so failures which are just matched on
+     * cost one small object. Failures are equal when their messages are.
+     */
+    public static final class Failure implements Serializable {
+        private final FailureCode code;
+        private final long first;
+        private final long second;
+        private final long third;
+        private String message;
+
+        public Failure(String message) {
+            this(FailureCode.OTHER, 0L, 0L, 0L);
+            this.message = message;
+        }
+
+        public Failure(FailureCode code, long first) {
+            this(code, first, 0L, 0L);
+        }
+
+        public Failure(FailureCode code, long first, long second, long third) {
+            this.code = code;
+            this.first = first;
+            this.second = second;
+            this.third = third;
+        }
+
+        public FailureCode getCode() {
+            return code;
+        }
+
+        public String getMessage() {
+            if (message == null) {
+                message = code.format(first, second, third);
+            }
+            return message;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Failure && getMessage().equals(((Failure) o).getMessage());
+        }
+
+        @Override
+        public int hashCode() {
+            return getMessage().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "Failure(message=" + getMessage() + ")";
+        }
     }
 }
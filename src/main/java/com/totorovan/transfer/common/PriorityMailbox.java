@@ -0,0 +1,123 @@
+package com.totorovan.transfer.common;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.DeadLetter;
+import akka.dispatch.ControlMessage;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+import com.totorovan.transfer.common.Messages.Sheddable;
+import com.totorovan.transfer.common.Messages.Urgent;
+import com.typesafe.config.Config;
+import scala.Option;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unbounded mailbox delivering {@link Urgent} messages and Akka's {@link ControlMessage}s ahead of the others, both
+ * in the order they arrived. After {@code urgent-burst} urgent messages in a row the oldest other message goes next,
+ * so a flood of reads slows transfers down but never stops them.
+ * <p>
+ * With a positive {@code capacity} the {@link Sheddable} new requests beyond it go to the dead letters, so their asks
+ * time out instead of the queue growing without bound. Every other message is always taken, so a compensation, a
+ * reply or a step of a transfer already running is never lost.
+ * <p>
+ * Assigned to actors in the deployment config, e.g. {@code akka.actor.deployment./accountService.mailbox=priority-mailbox}
+ * with {@code priority-mailbox.mailbox-type} set to this class.
+ */
+public class PriorityMailbox implements MailboxType, ProducesMessageQueue<PriorityMailbox.PriorityQueue> {
+    private static final int DEFAULT_URGENT_BURST = 16;
+
+    private final int urgentBurst;
+    private final int capacity;
+
+    public PriorityMailbox(ActorSystem.Settings settings, Config config) {
+        this.urgentBurst = config.hasPath("urgent-burst") ? config.getInt("urgent-burst") : DEFAULT_URGENT_BURST;
+        if (urgentBurst <= 0) {
+            throw new IllegalArgumentException("Urgent burst must be positive, but was " + urgentBurst);
+        }
+        this.capacity = config.hasPath("capacity") ? config.getInt("capacity") : 0;
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        return new PriorityQueue(urgentBurst, capacity, system.isDefined() ? system.get().deadLetters() : null);
+    }
+
+    static boolean isUrgent(Object message) {
+        return message instanceof Urgent ? ((Urgent) message).isUrgent() : message instanceof ControlMessage;
+    }
+
+    static class PriorityQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+        private final Queue<Envelope> urgent = new ConcurrentLinkedQueue<>();
+        private final Queue<Envelope> normal = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger normalSize = new AtomicInteger();
+        private final int urgentBurst;
+        private final int capacity;
+        private final ActorRef deadLetters;
+        // only the thread running the actor dequeues
+        private int burst;
+
+        PriorityQueue(int urgentBurst, int capacity, ActorRef deadLetters) {
+            this.urgentBurst = urgentBurst;
+            this.capacity = capacity;
+            this.deadLetters = deadLetters;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            Object message = handle.message();
+            if (isUrgent(message)) {
+                urgent.offer(handle);
+            } else if (capacity <= 0 || normalSize.incrementAndGet() <= capacity || !(message instanceof Sheddable)
+                    || deadLetters == null) {
+                normal.offer(handle);
+            } else {
+                normalSize.decrementAndGet();
+                deadLetters.tell(new DeadLetter(message, handle.sender(), receiver), handle.sender());
+            }
+        }
+
+        @Override
+        public Envelope dequeue() {
+            if (burst < urgentBurst) {
+                Envelope envelope = urgent.poll();
+                if (envelope != null) {
+                    burst++;
+                    return envelope;
+                }
+            }
+            Envelope envelope = normal.poll();
+            if (envelope != null) {
+                if (capacity > 0) {
+                    normalSize.decrementAndGet();
+                }
+                burst = 0;
+                return envelope;
+            }
+            return urgent.poll();
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return urgent.size() + normal.size();
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !urgent.isEmpty() || !normal.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            for (Envelope envelope = dequeue(); envelope != null; envelope = dequeue()) {
+                deadLetters.enqueue(owner, envelope);
+            }
+        }
+    }
+}
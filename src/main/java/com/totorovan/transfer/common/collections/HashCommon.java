@@ -0,0 +1,33 @@
+package com.totorovan.transfer.common.collections;
+
+final class HashCommon {
+    /**
+     * Size of a reference with compressed references, which the JVM uses for heaps below 32 GB.
+     */
+    static final int REFERENCE_BYTES = 4;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private HashCommon() {
+    }
+
+    /**
+     * MurmurHash3 64-bit finalizer, spreads sequential ids over the whole table.
+     */
+    static int mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    static int tableSize(int expectedSize, float loadFactor) {
+        long capacity = Math.max(2, (long) Math.ceil(expectedSize / loadFactor) + 1);
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Expected size " + expectedSize + " is too large");
+        }
+        return Integer.highestOneBit((int) capacity - 1) << 1;
+    }
+}
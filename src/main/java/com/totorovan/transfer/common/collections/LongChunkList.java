@@ -0,0 +1,54 @@
+package com.totorovan.transfer.common.collections;
+
+import java.util.Arrays;
+
+/**
+ * Append-only list of primitive longs stored in fixed size chunks.
+ * Growing the list never copies values which are already stored, so appends keep a stable latency
+ * regardless of the list size. Only the first chunk starts small and doubles up to the chunk size,
+ * which keeps short lists cheap.
+ */
+public class LongChunkList {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private long[][] chunks = new long[1][];
+    private int size;
+
+    public void add(long value) {
+        int chunk = size >>> CHUNK_BITS;
+        int offset = size & CHUNK_MASK;
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        long[] values = chunks[chunk];
+        if (values == null) {
+            values = chunks[chunk] = new long[chunk == 0 ? INITIAL_CAPACITY : CHUNK_SIZE];
+        } else if (offset == values.length) {
+            values = chunks[chunk] = Arrays.copyOf(values, Math.min(values.length * 2, CHUNK_SIZE));
+        }
+        values[offset] = value;
+        size++;
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memoryBytes() {
+        long bytes = (long) chunks.length * HashCommon.REFERENCE_BYTES;
+        for (long[] values : chunks) {
+            bytes += values == null ? 0 : (long) values.length * 8;
+        }
+        return bytes;
+    }
+}
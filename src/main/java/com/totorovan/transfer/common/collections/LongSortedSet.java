@@ -0,0 +1,182 @@
+package com.totorovan.transfer.common.collections;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of primitive longs stored in chunks of up to {@value #CHUNK_SIZE} sorted values.
+ * The chunk of a value is found by a binary search over the first values of the chunks, so adding, removing and
+ * seeking cost a logarithmic search plus moving the values of one chunk, whatever the size of the set.
+ * A full chunk is split in two, a chunk is merged into the one before it once both fit into half a chunk.
+ * Not thread-safe.
+ */
+public class LongSortedSet {
+    private static final int CHUNK_SIZE = 1024;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private long[][] chunks = new long[1][];
+    private int[] sizes = new int[1];
+    private int chunkCount;
+    private int size;
+
+    /**
+     * @return whether the value was not in the set
+     */
+    public boolean add(long value) {
+        if (chunkCount == 0) {
+            chunks[0] = new long[INITIAL_CAPACITY];
+            chunkCount = 1;
+        }
+        int chunk = chunkOf(value);
+        int position = Arrays.binarySearch(chunks[chunk], 0, sizes[chunk], value);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+        if (sizes[chunk] == CHUNK_SIZE) {
+            split(chunk);
+            if (position > CHUNK_SIZE / 2) {
+                chunk++;
+                position -= CHUNK_SIZE / 2;
+            }
+        }
+        long[] values = chunks[chunk];
+        if (sizes[chunk] == values.length) {
+            values = chunks[chunk] = Arrays.copyOf(values, Math.min(values.length * 2, CHUNK_SIZE));
+        }
+        System.arraycopy(values, position, values, position + 1, sizes[chunk] - position);
+        values[position] = value;
+        sizes[chunk]++;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return whether the value was in the set
+     */
+    public boolean remove(long value) {
+        if (chunkCount == 0) {
+            return false;
+        }
+        int chunk = chunkOf(value);
+        long[] values = chunks[chunk];
+        int position = Arrays.binarySearch(values, 0, sizes[chunk], value);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(values, position + 1, values, position, sizes[chunk] - position - 1);
+        sizes[chunk]--;
+        size--;
+        if (chunk > 0 && sizes[chunk - 1] + sizes[chunk] <= CHUNK_SIZE / 2) {
+            merge(chunk - 1);
+        } else if (chunk + 1 < chunkCount && sizes[chunk] + sizes[chunk + 1] <= CHUNK_SIZE / 2) {
+            merge(chunk);
+        } else if (sizes[chunk] == 0 && chunkCount > 1) {
+            removeChunk(chunk);
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (chunkCount == 0) {
+            return false;
+        }
+        int chunk = chunkOf(value);
+        return Arrays.binarySearch(chunks[chunk], 0, sizes[chunk], value) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memoryBytes() {
+        long bytes = (long) chunks.length * (HashCommon.REFERENCE_BYTES + 4);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            bytes += (long) chunks[chunk].length * 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return up to {@code limit} smallest values in ascending order
+     */
+    public long[] first(int limit) {
+        return collect(0, 0, limit);
+    }
+
+    /**
+     * @return up to {@code limit} smallest values greater than {@code after} in ascending order
+     */
+    public long[] higher(long after, int limit) {
+        if (chunkCount == 0) {
+            return new long[0];
+        }
+        int chunk = chunkOf(after);
+        int position = Arrays.binarySearch(chunks[chunk], 0, sizes[chunk], after);
+        return collect(chunk, position >= 0 ? position + 1 : -position - 1, limit);
+    }
+
+    private long[] collect(int chunk, int position, int limit) {
+        long[] values = new long[(int) Math.min(limit, size)];
+        int count = 0;
+        while (chunk < chunkCount && count < values.length) {
+            int length = Math.min(sizes[chunk] - position, values.length - count);
+            System.arraycopy(chunks[chunk], position, values, count, length);
+            count += length;
+            chunk++;
+            position = 0;
+        }
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    /**
+     * @return last chunk starting at or before the value, the first chunk if there is none
+     */
+    private int chunkOf(long value) {
+        int low = 1;
+        int high = chunkCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (chunks[middle][0] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    private void split(int chunk) {
+        insertChunk(chunk + 1, Arrays.copyOfRange(chunks[chunk], CHUNK_SIZE / 2, CHUNK_SIZE), CHUNK_SIZE / 2);
+        sizes[chunk] = CHUNK_SIZE / 2;
+    }
+
+    private void merge(int chunk) {
+        long[] values = chunks[chunk];
+        int mergedSize = sizes[chunk] + sizes[chunk + 1];
+        if (values.length < mergedSize) {
+            values = chunks[chunk] = Arrays.copyOf(values, CHUNK_SIZE / 2);
+        }
+        System.arraycopy(chunks[chunk + 1], 0, values, sizes[chunk], sizes[chunk + 1]);
+        sizes[chunk] = mergedSize;
+        removeChunk(chunk + 1);
+    }
+
+    private void insertChunk(int chunk, long[] values, int valueCount) {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            sizes = Arrays.copyOf(sizes, chunkCount * 2);
+        }
+        System.arraycopy(chunks, chunk, chunks, chunk + 1, chunkCount - chunk);
+        System.arraycopy(sizes, chunk, sizes, chunk + 1, chunkCount - chunk);
+        chunks[chunk] = values;
+        sizes[chunk] = valueCount;
+        chunkCount++;
+    }
+
+    private void removeChunk(int chunk) {
+        System.arraycopy(chunks, chunk + 1, chunks, chunk, chunkCount - chunk - 1);
+        System.arraycopy(sizes, chunk + 1, sizes, chunk, chunkCount - chunk - 1);
+        chunkCount--;
+        chunks[chunkCount] = null;
+    }
+}
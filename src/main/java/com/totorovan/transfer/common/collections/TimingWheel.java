@@ -0,0 +1,179 @@
+package com.totorovan.transfer.common.collections;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Hierarchical timing wheel of {@code long} ids with millisecond deadlines.
+ * The first level has {@code wheelSize} buckets of one tick each, every further level is created on demand and has
+ * buckets spanning the whole previous level. Adding and releasing an id is O(1) regardless of how many ids are
+ * pending; ids of a far level move one level down when its bucket comes into range of the lower level.
+ * Deadlines are rounded up to the tick, so ids are never released early and at most one tick late
+ * (plus however late {@link #advance} is called). A bucket stores ids as pairs of primitives, 16 bytes per id.
+ * Deadlines near {@link Long#MAX_VALUE} saturate: they round down instead of overflowing and the last level, whose
+ * span would overflow, takes every deadline beyond the levels below it.
+ * Not thread safe.
+ */
+public class TimingWheel {
+    private static final int INITIAL_BUCKET_CAPACITY = 8;
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long interval;
+    private final long[][] buckets;
+    private final int[] bucketSizes;
+    private final TimingWheel root;
+    private TimingWheel overflow;
+    private long currentTime;
+    private int size;
+
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this(tickMillis, wheelSize, startMillis, null);
+    }
+
+    private TimingWheel(long tickMillis, int wheelSize, long startMillis, TimingWheel root) {
+        if (tickMillis <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("Tick must be positive and the wheel must have more than one bucket");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.interval = tickMillis > Long.MAX_VALUE / wheelSize ? Long.MAX_VALUE : tickMillis * wheelSize;
+        this.buckets = new long[wheelSize][];
+        this.bucketSizes = new int[wheelSize];
+        this.root = root == null ? this : root;
+        this.currentTime = startMillis - Math.floorMod(startMillis, tickMillis);
+    }
+
+    /**
+     * @return number of pending ids, only tracked by the first level
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * @return {@code false} if the deadline is already due, the id is not added and should be run right away
+     */
+    public boolean add(long id, long deadlineMillis) {
+        long deadline = roundUp(deadlineMillis);
+        if (deadline <= currentTime) {
+            return false;
+        }
+        insert(id, deadline);
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves the wheel to {@code nowMillis}, handing every id whose deadline passed to {@code expired},
+     * ids of the same tick are released together.
+     */
+    public void advance(long nowMillis, LongConsumer expired) {
+        while (currentTime + tickMillis <= nowMillis) {
+            currentTime += tickMillis;
+            if (overflow != null) {
+                overflow.cascade(currentTime);
+            }
+            int released = flush(currentTime, expired);
+            size -= released;
+        }
+    }
+
+    private long roundUp(long millis) {
+        long remainder = Math.floorMod(millis, tickMillis);
+        if (remainder == 0) {
+            return millis;
+        }
+        long roundedDown = millis - remainder;
+        return roundedDown > Long.MAX_VALUE - tickMillis ? roundedDown : roundedDown + tickMillis;
+    }
+
+    private void insert(long id, long deadline) {
+        if (interval == Long.MAX_VALUE || deadline - currentTime < interval) {
+            append((int) Math.floorMod(deadline / tickMillis, (long) wheelSize), deadline, id);
+        } else {
+            if (overflow == null) {
+                overflow = new TimingWheel(interval, wheelSize, currentTime, root);
+            }
+            overflow.insert(id, deadline);
+        }
+    }
+
+    private void append(int bucket, long deadline, long id) {
+        long[] entries = buckets[bucket];
+        int entrySize = bucketSizes[bucket];
+        if (entries == null) {
+            entries = buckets[bucket] = new long[INITIAL_BUCKET_CAPACITY];
+        } else if (entrySize + 2 > entries.length) {
+            long[] grown = new long[entries.length * 2];
+            System.arraycopy(entries, 0, grown, 0, entrySize);
+            entries = buckets[bucket] = grown;
+        }
+        entries[entrySize] = deadline;
+        entries[entrySize + 1] = id;
+        bucketSizes[bucket] = entrySize + 2;
+    }
+
+    /**
+     * Called with the time of the first level, hands the bucket starting now down to the lower levels.
+     */
+    private void cascade(long time) {
+        long aligned = time - Math.floorMod(time, tickMillis);
+        if (aligned == currentTime) {
+            return;
+        }
+        currentTime = aligned;
+        if (overflow != null) {
+            overflow.cascade(time);
+        }
+        int bucket = (int) Math.floorMod(currentTime / tickMillis, (long) wheelSize);
+        long[] entries = takeBucket(bucket);
+        int entrySize = entries == null ? 0 : entries.length;
+        for (int i = 0; i < entrySize; i += 2) {
+            root.insertFromOverflow(entries[i + 1], entries[i]);
+        }
+    }
+
+    private void insertFromOverflow(long id, long deadline) {
+        // the first level is at or past the start of the cascaded bucket, a deadline in the current tick is released by flush
+        if (deadline <= currentTime) {
+            append((int) Math.floorMod(currentTime / tickMillis, (long) wheelSize), deadline, id);
+        } else {
+            insert(id, deadline);
+        }
+    }
+
+    private int flush(long time, LongConsumer expired) {
+        int bucket = (int) Math.floorMod(time / tickMillis, (long) wheelSize);
+        long[] entries = takeBucket(bucket);
+        if (entries == null) {
+            return 0;
+        }
+        for (int i = 0; i < entries.length; i += 2) {
+            expired.accept(entries[i + 1]);
+        }
+        return entries.length / 2;
+    }
+
+    /**
+     * @return the entries of the bucket trimmed to their size, or {@code null} if it is empty
+     */
+    private long[] takeBucket(int bucket) {
+        int entrySize = bucketSizes[bucket];
+        if (entrySize == 0) {
+            return null;
+        }
+        long[] entries = buckets[bucket];
+        long[] taken = new long[entrySize];
+        System.arraycopy(entries, 0, taken, 0, entrySize);
+        bucketSizes[bucket] = 0;
+        // keep small arrays for reuse, let the ones grown by a burst go
+        if (entries.length > INITIAL_BUCKET_CAPACITY * 8) {
+            buckets[bucket] = null;
+        }
+        return taken;
+    }
+}
@@ -0,0 +1,93 @@
+package com.totorovan.transfer.engine;
+
+import akka.actor.ActorRef;
+import com.totorovan.transfer.account.Account;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.footprint.GetFootprint;
+import com.totorovan.transfer.trace.TransferTrace;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import com.totorovan.transfer.transaction.TransactionRecord;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+import static akka.pattern.PatternsCS.ask;
+
+/**
+ * Engine backed by {@link AccountService} and an actor per account.
+ */
+@RequiredArgsConstructor
+public class ActorTransferEngine implements TransferEngine {
+
+    private final ActorRef accountService;
+    private final Duration timeout;
+
+    @Override
+    public CompletionStage<Object> createAccount(AccountInfo accountInfo) {
+        return ask(accountService, accountInfo, timeout);
+    }
+
+    @Override
+    public CompletionStage<Object> getAccount(long id) {
+        return ask(accountService, new Account.GetAccount(id), timeout);
+    }
+
+    @Override
+    public CompletionStage<Object> deleteAccount(long id) {
+        return ask(accountService, new AccountService.DeleteAccount(id), timeout);
+    }
+
+    @Override
+    public CompletionStage<Object> getBalanceAt(long id, long at) {
+        return ask(accountService, new Account.GetBalanceAt(id, at), timeout);
+    }
+
+    @Override
+    public CompletionStage<Object> getAccountIds(Long after, int limit) {
+        return ask(accountService, new AccountService.GetAccountIds(after, limit), timeout);
+    }
+
+    @Override
+    public CompletionStage<Object> transfer(TransactionInfo transactionInfo) {
+        return transfer(transactionInfo, null);
+    }
+
+    @Override
+    public CompletionStage<Object> transfer(TransactionInfo transactionInfo, TransferTrace trace) {
+        return acceptedTransfer(transactionInfo, trace, timeout);
+    }
+
+    /**
+     * A failed multi-leg transfer withdraws, deposits, reverts the legs and refunds the source one after the other, so
+     * it gets the timeout of an account request for every step, and its reply tells the outcome of every leg.
+     */
+    @Override
+    public CompletionStage<Object> transfer(MultiLegTransactionInfo transactionInfo) {
+        return acceptedTransfer(transactionInfo, null, timeout.multipliedBy(4));
+    }
+
+    /**
+     * The caller registered the transfer already, so it goes as an {@link AccountService.AcceptedTransfer} which a full
+     * mailbox never drops. It must start within the timeout of an account request.
+     */
+    private CompletionStage<Object> acceptedTransfer(TransactionRecord transfer, TransferTrace trace, Duration askTimeout) {
+        return ask(accountService, new AccountService.AcceptedTransfer(transfer, trace, System.nanoTime() + timeout.toNanos()),
+                askTimeout);
+    }
+
+    @Override
+    public CompletionStage<Object> footprint() {
+        return ask(accountService, GetFootprint.INSTANCE, timeout);
+    }
+
+    /**
+     * A scan asks every account, so it gets the timeout of an account read for every account on top.
+     */
+    @Override
+    public CompletionStage<Object> reconcile() {
+        return ask(accountService, AccountService.Reconcile.INSTANCE, timeout.multipliedBy(2));
+    }
+}
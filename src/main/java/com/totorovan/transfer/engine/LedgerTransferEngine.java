@@ -0,0 +1,375 @@
+package com.totorovan.transfer.engine;
+
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.account.BalanceChanged;
+import com.totorovan.transfer.account.BalanceIndex;
+import com.totorovan.transfer.common.Amounts;
+import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.FailureCode;
+import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.common.collections.LongLongHashMap;
+import com.totorovan.transfer.common.collections.LongSortedSet;
+import com.totorovan.transfer.event.LedgerEvents;
+import com.totorovan.transfer.footprint.StoreFootprintDto;
+import com.totorovan.transfer.id.IdAllocator;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo.Leg;
+import com.totorovan.transfer.transaction.TransactionInfo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static com.totorovan.transfer.common.Amounts.toDecimal;
+import static com.totorovan.transfer.common.Amounts.toUnits;
+
+/**
+ * In-memory engine without any message passing.
+ * Balances are fixed-point longs (see {@link Amounts}) in primitive hash maps, partitioned over lock stripes.
+ * A transfer locks the stripes of both accounts in stripe order, so concurrent transfers can not deadlock
+ * and transfers between accounts of different stripes run in parallel.
+ * Account versions and incarnations are kept in further maps per stripe, guarded by the lock of the balance map,
+ * as are the entries of the accounts in the {@link BalanceIndex}. The sorted account ids have a lock of their own,
+ * taken inside the lock of a stripe.
+ */
+public class LedgerTransferEngine implements TransferEngine {
+
+    private final LongLongHashMap[] stripes;
+    private final LongLongHashMap[] versions;
+    private final LongLongHashMap[] incarnations;
+    private final LedgerEvents ledgerEvents;
+    private final BalanceIndex balanceIndex;
+    private final LongSortedSet accountIds = new LongSortedSet();
+
+    public LedgerTransferEngine(int stripes, LedgerEvents ledgerEvents) {
+        this(stripes, ledgerEvents, null);
+    }
+
+    /**
+     * @param balanceIndex kept up to date with every balance, {@code null} to keep no index
+     */
+    public LedgerTransferEngine(int stripes, LedgerEvents ledgerEvents, BalanceIndex balanceIndex) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Number of stripes must be a power of two, but was " + stripes);
+        }
+        this.stripes = new LongLongHashMap[stripes];
+        this.versions = new LongLongHashMap[stripes];
+        this.incarnations = new LongLongHashMap[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new LongLongHashMap();
+            this.versions[i] = new LongLongHashMap();
+            this.incarnations[i] = new LongLongHashMap();
+        }
+        this.ledgerEvents = ledgerEvents;
+        this.balanceIndex = balanceIndex;
+    }
+
+    private static CompletionStage<Object> reply(Object response) {
+        return CompletableFuture.completedFuture(response);
+    }
+
+    private static Failure accountNotFound(long id) {
+        return new Failure(FailureCode.ACCOUNT_NOT_FOUND, id);
+    }
+
+    /**
+     * The stripe of a server-assigned id is the shard it was allocated for.
+     */
+    private int stripeIndex(long id) {
+        return IdAllocator.shardOf(id, stripes.length);
+    }
+
+    /**
+     * Must be called holding the lock of the stripe.
+     */
+    private void putBalance(int stripeIndex, long id, long balance) {
+        if (balanceIndex != null) {
+            balanceIndex.moved(id, stripes[stripeIndex].get(id, 0L), balance);
+        }
+        stripes[stripeIndex].put(id, balance);
+        versions[stripeIndex].put(id, versions[stripeIndex].get(id, 0L) + 1);
+    }
+
+    @Override
+    public CompletionStage<Object> createAccount(AccountInfo accountInfo) {
+        long id = accountInfo.getId();
+        long balance;
+        try {
+            balance = toUnits(accountInfo.getBalance());
+        } catch (ArithmeticException e) {
+            return reply(Amounts.unsupportedAmount(accountInfo.getBalance()));
+        }
+        int stripeIndex = stripeIndex(id);
+        LongLongHashMap stripe = stripes[stripeIndex];
+        boolean created;
+        synchronized (stripe) {
+            created = stripe.putIfAbsent(id, balance);
+            if (created) {
+                versions[stripeIndex].put(id, AccountInfo.INITIAL_VERSION);
+                incarnations[stripeIndex].put(id, AccountInfo.newIncarnation());
+                if (balanceIndex != null) {
+                    balanceIndex.added(id, balance);
+                }
+                synchronized (accountIds) {
+                    accountIds.add(id);
+                }
+            }
+        }
+        return reply(created ? Success.INSTANCE : new Failure(FailureCode.ACCOUNT_ALREADY_EXISTS, id));
+    }
+
+    @Override
+    public CompletionStage<Object> getAccount(long id) {
+        int stripeIndex = stripeIndex(id);
+        LongLongHashMap stripe = stripes[stripeIndex];
+        boolean exists;
+        long balance;
+        long version;
+        long incarnation;
+        synchronized (stripe) {
+            exists = stripe.containsKey(id);
+            balance = stripe.get(id, 0L);
+            version = versions[stripeIndex].get(id, 0L);
+            incarnation = incarnations[stripeIndex].get(id, 0L);
+        }
+        return reply(exists ? new AccountInfo(id, toDecimal(balance), version, incarnation) : accountNotFound(id));
+    }
+
+    @Override
+    public CompletionStage<Object> deleteAccount(long id) {
+        int stripeIndex = stripeIndex(id);
+        LongLongHashMap stripe = stripes[stripeIndex];
+        boolean deleted;
+        synchronized (stripe) {
+            long balance = stripe.get(id, 0L);
+            deleted = stripe.remove(id);
+            versions[stripeIndex].remove(id);
+            incarnations[stripeIndex].remove(id);
+            if (deleted) {
+                if (balanceIndex != null) {
+                    balanceIndex.removed(id, balance);
+                }
+                synchronized (accountIds) {
+                    accountIds.remove(id);
+                }
+            }
+        }
+        return reply(deleted ? Success.INSTANCE : accountNotFound(id));
+    }
+
+    @Override
+    public CompletionStage<Object> getAccountIds(Long after, int limit) {
+        synchronized (accountIds) {
+            return reply(after == null ? accountIds.first(limit) : accountIds.higher(after, limit));
+        }
+    }
+
+    /**
+     * Locks one stripe at a time, so the count may be off by the accounts created or deleted meanwhile.
+     */
+    @Override
+    public CompletionStage<Object> footprint() {
+        long accounts = 0;
+        long bytes = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (stripes[i]) {
+                accounts += stripes[i].size();
+                bytes += stripes[i].memoryBytes() + versions[i].memoryBytes() + incarnations[i].memoryBytes();
+            }
+        }
+        synchronized (accountIds) {
+            bytes += accountIds.memoryBytes();
+        }
+        return reply(Collections.singletonList(StoreFootprintDto.of("accounts", accounts, bytes)));
+    }
+
+    @Override
+    public CompletionStage<Object> transfer(TransactionInfo transactionInfo) {
+        long amount;
+        try {
+            amount = toUnits(transactionInfo.getAmount());
+        } catch (ArithmeticException e) {
+            return reply(Amounts.unsupportedAmount(transactionInfo.getAmount()));
+        }
+        long srcId = transactionInfo.getSrcAccountId();
+        long targetId = transactionInfo.getTargetAccountId();
+        int srcStripe = stripeIndex(srcId);
+        int targetStripe = stripeIndex(targetId);
+        LongLongHashMap first = stripes[Math.min(srcStripe, targetStripe)];
+        LongLongHashMap second = stripes[Math.max(srcStripe, targetStripe)];
+        Transfer transfer = new Transfer(srcId, targetId, amount, transactionInfo.getExpectedSrcVersion(),
+                transactionInfo.getExpectedSrcIncarnation());
+        synchronized (first) {
+            synchronized (second) {
+                transfer.apply(srcStripe, targetStripe);
+            }
+        }
+        if (transfer.failure != null) {
+            return reply(transfer.failure);
+        }
+        ledgerEvents.publish(new BalanceChanged(srcId, -amount, transfer.srcBalance, BalanceChanged.WITHDRAW), srcId);
+        ledgerEvents.publish(new BalanceChanged(targetId, amount, transfer.targetBalance, BalanceChanged.DEPOSIT), targetId);
+        return reply(Success.INSTANCE);
+    }
+
+    @Override
+    public CompletionStage<Object> transfer(MultiLegTransactionInfo transactionInfo) {
+        List<Leg> legs = transactionInfo.getLegs();
+        long[] amounts = new long[legs.size()];
+        long total = 0;
+        try {
+            for (int i = 0; i < amounts.length; i++) {
+                amounts[i] = toUnits(legs.get(i).getAmount());
+                total = Math.addExact(total, amounts[i]);
+            }
+        } catch (ArithmeticException e) {
+            return reply(Amounts.unsupportedAmount(transactionInfo.getTotalAmount()));
+        }
+        long[] accountIds = transactionInfo.accountIds();
+        int[] stripeIndexes = new int[accountIds.length];
+        for (int i = 0; i < accountIds.length; i++) {
+            stripeIndexes[i] = stripeIndex(accountIds[i]);
+        }
+        MultiLegTransfer transfer = new MultiLegTransfer(accountIds, stripeIndexes, amounts, total);
+        inStripes(Arrays.stream(stripeIndexes).sorted().distinct().toArray(), 0, transfer);
+        if (transfer.failure != null) {
+            return reply(transfer.failure);
+        }
+        long srcId = transactionInfo.getSrcAccountId();
+        ledgerEvents.publish(new BalanceChanged(srcId, -total, transfer.balances[0], BalanceChanged.WITHDRAW), srcId);
+        for (int i = 0; i < amounts.length; i++) {
+            long targetId = accountIds[i + 1];
+            ledgerEvents.publish(new BalanceChanged(targetId, amounts[i], transfer.balances[i + 1], BalanceChanged.DEPOSIT), targetId);
+        }
+        return reply(Success.INSTANCE);
+    }
+
+    /**
+     * Runs the action holding the locks of all given stripes, taken in the given (ascending) order.
+     */
+    private void inStripes(int[] sortedStripeIndexes, int from, Runnable action) {
+        if (from == sortedStripeIndexes.length) {
+            action.run();
+            return;
+        }
+        synchronized (stripes[sortedStripeIndexes[from]]) {
+            inStripes(sortedStripeIndexes, from + 1, action);
+        }
+    }
+
+    private class MultiLegTransfer implements Runnable {
+        private final long[] accountIds;
+        private final int[] stripeIndexes;
+        private final long[] amounts;
+        private final long total;
+        private final long[] balances;
+        private Failure failure;
+
+        MultiLegTransfer(long[] accountIds, int[] stripeIndexes, long[] amounts, long total) {
+            this.accountIds = accountIds;
+            this.stripeIndexes = stripeIndexes;
+            this.amounts = amounts;
+            this.total = total;
+            this.balances = new long[accountIds.length];
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < accountIds.length; i++) {
+                if (!stripes[stripeIndexes[i]].containsKey(accountIds[i])) {
+                    failure = accountNotFound(accountIds[i]);
+                    return;
+                }
+            }
+            LongLongHashMap srcStripe = stripes[stripeIndexes[0]];
+            long srcBalance = srcStripe.get(accountIds[0], 0L);
+            if (total > srcBalance) {
+                failure = new Failure(FailureCode.INSUFFICIENT_BALANCE, total, accountIds[0], srcBalance);
+                return;
+            }
+            putBalance(stripeIndexes[0], accountIds[0], srcBalance - total);
+            for (int i = 1; i < accountIds.length; i++) {
+                long targetBalance = stripes[stripeIndexes[i]].get(accountIds[i], 0L);
+                if (targetBalance > Long.MAX_VALUE - amounts[i - 1]) {
+                    revert(i);
+                    failure = new Failure(FailureCode.BALANCE_OVERFLOW, accountIds[i]);
+                    return;
+                }
+                putBalance(stripeIndexes[i], accountIds[i], targetBalance + amounts[i - 1]);
+            }
+            for (int i = 0; i < accountIds.length; i++) {
+                balances[i] = stripes[stripeIndexes[i]].get(accountIds[i], 0L);
+            }
+        }
+
+        /**
+         * Restores the balances, versions only ever grow so they stay increased.
+         */
+        private void revert(int appliedLegs) {
+            for (int i = 1; i < appliedLegs; i++) {
+                putBalance(stripeIndexes[i], accountIds[i], stripes[stripeIndexes[i]].get(accountIds[i], 0L) - amounts[i - 1]);
+            }
+            putBalance(stripeIndexes[0], accountIds[0], stripes[stripeIndexes[0]].get(accountIds[0], 0L) + total);
+        }
+    }
+
+    private class Transfer {
+        private final long srcId;
+        private final long targetId;
+        private final long amount;
+        private final long expectedSrcVersion;
+        private final long expectedSrcIncarnation;
+        private long srcBalance;
+        private long targetBalance;
+        private Failure failure;
+
+        Transfer(long srcId, long targetId, long amount, long expectedSrcVersion, long expectedSrcIncarnation) {
+            this.srcId = srcId;
+            this.targetId = targetId;
+            this.amount = amount;
+            this.expectedSrcVersion = expectedSrcVersion;
+            this.expectedSrcIncarnation = expectedSrcIncarnation;
+        }
+
+        /**
+         * Must be called holding the locks of both stripes.
+         */
+        void apply(int srcStripeIndex, int targetStripeIndex) {
+            LongLongHashMap srcStripe = stripes[srcStripeIndex];
+            LongLongHashMap targetStripe = stripes[targetStripeIndex];
+            if (!srcStripe.containsKey(srcId)) {
+                failure = accountNotFound(srcId);
+                return;
+            }
+            if (!targetStripe.containsKey(targetId)) {
+                failure = accountNotFound(targetId);
+                return;
+            }
+            long srcVersion = versions[srcStripeIndex].get(srcId, 0L);
+            long srcIncarnation = incarnations[srcStripeIndex].get(srcId, 0L);
+            if (expectedSrcVersion != TransactionInfo.ANY_VERSION && (expectedSrcVersion != srcVersion
+                    || expectedSrcIncarnation != AccountInfo.ANY_INCARNATION && expectedSrcIncarnation != srcIncarnation)) {
+                failure = new Failure(FailureCode.VERSION_MISMATCH, srcId, expectedSrcVersion, srcVersion);
+                return;
+            }
+            long balance = srcStripe.get(srcId, 0L);
+            if (amount > balance) {
+                failure = new Failure(FailureCode.INSUFFICIENT_BALANCE, amount, srcId, balance);
+                return;
+            }
+            long newTargetBalance;
+            try {
+                newTargetBalance = Math.addExact(targetStripe.get(targetId, 0L), amount);
+            } catch (ArithmeticException e) {
+                failure = new Failure(FailureCode.BALANCE_OVERFLOW, targetId);
+                return;
+            }
+            srcBalance = balance - amount;
+            putBalance(srcStripeIndex, srcId, srcBalance);
+            targetBalance = srcId == targetId ? balance : newTargetBalance;
+            putBalance(targetStripeIndex, targetId, targetBalance);
+        }
+    }
+}
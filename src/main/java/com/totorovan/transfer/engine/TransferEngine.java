@@ -0,0 +1,75 @@
+package com.totorovan.transfer.engine;
+
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.trace.TransferTrace;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo;
+import com.totorovan.transfer.transaction.TransactionInfo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Owns account balances and moves money between accounts.
+ * Replies use the same protocol as the account actors: {@link com.totorovan.transfer.common.Messages.Success},
+ * {@link com.totorovan.transfer.common.Messages.Failure} or {@link AccountInfo}.
+ */
+public interface TransferEngine {
+
+    CompletionStage<Object> createAccount(AccountInfo accountInfo);
+
+    CompletionStage<Object> getAccount(long id);
+
+    CompletionStage<Object> deleteAccount(long id);
+
+    /**
+     * Replies with a {@link com.totorovan.transfer.account.BalanceAtDto} of the balance the account had at
+     * {@code at} in epoch millis, or a failure if it had none then or the engine keeps no balance history.
+     */
+    default CompletionStage<Object> getBalanceAt(long id, long at) {
+        return CompletableFuture.completedFuture(new Failure("Balance history is not supported by this engine"));
+    }
+
+    /**
+     * Pages through the account ids in ascending order, replies with up to {@code limit} ids greater than
+     * {@code after} as a {@code long[]}, or a failure if the engine does not list accounts.
+     *
+     * @param after last id of the previous page, {@code null} for the first page
+     */
+    default CompletionStage<Object> getAccountIds(Long after, int limit) {
+        return CompletableFuture.completedFuture(new Failure("Listing accounts is not supported by this engine"));
+    }
+
+    CompletionStage<Object> transfer(TransactionInfo transactionInfo);
+
+    /**
+     * Transfer stamping the stages of {@code trace} the engine goes through, engines without stages just transfer.
+     */
+    default CompletionStage<Object> transfer(TransactionInfo transactionInfo, TransferTrace trace) {
+        return transfer(transactionInfo);
+    }
+
+    /**
+     * Withdraws the total amount from the source account once and deposits every leg, either all legs succeed or
+     * none of them should leave a trace on the balances. A {@link Failure} means no leg was credited, a transfer which
+     * failed after crediting legs replies with a {@link com.totorovan.transfer.transaction.MultiLegTransactionInfo.LegsFailed}
+     * telling which legs were taken back.
+     */
+    CompletionStage<Object> transfer(MultiLegTransactionInfo transactionInfo);
+
+    /**
+     * Replies with a {@code List<StoreFootprintDto>} of the account stores of the engine, or a failure if the engine
+     * does not report its footprint.
+     */
+    default CompletionStage<Object> footprint() {
+        return CompletableFuture.completedFuture(new Failure("Footprint is not supported by this engine"));
+    }
+
+    /**
+     * Scans the balances of all accounts against the money issued to them, replies with a
+     * {@link com.totorovan.transfer.reconcile.ScanDto} or a failure if the engine does not reconcile.
+     */
+    default CompletionStage<Object> reconcile() {
+        return CompletableFuture.completedFuture(new Failure("Reconciliation is not supported by this engine"));
+    }
+}
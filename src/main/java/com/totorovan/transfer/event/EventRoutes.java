@@ -0,0 +1,66 @@
+package com.totorovan.transfer.event;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.http.javadsl.marshalling.sse.EventStreamMarshalling;
+import akka.http.javadsl.model.sse.ServerSentEvent;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.PathMatchers;
+import akka.http.javadsl.server.Route;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.Source;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+/**
+ * Server-Sent Events feeds of {@link LedgerEvents}.
+ * Every subscriber gets its own bounded buffer which drops the oldest events when the client does not keep up.
+ */
+public class EventRoutes extends AllDirectives {
+
+    private static final Duration KEEP_ALIVE = Duration.ofSeconds(15);
+
+    private final LedgerEvents ledgerEvents;
+    private final int bufferSize;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public EventRoutes(ActorSystem system, int bufferSize) {
+        this.ledgerEvents = LedgerEvents.get(system);
+        this.bufferSize = bufferSize;
+    }
+
+    public Route routes() {
+        return route(
+                path("events", () -> get(() -> events(LedgerEvents.FIREHOSE))),
+                pathPrefix("accounts", () ->
+                        path(PathMatchers.longSegment().slash("events"), id -> get(() -> events(id)))
+                )
+        );
+    }
+
+    private Route events(Object topic) {
+        return completeOK(source(topic), EventStreamMarshalling.toEventStream());
+    }
+
+    Source<ServerSentEvent, NotUsed> source(Object topic) {
+        return Source.actorRef(bufferSize, OverflowStrategy.dropHead())
+                .watchTermination((subscriber, termination) -> {
+                    ledgerEvents.subscribe(subscriber, topic);
+                    termination.thenRun(() -> ledgerEvents.unsubscribe(subscriber));
+                    return NotUsed.getInstance();
+                })
+                .map(this::toServerSentEvent)
+                .keepAlive(KEEP_ALIVE, ServerSentEvent::heartbeat);
+    }
+
+    private ServerSentEvent toServerSentEvent(Object event) {
+        try {
+            return ServerSentEvent.create(objectMapper.writeValueAsString(event), event.getClass().getSimpleName());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
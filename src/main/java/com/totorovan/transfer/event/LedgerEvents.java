@@ -0,0 +1,113 @@
+package com.totorovan.transfer.event;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+import akka.event.japi.LookupEventBus;
+import lombok.Value;
+
+import java.util.Arrays;
+
+/**
+ * Actor system wide bus of ledger events (balance and transaction status changes).
+ * Every event is delivered to subscribers of the accounts it touches and to the firehose subscribers.
+ * Publishing is a plain {@code tell}, so a slow subscriber never backpressures the publishing actor.
+ */
+public class LedgerEvents implements Extension {
+
+    public static final Object FIREHOSE = new Object();
+
+    private static final Id ID = new Id();
+
+    private final Bus bus = new Bus();
+
+    private LedgerEvents() {
+    }
+
+    public static LedgerEvents get(ActorSystem system) {
+        return ID.get(system);
+    }
+
+    public void publish(Object event, long accountId) {
+        bus.publish(new Envelope(accountId, event));
+        bus.publish(new Envelope(FIREHOSE, event));
+    }
+
+    public void publish(Object event, long srcAccountId, long targetAccountId) {
+        bus.publish(new Envelope(srcAccountId, event));
+        if (targetAccountId != srcAccountId) {
+            bus.publish(new Envelope(targetAccountId, event));
+        }
+        bus.publish(new Envelope(FIREHOSE, event));
+    }
+
+    /**
+     * @param accountIds ids of the touched accounts, duplicates are delivered once
+     */
+    public void publish(Object event, long[] accountIds) {
+        long[] topics = accountIds.clone();
+        Arrays.sort(topics);
+        for (int i = 0; i < topics.length; i++) {
+            if (i == 0 || topics[i] != topics[i - 1]) {
+                bus.publish(new Envelope(topics[i], event));
+            }
+        }
+        bus.publish(new Envelope(FIREHOSE, event));
+    }
+
+    /**
+     * @param topic account id or {@link #FIREHOSE}
+     */
+    public void subscribe(ActorRef subscriber, Object topic) {
+        bus.subscribe(subscriber, topic);
+    }
+
+    public void unsubscribe(ActorRef subscriber) {
+        bus.unsubscribe(subscriber);
+    }
+
+    @Value
+    private static class Envelope {
+        private final Object topic;
+        private final Object event;
+    }
+
+    private static class Bus extends LookupEventBus<Envelope, ActorRef, Object> {
+
+        @Override
+        public int mapSize() {
+            return 1024;
+        }
+
+        @Override
+        public int compareSubscribers(ActorRef a, ActorRef b) {
+            return a.compareTo(b);
+        }
+
+        @Override
+        public Object classify(Envelope envelope) {
+            return envelope.getTopic();
+        }
+
+        @Override
+        public void publish(Envelope envelope, ActorRef subscriber) {
+            subscriber.tell(envelope.getEvent(), ActorRef.noSender());
+        }
+    }
+
+    private static class Id extends AbstractExtensionId<LedgerEvents> implements ExtensionIdProvider {
+
+        @Override
+        public LedgerEvents createExtension(ExtendedActorSystem system) {
+            return new LedgerEvents();
+        }
+
+        @Override
+        public Id lookup() {
+            return ID;
+        }
+    }
+}
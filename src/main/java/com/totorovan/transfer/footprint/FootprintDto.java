@@ -0,0 +1,20 @@
+package com.totorovan.transfer.footprint;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Estimated heap of every store next to the heap the JVM actually uses, which also holds garbage not yet collected.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FootprintDto {
+    private List<StoreFootprintDto> stores;
+    private long estimatedBytes;
+    private long heapUsedBytes;
+    private long heapMaxBytes;
+}
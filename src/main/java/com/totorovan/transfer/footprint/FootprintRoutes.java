@@ -0,0 +1,63 @@
+package com.totorovan.transfer.footprint;
+
+import akka.actor.ActorRef;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Route;
+import com.totorovan.transfer.account.BalanceIndex;
+import com.totorovan.transfer.common.Codecs;
+import com.totorovan.transfer.engine.TransferEngine;
+import lombok.RequiredArgsConstructor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import static akka.pattern.PatternsCS.ask;
+
+/**
+ * Live entity counts and their estimated heap per store, next to the heap the JVM uses.
+ * The estimates count the tables of the stores exactly and the actors by a size measured with the capacity suite.
+ */
+@RequiredArgsConstructor
+public class FootprintRoutes extends AllDirectives {
+
+    private final TransferEngine transferEngine;
+    private final ActorRef transactionService;
+    private final Duration timeout;
+    private final BalanceIndex balanceIndex;
+
+    public Route routes() {
+        return pathPrefix("debug", () ->
+                path("footprint", () ->
+                        get(() -> onSuccess(this::footprint, footprint -> complete(StatusCodes.OK, footprint, Codecs.marshaller())))
+                )
+        );
+    }
+
+    private CompletionStage<FootprintDto> footprint() {
+        return transferEngine.footprint()
+                .thenCombine(ask(transactionService, GetFootprint.INSTANCE, timeout), (accounts, transactions) -> {
+                    List<StoreFootprintDto> stores = new ArrayList<>();
+                    stores.addAll(footprints(accounts));
+                    stores.addAll(footprints(transactions));
+                    stores.add(StoreFootprintDto.of("balanceIndex", balanceIndex.size(),
+                            (long) balanceIndex.size() * BalanceIndex.ENTRY_BYTES));
+                    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+                    long estimatedBytes = stores.stream().mapToLong(StoreFootprintDto::getBytes).sum();
+                    return new FootprintDto(stores, estimatedBytes, heap.getUsed(), heap.getMax());
+                });
+    }
+
+    /**
+     * @return the footprints of a reply, none if the engine does not report them
+     */
+    @SuppressWarnings("unchecked")
+    private static List<StoreFootprintDto> footprints(Object reply) {
+        return reply instanceof List ? (List<StoreFootprintDto>) reply : Collections.emptyList();
+    }
+}
@@ -0,0 +1,15 @@
+package com.totorovan.transfer.footprint;
+
+import com.totorovan.transfer.common.Messages.Urgent;
+
+import java.io.Serializable;
+
+/**
+ * Asks a service for the footprint of the entities it owns, answered with a {@code List<StoreFootprintDto>}.
+ */
+public class GetFootprint implements Serializable, Urgent {
+    public static final GetFootprint INSTANCE = new GetFootprint();
+
+    private GetFootprint() {
+    }
+}
@@ -0,0 +1,22 @@
+package com.totorovan.transfer.footprint;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Live entities of one store and the heap they are estimated to take.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StoreFootprintDto {
+    private String store;
+    private long entities;
+    private long bytes;
+    private long bytesPerEntity;
+
+    public static StoreFootprintDto of(String store, long entities, long bytes) {
+        return new StoreFootprintDto(store, entities, bytes, entities == 0 ? 0 : bytes / entities);
+    }
+}
@@ -0,0 +1,197 @@
+package com.totorovan.transfer.history;
+
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Append-only history of the balances of one account as (timestamp in millis, balance in units) checkpoints.
+ * Checkpoints are cut into segments of up to {@value #SEGMENT_BYTES} bytes. The first checkpoint of a segment is
+ * kept in primitive arrays, the following ones are varint deltas to the one before, typically 3 to 6 bytes each.
+ * A query finds the segment by a binary search over the first timestamps and replays at most one segment.
+ * With a {@link HistorySpill} sealed segments beyond its in-memory budget are moved to its file, oldest first.
+ * Not thread-safe, owned by the account.
+ */
+public class BalanceHistory {
+    static final int SEGMENT_BYTES = 1024;
+    // two varints of up to 10 bytes
+    private static final int MAX_CHECKPOINT_BYTES = 2 * 10;
+    private static final int INITIAL_SEGMENT_BYTES = 32;
+    private static final int INITIAL_SEGMENTS = 1;
+
+    private final HistorySpill spill;
+    private long[] firstTimestamps = new long[INITIAL_SEGMENTS];
+    private long[] firstBalances = new long[INITIAL_SEGMENTS];
+    private byte[][] segments = new byte[INITIAL_SEGMENTS][];
+    private int[] lengths = new int[INITIAL_SEGMENTS];
+    private long[] spillOffsets = new long[INITIAL_SEGMENTS];
+    private int segmentCount;
+    private int firstInMemory;
+    private long lastTimestamp;
+    private long lastBalance;
+    private long checkpoints;
+    private long memoryBytes;
+
+    /**
+     * @param spill takes sealed segments beyond its budget, {@code null} to keep all segments in memory
+     */
+    public BalanceHistory(HistorySpill spill) {
+        this.spill = spill;
+    }
+
+    public BalanceHistory() {
+        this(null);
+    }
+
+    /**
+     * Timestamps going back, e.g. after a clock adjustment, are recorded as the last timestamp.
+     */
+    public void append(long timestamp, long balance) {
+        timestamp = Math.max(timestamp, lastTimestamp);
+        if (segmentCount == 0 || lengths[segmentCount - 1] > SEGMENT_BYTES - MAX_CHECKPOINT_BYTES) {
+            startSegment(timestamp, balance);
+        } else {
+            int segment = segmentCount - 1;
+            byte[] bytes = segments[segment];
+            if (bytes.length - lengths[segment] < MAX_CHECKPOINT_BYTES) {
+                int grown = Math.min(bytes.length * 2, SEGMENT_BYTES);
+                memoryBytes += grown - bytes.length;
+                bytes = segments[segment] = Arrays.copyOf(bytes, grown);
+            }
+            int length = writeVarLong(bytes, lengths[segment], timestamp - lastTimestamp);
+            lengths[segment] = writeVarLong(bytes, length, zigZag(balance - lastBalance));
+        }
+        lastTimestamp = timestamp;
+        lastBalance = balance;
+        checkpoints++;
+    }
+
+    /**
+     * @return balance in units of the last checkpoint at or before {@code timestamp}, {@code null} if there is none
+     * @throws UncheckedIOException if a spilled segment can not be read
+     */
+    public Long balanceAt(long timestamp) {
+        if (segmentCount == 0 || timestamp < firstTimestamps[0]) {
+            return null;
+        }
+        if (timestamp >= lastTimestamp) {
+            return lastBalance;
+        }
+        int segment = segmentAt(timestamp);
+        byte[] bytes = segment < firstInMemory ? spill.read(spillOffsets[segment], lengths[segment]) : segments[segment];
+        long balance = firstBalances[segment];
+        long checkpointTimestamp = firstTimestamps[segment];
+        int position = 0;
+        long[] value = new long[1];
+        while (position < lengths[segment]) {
+            position = readVarLong(bytes, position, value);
+            checkpointTimestamp += value[0];
+            if (checkpointTimestamp > timestamp) {
+                break;
+            }
+            position = readVarLong(bytes, position, value);
+            balance += unZigZag(value[0]);
+        }
+        return balance;
+    }
+
+    public long checkpoints() {
+        return checkpoints;
+    }
+
+    public int segments() {
+        return segmentCount;
+    }
+
+    /**
+     * @return bytes of the checkpoints kept in memory, including the first checkpoints of all segments, kept up to
+     * date with every change so reading it is cheap
+     */
+    public long memoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return last segment starting at or before the timestamp
+     */
+    private int segmentAt(long timestamp) {
+        int low = 1;
+        int high = segmentCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (firstTimestamps[middle] <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    private void startSegment(long timestamp, long balance) {
+        if (segmentCount == firstTimestamps.length) {
+            int capacity = segmentCount * 2;
+            firstTimestamps = Arrays.copyOf(firstTimestamps, capacity);
+            firstBalances = Arrays.copyOf(firstBalances, capacity);
+            segments = Arrays.copyOf(segments, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            spillOffsets = Arrays.copyOf(spillOffsets, capacity);
+        }
+        if (segmentCount > 0) {
+            // the sealed segment never grows again
+            memoryBytes += lengths[segmentCount - 1] - segments[segmentCount - 1].length;
+            segments[segmentCount - 1] = Arrays.copyOf(segments[segmentCount - 1], lengths[segmentCount - 1]);
+        }
+        firstTimestamps[segmentCount] = timestamp;
+        firstBalances[segmentCount] = balance;
+        segments[segmentCount] = new byte[INITIAL_SEGMENT_BYTES];
+        segmentCount++;
+        memoryBytes += 8 + 8 + 4 + 8 + 8 + INITIAL_SEGMENT_BYTES;
+        if (spill != null) {
+            try {
+                while (segmentCount - 1 - firstInMemory > spill.getMemorySegments()) {
+                    spillOffsets[firstInMemory] = spill.write(segments[firstInMemory]);
+                    memoryBytes -= segments[firstInMemory].length;
+                    segments[firstInMemory++] = null;
+                }
+            } catch (UncheckedIOException e) {
+                // kept in memory and spilled with the next segment
+            }
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @return position after the value
+     */
+    private static int writeVarLong(byte[] bytes, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * @return position after the value, which is put into {@code value[0]}
+     */
+    private static int readVarLong(byte[] bytes, int position, long[] value) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position++];
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        value[0] = result;
+        return position;
+    }
+}
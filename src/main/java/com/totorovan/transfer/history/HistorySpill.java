@@ -0,0 +1,76 @@
+package com.totorovan.transfer.history;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File shared by the {@link BalanceHistory} of all accounts for their sealed segments, which are appended as they
+ * are and read back by offset. The file is only valid while it is open, a new one is started on every open.
+ */
+public class HistorySpill implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final int memorySegments;
+    private long size;
+
+    private HistorySpill(FileChannel channel, int memorySegments) {
+        this.channel = channel;
+        this.memorySegments = memorySegments;
+    }
+
+    /**
+     * @param memorySegments sealed segments every history keeps in memory before it spills the oldest
+     */
+    public static HistorySpill open(Path path, int memorySegments) throws IOException {
+        return new HistorySpill(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE), memorySegments);
+    }
+
+    public int getMemorySegments() {
+        return memorySegments;
+    }
+
+    /**
+     * @return offset of the segment in the file
+     */
+    synchronized long write(byte[] segment) {
+        long offset = size;
+        ByteBuffer buffer = ByteBuffer.wrap(segment);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        size += segment.length;
+        return offset;
+    }
+
+    byte[] read(long offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Spilled segment at " + offset + " is truncated");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.array();
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,169 @@
+package com.totorovan.transfer.id;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands out unique positive ids from blocks of sequence numbers, one block per shard at a time.
+ * An id is its sequence number shifted left by the shard bits with the shard in the low bits, so
+ * {@link #shardOf(long, int)} routes an id without a lookup. Taking an id is a single increment on the block of its
+ * shard, a shard only competes with the others for the next block once its block is used up.
+ * <p>
+ * With a reservation file the allocator writes the next unreserved block before it hands out ids of a block beyond
+ * the reservation, {@code reserveBlocks} blocks at a time. After a crash it starts at the reservation, skipping the
+ * ids which were reserved but not handed out, but never handing out an id twice.
+ */
+public class IdAllocator {
+    private static final String NEXT_BLOCK = "nextBlock";
+
+    private final int shardBits;
+    private final int blockSize;
+    private final int reserveBlocks;
+    private final Path path;
+    private final AtomicLong nextBlock;
+    private final AtomicReferenceArray<Block> blocks;
+    private volatile long reservedBlocks;
+
+    private IdAllocator(int shards, int blockSize, Path path, int reserveBlocks, long firstBlock) {
+        if (shards <= 0 || Integer.bitCount(shards) != 1) {
+            throw new IllegalArgumentException("Number of shards must be a power of two, but was " + shards);
+        }
+        if (blockSize <= 0 || reserveBlocks <= 0) {
+            throw new IllegalArgumentException("Block size and reserved blocks must be positive");
+        }
+        this.shardBits = Integer.numberOfTrailingZeros(shards);
+        this.blockSize = blockSize;
+        this.reserveBlocks = reserveBlocks;
+        this.path = path;
+        this.nextBlock = new AtomicLong(firstBlock);
+        this.reservedBlocks = path == null ? Long.MAX_VALUE : firstBlock;
+        this.blocks = new AtomicReferenceArray<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            blocks.set(shard, Block.EMPTY);
+        }
+    }
+
+    /**
+     * Ids are not kept across restarts, so they only stay unique while nothing handed out is stored.
+     */
+    public static IdAllocator inMemory(int shards, int blockSize) {
+        // block 0 would hand out id 0, which stands for no id
+        return new IdAllocator(shards, blockSize, null, 1, 1);
+    }
+
+    /**
+     * @param path          reservation file, created if it does not exist
+     * @param reserveBlocks blocks reserved with every write of the file
+     */
+    public static IdAllocator open(Path path, int shards, int blockSize, int reserveBlocks) throws IOException {
+        long firstBlock = 1;
+        if (Files.exists(path)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            firstBlock = Long.parseLong(properties.getProperty(NEXT_BLOCK));
+        }
+        return new IdAllocator(shards, blockSize, path, reserveBlocks, firstBlock);
+    }
+
+    /**
+     * Skips the blocks up to {@code id}, so ids taken without the allocator, like the ones stored before ids were
+     * server-assigned, are not handed out. Must be called before any id is handed out.
+     */
+    public void startAbove(long id) {
+        long block = (id >>> shardBits) / blockSize + 1;
+        nextBlock.accumulateAndGet(block, Math::max);
+    }
+
+    /**
+     * @return shard of an id handed out by an allocator with {@code shards} shards
+     */
+    public static int shardOf(long id, int shards) {
+        return (int) id & (shards - 1);
+    }
+
+    public int shards() {
+        return blocks.length();
+    }
+
+    /**
+     * @return a new id of a random shard
+     * @throws UncheckedIOException if the next block can not be reserved
+     */
+    public long next() {
+        return next(ThreadLocalRandom.current().nextInt(blocks.length()));
+    }
+
+    /**
+     * @return a new id of the shard
+     * @throws UncheckedIOException if the next block can not be reserved
+     */
+    public long next(int shard) {
+        while (true) {
+            Block block = blocks.get(shard);
+            long sequence = block.next.getAndIncrement();
+            if (sequence < block.end) {
+                return sequence << shardBits | shard;
+            }
+            long number = nextBlock.getAndIncrement();
+            reserve(number);
+            // a block lost to a concurrent replacement leaves a gap in the ids
+            blocks.compareAndSet(shard, block, new Block(number * blockSize, blockSize));
+        }
+    }
+
+    private void reserve(long block) {
+        if (block < reservedBlocks) {
+            return;
+        }
+        synchronized (this) {
+            if (block < reservedBlocks) {
+                return;
+            }
+            long reserved = block + reserveBlocks;
+            Properties properties = new Properties();
+            properties.setProperty(NEXT_BLOCK, Long.toString(reserved));
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try {
+                StringWriter writer = new StringWriter();
+                properties.store(writer, null);
+                // forced before the move, so the reservation is on disk before any of its ids is handed out
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    channel.write(ByteBuffer.wrap(writer.toString().getBytes(StandardCharsets.UTF_8)));
+                    channel.force(true);
+                }
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not reserve id block " + block, e);
+            }
+            reservedBlocks = reserved;
+        }
+    }
+
+    private static class Block {
+        static final Block EMPTY = new Block(0, 0);
+
+        final AtomicLong next;
+        final long end;
+
+        Block(long first, int size) {
+            this.next = new AtomicLong(first);
+            this.end = first + size;
+        }
+    }
+}
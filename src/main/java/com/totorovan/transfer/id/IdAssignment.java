@@ -0,0 +1,264 @@
+package com.totorovan.transfer.id;
+
+import com.totorovan.transfer.common.collections.LongLongHashMap;
+import lombok.Value;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * Server-assigned ids of one kind of entity. The id a client sends becomes an idempotency key: the first request with
+ * a key gets a new id from the {@link IdAllocator} and the key is {@link Status#IN_PROGRESS} until the request
+ * reports the entity {@link #created} or {@link #failed}. Later requests with the key get the same id once it is
+ * created, a failed key is dropped so it can be tried again. Requests without a key, sent as id {@code 0}, always get
+ * a new id.
+ * <p>
+ * Keys are kept in lock striped primitive maps, each stripe holding at most its share of {@code maxKeys} and
+ * forgetting its keys in the order they were assigned once they are older than the key TTL or the stripe is full.
+ * With a journal the created keys are appended to a file and restored from it on restart, the journal is compacted to
+ * the unexpired keys when it is opened.
+ */
+public class IdAssignment {
+    public static final int DEFAULT_MAX_KEYS = 1_000_000;
+    public static final Duration DEFAULT_KEY_TTL = Duration.ofHours(24);
+
+    private static final int STRIPES = 64;
+
+    private final IdAllocator allocator;
+    private final long keyTtlMillis;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private Writer journal;
+    private volatile IOException journalFailure;
+
+    public IdAssignment(IdAllocator allocator) {
+        this(allocator, DEFAULT_MAX_KEYS, DEFAULT_KEY_TTL);
+    }
+
+    public IdAssignment(IdAllocator allocator, int maxKeys, Duration keyTtl) {
+        if (maxKeys <= 0 || keyTtl.isNegative() || keyTtl.isZero()) {
+            throw new IllegalArgumentException("Number of keys and their TTL must be positive");
+        }
+        this.allocator = allocator;
+        this.keyTtlMillis = keyTtl.toMillis();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(Math.max(1, maxKeys / STRIPES));
+        }
+    }
+
+    /**
+     * @param path journal of created keys, {@code key,id,createdAtMillis} per line, created if it does not exist
+     */
+    public static IdAssignment open(IdAllocator allocator, int maxKeys, Duration keyTtl, Path path) throws IOException {
+        IdAssignment assignment = new IdAssignment(allocator, maxKeys, keyTtl);
+        long now = System.currentTimeMillis();
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(",");
+                    if (fields.length != 3) {
+                        continue;
+                    }
+                    try {
+                        assignment.restore(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), now);
+                    } catch (NumberFormatException e) {
+                        // a line torn by a crash, its key is forgotten
+                    }
+                }
+            }
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Stripe stripe : assignment.stripes) {
+                stripe.forEach((key, id, createdAt) -> writer.write(line(key, id, createdAt)));
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        assignment.journal = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        return assignment;
+    }
+
+    private static String line(long key, long id, long createdAt) {
+        return key + "," + id + "," + createdAt + "\n";
+    }
+
+    /**
+     * @param key idempotency key sent by the client, {@code 0} for none
+     * @throws UncheckedIOException if a new id can not be reserved or created keys can not be journaled
+     */
+    public Assigned assign(long key) {
+        return assign(key, System.currentTimeMillis());
+    }
+
+    Assigned assign(long key, long nowMillis) {
+        IOException failure = journalFailure;
+        if (failure != null) {
+            throw new UncheckedIOException("Idempotency keys can not be journaled", failure);
+        }
+        if (key == 0) {
+            return new Assigned(allocator.next(), Status.FRESH);
+        }
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.expire(nowMillis - keyTtlMillis);
+            long id = stripe.ids.get(key, 0L);
+            if (id > 0) {
+                return new Assigned(id, Status.CREATED);
+            }
+            if (id < 0) {
+                return new Assigned(-id, Status.IN_PROGRESS);
+            }
+            id = allocator.next();
+            // negative while the first request is still creating it
+            stripe.add(key, -id, nowMillis);
+            return new Assigned(id, Status.FRESH);
+        }
+    }
+
+    /**
+     * Keeps the key of an id which was {@link Status#FRESH}, including when it is unknown whether the entity was
+     * created, so a retry finds the id and checks.
+     */
+    public void created(long key, long id) {
+        if (key == 0) {
+            return;
+        }
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            // the key may have expired meanwhile
+            if (stripe.ids.get(key, 0L) != -id) {
+                return;
+            }
+            stripe.ids.put(key, id);
+        }
+        if (journal != null) {
+            synchronized (journal) {
+                try {
+                    journal.write(line(key, id, System.currentTimeMillis()));
+                    journal.flush();
+                } catch (IOException e) {
+                    journalFailure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the key of an id which was {@link Status#FRESH} but whose entity was not created, the next request with
+     * the key gets a new id.
+     */
+    public void failed(long key, long id) {
+        if (key == 0) {
+            return;
+        }
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            if (stripe.ids.get(key, 0L) == -id) {
+                stripe.ids.remove(key);
+            }
+        }
+    }
+
+    private void restore(long key, long id, long createdAt, long nowMillis) {
+        if (createdAt <= nowMillis - keyTtlMillis || key == 0 || id <= 0) {
+            return;
+        }
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.add(key, id, createdAt);
+        }
+    }
+
+    private Stripe stripeOf(long key) {
+        return stripes[(int) (key ^ (key >>> 32)) & (STRIPES - 1)];
+    }
+
+    public enum Status {
+        /**
+         * the id is new, the request creates the entity and reports it {@link #created} or {@link #failed}
+         */
+        FRESH,
+        /**
+         * an earlier request with the key created the entity, or may have
+         */
+        CREATED,
+        /**
+         * an earlier request with the key is still creating the entity
+         */
+        IN_PROGRESS
+    }
+
+    @Value
+    public static class Assigned {
+        long id;
+        Status status;
+    }
+
+    /**
+     * Keys of a stripe with their ids and a ring of the keys in the order they were assigned.
+     */
+    private static class Stripe {
+        final LongLongHashMap ids = new LongLongHashMap();
+        final long[] ringKeys;
+        final long[] ringIds;
+        final long[] ringAssignedAt;
+        int head;
+        int size;
+
+        Stripe(int capacity) {
+            ringKeys = new long[capacity];
+            ringIds = new long[capacity];
+            ringAssignedAt = new long[capacity];
+        }
+
+        void add(long key, long id, long assignedAt) {
+            if (size == ringKeys.length) {
+                evictOldest();
+            }
+            int tail = (head + size) % ringKeys.length;
+            ringKeys[tail] = key;
+            ringIds[tail] = Math.abs(id);
+            ringAssignedAt[tail] = assignedAt;
+            size++;
+            ids.put(key, id);
+        }
+
+        void expire(long assignedBefore) {
+            while (size > 0 && ringAssignedAt[head] <= assignedBefore) {
+                evictOldest();
+            }
+        }
+
+        private void evictOldest() {
+            long key = ringKeys[head];
+            // the key was dropped and assigned again if it has another id, its newer entry removes it
+            if (Math.abs(ids.get(key, 0L)) == ringIds[head]) {
+                ids.remove(key);
+            }
+            head = (head + 1) % ringKeys.length;
+            size--;
+        }
+
+        void forEach(KeyConsumer consumer) throws IOException {
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) % ringKeys.length;
+                long key = ringKeys[index];
+                if (ids.get(key, 0L) == ringIds[index]) {
+                    consumer.accept(key, ringIds[index], ringAssignedAt[index]);
+                }
+            }
+        }
+    }
+
+    private interface KeyConsumer {
+        void accept(long key, long id, long assignedAt) throws IOException;
+    }
+}
@@ -0,0 +1,26 @@
+package com.totorovan.transfer.id;
+
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Complete;
+import akka.http.javadsl.server.Route;
+
+import java.util.function.Supplier;
+
+/**
+ * Reports the key of a {@link IdAssignment.Status#FRESH} id {@link IdAssignment#created} or
+ * {@link IdAssignment#failed} by the response of the route creating its entity. A route which failed with an
+ * exception, like an ask which timed out, may have created the entity, so its key is kept for a retry to check.
+ */
+public class IdSettlement extends AllDirectives {
+    private static final IdSettlement INSTANCE = new IdSettlement();
+
+    public static Route settling(IdAssignment ids, long key, long id, Supplier<Route> create) {
+        return INSTANCE.mapRouteResultFuture(result -> result.whenComplete((routeResult, e) -> {
+            if (e == null && !(routeResult instanceof Complete && ((Complete) routeResult).getResponse().status().isSuccess())) {
+                ids.failed(key, id);
+            } else {
+                ids.created(key, id);
+            }
+        }), create);
+    }
+}
@@ -0,0 +1,186 @@
+package com.totorovan.transfer.limit;
+
+import akka.http.javadsl.model.HttpHeader;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.RemoteAddress;
+import akka.http.javadsl.model.headers.RetryAfter;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Route;
+import lombok.Data;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the requests of every client to the paths of a route, e.g. {@code transactions} for everything below
+ * {@code /transactions}, with a {@link TokenBucket} per client and route. A client is told apart by the value of
+ * the key header or else by its address, which needs {@code akka.http.server.remote-address-header=on}.
+ * A request over the limit is answered with {@code 429} and the seconds until the next token in {@code Retry-After}.
+ * <p>
+ * A key the route has no bucket for yet takes a token of its address for new keys first, so a client can not get a
+ * fresh burst by sending a new key with every request, nor quickly fill the tracked clients with keys of its own.
+ * <p>
+ * Up to {@code maxClients} buckets are kept per route, and as many for new keys. Once there are as many, a new client
+ * first drops the buckets which are full again, and if none is, it shares one overflow bucket of the route with the
+ * other untracked clients.
+ */
+public class RateLimiter extends AllDirectives {
+    public static final String DEFAULT_KEY_HEADER = "X-Api-Key";
+    public static final Rate DEFAULT_NEW_KEYS = new Rate(1, 10);
+    private static final String UNKNOWN_CLIENT = "unknown";
+
+    private final String keyHeader;
+    private final List<Limit> limits = new ArrayList<>();
+
+    public RateLimiter(String keyHeader, int maxClients, Map<String, Rate> rates) {
+        this(keyHeader, maxClients, DEFAULT_NEW_KEYS, rates);
+    }
+
+    /**
+     * @param newKeys rate at which an address may start sending new keys to a route
+     * @param rates   by the first path segment of the route they limit
+     */
+    public RateLimiter(String keyHeader, int maxClients, Rate newKeys, Map<String, Rate> rates) {
+        if (maxClients <= 0) {
+            throw new IllegalArgumentException("Maximum number of clients must be positive, but was " + maxClients);
+        }
+        this.keyHeader = keyHeader;
+        rates.forEach((route, rate) -> limits.add(new Limit("/" + route, rate, newKeys, maxClients)));
+    }
+
+    /**
+     * Rejects requests over the limit of their route before they reach the routes, other paths pass unlimited.
+     * The route is matched against the path not matched yet, so the routes may be nested below a prefix.
+     */
+    public Route limit(Route routes) {
+        return extractRequest(request -> extractUnmatchedPath(path -> {
+            long waitNanos = acquire(path, request.getHeader(keyHeader).map(HttpHeader::value).orElse(null), addressOf(request));
+            return waitNanos == 0 ? routes : complete(tooManyRequests(waitNanos));
+        }));
+    }
+
+    /**
+     * @return {@code 429} telling to retry after the wait rounded up to whole seconds
+     */
+    public static HttpResponse tooManyRequests(long waitNanos) {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        return HttpResponse.create()
+                .withStatus(StatusCodes.TOO_MANY_REQUESTS)
+                .addHeader(RetryAfter.create(seconds))
+                .withEntity("Too many requests, retry in " + seconds + " s");
+    }
+
+    /**
+     * @return {@code 0} if the client may send the request, otherwise the nanos until it may send the next one
+     */
+    public long acquire(String path, String client) {
+        return acquire(path, null, client);
+    }
+
+    /**
+     * @param key     sent by the client, {@code null} to tell the client by its address
+     * @param address of the client
+     * @return {@code 0} if the client may send the request, otherwise the nanos until it may send the next one
+     */
+    public long acquire(String path, String key, String address) {
+        Limit limit = limitOf(path);
+        if (limit == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        return key == null ? limit.clients.get(address, now).take(now) : limit.acquire(key, address, now);
+    }
+
+    private Limit limitOf(String path) {
+        for (Limit limit : limits) {
+            if (path.startsWith(limit.prefix)
+                    && (path.length() == limit.prefix.length() || path.charAt(limit.prefix.length()) == '/')) {
+                return limit;
+            }
+        }
+        return null;
+    }
+
+    private static String addressOf(HttpRequest request) {
+        return request.getHeader(RemoteAddress.class)
+                .flatMap(header -> header.address().getAddress())
+                .map(InetAddress::getHostAddress)
+                .orElse(UNKNOWN_CLIENT);
+    }
+
+    @Data
+    public static class Rate {
+        private final double perSecond;
+        private final int burst;
+    }
+
+    private static class Limit {
+        final String prefix;
+        final Buckets clients;
+        final Buckets newKeys;
+
+        Limit(String prefix, Rate rate, Rate newKeys, int maxClients) {
+            this.prefix = prefix;
+            this.clients = new Buckets(rate, maxClients);
+            this.newKeys = new Buckets(newKeys, maxClients);
+        }
+
+        long acquire(String key, String address, long now) {
+            TokenBucket bucket = clients.buckets.get(key);
+            if (bucket == null) {
+                long wait = newKeys.get(address, now).take(now);
+                if (wait > 0) {
+                    return wait;
+                }
+                bucket = clients.admit(key, now);
+            }
+            return bucket.take(now);
+        }
+    }
+
+    /**
+     * Buckets of the clients of a route, at most {@code maxClients} and one shared by the clients beyond them.
+     */
+    private static class Buckets {
+        final Rate rate;
+        final int maxClients;
+        final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+        final TokenBucket overflow;
+        final AtomicBoolean expiring = new AtomicBoolean();
+
+        Buckets(Rate rate, int maxClients) {
+            this.rate = rate;
+            this.maxClients = maxClients;
+            this.overflow = new TokenBucket(rate.getPerSecond(), rate.getBurst());
+        }
+
+        TokenBucket get(String client, long now) {
+            TokenBucket bucket = buckets.get(client);
+            return bucket == null ? admit(client, now) : bucket;
+        }
+
+        /**
+         * A bucket dropped while its client takes a token gives that client one more token, nothing worse.
+         */
+        TokenBucket admit(String client, long now) {
+            if (buckets.size() >= maxClients && expiring.compareAndSet(false, true)) {
+                try {
+                    buckets.values().removeIf(bucket -> bucket.isFull(now));
+                } finally {
+                    expiring.set(false);
+                }
+            }
+            if (buckets.size() >= maxClients) {
+                return overflow;
+            }
+            return buckets.computeIfAbsent(client, key -> new TokenBucket(rate.getPerSecond(), rate.getBurst()));
+        }
+    }
+}
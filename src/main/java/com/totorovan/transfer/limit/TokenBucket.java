@@ -0,0 +1,57 @@
+package com.totorovan.transfer.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket of {@code burst} tokens refilled at {@code perSecond} tokens a second. Instead of counting tokens it
+ * keeps the time at which the bucket is full again, so taking a token is a single compare-and-set and an idle
+ * bucket needs no refill. Times are {@link System#nanoTime()}, compared by their difference so they may wrap.
+ */
+public class TokenBucket {
+    /**
+     * Longest time a bucket may take to refill, about 73 years, so that times a burst apart still compare.
+     */
+    static final long MAX_BURST_NANOS = Long.MAX_VALUE / 4;
+    private static final long FULL = Long.MIN_VALUE;
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong fullAt = new AtomicLong(FULL);
+
+    public TokenBucket(double perSecond, int burst) {
+        if (!(perSecond > 0) || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive, but were " + perSecond + " and " + burst);
+        }
+        // a double beyond the range of long is cast to Long.MAX_VALUE
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000 / perSecond));
+        if (intervalNanos > MAX_BURST_NANOS / burst) {
+            throw new IllegalArgumentException("A burst of " + burst + " at " + perSecond + " a second takes too long to refill");
+        }
+        this.burstNanos = intervalNanos * burst;
+    }
+
+    /**
+     * @return {@code 0} if a token was taken, otherwise the nanos until the next token
+     */
+    public long take(long now) {
+        while (true) {
+            long full = fullAt.get();
+            long next = (full == FULL || full - now < 0 ? now : full) + intervalNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(full, next == FULL ? next + 1 : next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return whether the bucket is full, so forgetting it changes nothing
+     */
+    public boolean isFull(long now) {
+        long full = fullAt.get();
+        return full == FULL || full - now <= 0;
+    }
+}
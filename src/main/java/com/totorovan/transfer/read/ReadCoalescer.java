@@ -0,0 +1,147 @@
+package com.totorovan.transfer.read;
+
+import akka.actor.ActorRef;
+import akka.actor.Status;
+import com.totorovan.transfer.common.Messages.Urgent;
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Single-flight reads by id for the actor owning the read entities. Concurrent reads of the same id share one
+ * outstanding read whose result is fanned out to every waiter, and with a cache TTL the result answers reads
+ * of the id for that long after it arrived.
+ * <p>
+ * Confined to the owning actor: the actor hands {@link Completed} messages back to {@link #complete} and calls
+ * {@link #invalidate} for an id when a change of the entity starts and again before the change is acknowledged,
+ * so a read started before the change is neither joined nor cached afterwards.
+ */
+public final class ReadCoalescer {
+
+    private final long cacheTtlNanos;
+    private final ReadMetrics metrics;
+    private final LongObjectHashMap<Flight> flights = new LongObjectHashMap<>();
+    private final LongObjectHashMap<Cached> cache = new LongObjectHashMap<>();
+    private final ArrayDeque<Cached> expiries = new ArrayDeque<>();
+
+    /**
+     * @param cacheTtl how long a read result answers later reads, {@link Duration#ZERO} to only coalesce reads in flight
+     */
+    public ReadCoalescer(Duration cacheTtl, ReadMetrics metrics) {
+        this.cacheTtlNanos = cacheTtl.toNanos();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Answers the waiter from the cache or adds it to the read of the id in flight.
+     *
+     * @return the new flight the caller must {@link #read} for, {@code null} if the waiter is already taken care of
+     */
+    public Flight join(long id, ActorRef waiter, ActorRef self) {
+        metrics.request();
+        if (cacheTtlNanos > 0) {
+            evictExpired(System.nanoTime());
+            Cached cached = cache.get(id);
+            if (cached != null) {
+                metrics.cacheHit();
+                waiter.tell(cached.value, self);
+                return null;
+            }
+        }
+        Flight flight = flights.get(id);
+        if (flight != null) {
+            metrics.coalesced();
+            flight.waiters.add(waiter);
+            return null;
+        }
+        metrics.read();
+        flight = new Flight(id, waiter);
+        flights.put(id, flight);
+        return flight;
+    }
+
+    /**
+     * Sends the outcome of the read to the owning actor as {@link Completed}, a failed read as {@link Status.Failure}.
+     */
+    public void read(Flight flight, CompletionStage<Object> read, ActorRef self) {
+        read.whenComplete((value, e) -> self.tell(new Completed(flight, e == null ? value : new Status.Failure(e)), self));
+    }
+
+    public void complete(Completed completed, ActorRef self) {
+        Flight flight = completed.flight;
+        Object value = completed.value;
+        for (ActorRef waiter : flight.waiters) {
+            waiter.tell(value, self);
+        }
+        if (flights.get(flight.id) != flight) {
+            return;
+        }
+        flights.remove(flight.id);
+        if (cacheTtlNanos > 0 && !(value instanceof Status.Failure)) {
+            Cached cached = new Cached(flight.id, value, System.nanoTime() + cacheTtlNanos);
+            cache.put(flight.id, cached);
+            expiries.addLast(cached);
+        }
+    }
+
+    /**
+     * Forgets the cached result and detaches the read in flight of the id, its waiters still get its result.
+     */
+    public void invalidate(long id) {
+        if (!flights.isEmpty()) {
+            flights.remove(id);
+        }
+        if (!cache.isEmpty()) {
+            cache.remove(id);
+        }
+    }
+
+    /**
+     * All entries live equally long, so they expire in the order they were cached.
+     */
+    private void evictExpired(long now) {
+        Cached oldest;
+        while ((oldest = expiries.peekFirst()) != null && oldest.expiresAt - now <= 0) {
+            expiries.pollFirst();
+            if (cache.get(oldest.id) == oldest) {
+                cache.remove(oldest.id);
+            }
+        }
+    }
+
+    public static final class Flight {
+        private final long id;
+        private final List<ActorRef> waiters = new ArrayList<>(2);
+
+        private Flight(long id, ActorRef waiter) {
+            this.id = id;
+            waiters.add(waiter);
+        }
+    }
+
+    public static final class Completed implements Urgent {
+        private final Flight flight;
+        private final Object value;
+
+        private Completed(Flight flight, Object value) {
+            this.flight = flight;
+            this.value = value;
+        }
+    }
+
+    private static final class Cached {
+        private final long id;
+        private final Object value;
+        private final long expiresAt;
+
+        private Cached(long id, Object value, long expiresAt) {
+            this.id = id;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.totorovan.transfer.read;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@link ReadCoalescer}, updated by its actor and read by anyone.
+ */
+public class ReadMetrics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+
+    void request() {
+        requests.increment();
+    }
+
+    void read() {
+        reads.increment();
+    }
+
+    void coalesced() {
+        coalesced.increment();
+    }
+
+    void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public ReadMetricsDto snapshot() {
+        long requests = this.requests.sum();
+        long reads = this.reads.sum();
+        return new ReadMetricsDto(requests, reads, coalesced.sum(), cacheHits.sum(),
+                requests == 0 ? 0.0 : (double) (requests - reads) / requests);
+    }
+}
@@ -0,0 +1,19 @@
+package com.totorovan.transfer.read;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Read requests, the reads actually made for them and the share of requests answered without a read of their own.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReadMetricsDto {
+    private long requests;
+    private long reads;
+    private long coalesced;
+    private long cacheHits;
+    private double coalescingRatio;
+}
@@ -0,0 +1,35 @@
+package com.totorovan.transfer.read;
+
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Route;
+import com.totorovan.transfer.common.Codecs;
+import lombok.RequiredArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read coalescing counters of the account and transaction reads.
+ */
+@RequiredArgsConstructor
+public class ReadMetricsRoutes extends AllDirectives {
+
+    private final ReadMetrics accountReads;
+    private final ReadMetrics transactionReads;
+
+    public Route routes() {
+        return pathPrefix("debug", () ->
+                path("reads", () ->
+                        get(this::reads)
+                )
+        );
+    }
+
+    private Route reads() {
+        Map<String, ReadMetricsDto> reads = new LinkedHashMap<>();
+        reads.put("accounts", accountReads.snapshot());
+        reads.put("transactions", transactionReads.snapshot());
+        return complete(StatusCodes.OK, reads, Codecs.marshaller());
+    }
+}
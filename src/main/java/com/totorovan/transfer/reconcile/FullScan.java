@@ -0,0 +1,75 @@
+package com.totorovan.transfer.reconcile;
+
+import akka.actor.ActorRef;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static akka.pattern.PatternsCS.ask;
+
+/**
+ * Sums the balances of the accounts as of a new cut of a {@link MoneySupply}. The accounts are split into shards,
+ * every shard asks its accounts in parallel and sums their answers, then the shard sums are joined.
+ * Accounts keep transferring while they are asked.
+ */
+public final class FullScan {
+
+    private FullScan() {
+    }
+
+    /**
+     * Must be called by the owner of the accounts, with every account created before and not closed before the call.
+     */
+    public static CompletionStage<ScanDto> start(MoneySupply supply, long[] ids, ActorRef[] accounts, int shards,
+                                                 Duration timeout) {
+        long startedAt = System.nanoTime();
+        long epoch = supply.startCut();
+        int shardCount = Math.max(1, Math.min(shards, accounts.length));
+        @SuppressWarnings("unchecked")
+        CompletableFuture<long[]>[] shardSums = new CompletableFuture[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shardSums[shard] = scanShard(supply, epoch, ids, accounts, shard, shardCount, timeout);
+        }
+        return CompletableFuture.allOf(shardSums).thenApply(x -> {
+            long scanned = 0;
+            int missing = 0;
+            for (CompletableFuture<long[]> shardSum : shardSums) {
+                scanned += shardSum.join()[0];
+                missing += (int) shardSum.join()[1];
+            }
+            return supply.completeCut(epoch, scanned, accounts.length, missing, shardCount,
+                    Duration.ofNanos(System.nanoTime() - startedAt).toMillis());
+        });
+    }
+
+    /**
+     * @return sum of the balances and number of accounts which did not answer
+     */
+    private static CompletableFuture<long[]> scanShard(MoneySupply supply, long epoch, long[] ids, ActorRef[] accounts,
+                                                       int shard, int shardCount, Duration timeout) {
+        int size = (accounts.length - shard + shardCount - 1) / shardCount;
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Long>[] balances = new CompletableFuture[size];
+        for (int i = 0; i < size; i++) {
+            long id = ids[shard + i * shardCount];
+            balances[i] = ask(accounts[shard + i * shardCount], new MoneySupply.GetSnapshot(epoch), timeout)
+                    .toCompletableFuture()
+                    .thenApply(Long.class::cast)
+                    // an account deleted after the cut answers with the balance it left when it stopped
+                    .exceptionally(e -> supply.closedBalance(id, epoch));
+        }
+        return CompletableFuture.allOf(balances).thenApply(x -> {
+            long[] sum = new long[2];
+            for (CompletableFuture<Long> balance : balances) {
+                Long units = balance.join();
+                if (units == null) {
+                    sum[1]++;
+                } else {
+                    sum[0] += units;
+                }
+            }
+            return sum;
+        });
+    }
+}
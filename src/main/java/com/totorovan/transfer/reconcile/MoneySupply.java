@@ -0,0 +1,218 @@
+package com.totorovan.transfer.reconcile;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.actor.ExtensionIdProvider;
+import com.totorovan.transfer.common.Messages.Urgent;
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.totorovan.transfer.common.Amounts.toDecimal;
+
+/**
+ * Actor system wide running totals of the money in the accounts, in units.
+ * <ul>
+ * <li>issued - opening balances of created or loaded accounts minus closing balances of deleted ones, plus
+ * adjustments like interest and fees</li>
+ * <li>balances - sum of the account balances, changed by every account change</li>
+ * <li>in transit - withdrawn by a transfer and not deposited yet</li>
+ * <li>obligations - amounts of the transfers which are running, kept by {@code AccountService}</li>
+ * </ul>
+ * Money is conserved when {@code issued == balances + in transit}, and money is lost when there is more in transit
+ * than running transfers account for.
+ * <p>
+ * A full scan cuts the accounts at an epoch without pausing them: an account keeps its balance as of the last epoch
+ * it saw before its first change in a new epoch, and every change is counted in the epoch the account saw when
+ * making it. Transfers reach an account after they left the previous one, so the balances before the cut and the
+ * totals of changes made before it form a consistent snapshot.
+ */
+public class MoneySupply implements Extension {
+
+    private static final Id ID = new Id();
+
+    private final EpochCounter issued = new EpochCounter();
+    private final EpochCounter balances = new EpochCounter();
+    private final EpochCounter inTransit = new EpochCounter();
+    private final LongAdder obligations = new LongAdder();
+    private final LongObjectHashMap<long[]> closed = new LongObjectHashMap<>();
+    private volatile long epoch;
+    private long previousUnaccounted;
+    private long unaccounted;
+    private volatile ScanDto lastScan;
+
+    private MoneySupply() {
+    }
+
+    public static MoneySupply get(ActorSystem system) {
+        return ID.get(system);
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public void opened(long epoch, long balance) {
+        issued.add(epoch, balance);
+        balances.add(epoch, balance);
+    }
+
+    /**
+     * @param amount money issued to the account, negative for money taken from it, outside of transfers
+     */
+    public void adjusted(long epoch, long amount) {
+        issued.add(epoch, amount);
+        balances.add(epoch, amount);
+    }
+
+    /**
+     * @param amount signed change of the balance, a withdrawal puts money in transit and a deposit takes it out
+     */
+    public void changed(long epoch, long amount) {
+        balances.add(epoch, amount);
+        inTransit.add(epoch, -amount);
+    }
+
+    /**
+     * @param snapshotBalance balance of the account as of the cut at {@code epoch}
+     */
+    public void closed(long id, long epoch, long balance, long snapshotBalance) {
+        issued.add(epoch, -balance);
+        balances.add(epoch, -balance);
+        synchronized (closed) {
+            closed.put(id, new long[]{epoch, snapshotBalance});
+        }
+    }
+
+    /**
+     * Called before a transfer withdraws, so the withdrawn money is always accounted for while the transfer runs.
+     */
+    public void reserve(long amount) {
+        obligations.add(amount);
+    }
+
+    /**
+     * Called once a transfer finished, whatever its outcome. Money it left in transit is lost from then on.
+     */
+    public void release(long amount) {
+        obligations.add(-amount);
+    }
+
+    /**
+     * Starts a cut, the scans of one actor system must not overlap.
+     *
+     * @return epoch of the cut
+     */
+    long startCut() {
+        return ++epoch;
+    }
+
+    /**
+     * @return balance as of the cut of an account which closed before answering the scan, {@code null} if it did not close
+     */
+    Long closedBalance(long id, long epoch) {
+        long[] close;
+        synchronized (closed) {
+            close = closed.get(id);
+        }
+        if (close == null || close[0] > epoch) {
+            return null;
+        }
+        return close[0] < epoch ? 0L : close[1];
+    }
+
+    /**
+     * Must be called once every account of the cut answered, so no change of the epoch before it is still being counted.
+     */
+    ScanDto completeCut(long epoch, long scanned, int accounts, int missing, int shards, long millis) {
+        long expected = issued.before(epoch) - inTransit.before(epoch);
+        ScanDto scan = new ScanDto(epoch, accounts, missing, shards, toDecimal(scanned), toDecimal(balances.before(epoch)),
+                toDecimal(expected), missing == 0 ? toDecimal(expected - scanned) : null, millis);
+        issued.fold(epoch);
+        balances.fold(epoch);
+        inTransit.fold(epoch);
+        synchronized (closed) {
+            LongObjectHashMap<long[]> current = new LongObjectHashMap<>();
+            closed.forEach((id, close) -> {
+                if (close[0] >= epoch) {
+                    current.put(id, close);
+                }
+            });
+            closed.clear();
+            current.forEach(closed::put);
+        }
+        lastScan = scan;
+        return scan;
+    }
+
+    /**
+     * Samples the money in transit which no running transfer accounts for. Transfers move between the reads of the
+     * totals, so only what was unaccounted in two samples in a row is reported as lost.
+     */
+    public synchronized void sampleTransit() {
+        long before = obligations.sum();
+        long transit = inTransit.sum();
+        long after = obligations.sum();
+        long sample = Math.max(0, transit - Math.max(before, after));
+        unaccounted = Math.min(previousUnaccounted, sample);
+        previousUnaccounted = sample;
+    }
+
+    public synchronized ReconciliationDto report() {
+        long issued = this.issued.sum();
+        long balances = this.balances.sum();
+        long inTransit = this.inTransit.sum();
+        return new ReconciliationDto(toDecimal(issued), toDecimal(balances), toDecimal(inTransit),
+                toDecimal(obligations.sum()), toDecimal(issued - balances - inTransit), toDecimal(unaccounted), lastScan);
+    }
+
+    /**
+     * Asks an account for its balance as of the cut at {@code epoch}, answered with a {@link Long} of units.
+     */
+    @Data
+    public static class GetSnapshot implements Serializable, Urgent {
+        private final long epoch;
+    }
+
+    /**
+     * Changes counted by the epoch they were made in. Scans do not overlap, so the changes of the epoch before a cut
+     * and the ones after it never share a slot, and once a scan completed its slot is folded into the base.
+     */
+    private static class EpochCounter {
+        private final LongAdder[] slots = {new LongAdder(), new LongAdder()};
+        private long base;
+
+        void add(long epoch, long amount) {
+            slots[(int) (epoch & 1)].add(amount);
+        }
+
+        synchronized long sum() {
+            return base + slots[0].sum() + slots[1].sum();
+        }
+
+        synchronized long before(long epoch) {
+            return base + slots[(int) ((epoch - 1) & 1)].sum();
+        }
+
+        synchronized void fold(long epoch) {
+            base += slots[(int) ((epoch - 1) & 1)].sumThenReset();
+        }
+    }
+
+    private static class Id extends AbstractExtensionId<MoneySupply> implements ExtensionIdProvider {
+
+        @Override
+        public MoneySupply createExtension(ExtendedActorSystem system) {
+            return new MoneySupply();
+        }
+
+        @Override
+        public Id lookup() {
+            return ID;
+        }
+    }
+}
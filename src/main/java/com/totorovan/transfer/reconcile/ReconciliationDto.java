@@ -0,0 +1,24 @@
+package com.totorovan.transfer.reconcile;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Running totals of a {@link MoneySupply} and its last full scan. The running drift is read while transfers run,
+ * so it is only exact when no transfer does, {@code unaccountedInTransit} is the money lost by finished transfers.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReconciliationDto {
+    private BigDecimal issued;
+    private BigDecimal balances;
+    private BigDecimal inTransit;
+    private BigDecimal obligations;
+    private BigDecimal runningDrift;
+    private BigDecimal unaccountedInTransit;
+    private ScanDto lastScan;
+}
@@ -0,0 +1,42 @@
+package com.totorovan.transfer.reconcile;
+
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Route;
+import com.totorovan.transfer.common.Codecs;
+import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.engine.TransferEngine;
+import lombok.RequiredArgsConstructor;
+
+import static io.vavr.API.*;
+import static io.vavr.API.Match.Pattern0.any;
+import static io.vavr.Predicates.instanceOf;
+
+/**
+ * Admin endpoints reporting the running totals of the {@link MoneySupply} and running a full scan on demand.
+ */
+@RequiredArgsConstructor
+public class ReconciliationRoutes extends AllDirectives {
+
+    private final TransferEngine transferEngine;
+    private final MoneySupply supply;
+
+    public Route routes() {
+        return pathPrefix("admin", () ->
+                path("reconciliation", () ->
+                        route(
+                                get(() -> complete(StatusCodes.OK, supply.report(), Codecs.marshaller())),
+                                post(() -> onSuccess(transferEngine::reconcile, this::handleReconcileResponse))
+                        )
+                )
+        );
+    }
+
+    private Route handleReconcileResponse(Object reconcileResponse) {
+        return Match(reconcileResponse).of(
+                Case($(instanceOf(ScanDto.class)), scan -> complete(StatusCodes.OK, scan, Codecs.marshaller())),
+                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.NOT_IMPLEMENTED, failure, Codecs.marshaller())),
+                Case($(any()), x -> complete(StatusCodes.INTERNAL_SERVER_ERROR))
+        );
+    }
+}
@@ -0,0 +1,27 @@
+package com.totorovan.transfer.reconcile;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Full scan of the account balances at the cut of {@code epoch}: the scanned sum, the running total of the balances
+ * and the issued money minus the money in transit at the cut. {@code drift} is the money missing from the accounts,
+ * {@code null} when some accounts did not answer.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScanDto {
+    private long epoch;
+    private int accounts;
+    private int missingAccounts;
+    private int shards;
+    private BigDecimal scanned;
+    private BigDecimal runningTotal;
+    private BigDecimal expected;
+    private BigDecimal drift;
+    private long millis;
+}
@@ -0,0 +1,109 @@
+package com.totorovan.transfer.store;
+
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.common.collections.LongLongHashMap;
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static com.totorovan.transfer.common.Amounts.toDecimal;
+
+/**
+ * Account balances and versions, stored as 16 bytes per account. Pending updates are kept in primitive maps,
+ * so updating an account allocates nothing until it is flushed.
+ */
+public class AccountStore extends WriteBehindStore {
+
+    private static final long DELETED = -1L;
+    private static final int RECORD_SIZE = 16;
+
+    private LongLongHashMap pendingBalances = new LongLongHashMap();
+    private LongLongHashMap pendingVersions = new LongLongHashMap();
+
+    private AccountStore(LogStore log, int maxPending) {
+        super(log, maxPending);
+    }
+
+    public static AccountStore open(Path path, int maxPending) throws IOException {
+        return new AccountStore(LogStore.open(path), maxPending);
+    }
+
+    /**
+     * @param balance balance in units, see {@link com.totorovan.transfer.common.Amounts}
+     */
+    public void put(long id, long balance, long version) {
+        boolean replaced;
+        synchronized (this) {
+            replaced = pendingVersions.put(id, version, 0L) != 0L;
+            pendingBalances.put(id, balance);
+        }
+        updated(replaced);
+    }
+
+    public void delete(long id) {
+        boolean replaced;
+        synchronized (this) {
+            replaced = pendingVersions.put(id, DELETED, 0L) != 0L;
+            pendingBalances.remove(id);
+        }
+        updated(replaced);
+    }
+
+    /**
+     * @return the stored account or {@code null} if there is none
+     */
+    public synchronized AccountInfo get(long id) {
+        long version = pendingVersions.get(id, 0L);
+        if (version == DELETED) {
+            return null;
+        }
+        if (version != 0L) {
+            return new AccountInfo(id, toDecimal(pendingBalances.get(id, 0L)), version);
+        }
+        byte[] value = read(id);
+        if (value == null || value == LogStore.TOMBSTONE) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.wrap(value);
+        return new AccountInfo(id, toDecimal(record.getLong()), record.getLong());
+    }
+
+    /**
+     * @return ids of all stored accounts
+     */
+    public synchronized long[] ids() {
+        LongLongHashMap ids = storedKeys();
+        pendingVersions.forEach((id, version) -> {
+            if (version == DELETED) {
+                ids.remove(id);
+            } else {
+                ids.put(id, 0L);
+            }
+        });
+        long[] result = new long[ids.size()];
+        int[] count = new int[1];
+        ids.forEach((id, x) -> result[count[0]++] = id);
+        return result;
+    }
+
+    @Override
+    protected void drainPending(LongObjectHashMap<byte[]> batch) {
+        LongLongHashMap balances = pendingBalances;
+        pendingVersions.forEach((id, version) -> batch.put(id, version == DELETED ? LogStore.TOMBSTONE
+                : ByteBuffer.allocate(RECORD_SIZE).putLong(balances.get(id, 0L)).putLong(version).array()));
+        pendingBalances = new LongLongHashMap();
+        pendingVersions = new LongLongHashMap();
+    }
+
+    @Override
+    protected int pendingSize() {
+        return pendingVersions.size();
+    }
+
+    @Override
+    protected long pendingMemoryBytes() {
+        return pendingBalances.memoryBytes() + pendingVersions.memoryBytes();
+    }
+}
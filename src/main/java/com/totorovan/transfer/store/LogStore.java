@@ -0,0 +1,383 @@
+package com.totorovan.transfer.store;
+
+import com.totorovan.transfer.common.collections.LongLongHashMap;
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Log-structured {@code long -> byte[]} store in one file, Bitcask style: every write appends a record and an in-memory
+ * index maps each key to its latest record, so a read is one positional read.
+ * A record is {@code [int value length, -1 for a delete][long key][int CRC32 of length, key and value][value]}.
+ * The file starts with a format record and every batch ends with a commit record
+ * {@code [-2][long number of records][int CRC32 of the records]}, so a batch is applied whole or not at all.
+ * Opening scans the file to rebuild the index and cuts off the torn or corrupt tail left by a crash, together with
+ * the records of a batch whose commit did not make it to the disk. A file written before batches were committed is
+ * read record by record and rewritten in the committed format.
+ * When records superseded by later writes take more space than the live ones, the live records are rewritten
+ * to a new file which atomically replaces the old one. Thread safe, all operations hold the lock of the store.
+ */
+public class LogStore implements Closeable {
+
+    /**
+     * Value of a key deleted in a batch.
+     */
+    public static final byte[] TOMBSTONE = new byte[0];
+
+    private static final int HEADER_SIZE = 16;
+    private static final int DELETE = -1;
+    private static final int COMMIT = -2;
+    private static final int FORMAT = -3;
+    private static final long FORMAT_VERSION = 2L;
+    private static final int MAX_VALUE_SIZE = (1 << 24) - 1 - HEADER_SIZE;
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+    private final Path path;
+    private final LongLongHashMap index = new LongLongHashMap();
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long size;
+    private long liveBytes;
+
+    private LogStore(Path path) {
+        this.path = path;
+    }
+
+    public static LogStore open(Path path) throws IOException {
+        LogStore store = new LogStore(path);
+        store.channel = FileChannel.open(path, CREATE, READ, WRITE);
+        if (store.channel.size() == 0) {
+            store.writeFormat();
+        } else if (store.readFormat()) {
+            store.recover();
+        } else {
+            store.recoverRecords();
+            store.compact();
+        }
+        return store;
+    }
+
+    /**
+     * Index entries pack the record offset into the upper 40 bits and the record length into the lower 24 bits.
+     */
+    private static long entry(long offset, int length) {
+        return offset << 24 | length;
+    }
+
+    private static long offset(long entry) {
+        return entry >>> 24;
+    }
+
+    private static int length(long entry) {
+        return (int) (entry & 0xFFFFFF);
+    }
+
+    private static ByteBuffer formatRecord(CRC32 crc) {
+        crc.reset();
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE).putInt(FORMAT).putLong(FORMAT_VERSION);
+        crc.update(record.array(), 0, 12);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private void writeFormat() throws IOException {
+        ByteBuffer record = formatRecord(crc);
+        while (record.hasRemaining()) {
+            channel.write(record, record.position());
+        }
+        channel.force(true);
+        size = HEADER_SIZE;
+    }
+
+    /**
+     * @return whether the file starts with the format record
+     */
+    private boolean readFormat() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        return header.equals(formatRecord(crc));
+    }
+
+    /**
+     * Applies the records of every committed batch.
+     */
+    private void recover() throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 batchCrc = new CRC32();
+        long[] batchKeys = new long[16];
+        long[] batchOffsets = new long[16];
+        int[] batchLengths = new int[16];
+        int batchCount = 0;
+        long position = HEADER_SIZE;
+        long committed = position;
+        while (position + HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int valueLength = header.getInt();
+            long key = header.getLong();
+            int checksum = header.getInt();
+            if (valueLength == COMMIT) {
+                if (key != batchCount || checksum != (int) batchCrc.getValue()) {
+                    break;
+                }
+                for (int i = 0; i < batchCount; i++) {
+                    apply(batchKeys[i], batchOffsets[i], batchLengths[i]);
+                }
+                batchCrc.reset();
+                batchCount = 0;
+                position += HEADER_SIZE;
+                committed = position;
+                continue;
+            }
+            int length = HEADER_SIZE + Math.max(0, valueLength);
+            if (valueLength < DELETE || valueLength > MAX_VALUE_SIZE || position + length > fileSize) {
+                break;
+            }
+            ByteBuffer value = ByteBuffer.allocate(Math.max(0, valueLength));
+            readFully(value, position + HEADER_SIZE);
+            if (checksum(valueLength, key, value.array()) != checksum) {
+                break;
+            }
+            batchCrc.update(header.array(), 0, HEADER_SIZE);
+            batchCrc.update(value.array(), 0, value.array().length);
+            if (batchCount == batchKeys.length) {
+                batchKeys = Arrays.copyOf(batchKeys, batchCount * 2);
+                batchOffsets = Arrays.copyOf(batchOffsets, batchCount * 2);
+                batchLengths = Arrays.copyOf(batchLengths, batchCount * 2);
+            }
+            batchKeys[batchCount] = key;
+            batchOffsets[batchCount] = valueLength == DELETE ? -1 : position;
+            batchLengths[batchCount++] = length;
+            position += length;
+        }
+        if (committed < fileSize) {
+            channel.truncate(committed);
+        }
+        size = committed;
+    }
+
+    /**
+     * Applies every record of a file written before batches were committed.
+     */
+    private void recoverRecords() throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        while (position + HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int valueLength = header.getInt();
+            long key = header.getLong();
+            int checksum = header.getInt();
+            int length = HEADER_SIZE + Math.max(0, valueLength);
+            if (valueLength < -1 || valueLength > MAX_VALUE_SIZE || position + length > fileSize) {
+                break;
+            }
+            ByteBuffer value = ByteBuffer.allocate(Math.max(0, valueLength));
+            readFully(value, position + HEADER_SIZE);
+            if (checksum(valueLength, key, value.array()) != checksum) {
+                break;
+            }
+            apply(key, valueLength == DELETE ? -1 : position, length);
+            position += length;
+        }
+        if (position < fileSize) {
+            channel.truncate(position);
+        }
+        size = position;
+    }
+
+    /**
+     * @param offset record offset, {@code -1} for a delete
+     */
+    private void apply(long key, long offset, int length) {
+        long previous = index.get(key, -1L);
+        if (previous >= 0) {
+            liveBytes -= length(previous);
+        }
+        if (offset < 0) {
+            index.remove(key);
+        } else {
+            index.put(key, entry(offset, length));
+            liveBytes += length;
+        }
+    }
+
+    private int checksum(int valueLength, long key, byte[] value) {
+        crc.reset();
+        ByteBuffer header = ByteBuffer.allocate(12).putInt(valueLength).putLong(key);
+        crc.update(header.array(), 0, 12);
+        crc.update(value, 0, value.length);
+        return (int) crc.getValue();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + path);
+            }
+        }
+    }
+
+    /**
+     * @return the value or {@code null} if the key is not stored
+     */
+    public synchronized byte[] get(long key) throws IOException {
+        long entry = index.get(key, -1L);
+        if (entry < 0) {
+            return null;
+        }
+        ByteBuffer value = ByteBuffer.allocate(length(entry) - HEADER_SIZE);
+        readFully(value, offset(entry) + HEADER_SIZE);
+        return value.array();
+    }
+
+    public synchronized boolean contains(long key) {
+        return index.containsKey(key);
+    }
+
+    public synchronized long[] keys() {
+        long[] keys = new long[index.size()];
+        int[] count = new int[1];
+        index.forEach((key, entry) -> keys[count[0]++] = key);
+        return keys;
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return bytes of the index in memory, the records stay in the file
+     */
+    public synchronized long memoryBytes() {
+        return index.memoryBytes();
+    }
+
+    /**
+     * @return bytes of the file, live and superseded records
+     */
+    public synchronized long fileSize() {
+        return size;
+    }
+
+    /**
+     * Appends the batch with its commit record, a {@link #TOMBSTONE} value deletes its key, and forces it to disk.
+     */
+    public synchronized void write(LongObjectHashMap<byte[]> batch) throws IOException {
+        int batchSize = 0;
+        long[] keys = new long[batch.size()];
+        byte[][] values = new byte[batch.size()][];
+        int[] count = new int[1];
+        batch.forEach((key, value) -> {
+            keys[count[0]] = key;
+            values[count[0]++] = value;
+        });
+        for (byte[] value : values) {
+            if (value.length > MAX_VALUE_SIZE) {
+                throw new IllegalArgumentException("Value of " + value.length + " bytes exceeds " + MAX_VALUE_SIZE);
+            }
+            batchSize += HEADER_SIZE + value.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(batchSize + HEADER_SIZE);
+        for (int i = 0; i < keys.length; i++) {
+            int valueLength = values[i] == TOMBSTONE ? DELETE : values[i].length;
+            buffer.putInt(valueLength).putLong(keys[i]).putInt(checksum(valueLength, keys[i], values[i])).put(values[i]);
+        }
+        crc.reset();
+        crc.update(buffer.array(), 0, batchSize);
+        buffer.putInt(COMMIT).putLong(keys.length).putInt((int) crc.getValue());
+        buffer.flip();
+        long position = size;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        channel.force(false);
+        long offset = size;
+        for (int i = 0; i < keys.length; i++) {
+            int length = HEADER_SIZE + values[i].length;
+            apply(keys[i], values[i] == TOMBSTONE ? -1 : offset, length);
+            offset += length;
+        }
+        size = position;
+        if (size > MIN_COMPACTION_SIZE && size - liveBytes > liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the live records as a single batch after the format record.
+     */
+    private void compact() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        LongLongHashMap compacted = new LongLongHashMap(index.size());
+        try (FileChannel target = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer format = formatRecord(crc);
+            while (format.hasRemaining()) {
+                target.write(format, format.position());
+            }
+            CRC32 batchCrc = new CRC32();
+            long[] position = {HEADER_SIZE};
+            IOException[] failure = new IOException[1];
+            index.forEach((key, entry) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    ByteBuffer record = ByteBuffer.allocate(length(entry));
+                    readFully(record, offset(entry));
+                    batchCrc.update(record.array(), 0, record.capacity());
+                    record.flip();
+                    while (record.hasRemaining()) {
+                        target.write(record, position[0] + record.position());
+                    }
+                    compacted.put(key, entry(position[0], length(entry)));
+                    position[0] += length(entry);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            ByteBuffer commit = ByteBuffer.allocate(HEADER_SIZE).putInt(COMMIT).putLong(index.size()).putInt((int) batchCrc.getValue());
+            commit.flip();
+            while (commit.hasRemaining()) {
+                target.write(commit, position[0] + commit.position());
+            }
+            target.force(true);
+            liveBytes = position[0] - HEADER_SIZE;
+            size = position[0] + HEADER_SIZE;
+        }
+        channel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, READ, WRITE);
+        compacted.forEach(index::put);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
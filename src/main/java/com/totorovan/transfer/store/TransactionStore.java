@@ -0,0 +1,101 @@
+package com.totorovan.transfer.store;
+
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Single transfers with their status. A record is the accounts, {@code executeAt}, the status and the amount
+ * as scale and unscaled bytes, so amounts which can not be transferred are kept as given.
+ */
+public class TransactionStore extends WriteBehindStore {
+
+    private static final Object DELETED = new Object();
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    private LongObjectHashMap<Object> pending = new LongObjectHashMap<>();
+
+    private TransactionStore(LogStore log, int maxPending) {
+        super(log, maxPending);
+    }
+
+    public static TransactionStore open(Path path, int maxPending) throws IOException {
+        return new TransactionStore(LogStore.open(path), maxPending);
+    }
+
+    private static byte[] encode(TransactionInfo transactionInfo) {
+        byte[] unscaled = transactionInfo.getAmount().unscaledValue().toByteArray();
+        return ByteBuffer.allocate(8 + 8 + 8 + 1 + 4 + unscaled.length)
+                .putLong(transactionInfo.getSrcAccountId())
+                .putLong(transactionInfo.getTargetAccountId())
+                .putLong(transactionInfo.getExecuteAt())
+                .put((byte) transactionInfo.getStatus().ordinal())
+                .putInt(transactionInfo.getAmount().scale())
+                .put(unscaled)
+                .array();
+    }
+
+    private static TransactionInfo decode(long id, byte[] value) {
+        ByteBuffer record = ByteBuffer.wrap(value);
+        long srcAccountId = record.getLong();
+        long targetAccountId = record.getLong();
+        long executeAt = record.getLong();
+        TransactionStatus status = STATUSES[record.get()];
+        int scale = record.getInt();
+        byte[] unscaled = new byte[record.remaining()];
+        record.get(unscaled);
+        return new TransactionInfo(id, srcAccountId, targetAccountId, new BigDecimal(new BigInteger(unscaled), scale),
+                status, executeAt);
+    }
+
+    public void put(TransactionInfo transactionInfo) {
+        boolean replaced;
+        synchronized (this) {
+            replaced = pending.put(transactionInfo.getId(), transactionInfo) != null;
+        }
+        updated(replaced);
+    }
+
+    public void delete(long id) {
+        boolean replaced;
+        synchronized (this) {
+            replaced = pending.put(id, DELETED) != null;
+        }
+        updated(replaced);
+    }
+
+    /**
+     * @return the stored transaction or {@code null} if there is none
+     */
+    public synchronized TransactionInfo get(long id) {
+        Object transactionInfo = pending.get(id);
+        if (transactionInfo != null) {
+            return transactionInfo == DELETED ? null : (TransactionInfo) transactionInfo;
+        }
+        byte[] value = read(id);
+        return value == null || value == LogStore.TOMBSTONE ? null : decode(id, value);
+    }
+
+    @Override
+    protected void drainPending(LongObjectHashMap<byte[]> batch) {
+        pending.forEach((id, transactionInfo) ->
+                batch.put(id, transactionInfo == DELETED ? LogStore.TOMBSTONE : encode((TransactionInfo) transactionInfo)));
+        pending = new LongObjectHashMap<>();
+    }
+
+    @Override
+    protected int pendingSize() {
+        return pending.size();
+    }
+
+    @Override
+    protected long pendingMemoryBytes() {
+        return pending.memoryBytes();
+    }
+}
@@ -0,0 +1,168 @@
+package com.totorovan.transfer.store;
+
+import com.totorovan.transfer.common.collections.LongLongHashMap;
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+import com.totorovan.transfer.footprint.StoreFootprintDto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind in front of a {@link LogStore}: updates are kept in memory, where a later update of a key replaces
+ * the pending one, and {@link #flush()} writes all pending updates as one batch. Reads see pending updates and
+ * the batch being flushed before the log. Once {@code maxPending} keys are pending the updating thread flushes
+ * itself, which holds back writers the log can not keep up with.
+ * <p>
+ * Subclasses keep the pending updates in whatever form is cheapest to update, guarded by the lock of the store.
+ */
+public abstract class WriteBehindStore implements Closeable {
+
+    private final LogStore log;
+    private final int maxPending;
+    private final Object flushLock = new Object();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private LongObjectHashMap<byte[]> flushing;
+
+    protected WriteBehindStore(LogStore log, int maxPending) {
+        this.log = log;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Moves every pending update into the batch, {@link LogStore#TOMBSTONE} for a delete. Called holding the lock.
+     */
+    protected abstract void drainPending(LongObjectHashMap<byte[]> batch);
+
+    /**
+     * Called holding the lock.
+     */
+    protected abstract int pendingSize();
+
+    /**
+     * @return bytes of the tables holding the pending updates. Called holding the lock.
+     */
+    protected abstract long pendingMemoryBytes();
+
+    /**
+     * Must be called after every update, holding no lock.
+     *
+     * @param replaced whether the update replaced a pending one of the same key
+     */
+    protected void updated(boolean replaced) {
+        updates.increment();
+        if (replaced) {
+            coalesced.increment();
+        }
+        boolean full;
+        synchronized (this) {
+            full = pendingSize() >= maxPending;
+        }
+        if (full) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the stored value of a key without a pending update, {@code null} if there is none,
+     * {@link LogStore#TOMBSTONE} if it is being deleted. Called holding the lock.
+     */
+    protected byte[] read(long key) {
+        byte[] value = flushing == null ? null : flushing.get(key);
+        if (value != null) {
+            return value;
+        }
+        try {
+            return log.get(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the highest key written to the log, {@code 0} if there is none
+     */
+    public long maxStoredKey() {
+        long max = 0L;
+        for (long key : log.keys()) {
+            max = Math.max(max, key);
+        }
+        return max;
+    }
+
+    /**
+     * @return keys of the log and the batch being flushed, values are unused. Called holding the lock.
+     */
+    protected LongLongHashMap storedKeys() {
+        LongLongHashMap keys = new LongLongHashMap();
+        for (long key : log.keys()) {
+            keys.put(key, 0L);
+        }
+        if (flushing != null) {
+            flushing.forEach((key, value) -> {
+                if (value == LogStore.TOMBSTONE) {
+                    keys.remove(key);
+                } else {
+                    keys.put(key, 0L);
+                }
+            });
+        }
+        return keys;
+    }
+
+    /**
+     * A batch which could not be written is written again with the next flush.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            LongObjectHashMap<byte[]> batch = new LongObjectHashMap<>();
+            synchronized (this) {
+                if (flushing != null) {
+                    flushing.forEach(batch::put);
+                }
+                drainPending(batch);
+                if (batch.isEmpty()) {
+                    return;
+                }
+                flushing = batch;
+            }
+            log.write(batch);
+            synchronized (this) {
+                flushing = null;
+            }
+            flushed.add(batch.size());
+            batches.increment();
+        }
+    }
+
+    /**
+     * @return keys in the log and the bytes of its index and of the pending updates, the records stay in the file
+     */
+    public synchronized StoreFootprintDto footprint(String store) {
+        return StoreFootprintDto.of(store, log.size(), log.memoryBytes() + pendingMemoryBytes());
+    }
+
+    /**
+     * @return number of updates, the share of them coalesced before a flush and the records and batches written
+     */
+    public String stats() {
+        long updates = this.updates.sum();
+        return String.format("%d updates, %.1f%% coalesced, %d records written in %d batches, %d keys in %d bytes",
+                updates, updates == 0 ? 0.0 : 100.0 * coalesced.sum() / updates, flushed.sum(), batches.sum(),
+                log.size(), log.fileSize());
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        log.close();
+    }
+}
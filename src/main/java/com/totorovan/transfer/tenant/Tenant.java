@@ -0,0 +1,101 @@
+package com.totorovan.transfer.tenant;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import com.totorovan.transfer.engine.TransferEngine;
+import com.totorovan.transfer.id.IdAllocator;
+import com.totorovan.transfer.id.IdAssignment;
+import com.totorovan.transfer.limit.TokenBucket;
+import com.totorovan.transfer.read.ReadMetrics;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Business unit served by its own actor system, so it has its own {@code AccountService} and
+ * {@code TransactionService}, dispatchers and mailboxes, and its own balance index, money supply and events.
+ * A spike of one tenant queues behind its own work only. Its requests are counted and held to its quota of
+ * requests per second and requests in flight.
+ */
+@Getter
+public class Tenant {
+    private final String name;
+    private final ActorSystem system;
+    /**
+     * {@code null} if the engine does not use actors for accounts
+     */
+    private final ActorRef accountService;
+    private final TransferEngine transferEngine;
+    private final ActorRef transactionService;
+    private final ReadMetrics accountReads;
+    private final ReadMetrics transactionReads;
+    private final int maxInFlight;
+    private IdAssignment accountIds;
+    private IdAssignment transactionIds;
+    @Getter(AccessLevel.NONE)
+    private final TokenBucket quota;
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger inFlight = new AtomicInteger();
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong requests = new AtomicLong();
+    @Getter(AccessLevel.NONE)
+    private final AtomicLong throttled = new AtomicLong();
+
+    public Tenant(String name, ActorSystem system, ActorRef accountService, TransferEngine transferEngine,
+                  ActorRef transactionService, ReadMetrics accountReads, ReadMetrics transactionReads,
+                  double perSecond, int burst, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Requests in flight of tenant " + name + " must be positive, but were " + maxInFlight);
+        }
+        this.name = name;
+        this.system = system;
+        this.accountService = accountService;
+        this.transferEngine = transferEngine;
+        this.transactionService = transactionService;
+        this.accountReads = accountReads;
+        this.transactionReads = transactionReads;
+        this.quota = new TokenBucket(perSecond, burst);
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * The ids clients send become idempotency keys of this tenant.
+     */
+    public void assignIds(IdAllocator allocator, int maxKeys, Duration keyTtl) {
+        this.accountIds = new IdAssignment(allocator, maxKeys, keyTtl);
+        this.transactionIds = new IdAssignment(allocator, maxKeys, keyTtl);
+    }
+
+    /**
+     * Admits a request, which must be {@link #leave() left} once it is answered.
+     *
+     * @return {@code 0} if the request is admitted, otherwise the nanos to wait before the next one
+     */
+    long enter(long now) {
+        requests.incrementAndGet();
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            throttled.incrementAndGet();
+            return TimeUnit.SECONDS.toNanos(1);
+        }
+        long waitNanos = quota.take(now);
+        if (waitNanos != 0) {
+            inFlight.decrementAndGet();
+            throttled.incrementAndGet();
+        }
+        return waitNanos;
+    }
+
+    void leave() {
+        inFlight.decrementAndGet();
+    }
+
+    TenantDto snapshot() {
+        return new TenantDto(name, requests.get(), throttled.get(), inFlight.get(), maxInFlight,
+                accountReads.snapshot(), transactionReads.snapshot());
+    }
+}
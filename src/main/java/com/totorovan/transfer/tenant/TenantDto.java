@@ -0,0 +1,22 @@
+package com.totorovan.transfer.tenant;
+
+import com.totorovan.transfer.read.ReadMetricsDto;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Requests of a tenant, the ones answered with {@code 429} for its quota, the ones in flight and its reads.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TenantDto {
+    private String name;
+    private long requests;
+    private long throttled;
+    private int inFlight;
+    private int maxInFlight;
+    private ReadMetricsDto accountReads;
+    private ReadMetricsDto transactionReads;
+}
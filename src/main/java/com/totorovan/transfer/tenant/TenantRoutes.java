@@ -0,0 +1,24 @@
+package com.totorovan.transfer.tenant;
+
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Route;
+import com.totorovan.transfer.common.Codecs;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Admin endpoint reporting the requests, throttling and reads of every tenant.
+ */
+@RequiredArgsConstructor
+public class TenantRoutes extends AllDirectives {
+
+    private final Tenants tenants;
+
+    public Route routes() {
+        return pathPrefix("admin", () ->
+                path("tenants", () ->
+                        get(() -> complete(StatusCodes.OK, tenants.snapshot(), Codecs.marshaller()))
+                )
+        );
+    }
+}
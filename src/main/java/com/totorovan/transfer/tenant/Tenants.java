@@ -0,0 +1,77 @@
+package com.totorovan.transfer.tenant;
+
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.PathMatchers;
+import akka.http.javadsl.server.Route;
+import com.totorovan.transfer.limit.RateLimiter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Sends a request to the routes of its tenant, named by the path prefix {@code /tenants/<name>} or else by the
+ * tenant header. Requests naming no tenant go to the default routes, ones naming an unknown tenant are answered
+ * with {@code 404}. A request over the quota of its tenant is answered with {@code 429} before it reaches them.
+ */
+public class Tenants extends AllDirectives {
+    public static final String DEFAULT_HEADER = "X-Tenant";
+
+    private final String header;
+    private final Map<String, Tenant> tenants = new LinkedHashMap<>();
+
+    public Tenants(String header, Collection<Tenant> tenants) {
+        this.header = header;
+        for (Tenant tenant : tenants) {
+            this.tenants.put(tenant.getName(), tenant);
+        }
+    }
+
+    public Tenant get(String name) {
+        return tenants.get(name);
+    }
+
+    public Collection<Tenant> all() {
+        return tenants.values();
+    }
+
+    /**
+     * @param routes builds the routes of a tenant, called once per tenant
+     */
+    public Route select(Route defaultRoutes, Function<Tenant, Route> routes) {
+        Map<String, Route> tenantRoutes = new LinkedHashMap<>();
+        tenants.forEach((name, tenant) -> tenantRoutes.put(name, routes.apply(tenant)));
+        return route(
+                pathPrefix("tenants", () ->
+                        pathPrefix(PathMatchers.segment(), name -> serve(name, tenantRoutes.get(name)))
+                ),
+                optionalHeaderValueByName(header, name ->
+                        name.isPresent() ? serve(name.get(), tenantRoutes.get(name.get())) : defaultRoutes
+                )
+        );
+    }
+
+    private Route serve(String name, Route routes) {
+        Tenant tenant = tenants.get(name);
+        if (tenant == null) {
+            return complete(StatusCodes.NOT_FOUND, "Unknown tenant " + name);
+        }
+        long waitNanos = tenant.enter(System.nanoTime());
+        if (waitNanos != 0) {
+            return complete(RateLimiter.tooManyRequests(waitNanos));
+        }
+        return mapRouteResultFuture(result -> result.whenComplete((x, e) -> tenant.leave()), () -> routes);
+    }
+
+    public List<TenantDto> snapshot() {
+        List<TenantDto> snapshot = new ArrayList<>();
+        for (Tenant tenant : tenants.values()) {
+            snapshot.add(tenant.snapshot());
+        }
+        return snapshot;
+    }
+}
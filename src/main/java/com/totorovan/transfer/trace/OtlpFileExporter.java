@@ -0,0 +1,116 @@
+package com.totorovan.transfer.trace;
+
+import com.totorovan.transfer.trace.TransferTrace.Stage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+/**
+ * Appends traces finished since the previous run to a file, one OTLP/JSON {@code ExportTraceServiceRequest} per line
+ * as written by the OpenTelemetry collector's file exporter. A transfer is a {@code transfer} span with a child span
+ * per stage. Meant to be run periodically from one thread.
+ */
+public class OtlpFileExporter implements Runnable, Closeable {
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final String SPAN_KIND_INTERNAL = "1";
+
+    private final TransferTracer tracer;
+    private final Writer writer;
+    private long nextSequence;
+    private long dropped;
+
+    public OtlpFileExporter(TransferTracer tracer, Path file) throws IOException {
+        this.tracer = tracer;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, CREATE, APPEND);
+    }
+
+    /**
+     * @return number of traces overwritten in the ring buffer before they could be exported
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public void run() {
+        StringBuilder spans = new StringBuilder();
+        long from = nextSequence;
+        long[] exported = new long[1];
+        nextSequence = tracer.drain(from, trace -> {
+            appendSpans(spans, trace);
+            exported[0]++;
+        });
+        dropped += nextSequence - from - exported[0];
+        if (exported[0] == 0) {
+            return;
+        }
+        try {
+            writer.write("{\"resourceSpans\":[{\"resource\":{\"attributes\":[{\"key\":\"service.name\",\"value\":{\"stringValue\":\"transfer\"}}]},"
+                    + "\"scopeSpans\":[{\"scope\":{\"name\":\"com.totorovan.transfer\"},\"spans\":[");
+            writer.append(spans);
+            writer.write("]}]}]}\n");
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not export traces", e);
+        }
+    }
+
+    private static void appendSpans(StringBuilder spans, TransferTrace trace) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String traceId = hex(random.nextLong()) + hex(trace.getTransactionId());
+        String rootSpanId = hex(random.nextLong());
+        long start = trace.getStamp(Stage.ACCEPTED);
+        if (spans.length() > 0) {
+            spans.append(',');
+        }
+        appendSpan(spans, traceId, rootSpanId, null, "transfer", trace.toEpochNanos(start),
+                trace.toEpochNanos(trace.getStamp(Stage.REPLIED)));
+        spans.append(",\"attributes\":[{\"key\":\"transaction.id\",\"value\":{\"intValue\":\"").append(trace.getTransactionId())
+                .append("\"}},{\"key\":\"transfer.outcome\",\"value\":{\"stringValue\":\"").append(trace.getOutcome()).append("\"}}]}");
+        long previous = start;
+        for (int i = 1; i < STAGES.length; i++) {
+            long stamp = trace.getStamp(STAGES[i]);
+            if (stamp == 0) {
+                continue;
+            }
+            spans.append(',');
+            appendSpan(spans, traceId, hex(random.nextLong()), rootSpanId, STAGES[i].name(), trace.toEpochNanos(previous),
+                    trace.toEpochNanos(stamp));
+            spans.append('}');
+            previous = stamp;
+        }
+    }
+
+    /**
+     * Appends a span object without its closing brace.
+     */
+    private static void appendSpan(StringBuilder spans, String traceId, String spanId, String parentSpanId, String name,
+                                   long startEpochNanos, long endEpochNanos) {
+        spans.append("{\"traceId\":\"").append(traceId).append("\",\"spanId\":\"").append(spanId).append('"');
+        if (parentSpanId != null) {
+            spans.append(",\"parentSpanId\":\"").append(parentSpanId).append('"');
+        }
+        spans.append(",\"name\":\"").append(name).append("\",\"kind\":").append(SPAN_KIND_INTERNAL)
+                .append(",\"startTimeUnixNano\":\"").append(startEpochNanos)
+                .append("\",\"endTimeUnixNano\":\"").append(endEpochNanos).append('"');
+    }
+
+    private static String hex(long value) {
+        String hex = Long.toHexString(value);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,20 @@
+package com.totorovan.transfer.trace;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Finished transfer with the microseconds spent in every stage it went through.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TraceDto {
+    private long transactionId;
+    private String outcome;
+    private long totalMicros;
+    private Map<String, Long> stageMicros;
+}
@@ -0,0 +1,56 @@
+package com.totorovan.transfer.trace;
+
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.StringUnmarshallers;
+import com.totorovan.transfer.common.Codecs;
+import com.totorovan.transfer.trace.TransferTrace.Stage;
+import lombok.RequiredArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Slowest recent transfers kept by {@link TransferTracer} with their stage breakdown.
+ */
+@RequiredArgsConstructor
+public class TraceRoutes extends AllDirectives {
+
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+    private static final Stage[] STAGES = Stage.values();
+
+    private final TransferTracer tracer;
+
+    private static TraceDto mapToTraceDto(TransferTrace trace) {
+        long[] stageNanos = trace.getStageNanos();
+        Map<String, Long> stageMicros = new LinkedHashMap<>();
+        for (int i = 0; i < STAGES.length; i++) {
+            if (stageNanos[i] >= 0) {
+                stageMicros.put(STAGES[i].name(), stageNanos[i] / 1000);
+            }
+        }
+        return new TraceDto(trace.getTransactionId(), trace.getOutcome(), trace.getTotalNanos() / 1000, stageMicros);
+    }
+
+    public Route routes() {
+        return pathPrefix("debug", () ->
+                path("traces", () ->
+                        get(() -> parameterOptional(StringUnmarshallers.INTEGER, "limit", limit -> traces(limit.orElse(DEFAULT_LIMIT))))
+                )
+        );
+    }
+
+    private Route traces(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return complete(StatusCodes.BAD_REQUEST, "Limit must be between 1 and " + MAX_LIMIT);
+        }
+        List<TraceDto> traces = tracer.slowest(limit).stream()
+                .map(TraceRoutes::mapToTraceDto)
+                .collect(Collectors.toList());
+        return complete(StatusCodes.OK, traces, Codecs.marshaller());
+    }
+}
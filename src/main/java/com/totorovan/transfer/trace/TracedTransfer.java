@@ -0,0 +1,16 @@
+package com.totorovan.transfer.trace;
+
+import com.totorovan.transfer.common.Messages.Sheddable;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import lombok.Value;
+
+import java.io.Serializable;
+
+/**
+ * Transfer message carrying its trace, sent instead of the bare {@link TransactionInfo} when the transfer is traced.
+ */
+@Value
+public class TracedTransfer implements Serializable, Sheddable {
+    private final TransactionInfo transactionInfo;
+    private final TransferTrace trace;
+}
@@ -0,0 +1,126 @@
+package com.totorovan.transfer.trace;
+
+import java.io.Serializable;
+
+/**
+ * Stage timestamps of one transfer, carried along with the transfer's messages.
+ * Every stage is stamped by the one actor or continuation handling it, and message passing orders the stamps,
+ * so no synchronization is needed. Stamps are {@link System#nanoTime()}, {@code 0} for a stage the transfer did not reach.
+ */
+public final class TransferTrace implements Serializable {
+
+    /**
+     * Stages in the order a transfer goes through them, a stage ends when it is stamped.
+     */
+    public enum Stage {
+        /**
+         * The HTTP request is parsed and the transfer is sent to {@code TransactionService}.
+         */
+        ACCEPTED,
+        /**
+         * {@code TransactionService} took the transfer from its mailbox.
+         */
+        RECEIVED,
+        /**
+         * {@code AccountService} took the transfer from its mailbox.
+         */
+        ACCOUNT_SERVICE,
+        /**
+         * The source account handled the withdrawal.
+         */
+        WITHDRAWN,
+        /**
+         * The target account handled the deposit.
+         */
+        DEPOSITED,
+        /**
+         * {@code TransactionService} got the outcome of the transfer.
+         */
+        TRANSFERRED,
+        /**
+         * The transaction actor acknowledged the new status.
+         */
+        STATUS_CHANGED,
+        /**
+         * The reply reached the HTTP route.
+         */
+        REPLIED
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final long transactionId;
+    private final long startEpochNanos;
+    private final long[] stamps = new long[STAGES.length];
+    private String outcome;
+    private long sequence;
+
+    TransferTrace(long transactionId) {
+        this.transactionId = transactionId;
+        this.startEpochNanos = System.currentTimeMillis() * 1_000_000L;
+        stamps[Stage.ACCEPTED.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * Stamps the stage of a trace which may be {@code null} when the transfer is not traced.
+     */
+    public static void mark(TransferTrace trace, Stage stage) {
+        if (trace != null) {
+            trace.stamps[stage.ordinal()] = System.nanoTime();
+        }
+    }
+
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    long getStamp(Stage stage) {
+        return stamps[stage.ordinal()];
+    }
+
+    /**
+     * @return wall clock time of a stamp in nanoseconds since the epoch
+     */
+    long toEpochNanos(long stamp) {
+        return startEpochNanos + stamp - stamps[Stage.ACCEPTED.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        return stamps[Stage.REPLIED.ordinal()] - stamps[Stage.ACCEPTED.ordinal()];
+    }
+
+    /**
+     * @return time of every stage since the previous stamped stage, {@code -1} for stages which were not stamped
+     */
+    public long[] getStageNanos() {
+        long[] durations = new long[STAGES.length];
+        long previous = stamps[0];
+        for (int i = 1; i < STAGES.length; i++) {
+            if (stamps[i] == 0) {
+                durations[i] = -1;
+            } else {
+                durations[i] = stamps[i] - previous;
+                previous = stamps[i];
+            }
+        }
+        durations[0] = -1;
+        return durations;
+    }
+
+    void finish(String outcome) {
+        mark(this, Stage.REPLIED);
+        this.outcome = outcome;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+}
@@ -0,0 +1,81 @@
+package com.totorovan.transfer.trace;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Starts {@link TransferTrace}s and keeps the most recent finished ones in a lock-free ring buffer.
+ * Finishing a trace claims a sequence number with one atomic increment and publishes the trace into its slot,
+ * older traces are overwritten. Readers never block writers, a trace overwritten before it was read is lost.
+ */
+public class TransferTracer {
+
+    private final boolean enabled;
+    private final AtomicReferenceArray<TransferTrace> slots;
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * @param capacity number of kept traces, rounded up to a power of two
+     */
+    public TransferTracer(boolean enabled, int capacity) {
+        this.enabled = enabled;
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return a new trace or {@code null} if tracing is disabled
+     */
+    public TransferTrace start(long transactionId) {
+        return enabled ? new TransferTrace(transactionId) : null;
+    }
+
+    public void finish(TransferTrace trace, String outcome) {
+        trace.finish(outcome);
+        long sequence = nextSequence.getAndIncrement();
+        trace.setSequence(sequence);
+        slots.lazySet((int) (sequence & mask), trace);
+    }
+
+    /**
+     * @return up to {@code limit} kept traces, slowest first
+     */
+    public List<TransferTrace> slowest(int limit) {
+        List<TransferTrace> traces = new ArrayList<>(slots.length());
+        for (int i = 0; i < slots.length(); i++) {
+            TransferTrace trace = slots.get(i);
+            if (trace != null) {
+                traces.add(trace);
+            }
+        }
+        traces.sort(Comparator.comparingLong(TransferTrace::getTotalNanos).reversed());
+        return traces.size() > limit ? new ArrayList<>(traces.subList(0, limit)) : traces;
+    }
+
+    /**
+     * Hands finished traces from sequence {@code from} on to {@code consumer}, in finishing order.
+     * Stops at a trace which claimed its sequence but is not published yet.
+     *
+     * @return the sequence to continue from, the gap to {@code from} minus the handed traces were overwritten
+     */
+    long drain(long from, Consumer<TransferTrace> consumer) {
+        long next = nextSequence.get();
+        long sequence = Math.max(from, next - slots.length());
+        for (; sequence < next; sequence++) {
+            TransferTrace trace = slots.get((int) (sequence & mask));
+            if (trace == null || trace.getSequence() < sequence) {
+                break;
+            }
+            if (trace.getSequence() == sequence) {
+                consumer.accept(trace);
+            }
+        }
+        return sequence;
+    }
+}
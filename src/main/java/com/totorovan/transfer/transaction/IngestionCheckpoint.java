@@ -0,0 +1,52 @@
+package com.totorovan.transfer.transaction;
+
+import lombok.Value;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of an ingestion: the number of input lines whose results are durably written
+ * and the length of the results file at that point.
+ * Written to a temporary file first and moved over the previous checkpoint, so a crash leaves either
+ * the old or the new checkpoint, never a torn one.
+ */
+@Value
+class IngestionCheckpoint {
+    static final IngestionCheckpoint START = new IngestionCheckpoint(0L, 0L);
+
+    private static final String LINES = "lines";
+    private static final String RESULTS_BYTES = "resultsBytes";
+
+    private final long lines;
+    private final long resultsBytes;
+
+    static IngestionCheckpoint read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return START;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return new IngestionCheckpoint(Long.parseLong(properties.getProperty(LINES)),
+                Long.parseLong(properties.getProperty(RESULTS_BYTES)));
+    }
+
+    void write(Path path) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(LINES, Long.toString(lines));
+        properties.setProperty(RESULTS_BYTES, Long.toString(resultsBytes));
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,24 @@
+package com.totorovan.transfer.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome counts of the lines ingested by one run, lines skipped on resume are not counted. Lines after the checkpoint
+ * which an interrupted run already applied are counted as already applied, not as rejected.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestionReport {
+    private long lines;
+    private long committed;
+    private long rolledBack;
+    private long rejected;
+    private long alreadyApplied;
+
+    public IngestionReport(long lines, long committed, long rolledBack, long rejected) {
+        this(lines, committed, rolledBack, rejected, 0L);
+    }
+}
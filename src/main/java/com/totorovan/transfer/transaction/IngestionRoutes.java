@@ -0,0 +1,95 @@
+package com.totorovan.transfer.transaction;
+
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Route;
+import akka.stream.Materializer;
+import com.totorovan.transfer.common.Codecs;
+import com.totorovan.transfer.common.Messages.Failure;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Admin endpoints starting and polling {@link TransactionIngestion} runs of files inside the ingestion directory.
+ */
+public class IngestionRoutes extends AllDirectives {
+
+    private final TransactionIngestion ingestion;
+    private final Path directory;
+    private final Map<Path, CompletableFuture<IngestionReport>> runs = new HashMap<>();
+
+    public IngestionRoutes(TransactionIngestion ingestion, Path directory) {
+        this.ingestion = ingestion;
+        this.directory = directory.toAbsolutePath().normalize();
+    }
+
+    public Route routes() {
+        return pathPrefix("admin", () ->
+                path("ingestions", () ->
+                        parameter("file", file ->
+                                route(
+                                        post(() -> extractMaterializer(materializer -> startIngestion(file, materializer))),
+                                        get(() -> getIngestion(file))
+                                )
+                        )
+                )
+        );
+    }
+
+    /**
+     * @return the started run or {@code null} if the file is already being ingested
+     */
+    public synchronized CompletableFuture<IngestionReport> start(Path file, Materializer materializer) {
+        CompletableFuture<IngestionReport> previous = runs.get(file);
+        if (previous != null && !previous.isDone()) {
+            return null;
+        }
+        CompletableFuture<IngestionReport> run = ingestion.run(file, materializer).toCompletableFuture();
+        runs.put(file, run);
+        return run;
+    }
+
+    private synchronized CompletableFuture<IngestionReport> getRun(Path file) {
+        return runs.get(file);
+    }
+
+    private Path resolve(String file) {
+        Path path = directory.resolve(file).normalize();
+        return path.startsWith(directory) ? path : null;
+    }
+
+    private Route startIngestion(String file, Materializer materializer) {
+        Path path = resolve(file);
+        if (path == null) {
+            return complete(StatusCodes.BAD_REQUEST, "File must be inside the ingestion directory");
+        }
+        if (!Files.isRegularFile(path)) {
+            return complete(StatusCodes.NOT_FOUND, "File " + file + " not found");
+        }
+        if (start(path, materializer) == null) {
+            return complete(StatusCodes.CONFLICT, "File " + file + " is already being ingested");
+        }
+        return complete(StatusCodes.ACCEPTED);
+    }
+
+    private Route getIngestion(String file) {
+        Path path = resolve(file);
+        CompletableFuture<IngestionReport> run = path == null ? null : getRun(path);
+        if (run == null) {
+            return complete(StatusCodes.NOT_FOUND, "No ingestion of " + file);
+        }
+        if (!run.isDone()) {
+            return complete(StatusCodes.ACCEPTED);
+        }
+        try {
+            return complete(StatusCodes.OK, run.join(), Codecs.marshaller());
+        } catch (CompletionException e) {
+            return complete(StatusCodes.INTERNAL_SERVER_ERROR, new Failure(String.valueOf(e.getCause().getMessage())), Codecs.marshaller());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.totorovan.transfer.transaction;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MultiLegTransactionDto {
+    private long id;
+    private long srcAccountId;
+    private List<LegDto> legs;
+    private TransactionStatus status;
+    private String statusReason;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class LegDto {
+        private long targetAccountId;
+        private BigDecimal amount;
+        private TransactionStatus status;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String statusReason;
+
+        public LegDto(long targetAccountId, BigDecimal amount, TransactionStatus status) {
+            this(targetAccountId, amount, status, null);
+        }
+    }
+}
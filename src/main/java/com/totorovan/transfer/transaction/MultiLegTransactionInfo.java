@@ -0,0 +1,96 @@
+package com.totorovan.transfer.transaction;
+
+import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.Sheddable;
+import com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Transaction debiting the source account once and crediting every leg's target account.
+ * Every leg carries its own outcome, which is the status of the whole transaction unless some legs were credited
+ * before it rolled back, see {@link #rolledBack(List)}.
+ */
+@Data
+public class MultiLegTransactionInfo implements TransactionRecord, Serializable, Sheddable {
+
+    private final long id;
+    private final long srcAccountId;
+    private final List<Leg> legs;
+    private final TransactionStatus status;
+
+    public BigDecimal getTotalAmount() {
+        return legs.stream().map(Leg::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    /**
+     * Gives every leg the status, for the outcomes all legs share: committed together or rolled back before any leg
+     * was credited.
+     */
+    @Override
+    public MultiLegTransactionInfo withStatus(TransactionStatus status) {
+        List<Leg> updatedLegs = legs.stream()
+                .map(leg -> leg.withStatus(status, null))
+                .collect(Collectors.toList());
+        return new MultiLegTransactionInfo(id, srcAccountId, updatedLegs, status);
+    }
+
+    /**
+     * @param legs outcome of every leg, in the order of the legs
+     */
+    public MultiLegTransactionInfo rolledBack(List<Leg> legs) {
+        return new MultiLegTransactionInfo(id, srcAccountId, legs, TransactionStatus.ROLLEDBACK);
+    }
+
+    @Override
+    public long[] accountIds() {
+        long[] accountIds = new long[legs.size() + 1];
+        accountIds[0] = srcAccountId;
+        for (int i = 0; i < legs.size(); i++) {
+            accountIds[i + 1] = legs.get(i).getTargetAccountId();
+        }
+        return accountIds;
+    }
+
+    @Override
+    public List<TransactionInfo> toTransactionInfos() {
+        return legs.stream()
+                .map(leg -> new TransactionInfo(id, srcAccountId, leg.getTargetAccountId(), leg.getAmount(), leg.getStatus()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A leg of a rolled back transaction is {@code ROLLEDBACK} once nothing of it stays credited, a leg whose credit
+     * could not be taken back stays {@code COMMITTED}. The status reason tells why the leg failed or was not reverted.
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Leg implements Serializable {
+        private final long targetAccountId;
+        private final BigDecimal amount;
+        private final TransactionStatus status;
+        private final String statusReason;
+
+        public Leg(long targetAccountId, BigDecimal amount, TransactionStatus status) {
+            this(targetAccountId, amount, status, null);
+        }
+
+        public Leg withStatus(TransactionStatus status, String statusReason) {
+            return new Leg(targetAccountId, amount, status, statusReason);
+        }
+    }
+
+    /**
+     * Reply of an engine whose multi-leg transfer failed after crediting legs, with the outcome of every leg.
+     */
+    @Data
+    public static class LegsFailed implements Serializable {
+        private final Failure failure;
+        private final List<Leg> legs;
+    }
+}
@@ -0,0 +1,103 @@
+package com.totorovan.transfer.transaction;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.SCHEDULED;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+/**
+ * Append-only log of pending scheduled transfers: {@code S,id,srcAccountId,targetAccountId,amount,executeAt} when
+ * a transfer is scheduled and {@code R,id} when it is released or cancelled.
+ * Opening replays the log and rewrites it with just the pending transfers, a torn last line left by a crash is dropped.
+ * Lines are flushed to the OS on {@link #flush()}, they survive a crash of the process but not of the machine.
+ */
+class ScheduledTransferJournal implements Closeable {
+
+    private final Writer writer;
+    private final List<TransactionInfo> pending;
+
+    private ScheduledTransferJournal(Writer writer, List<TransactionInfo> pending) {
+        this.writer = writer;
+        this.pending = pending;
+    }
+
+    static ScheduledTransferJournal open(Path path) throws IOException {
+        Map<Long, TransactionInfo> pending = new LinkedHashMap<>();
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    replay(line, pending);
+                }
+            }
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer compacted = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (TransactionInfo transactionInfo : pending.values()) {
+                compacted.write(scheduledLine(transactionInfo));
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, CREATE, APPEND);
+        return new ScheduledTransferJournal(writer, new ArrayList<>(pending.values()));
+    }
+
+    private static void replay(String line, Map<Long, TransactionInfo> pending) {
+        String[] fields = line.split(",", -1);
+        try {
+            if (fields.length == 6 && "S".equals(fields[0])) {
+                long id = Long.parseLong(fields[1]);
+                pending.put(id, new TransactionInfo(id, Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                        new BigDecimal(fields[4]), SCHEDULED, Long.parseLong(fields[5])));
+            } else if (fields.length == 2 && "R".equals(fields[0])) {
+                pending.remove(Long.parseLong(fields[1]));
+            }
+        } catch (NumberFormatException e) {
+            // torn write
+        }
+    }
+
+    private static String scheduledLine(TransactionInfo transactionInfo) {
+        return "S," + transactionInfo.getId() + "," + transactionInfo.getSrcAccountId() + ","
+                + transactionInfo.getTargetAccountId() + "," + transactionInfo.getAmount().toPlainString() + ","
+                + transactionInfo.getExecuteAt() + "\n";
+    }
+
+    /**
+     * @return transfers pending when the journal was opened, in the order they were scheduled
+     */
+    List<TransactionInfo> getPending() {
+        return pending;
+    }
+
+    void scheduled(TransactionInfo transactionInfo) throws IOException {
+        writer.write(scheduledLine(transactionInfo));
+    }
+
+    void released(long transactionId) throws IOException {
+        writer.write("R," + transactionId + "\n");
+    }
+
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
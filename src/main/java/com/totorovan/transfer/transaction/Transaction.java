@@ -2,19 +2,23 @@ package com.totorovan.transfer.transaction;
 
 import akka.actor.AbstractActor;
 import akka.actor.Props;
+import com.totorovan.transfer.common.Messages.Urgent;
+import com.totorovan.transfer.event.LedgerEvents;
 import lombok.Data;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 
 public class Transaction extends AbstractActor {
 
-    private TransactionInfo transactionInfo;
+    private TransactionRecord transactionInfo;
 
-    private Transaction(TransactionInfo transactionInfo) {
+    private Transaction(TransactionRecord transactionInfo) {
         this.transactionInfo = transactionInfo;
     }
 
-    static Props props(TransactionInfo transactionInfo) {
+    static Props props(TransactionRecord transactionInfo) {
         return Props.create(Transaction.class, () -> new Transaction(transactionInfo));
     }
 
@@ -23,6 +27,7 @@ public class Transaction extends AbstractActor {
         return receiveBuilder()
                 .match(GetTransaction.class, this::onGetTransactionInfo)
                 .match(ChangeStatus.class, this::onChangeStatus)
+                .match(RollBackLegs.class, this::onRollBackLegs)
                 .build();
     }
 
@@ -32,18 +37,50 @@ public class Transaction extends AbstractActor {
 
     private void onChangeStatus(ChangeStatus changeStatus) {
         TransactionInfo.TransactionStatus status = changeStatus.status;
-        transactionInfo = new TransactionInfo(transactionInfo.getId(), transactionInfo.getSrcAccountId(),
-                transactionInfo.getTargetAccountId(), transactionInfo.getAmount(), status);
+        if (transactionInfo.getStatus() == status) {
+            sender().tell(transactionInfo, self());
+            return;
+        }
+        transactionInfo = transactionInfo.withStatus(status);
+        onStatusChanged();
+    }
+
+    private void onRollBackLegs(RollBackLegs rollBackLegs) {
+        transactionInfo = ((MultiLegTransactionInfo) transactionInfo).rolledBack(rollBackLegs.legs);
+        onStatusChanged();
+    }
+
+    private void onStatusChanged() {
         sender().tell(transactionInfo, self());
+        LedgerEvents.get(context().system()).publish(new TransactionStatusChanged(transactionInfo), transactionInfo.accountIds());
     }
 
+    /**
+     * One shared instance per status, see {@link #of(TransactionInfo.TransactionStatus)}.
+     */
     @Data
     static class ChangeStatus implements Serializable {
+        private static final ChangeStatus[] BY_STATUS = Arrays.stream(TransactionInfo.TransactionStatus.values())
+                .map(ChangeStatus::new)
+                .toArray(ChangeStatus[]::new);
+
         private final TransactionInfo.TransactionStatus status;
+
+        static ChangeStatus of(TransactionInfo.TransactionStatus status) {
+            return BY_STATUS[status.ordinal()];
+        }
+    }
+
+    /**
+     * Rolls back a multi-leg transaction whose legs did not all end alike, with the outcome of every leg.
+     */
+    @Data
+    static class RollBackLegs implements Serializable {
+        private final List<MultiLegTransactionInfo.Leg> legs;
     }
 
     @Data
-    static class GetTransaction implements Serializable {
+    static class GetTransaction implements Serializable, Urgent {
         private final long id;
     }
 }
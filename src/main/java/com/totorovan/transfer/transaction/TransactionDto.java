@@ -17,4 +17,13 @@ public class TransactionDto {
     private BigDecimal amount;
     private TransactionStatus status;
     private String statusReason;
+    /**
+     * Epoch millis to execute the transfer at, left out to execute it right away.
+     */
+    private Long executeAt;
+
+    public TransactionDto(long id, long srcAccountId, long targetAccountId, BigDecimal amount, TransactionStatus status,
+                          String statusReason) {
+        this(id, srcAccountId, targetAccountId, amount, status, statusReason, null);
+    }
 }
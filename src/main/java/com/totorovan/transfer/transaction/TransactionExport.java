@@ -0,0 +1,105 @@
+package com.totorovan.transfer.transaction;
+
+import akka.NotUsed;
+import akka.actor.ActorRef;
+import akka.http.javadsl.model.ContentType;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpCharsets;
+import akka.http.javadsl.model.MediaTypes;
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.transaction.TransactionService.GetTransactions;
+import com.totorovan.transfer.transaction.TransactionService.TransactionPage;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static akka.pattern.PatternsCS.ask;
+
+/**
+ * Streams transactions matching a filter from {@link TransactionService} page by page.
+ * The next page is asked for only when downstream signals demand, so the export is backpressured
+ * by the client connection, never holds more than a page in memory and lets the service
+ * handle live traffic in between pages.
+ */
+class TransactionExport {
+
+    private static final int PAGE_SIZE = 256;
+
+    private TransactionExport() {
+    }
+
+    static Source<TransactionInfo, NotUsed> source(ActorRef transactionService, TransactionFilter filter, Duration timeout) {
+        return Source.unfoldAsync(0, (Integer cursor) -> nextPage(transactionService, filter, cursor, timeout))
+                .mapConcat(transactions -> transactions);
+    }
+
+    private static CompletionStage<Optional<Pair<Integer, List<TransactionInfo>>>> nextPage(
+            ActorRef transactionService, TransactionFilter filter, int cursor, Duration timeout) {
+        if (cursor < 0) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return ask(transactionService, new GetTransactions(filter, cursor, PAGE_SIZE), timeout)
+                .thenApply(response -> {
+                    if (response instanceof Failure) {
+                        throw new IllegalStateException(((Failure) response).getMessage());
+                    }
+                    TransactionPage page = (TransactionPage) response;
+                    return Optional.of(Pair.create(page.getNextCursor(), page.getTransactions()));
+                });
+    }
+
+    enum Format {
+        NDJSON(ContentTypes.create(MediaTypes.applicationWithFixedCharset("x-ndjson", HttpCharsets.UTF_8)), ByteString.empty()) {
+            private final ObjectWriter writer = new ObjectMapper().writerFor(TransactionInfo.class);
+
+            @Override
+            ByteString render(TransactionInfo transactionInfo) {
+                try {
+                    return ByteString.fromArrayUnsafe(writer.writeValueAsBytes(transactionInfo)).concat(NEW_LINE);
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        },
+        CSV(ContentTypes.create(MediaTypes.TEXT_CSV, HttpCharsets.UTF_8),
+                ByteString.fromString("id,srcAccountId,targetAccountId,amount,status\n")) {
+            @Override
+            ByteString render(TransactionInfo transactionInfo) {
+                return ByteString.fromString(transactionInfo.getId() + "," + transactionInfo.getSrcAccountId() + ","
+                        + transactionInfo.getTargetAccountId() + "," + transactionInfo.getAmount().toPlainString() + ","
+                        + transactionInfo.getStatus() + "\n");
+            }
+        };
+
+        private static final ByteString NEW_LINE = ByteString.fromString("\n");
+
+        private final ContentType contentType;
+        private final ByteString header;
+
+        Format(ContentType contentType, ByteString header) {
+            this.contentType = contentType;
+            this.header = header;
+        }
+
+        abstract ByteString render(TransactionInfo transactionInfo);
+
+        ContentType getContentType() {
+            return contentType;
+        }
+
+        Source<ByteString, NotUsed> render(Source<TransactionInfo, NotUsed> transactions) {
+            Source<ByteString, NotUsed> rows = transactions.map(this::render);
+            return header.isEmpty() ? rows : Source.single(header).concat(rows);
+        }
+    }
+}
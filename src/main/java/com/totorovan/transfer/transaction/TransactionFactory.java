@@ -2,9 +2,58 @@ package com.totorovan.transfer.transaction;
 
 import akka.actor.ActorContext;
 import akka.actor.ActorRef;
+import com.totorovan.transfer.footprint.StoreFootprintDto;
+import com.totorovan.transfer.store.TransactionStore;
 
+/**
+ * Creates transaction actors, with a {@link TransactionStore} single transfers are kept in it as well.
+ * Multi-leg transfers are kept in memory only.
+ */
 public class TransactionFactory {
+    private final TransactionStore store;
+
+    public TransactionFactory() {
+        this(null);
+    }
+
+    /**
+     * @param store keeps single transfers, {@code null} to keep them in memory only
+     */
+    public TransactionFactory(TransactionStore store) {
+        this.store = store;
+    }
+
     ActorRef get(ActorContext context, TransactionInfo transactionInfo) {
         return context.actorOf(Transaction.props(transactionInfo));
     }
+
+    ActorRef get(ActorContext context, MultiLegTransactionInfo transactionInfo) {
+        return context.actorOf(Transaction.props(transactionInfo));
+    }
+
+    void save(TransactionRecord transactionInfo) {
+        if (store != null && transactionInfo instanceof TransactionInfo) {
+            store.put((TransactionInfo) transactionInfo);
+        }
+    }
+
+    /**
+     * @return a stored transfer or {@code null} if it is not stored
+     */
+    TransactionInfo load(long id) {
+        return store == null ? null : store.get(id);
+    }
+
+    void delete(long id) {
+        if (store != null) {
+            store.delete(id);
+        }
+    }
+
+    /**
+     * @return footprint of the store, {@code null} without a store
+     */
+    StoreFootprintDto storeFootprint() {
+        return store == null ? null : store.footprint("transactionStore");
+    }
 }
@@ -0,0 +1,21 @@
+package com.totorovan.transfer.transaction;
+
+import com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus;
+import lombok.Value;
+
+import java.io.Serializable;
+
+/**
+ * Optional criteria of a transaction listing, {@code null} means the criterion is not applied.
+ */
+@Value
+public class TransactionFilter implements Serializable {
+    private final Long accountId;
+    private final TransactionStatus status;
+    private final Long minId;
+    private final Long maxId;
+
+    static TransactionFilter forAccount(long accountId, TransactionStatus status) {
+        return new TransactionFilter(accountId, status, null, null);
+    }
+}
@@ -0,0 +1,192 @@
+package com.totorovan.transfer.transaction;
+
+import com.totorovan.transfer.common.collections.LongChunkList;
+import com.totorovan.transfer.common.collections.LongLongHashMap;
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+import com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus;
+import lombok.Value;
+
+import java.util.Arrays;
+
+/**
+ * Creation-ordered index of transaction ids, kept globally and per account (as source or target).
+ * Every added transaction takes the next position, which is a stable pagination cursor.
+ * The account lists hold positions in the global list. An entry only counts while it is the current position of its
+ * id, so deleted transactions and earlier transactions under a reused id are skipped. Such dead entries are dropped
+ * from all lists once there are as many of them as live ones, and from the list of an account before a page of it
+ * would skip more of them than it returns. The lists stay sorted by position, so cursors survive dropping entries.
+ */
+class TransactionIndex {
+
+    static final int MIN_DEAD_TO_COMPACT = 1024;
+    private static final int MIN_SKIPPED_TO_COMPACT = 64;
+    private static final LongChunkList EMPTY = new LongChunkList();
+    private static final int SCAN_LIMIT_PER_ID = 16;
+    // header, chunks reference and size of a LongChunkList plus the header of its chunks array
+    private static final int LIST_BYTES = 16 + 16;
+
+    // positions in creation order, with the id of each at the same index of transactionIds
+    private LongChunkList positions = new LongChunkList();
+    private LongChunkList transactionIds = new LongChunkList();
+    private final LongObjectHashMap<LongChunkList> positionsByAccount = new LongObjectHashMap<>();
+    private final LongLongHashMap positionById = new LongLongHashMap();
+    private final LongObjectHashMap<TransactionStatus> statusById = new LongObjectHashMap<>();
+    private int nextPosition;
+    private int dead;
+
+    void add(TransactionRecord transactionInfo) {
+        long id = transactionInfo.getId();
+        // clients may leave the status of a new transaction out
+        TransactionStatus status = transactionInfo.getStatus();
+        statusById.put(id, status == null ? TransactionStatus.NEW : status);
+        long position = nextPosition++;
+        positions.add(position);
+        transactionIds.add(id);
+        if (positionById.put(id, position, -1) >= 0) {
+            dead++;
+        }
+        long[] accountIds = transactionInfo.accountIds();
+        Arrays.sort(accountIds);
+        for (int i = 0; i < accountIds.length; i++) {
+            if (i == 0 || accountIds[i] != accountIds[i - 1]) {
+                append(accountIds[i], position);
+            }
+        }
+    }
+
+    private void append(long accountId, long position) {
+        LongChunkList accountPositions = positionsByAccount.get(accountId);
+        if (accountPositions == null) {
+            accountPositions = new LongChunkList();
+            positionsByAccount.put(accountId, accountPositions);
+        }
+        accountPositions.add(position);
+    }
+
+    void updateStatus(long transactionId, TransactionStatus status) {
+        statusById.replace(transactionId, status);
+    }
+
+    void remove(long transactionId) {
+        statusById.remove(transactionId);
+        if (positionById.remove(transactionId)) {
+            dead++;
+            if (dead >= MIN_DEAD_TO_COMPACT && dead >= transactionIds.size() - dead) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Collects up to {@code limit} matching ids starting at the position {@code cursor}.
+     * The scan is bounded, so a selective filter may return fewer ids than requested together with a next cursor,
+     * this keeps a single call cheap enough to not hold the owning actor away from live traffic.
+     */
+    Slice slice(TransactionFilter filter, int cursor, int limit) {
+        boolean global = filter.getAccountId() == null;
+        LongChunkList candidates = global ? positions : positionsByAccount.getOrDefault(filter.getAccountId(), EMPTY);
+        int index = indexOf(candidates, cursor);
+        int end = (int) Math.min(candidates.size(), index + (long) limit * SCAN_LIMIT_PER_ID);
+        long[] ids = new long[limit];
+        int count = 0;
+        int skipped = 0;
+        while (index < end && count < limit) {
+            long position = candidates.get(index);
+            long id = transactionIds.get(global ? index : indexOf(positions, position));
+            index++;
+            if (positionById.get(id, -1) != position) {
+                skipped++;
+            } else if (matches(filter, id)) {
+                ids[count++] = id;
+            }
+        }
+        if (!global && skipped > count && (count == 0 || skipped >= MIN_SKIPPED_TO_COMPACT)) {
+            // the account list has no dead entries left after this, so the slice is not taken again
+            compact(filter.getAccountId(), candidates);
+            return slice(filter, cursor, limit);
+        }
+        int nextCursor = index < candidates.size() ? (int) candidates.get(index) : -1;
+        return new Slice(Arrays.copyOf(ids, count), nextCursor);
+    }
+
+    /**
+     * Drops the dead entries of the global list and of every account list.
+     */
+    private void compact() {
+        LongChunkList livePositions = new LongChunkList();
+        LongChunkList liveIds = new LongChunkList();
+        for (int i = 0; i < positions.size(); i++) {
+            long id = transactionIds.get(i);
+            if (positionById.get(id, -1) == positions.get(i)) {
+                livePositions.add(positions.get(i));
+                liveIds.add(id);
+            }
+        }
+        LongChunkList accountIds = new LongChunkList();
+        positionsByAccount.forEach((accountId, accountPositions) -> accountIds.add(accountId));
+        // the account lists are checked against the global list with its dead entries
+        for (int i = 0; i < accountIds.size(); i++) {
+            long accountId = accountIds.get(i);
+            compact(accountId, positionsByAccount.get(accountId));
+        }
+        positions = livePositions;
+        transactionIds = liveIds;
+        dead = 0;
+    }
+
+    private void compact(long accountId, LongChunkList accountPositions) {
+        LongChunkList live = new LongChunkList();
+        for (int i = 0; i < accountPositions.size(); i++) {
+            long position = accountPositions.get(i);
+            if (positionById.get(transactionIds.get(indexOf(positions, position)), -1) == position) {
+                live.add(position);
+            }
+        }
+        if (live.size() == 0) {
+            positionsByAccount.remove(accountId);
+        } else {
+            positionsByAccount.replace(accountId, live);
+        }
+    }
+
+    /**
+     * @return index of the first position in the sorted list not before {@code position}
+     */
+    private static int indexOf(LongChunkList positions, long position) {
+        int low = 0;
+        int high = positions.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (positions.get(middle) < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return bytes of the id lists and the tables, walks the lists of every account
+     */
+    long memoryBytes() {
+        long[] bytes = {positions.memoryBytes() + transactionIds.memoryBytes() + positionsByAccount.memoryBytes()
+                + positionById.memoryBytes() + statusById.memoryBytes()};
+        positionsByAccount.forEach((accountId, accountPositions) -> bytes[0] += LIST_BYTES + accountPositions.memoryBytes());
+        return bytes[0];
+    }
+
+    private boolean matches(TransactionFilter filter, long id) {
+        TransactionStatus status = statusById.get(id);
+        return status != null
+                && (filter.getStatus() == null || filter.getStatus() == status)
+                && (filter.getMinId() == null || id >= filter.getMinId())
+                && (filter.getMaxId() == null || id <= filter.getMaxId());
+    }
+
+    @Value
+    static class Slice {
+        private final long[] transactionIds;
+        private final int nextCursor;
+    }
+}
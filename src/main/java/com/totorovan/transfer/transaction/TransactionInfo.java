@@ -1,20 +1,77 @@
 package com.totorovan.transfer.transaction;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.common.Messages.Sheddable;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
 
 @Data
-public class TransactionInfo implements Serializable {
+@AllArgsConstructor
+public class TransactionInfo implements TransactionRecord, Serializable, Sheddable {
+
+    public static final long ANY_VERSION = 0L;
 
     private final long id;
     private final long srcAccountId;
     private final long targetAccountId;
     private final BigDecimal amount;
     private final TransactionStatus status;
+    /**
+     * Epoch millis the transfer is due at, {@code 0} for right away.
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private final long executeAt;
+    /**
+     * Version the source account must be at for the transfer to run, {@link #ANY_VERSION} for any version.
+     * A precondition of the request, so it is not part of the transaction's JSON.
+     */
+    @JsonIgnore
+    private final long expectedSrcVersion;
+    /**
+     * Incarnation the source account must be in together with the expected version,
+     * {@link AccountInfo#ANY_INCARNATION} for any incarnation.
+     */
+    @JsonIgnore
+    private final long expectedSrcIncarnation;
+
+    public TransactionInfo(long id, long srcAccountId, long targetAccountId, BigDecimal amount, TransactionStatus status) {
+        this(id, srcAccountId, targetAccountId, amount, status, 0L);
+    }
+
+    public TransactionInfo(long id, long srcAccountId, long targetAccountId, BigDecimal amount, TransactionStatus status,
+                           long executeAt) {
+        this(id, srcAccountId, targetAccountId, amount, status, executeAt, ANY_VERSION, AccountInfo.ANY_INCARNATION);
+    }
+
+    public TransactionInfo withId(long id) {
+        return new TransactionInfo(id, srcAccountId, targetAccountId, amount, status, executeAt, expectedSrcVersion,
+                expectedSrcIncarnation);
+    }
+
+    @Override
+    public TransactionInfo withStatus(TransactionStatus status) {
+        return new TransactionInfo(id, srcAccountId, targetAccountId, amount, status, executeAt, expectedSrcVersion,
+                expectedSrcIncarnation);
+    }
+
+    @Override
+    public long[] accountIds() {
+        return new long[]{srcAccountId, targetAccountId};
+    }
+
+    @Override
+    public List<TransactionInfo> toTransactionInfos() {
+        return Collections.singletonList(this);
+    }
 
     public enum TransactionStatus {
-        NEW, COMMITTED, ROLLEDBACK
+        NEW, COMMITTED, ROLLEDBACK, SCHEDULED
     }
 }
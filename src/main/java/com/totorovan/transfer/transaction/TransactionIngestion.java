@@ -0,0 +1,321 @@
+package com.totorovan.transfer.transaction;
+
+import akka.actor.ActorRef;
+import akka.stream.ActorAttributes;
+import akka.stream.Attributes;
+import akka.stream.Materializer;
+import akka.stream.javadsl.FileIO;
+import akka.stream.javadsl.Framing;
+import akka.stream.javadsl.FramingTruncation;
+import akka.stream.javadsl.Sink;
+import akka.util.ByteString;
+import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.FailureCode;
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+import com.totorovan.transfer.id.IdAssignment;
+import com.totorovan.transfer.transaction.TransactionService.TransactionRolledBack;
+import lombok.Value;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static akka.pattern.PatternsCS.ask;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Feeds transfers from a local file in the CSV export format ({@code id,srcAccountId,targetAccountId,amount})
+ * into {@link TransactionService}.
+ * The file is streamed line by line, so memory use does not depend on the file size. Lines are partitioned
+ * by source account over {@code parallelism} substreams which run one transfer at a time, so transfers of an
+ * account keep the file order while different accounts are processed in parallel.
+ * Outcomes are appended in file order to {@code <file>.results.csv} and {@code <file>.checkpoint} records how far
+ * the results go, a run interrupted by a crash resumes after the last checkpointed line. The lines after the
+ * checkpoint may have been applied before the crash, in a resumed run a transfer whose id already exists is reported
+ * {@link Outcome#ALREADY_APPLIED}.
+ * With server-assigned ids the id of a line is an idempotency key like the id a client posts, so ingested transfers
+ * never take an id the server assigned.
+ */
+public class TransactionIngestion {
+
+    static final String RESULTS_SUFFIX = ".results.csv";
+    static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final byte[] RESULTS_HEADER = "line,id,status,reason\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ActorRef transactionService;
+    private final Duration timeout;
+    private final int parallelism;
+    private final int checkpointInterval;
+    /**
+     * assigns the ids of ingested transactions, {@code null} to take the ids of the file
+     */
+    private volatile IdAssignment ids;
+
+    public TransactionIngestion(ActorRef transactionService, Duration timeout, int parallelism, int checkpointInterval) {
+        this.transactionService = transactionService;
+        this.timeout = timeout;
+        this.parallelism = parallelism;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Must be called before a run is started.
+     */
+    public void assignIds(IdAssignment ids) {
+        this.ids = ids;
+    }
+
+    static Path resultsPath(Path file) {
+        return file.resolveSibling(file.getFileName() + RESULTS_SUFFIX);
+    }
+
+    static Path checkpointPath(Path file) {
+        return file.resolveSibling(file.getFileName() + CHECKPOINT_SUFFIX);
+    }
+
+    public CompletionStage<IngestionReport> run(Path file, Materializer materializer) {
+        ResultsJournal journal;
+        // results are written from the first line on, so they exist once any line may have been applied
+        boolean resumed = Files.exists(resultsPath(file));
+        try {
+            IngestionCheckpoint checkpoint = IngestionCheckpoint.read(checkpointPath(file));
+            journal = new ResultsJournal(file, checkpoint, checkpointInterval);
+        } catch (IOException e) {
+            CompletableFuture<IngestionReport> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return FileIO.fromPath(file, CHUNK_SIZE)
+                .via(Framing.delimiter(ByteString.fromString("\n"), MAX_LINE_LENGTH, FramingTruncation.ALLOW))
+                .zipWithIndex()
+                .drop(journal.getResumeLines())
+                .map(line -> parse(line.second() + 1, line.first().utf8String()))
+                .groupBy(parallelism, line -> line.partition(parallelism))
+                .mapAsync(1, line -> process(line, resumed))
+                .mergeSubstreams()
+                .runWith(Sink.<Result>foreach(journal::accept).withAttributes(Attributes.apply(ActorAttributes.IODispatcher())), materializer)
+                .thenApply(done -> journal.finish())
+                .whenComplete((report, e) -> journal.close());
+    }
+
+    private static Line parse(long number, String text) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty() || (number == 1 && trimmed.startsWith("id,"))) {
+            return new Line(number, null, null);
+        }
+        String[] fields = trimmed.split(",", -1);
+        if (fields.length < 4) {
+            return new Line(number, null, "Expected id,srcAccountId,targetAccountId,amount");
+        }
+        try {
+            BigDecimal amount = new BigDecimal(fields[3].trim());
+            if (amount.compareTo(BigDecimal.ZERO) < 0) {
+                return new Line(number, null, "Amount can not be less than zero");
+            }
+            return new Line(number, new TransactionInfo(Long.parseLong(fields[0].trim()), Long.parseLong(fields[1].trim()),
+                    Long.parseLong(fields[2].trim()), amount, NEW), null);
+        } catch (NumberFormatException e) {
+            return new Line(number, null, "Malformed number: " + e.getMessage());
+        }
+    }
+
+    private CompletionStage<Result> process(Line line, boolean resumed) {
+        TransactionInfo transactionInfo = line.getTransactionInfo();
+        if (transactionInfo == null) {
+            Outcome outcome = line.getError() == null ? Outcome.SKIPPED : Outcome.REJECTED;
+            return CompletableFuture.completedFuture(new Result(line.getNumber(), null, outcome, line.getError()));
+        }
+        IdAssignment ids = this.ids;
+        if (ids == null) {
+            return result(line.getNumber(), transactionInfo.getId(), ask(transactionService, transactionInfo, timeout), resumed);
+        }
+        long key = transactionInfo.getId();
+        IdAssignment.Assigned assigned;
+        try {
+            assigned = ids.assign(key);
+        } catch (UncheckedIOException e) {
+            return CompletableFuture.completedFuture(new Result(line.getNumber(), null, Outcome.REJECTED, "Could not assign a transaction id"));
+        }
+        long id = assigned.getId();
+        if (assigned.getStatus() == IdAssignment.Status.IN_PROGRESS) {
+            return CompletableFuture.completedFuture(new Result(line.getNumber(), id, Outcome.REJECTED, "Transaction is still in progress"));
+        }
+        CompletionStage<Object> response = ask(transactionService, transactionInfo.withId(id), timeout);
+        if (assigned.getStatus() == IdAssignment.Status.FRESH) {
+            // a transfer which timed out may still run, so only a failure drops the key
+            response = response.whenComplete((transferResponse, e) -> {
+                if (transferResponse instanceof Failure) {
+                    ids.failed(key, id);
+                } else {
+                    ids.created(key, id);
+                }
+            });
+        }
+        return result(line.getNumber(), id, response, resumed);
+    }
+
+    private static CompletionStage<Result> result(long number, Long id, CompletionStage<Object> response, boolean resumed) {
+        return response
+                .thenApply(transferResponse -> {
+                    if (transferResponse instanceof TransactionRolledBack) {
+                        return new Result(number, id, Outcome.ROLLEDBACK, ((TransactionRolledBack) transferResponse).getReason());
+                    }
+                    if (transferResponse instanceof Failure) {
+                        Failure failure = (Failure) transferResponse;
+                        if (resumed && failure.getCode() == FailureCode.TRANSACTION_ALREADY_EXISTS) {
+                            return new Result(number, id, Outcome.ALREADY_APPLIED, null);
+                        }
+                        return new Result(number, id, Outcome.REJECTED, failure.getMessage());
+                    }
+                    return new Result(number, id, Outcome.COMMITTED, null);
+                })
+                .exceptionally(e -> new Result(number, id, Outcome.REJECTED, e.getMessage()));
+    }
+
+    enum Outcome {
+        SKIPPED, COMMITTED, ROLLEDBACK, REJECTED,
+        /**
+         * the transfer of the line was applied by an earlier run which was interrupted before its checkpoint
+         */
+        ALREADY_APPLIED
+    }
+
+    @Value
+    private static class Line {
+        private final long number;
+        private final TransactionInfo transactionInfo;
+        private final String error;
+
+        int partition(int partitions) {
+            return transactionInfo == null ? 0 : (int) Math.floorMod(transactionInfo.getSrcAccountId(), (long) partitions);
+        }
+    }
+
+    @Value
+    private static class Result {
+        private final long line;
+        private final Long id;
+        private final Outcome outcome;
+        private final String reason;
+
+        byte[] toCsv() {
+            String csv = line + "," + (id == null ? "" : id) + "," + outcome + ","
+                    + (reason == null ? "" : "\"" + reason.replace("\"", "\"\"") + "\"") + "\n";
+            return csv.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Writes results in line order, results completed ahead of an earlier line are held back until the gap is filled.
+     * Only used from the stream's sink, so it is accessed by one thread at a time.
+     */
+    private static class ResultsJournal {
+        private final Path checkpointPath;
+        private final FileChannel channel;
+        private final OutputStream out;
+        private final int checkpointInterval;
+        private final long resumeLines;
+        private final LongObjectHashMap<Result> pending = new LongObjectHashMap<>();
+        private final IngestionReport report = new IngestionReport();
+        private long nextLine;
+        private long resultsBytes;
+        private int sinceCheckpoint;
+
+        ResultsJournal(Path file, IngestionCheckpoint checkpoint, int checkpointInterval) throws IOException {
+            this.checkpointPath = checkpointPath(file);
+            this.checkpointInterval = checkpointInterval;
+            this.resumeLines = checkpoint.getLines();
+            this.nextLine = resumeLines + 1;
+            this.resultsBytes = checkpoint.getResultsBytes();
+            // drop results written after the checkpoint, their lines are ingested again
+            this.channel = FileChannel.open(resultsPath(file), CREATE, WRITE);
+            channel.truncate(resultsBytes);
+            channel.position(resultsBytes);
+            this.out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            if (resultsBytes == 0) {
+                write(RESULTS_HEADER);
+            }
+        }
+
+        long getResumeLines() {
+            return resumeLines;
+        }
+
+        void accept(Result result) throws IOException {
+            pending.put(result.getLine(), result);
+            Result next;
+            while ((next = pending.remove(nextLine)) != null) {
+                record(next);
+                nextLine++;
+                if (++sinceCheckpoint >= checkpointInterval) {
+                    checkpoint();
+                }
+            }
+        }
+
+        IngestionReport finish() {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write checkpoint " + checkpointPath, e);
+            }
+            return report;
+        }
+
+        void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // results up to the last checkpoint are already forced to disk
+            }
+        }
+
+        private void record(Result result) throws IOException {
+            switch (result.getOutcome()) {
+                case SKIPPED:
+                    return;
+                case COMMITTED:
+                    report.setCommitted(report.getCommitted() + 1);
+                    break;
+                case ROLLEDBACK:
+                    report.setRolledBack(report.getRolledBack() + 1);
+                    break;
+                case REJECTED:
+                    report.setRejected(report.getRejected() + 1);
+                    break;
+                case ALREADY_APPLIED:
+                    report.setAlreadyApplied(report.getAlreadyApplied() + 1);
+                    break;
+            }
+            report.setLines(report.getLines() + 1);
+            write(result.toCsv());
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            resultsBytes += bytes.length;
+        }
+
+        private void checkpoint() throws IOException {
+            out.flush();
+            channel.force(false);
+            new IngestionCheckpoint(nextLine - 1, resultsBytes).write(checkpointPath);
+            sinceCheckpoint = 0;
+        }
+    }
+}
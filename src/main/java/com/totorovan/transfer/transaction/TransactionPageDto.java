@@ -0,0 +1,15 @@
+package com.totorovan.transfer.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionPageDto {
+    private List<TransactionDto> transactions;
+    private Integer nextCursor;
+}
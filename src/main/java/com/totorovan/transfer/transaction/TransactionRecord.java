@@ -0,0 +1,29 @@
+package com.totorovan.transfer.transaction;
+
+import com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus;
+
+import java.util.List;
+
+/**
+ * State of a transaction kept by a {@link Transaction} actor, either a single transfer or a multi-leg one.
+ */
+public interface TransactionRecord {
+
+    long getId();
+
+    long getSrcAccountId();
+
+    TransactionStatus getStatus();
+
+    TransactionRecord withStatus(TransactionStatus status);
+
+    /**
+     * @return ids of the accounts touched by the transaction, source first
+     */
+    long[] accountIds();
+
+    /**
+     * @return the transaction as single transfers, one per leg
+     */
+    List<TransactionInfo> toTransactionInfos();
+}
@@ -1,18 +1,40 @@
 package com.totorovan.transfer.transaction;
 
 import akka.actor.ActorRef;
-import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpResponse;
 import akka.http.javadsl.model.StatusCodes;
 import akka.http.javadsl.server.AllDirectives;
 import akka.http.javadsl.server.PathMatchers;
 import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.StringUnmarshallers;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.common.Codecs;
 import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.FailureCode;
+import com.totorovan.transfer.id.IdAssignment;
+import com.totorovan.transfer.id.IdSettlement;
+import com.totorovan.transfer.trace.TracedTransfer;
+import com.totorovan.transfer.trace.TransferTrace;
+import com.totorovan.transfer.trace.TransferTracer;
+import com.totorovan.transfer.transaction.MultiLegTransactionDto.LegDto;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo.Leg;
+import com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus;
+import com.totorovan.transfer.transaction.TransactionService.GetTransactions;
+import com.totorovan.transfer.transaction.TransactionService.TransactionPage;
 import com.totorovan.transfer.transaction.TransactionService.TransactionRolledBack;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static akka.pattern.PatternsCS.ask;
 import static io.vavr.API.*;
@@ -22,58 +44,308 @@ import static io.vavr.Predicates.instanceOf;
 @RequiredArgsConstructor
 public class TransactionRoutes extends AllDirectives {
 
+    private static final int DEFAULT_PAGE_LIMIT = 20;
+    private static final int MAX_PAGE_LIMIT = 100;
+    private static final int MAX_LEGS = 100;
+    /**
+     * how far ahead a transfer can be scheduled
+     */
+    static final Duration MAX_SCHEDULE_AHEAD = Duration.ofDays(366);
+
     private final ActorRef transactionService;
     private final Duration timeout;
+    private final TransferTracer tracer;
+    /**
+     * assigns the ids of new transactions, {@code null} to take the ids the clients send
+     */
+    private final IdAssignment ids;
+
+    public TransactionRoutes(ActorRef transactionService, Duration timeout, TransferTracer tracer) {
+        this(transactionService, timeout, tracer, null);
+    }
 
-    private static TransactionInfo mapToTransactionInfo(TransactionDto transactionDto) {
+    private static TransactionInfo mapToTransactionInfo(TransactionDto transactionDto, ExpectedSrc expectedSrc) {
+        Long executeAt = transactionDto.getExecuteAt();
         return new TransactionInfo(transactionDto.getId(), transactionDto.getSrcAccountId(),
-                transactionDto.getTargetAccountId(), transactionDto.getAmount(), transactionDto.getStatus());
+                transactionDto.getTargetAccountId(), transactionDto.getAmount(), transactionDto.getStatus(),
+                executeAt == null ? 0L : executeAt, expectedSrc.getVersion(), expectedSrc.getIncarnation());
+    }
+
+    /**
+     * @return incarnation and version of a single account entity tag like {@code "7.3"} or {@code W/"7.3"},
+     * {@link ExpectedSrc#ANY} for {@code *} or {@code null} if the value is not an account tag
+     */
+    private static ExpectedSrc parseIfMatch(String ifMatch) {
+        String tag = ifMatch.trim();
+        if (tag.equals("*")) {
+            return ExpectedSrc.ANY;
+        }
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            return null;
+        }
+        String[] parts = tag.substring(1, tag.length() - 1).split("\\.", -1);
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            long incarnation = Long.parseLong(parts[0]);
+            long version = Long.parseLong(parts[1]);
+            return incarnation > 0 && version > 0 ? new ExpectedSrc(version, incarnation) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     private static TransactionDto mapToTransactionDto(TransactionInfo transactionInfo, String reason) {
+        long executeAt = transactionInfo.getExecuteAt();
         return new TransactionDto(transactionInfo.getId(), transactionInfo.getSrcAccountId(), transactionInfo.getTargetAccountId(),
-                transactionInfo.getAmount(), transactionInfo.getStatus(), reason);
+                transactionInfo.getAmount(), transactionInfo.getStatus(), reason, executeAt == 0 ? null : executeAt);
+    }
+
+    private static MultiLegTransactionInfo mapToMultiLegTransactionInfo(MultiLegTransactionDto transactionDto) {
+        List<Leg> legs = transactionDto.getLegs().stream()
+                .map(leg -> new Leg(leg.getTargetAccountId(), leg.getAmount(), transactionDto.getStatus()))
+                .collect(Collectors.toList());
+        return new MultiLegTransactionInfo(transactionDto.getId(), transactionDto.getSrcAccountId(), legs, transactionDto.getStatus());
+    }
+
+    private static MultiLegTransactionDto mapToMultiLegTransactionDto(MultiLegTransactionInfo transactionInfo, String reason) {
+        List<LegDto> legs = transactionInfo.getLegs().stream()
+                .map(leg -> new LegDto(leg.getTargetAccountId(), leg.getAmount(), leg.getStatus(), leg.getStatusReason()))
+                .collect(Collectors.toList());
+        return new MultiLegTransactionDto(transactionInfo.getId(), transactionInfo.getSrcAccountId(), legs,
+                transactionInfo.getStatus(), reason);
+    }
+
+    private static Object mapToDto(TransactionRecord transactionRecord, String reason) {
+        if (transactionRecord instanceof MultiLegTransactionInfo) {
+            return mapToMultiLegTransactionDto((MultiLegTransactionInfo) transactionRecord, reason);
+        }
+        return mapToTransactionDto((TransactionInfo) transactionRecord, reason);
+    }
+
+    private static TransactionPageDto mapToTransactionPageDto(TransactionPage transactionPage) {
+        int nextCursor = transactionPage.getNextCursor();
+        return new TransactionPageDto(transactionPage.getTransactions().stream()
+                .map(transactionInfo -> mapToTransactionDto(transactionInfo, null))
+                .collect(Collectors.toList()), nextCursor < 0 ? null : nextCursor);
+    }
+
+    private static String traceOutcome(Object transferResponse, Throwable e) {
+        if (transferResponse instanceof TransactionRecord) {
+            return ((TransactionRecord) transferResponse).getStatus().name();
+        }
+        if (transferResponse instanceof TransactionRolledBack) {
+            return TransactionStatus.ROLLEDBACK.name();
+        }
+        if (transferResponse instanceof Failure) {
+            return ((Failure) transferResponse).getCode().name();
+        }
+        return e == null ? "UNKNOWN" : "ERROR";
+    }
+
+    private static boolean isTransactionStatus(String status) {
+        return Arrays.stream(TransactionStatus.values()).anyMatch(value -> value.name().equals(status));
+    }
+
+    private static boolean isExportFormat(String format) {
+        return Arrays.stream(TransactionExport.Format.values()).anyMatch(value -> value.name().equalsIgnoreCase(format));
     }
 
     public Route routes() {
         return route(pathPrefix("transactions", () ->
                 route(
                         postTransaction(),
+                        path("multi-leg", this::postMultiLegTransaction),
+                        path("export", this::exportTransactions),
                         path(PathMatchers.longSegment(), id ->
                                 route(
                                         getTransaction(id),
                                         deleteTransaction(id)
                                 )
                         )
-                )));
+                )),
+                pathPrefix("accounts", () ->
+                        path(PathMatchers.longSegment().slash("transactions"), this::getAccountTransactions)
+                ));
     }
 
     private Route postTransaction() {
         return pathEnd(() ->
-                post(() -> entity(Jackson.unmarshaller(TransactionDto.class), this::transfer))
+                post(() ->
+                        optionalHeaderValueByName("If-Match", ifMatch ->
+                                entity(Codecs.unmarshaller(TransactionDto.class), transactionDto ->
+                                        assigningId(transactionDto.getId(), id -> {
+                                            transactionDto.setId(id);
+                                            return transfer(transactionDto, ifMatch);
+                                        })
+                                )
+                        )
+                )
         );
     }
 
-    private Route transfer(TransactionDto transactionDto) {
+    private Route transfer(TransactionDto transactionDto, Optional<String> ifMatch) {
         BigDecimal amount = transactionDto.getAmount();
         if (amount == null || amount.compareTo(BigDecimal.ZERO) < 0) {
             return complete(StatusCodes.BAD_REQUEST, "Amount can not be null or less than zero");
         }
-        CompletionStage<Object> transferResponse = ask(transactionService, mapToTransactionInfo(transactionDto), timeout);
+        if (transactionDto.getExecuteAt() != null && transactionDto.getExecuteAt() <= 0) {
+            return complete(StatusCodes.BAD_REQUEST, "Execute at must be a positive epoch millis");
+        }
+        if (transactionDto.getExecuteAt() != null
+                && transactionDto.getExecuteAt() - System.currentTimeMillis() > MAX_SCHEDULE_AHEAD.toMillis()) {
+            return complete(StatusCodes.BAD_REQUEST, "Execute at can not be more than " + MAX_SCHEDULE_AHEAD.toDays() + " days ahead");
+        }
+        ExpectedSrc expectedSrc = ifMatch.isPresent() ? parseIfMatch(ifMatch.get()) : ExpectedSrc.ANY;
+        if (expectedSrc == null) {
+            return complete(StatusCodes.BAD_REQUEST, "If-Match must be a single account entity tag or *");
+        }
+        if (expectedSrc != ExpectedSrc.ANY && transactionDto.getExecuteAt() != null) {
+            return complete(StatusCodes.BAD_REQUEST, "If-Match is not supported for scheduled transfers");
+        }
+        TransactionInfo transactionInfo = mapToTransactionInfo(transactionDto, expectedSrc);
+        TransferTrace trace = tracer.start(transactionInfo.getId());
+        if (trace == null) {
+            return onSuccess(ask(transactionService, transactionInfo, timeout), this::handleTransferResponse);
+        }
+        CompletionStage<Object> transferResponse = ask(transactionService, new TracedTransfer(transactionInfo, trace), timeout)
+                .whenComplete((response, e) -> tracer.finish(trace, traceOutcome(response, e)));
+        return onSuccess(transferResponse, this::handleTransferResponse);
+    }
+
+    private Route postMultiLegTransaction() {
+        return post(() -> entity(Codecs.unmarshaller(MultiLegTransactionDto.class), transactionDto ->
+                assigningId(transactionDto.getId(), id -> {
+                    transactionDto.setId(id);
+                    return multiLegTransfer(transactionDto);
+                })
+        ));
+    }
+
+    /**
+     * With server-assigned ids the id sent is an idempotency key: a repeated key answers the transaction created for
+     * it with 200, or creates it if the first request with the key did not, and 409 while the first request is still
+     * running it.
+     */
+    private Route assigningId(long key, Function<Long, Route> create) {
+        if (ids == null) {
+            return create.apply(key);
+        }
+        IdAssignment.Assigned assigned;
+        try {
+            assigned = ids.assign(key);
+        } catch (UncheckedIOException e) {
+            return complete(StatusCodes.SERVICE_UNAVAILABLE, "Could not assign a transaction id");
+        }
+        long id = assigned.getId();
+        if (assigned.getStatus() == IdAssignment.Status.IN_PROGRESS) {
+            return complete(StatusCodes.CONFLICT, "A transaction with this id is still in progress");
+        }
+        if (assigned.getStatus() == IdAssignment.Status.FRESH) {
+            return IdSettlement.settling(ids, key, id, () -> create.apply(id));
+        }
+        return onSuccess(ask(transactionService, new Transaction.GetTransaction(id), timeout), existing ->
+                existing instanceof TransactionRecord
+                        ? complete(StatusCodes.OK, mapToDto((TransactionRecord) existing, null), Codecs.marshaller())
+                        : create.apply(id));
+    }
+
+    private Route multiLegTransfer(MultiLegTransactionDto transactionDto) {
+        List<LegDto> legs = transactionDto.getLegs();
+        if (legs == null || legs.isEmpty() || legs.size() > MAX_LEGS) {
+            return complete(StatusCodes.BAD_REQUEST, "Number of legs must be between 1 and " + MAX_LEGS);
+        }
+        if (legs.stream().anyMatch(leg -> leg.getAmount() == null || leg.getAmount().compareTo(BigDecimal.ZERO) < 0)) {
+            return complete(StatusCodes.BAD_REQUEST, "Amount can not be null or less than zero");
+        }
+        CompletionStage<Object> transferResponse = ask(transactionService, mapToMultiLegTransactionInfo(transactionDto), timeout);
         return onSuccess(transferResponse, this::handleTransferResponse);
     }
 
     private Route handleTransferResponse(Object transferResponse) {
         return Match(transferResponse).of(
-                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.BAD_REQUEST, failure, Jackson.marshaller())),
-                Case($(instanceOf(TransactionInfo.class)), transaction -> complete(StatusCodes.CREATED, mapToTransactionDto(transaction, null), Jackson.marshaller())),
+                Case($(instanceOf(Failure.class)), failure -> complete(failure.getCode() == FailureCode.VERSION_MISMATCH
+                        ? StatusCodes.PRECONDITION_FAILED : StatusCodes.BAD_REQUEST, failure, Codecs.marshaller())),
+                Case($(instanceOf(TransactionRecord.class)), transaction -> complete(
+                        transaction.getStatus() == TransactionStatus.SCHEDULED ? StatusCodes.ACCEPTED : StatusCodes.CREATED,
+                        mapToDto(transaction, null), Codecs.marshaller())),
                 Case($(instanceOf(TransactionRolledBack.class)), rollback -> complete(StatusCodes.CREATED,
-                        mapToTransactionDto(rollback.getTransactionInfo(), rollback.getReason()), Jackson.marshaller())),
+                        mapToDto(rollback.getTransactionInfo(), rollback.getReason()), Codecs.marshaller())),
+                Case($(any()), x -> complete(StatusCodes.INTERNAL_SERVER_ERROR))
+
+        );
+    }
+
+    private Route getAccountTransactions(long accountId) {
+        return get(() ->
+                parameterOptional(StringUnmarshallers.INTEGER, "cursor", cursor ->
+                        parameterOptional(StringUnmarshallers.INTEGER, "limit", limit ->
+                                parameterOptional("status", status ->
+                                        getAccountTransactions(accountId, cursor.orElse(0), limit.orElse(DEFAULT_PAGE_LIMIT), status)
+                                )
+                        )
+                )
+        );
+    }
+
+    private Route getAccountTransactions(long accountId, int cursor, int limit, Optional<String> status) {
+        if (cursor < 0) {
+            return complete(StatusCodes.BAD_REQUEST, "Cursor can not be less than zero");
+        }
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            return complete(StatusCodes.BAD_REQUEST, "Limit must be between 1 and " + MAX_PAGE_LIMIT);
+        }
+        if (status.isPresent() && !isTransactionStatus(status.get())) {
+            return complete(StatusCodes.BAD_REQUEST, "Unknown transaction status " + status.get());
+        }
+        TransactionFilter filter = TransactionFilter.forAccount(accountId, status.map(TransactionStatus::valueOf).orElse(null));
+        CompletionStage<Object> pageResponse = ask(transactionService, new GetTransactions(filter, cursor, limit), timeout);
+        return onSuccess(() -> pageResponse, this::handleAccountTransactionsResponse);
+    }
+
+    private Route handleAccountTransactionsResponse(Object response) {
+        return Match(response).of(
+                Case($(instanceOf(TransactionPage.class)), page -> complete(StatusCodes.OK, mapToTransactionPageDto(page), Codecs.marshaller())),
+                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.SERVICE_UNAVAILABLE, failure, Codecs.marshaller())),
                 Case($(any()), x -> complete(StatusCodes.INTERNAL_SERVER_ERROR))
+        );
+    }
 
+    private Route exportTransactions() {
+        return get(() ->
+                parameterOptional("format", format ->
+                        parameterOptional("status", status ->
+                                parameterOptional(StringUnmarshallers.LONG, "accountId", accountId ->
+                                        parameterOptional(StringUnmarshallers.LONG, "fromId", fromId ->
+                                                parameterOptional(StringUnmarshallers.LONG, "toId", toId ->
+                                                        exportTransactions(format.orElse("ndjson"), status, accountId, fromId, toId)
+                                                )
+                                        )
+                                )
+                        )
+                )
         );
     }
 
+    private Route exportTransactions(String format, Optional<String> status, Optional<Long> accountId,
+                                     Optional<Long> fromId, Optional<Long> toId) {
+        if (!isExportFormat(format)) {
+            return complete(StatusCodes.BAD_REQUEST, "Unknown export format " + format);
+        }
+        if (status.isPresent() && !isTransactionStatus(status.get())) {
+            return complete(StatusCodes.BAD_REQUEST, "Unknown transaction status " + status.get());
+        }
+        TransactionFilter filter = new TransactionFilter(accountId.orElse(null),
+                status.map(TransactionStatus::valueOf).orElse(null), fromId.orElse(null), toId.orElse(null));
+        TransactionExport.Format exportFormat = TransactionExport.Format.valueOf(format.toUpperCase());
+        return complete(HttpResponse.create().withEntity(HttpEntities.createChunked(exportFormat.getContentType(),
+                exportFormat.render(TransactionExport.source(transactionService, filter, timeout)))));
+    }
+
     private Route getTransaction(long id) {
         return get(() -> {
             CompletionStage<Object> getTransactionResponse = ask(transactionService, new Transaction.GetTransaction(id), timeout);
@@ -83,8 +355,10 @@ public class TransactionRoutes extends AllDirectives {
 
     private Route handleGetTransactionResponse(Object response) {
         return Match(response).of(
-                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.NOT_FOUND, failure, Jackson.marshaller())),
-                Case($(instanceOf(TransactionInfo.class)), transaction -> complete(StatusCodes.OK, transaction, Jackson.marshaller())),
+                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.NOT_FOUND, failure, Codecs.marshaller())),
+                Case($(instanceOf(TransactionInfo.class)), transaction -> complete(StatusCodes.OK, transaction, Codecs.marshaller())),
+                Case($(instanceOf(MultiLegTransactionInfo.class)), transaction -> complete(StatusCodes.OK,
+                        mapToMultiLegTransactionDto(transaction, null), Codecs.marshaller())),
                 Case($(any()), x -> complete(StatusCodes.INTERNAL_SERVER_ERROR))
         );
     }
@@ -98,8 +372,19 @@ public class TransactionRoutes extends AllDirectives {
 
     private Route handleDeleteResponse(Object deleteResponse) {
         return Match(deleteResponse).of(
-                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.NOT_FOUND, deleteResponse, Jackson.marshaller())),
+                Case($(instanceOf(Failure.class)), failure -> complete(StatusCodes.NOT_FOUND, deleteResponse, Codecs.marshaller())),
                 Case($(any()), x -> complete(StatusCodes.OK))
         );
     }
+
+    /**
+     * Source account precondition of a transfer taken from its If-Match header.
+     */
+    @Value
+    private static class ExpectedSrc {
+        static final ExpectedSrc ANY = new ExpectedSrc(TransactionInfo.ANY_VERSION, AccountInfo.ANY_INCARNATION);
+
+        long version;
+        long incarnation;
+    }
 }
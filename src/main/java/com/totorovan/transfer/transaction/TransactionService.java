@@ -2,140 +2,530 @@ package com.totorovan.transfer.transaction;
 
 import akka.actor.AbstractLoggingActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.FailureCode;
 import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.common.Messages.Urgent;
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+import com.totorovan.transfer.common.collections.TimingWheel;
+import com.totorovan.transfer.engine.ActorTransferEngine;
+import com.totorovan.transfer.engine.TransferEngine;
+import com.totorovan.transfer.footprint.GetFootprint;
+import com.totorovan.transfer.footprint.StoreFootprintDto;
+import com.totorovan.transfer.read.ReadCoalescer;
+import com.totorovan.transfer.read.ReadMetrics;
+import com.totorovan.transfer.trace.TracedTransfer;
+import com.totorovan.transfer.trace.TransferTrace;
+import com.totorovan.transfer.trace.TransferTrace.Stage;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo.LegsFailed;
 import lombok.Data;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 import static akka.pattern.PatternsCS.ask;
 import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.COMMITTED;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
 import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.ROLLEDBACK;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.SCHEDULED;
 
+/**
+ * Runs transfers and keeps track of them. Transfers with an {@code executeAt} in the future are parked in a
+ * {@link TimingWheel} advanced by a single periodic tick, they get a {@link Transaction} actor only once they are due.
+ * With a journal path the pending scheduled transfers are kept in a {@link ScheduledTransferJournal} and
+ * scheduled again on start. Concurrent reads of a transaction are coalesced by a {@link ReadCoalescer},
+ * which is invalidated for a transaction when its status changes.
+ */
 public class TransactionService extends AbstractLoggingActor {
 
-    private final Map<Long, ActorRef> transactionsById = new HashMap<>();
+    public static final Duration DEFAULT_TICK = Duration.ofMillis(100);
+    private static final int WHEEL_SIZE = 512;
+    /**
+     * Heap of a transaction actor with its cell, mailbox, path and state.
+     * Measured with the capacity suite as the heap after a full collection per transaction.
+     */
+    static final long TRANSACTION_ACTOR_BYTES = 1100;
+    /**
+     * Heap of a pending scheduled transfer and its entry in the wheel.
+     */
+    static final long SCHEDULED_TRANSACTION_BYTES = 160;
+
+    private final LongObjectHashMap<ActorRef> transactionsById = new LongObjectHashMap<>();
+    private final LongObjectHashMap<TransactionInfo> scheduledById = new LongObjectHashMap<>();
+    private final TransactionIndex transactionIndex = new TransactionIndex();
     private final TransactionFactory transactionFactory;
-    private final ActorRef accountService;
+    private final TransferEngine transferEngine;
     private final Duration timeout;
+    private final Duration tick;
+    private final Path journalPath;
+    private final Executor dispatcher = context().dispatcher();
+    private final TimingWheel wheel;
+    private final ReadCoalescer reads;
+    private ScheduledTransferJournal journal;
+    private Cancellable ticks;
 
-    private TransactionService(ActorRef accountService, TransactionFactory transactionFactory, Duration timeout) {
-        this.accountService = accountService;
+    private TransactionService(TransferEngine transferEngine, TransactionFactory transactionFactory, Duration timeout,
+                               Duration tick, Path journalPath, Duration readCacheTtl, ReadMetrics readMetrics) {
+        this.transferEngine = transferEngine;
         this.transactionFactory = transactionFactory;
         this.timeout = timeout;
+        this.tick = tick;
+        this.journalPath = journalPath;
+        this.wheel = new TimingWheel(tick.toMillis(), WHEEL_SIZE, System.currentTimeMillis());
+        this.reads = new ReadCoalescer(readCacheTtl, readMetrics);
+    }
+
+    /**
+     * @param journalPath  file keeping pending scheduled transfers across restarts, {@code null} to keep them in memory only
+     * @param readCacheTtl how long a transaction read answers later reads of the transaction, {@link Duration#ZERO} to only
+     *                     coalesce concurrent reads
+     */
+    public static Props props(TransferEngine transferEngine, TransactionFactory transactionFactory, Duration timeout,
+                              Duration tick, Path journalPath, Duration readCacheTtl, ReadMetrics readMetrics) {
+        return Props.create(TransactionService.class, () -> new TransactionService(transferEngine, transactionFactory,
+                timeout, tick, journalPath, readCacheTtl, readMetrics));
+    }
+
+    public static Props props(TransferEngine transferEngine, TransactionFactory transactionFactory, Duration timeout,
+                              Duration tick, Path journalPath) {
+        return TransactionService.props(transferEngine, transactionFactory, timeout, tick, journalPath, Duration.ZERO,
+                new ReadMetrics());
+    }
+
+    public static Props props(TransferEngine transferEngine, TransactionFactory transactionFactory, Duration timeout) {
+        return TransactionService.props(transferEngine, transactionFactory, timeout, DEFAULT_TICK, null);
     }
 
     public static Props props(ActorRef accountService, TransactionFactory transactionFactory, Duration timeout) {
-        return Props.create(TransactionService.class, () -> new TransactionService(accountService, transactionFactory, timeout));
+        return TransactionService.props(new ActorTransferEngine(accountService, timeout), transactionFactory, timeout);
     }
 
     public static Props props(ActorRef accountService, TransactionFactory transactionFactory) {
         return TransactionService.props(accountService, transactionFactory, Duration.ofSeconds(1));
     }
 
+    @Override
+    public void preStart() throws IOException {
+        ticks = context().system().scheduler().schedule(tick, tick, self(), Tick.INSTANCE, context().dispatcher(), self());
+        if (journalPath != null) {
+            journal = ScheduledTransferJournal.open(journalPath);
+            for (TransactionInfo transactionInfo : journal.getPending()) {
+                try {
+                    restore(transactionInfo);
+                } catch (RuntimeException e) {
+                    // a restart would restore the same entry again, drop it instead of failing forever
+                    log().error(e, "Dropping scheduled transaction {} which can not be restored", transactionInfo);
+                    journal.released(transactionInfo.getId());
+                }
+            }
+            journal.flush();
+            log().info("{} scheduled transactions restored", journal.getPending().size());
+        }
+    }
+
+    private void restore(TransactionInfo transactionInfo) throws IOException {
+        if (!wheel.add(transactionInfo.getId(), transactionInfo.getExecuteAt())) {
+            journal.released(transactionInfo.getId());
+            transactionIndex.add(transactionInfo.withStatus(NEW));
+            release(transactionInfo);
+            return;
+        }
+        scheduledById.put(transactionInfo.getId(), transactionInfo);
+        transactionIndex.add(transactionInfo);
+    }
+
+    @Override
+    public void postStop() throws IOException {
+        if (ticks != null) {
+            ticks.cancel();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
     @Override
     public Receive createReceive() {
         return receiveBuilder()
-                .match(TransactionInfo.class, this::doTransaction)
+                .match(TransactionInfo.class, transactionInfo -> doTransaction(transactionInfo, null))
+                .match(TracedTransfer.class, this::doTracedTransaction)
+                .match(Tick.class, this::onTick)
+                .match(MultiLegTransactionInfo.class, this::doMultiLegTransaction)
                 .match(Transaction.GetTransaction.class, this::onGetTransactionInfo)
                 .match(DeleteTransaction.class, this::onDeleteTransaction)
+                .match(GetTransactions.class, this::onGetTransactions)
+                .match(TransactionUpdated.class, this::onTransactionUpdated)
+                .match(DiscardTransaction.class, this::onDiscardTransaction)
+                .match(ReadCoalescer.Completed.class, completed -> reads.complete(completed, self()))
+                .match(GetFootprint.class, getFootprint -> onGetFootprint())
                 .build();
     }
 
-    private void doTransaction(TransactionInfo transactionInfo) {
+    private boolean exists(long transactionId) {
+        return transactionsById.containsKey(transactionId) || scheduledById.containsKey(transactionId)
+                || transactionFactory.load(transactionId) != null;
+    }
+
+    private void doTracedTransaction(TracedTransfer tracedTransfer) {
+        TransferTrace.mark(tracedTransfer.getTrace(), Stage.RECEIVED);
+        doTransaction(tracedTransfer.getTransactionInfo(), tracedTransfer.getTrace());
+    }
+
+    private void doTransaction(TransactionInfo transactionInfo, TransferTrace trace) {
         long transactionId = transactionInfo.getId();
-        if (transactionsById.containsKey(transactionId)) {
+        if (exists(transactionId)) {
             replyTransactionAlreadyExists(transactionId);
             return;
         }
+        if (transactionInfo.getExecuteAt() > 0 && wheel.add(transactionId, transactionInfo.getExecuteAt())) {
+            scheduleTransaction(transactionInfo.withStatus(SCHEDULED));
+            return;
+        }
+        ActorRef transaction = transactionFactory.get(context(), transactionInfo);
+        registerTransaction(transactionInfo, transaction);
+        doTransaction(transactionId, transferEngine.transfer(transactionInfo, trace), transaction, sender(), trace);
+    }
+
+    private void doMultiLegTransaction(MultiLegTransactionInfo transactionInfo) {
+        long transactionId = transactionInfo.getId();
+        if (exists(transactionId)) {
+            replyTransactionAlreadyExists(transactionId);
+            return;
+        }
+        ActorRef transaction = transactionFactory.get(context(), transactionInfo);
+        registerTransaction(transactionInfo, transaction);
+        doTransaction(transactionId, transferEngine.transfer(transactionInfo), transaction, sender(), null);
+    }
+
+    /**
+     * The wheel entry of a transaction which is not persisted stays behind, it is skipped once released.
+     */
+    private void scheduleTransaction(TransactionInfo transactionInfo) {
+        long transactionId = transactionInfo.getId();
+        if (journal != null) {
+            try {
+                journal.scheduled(transactionInfo);
+                journal.flush();
+            } catch (IOException e) {
+                log().error(e, "Could not persist scheduled transaction {}", transactionId);
+                sender().tell(new Failure("Could not persist scheduled transaction " + transactionId), sender());
+                return;
+            }
+        }
+        scheduledById.put(transactionId, transactionInfo);
+        transactionIndex.add(transactionInfo);
+        sender().tell(transactionInfo, self());
+    }
+
+    private void onTick(Tick tick) {
+        wheel.advance(System.currentTimeMillis(), this::releaseScheduled);
+        if (journal != null) {
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                log().error(e, "Could not persist released scheduled transactions");
+            }
+        }
+    }
+
+    private void releaseScheduled(long transactionId) {
+        TransactionInfo transactionInfo = scheduledById.get(transactionId);
+        // deleted while pending, or deleted and scheduled again for later under the same id
+        if (transactionInfo == null || transactionInfo.getExecuteAt() > System.currentTimeMillis()) {
+            return;
+        }
+        scheduledById.remove(transactionId);
+        if (journal != null) {
+            try {
+                journal.released(transactionId);
+            } catch (IOException e) {
+                log().error(e, "Could not persist release of scheduled transaction {}", transactionId);
+            }
+        }
+        transactionIndex.updateStatus(transactionId, NEW);
+        release(transactionInfo);
+    }
+
+    /**
+     * Runs a due scheduled transfer, nobody waits for its outcome.
+     */
+    private void release(TransactionInfo scheduled) {
+        TransactionInfo transactionInfo = scheduled.withStatus(NEW);
         ActorRef transaction = transactionFactory.get(context(), transactionInfo);
-        transactionsById.put(transactionId, transaction);
-        doTransaction(transactionInfo, transaction);
+        transactionsById.put(transactionInfo.getId(), transaction);
+        transactionFactory.save(transactionInfo);
+        doTransaction(transactionInfo.getId(), transferEngine.transfer(transactionInfo), transaction, ActorRef.noSender(), null);
+    }
+
+    private void registerTransaction(TransactionRecord transactionInfo, ActorRef transaction) {
+        transactionsById.put(transactionInfo.getId(), transaction);
+        transactionIndex.add(transactionInfo);
+        transactionFactory.save(transactionInfo);
     }
 
     private void replyTransactionAlreadyExists(long transactionId) {
-        String errorMsg = "Transaction " + transactionId + " already been processed";
-        log().warning(errorMsg);
-        sender().tell(new Failure(errorMsg), sender());
+        log().warning("Transaction {} already been processed", transactionId);
+        sender().tell(new Failure(FailureCode.TRANSACTION_ALREADY_EXISTS, transactionId), sender());
     }
 
-    private void doTransaction(TransactionInfo transactionInfo, ActorRef transaction) {
-        ActorRef replyTo = sender();
-        ask(accountService, transactionInfo, timeout)
-                .thenAcceptAsync(transferResponse -> handleTransferResponse(transaction, transferResponse, replyTo));
+    /**
+     * A transfer whose engine did not answer in time is rolled back, the engine fails it if it had not started by then.
+     */
+    private void doTransaction(long transactionId, CompletionStage<Object> transfer, ActorRef transaction, ActorRef replyTo,
+                               TransferTrace trace) {
+        transfer.whenCompleteAsync((transferResponse, e) -> {
+            if (e != null) {
+                log().error("Transfer of transaction {} failed: {}", transactionId, e.getMessage());
+                rollbackTransaction(transaction, Transaction.ChangeStatus.of(ROLLEDBACK), replyTo, new Failure("Transfer of transaction " + transactionId
+                        + " failed: " + e.getMessage()), trace);
+            } else {
+                handleTransferResponse(transactionId, transaction, transferResponse, replyTo, trace);
+            }
+        }, dispatcher);
     }
 
-    private void handleTransferResponse(ActorRef transaction, Object transferResponse, ActorRef replyTo) {
-        if (transferResponse instanceof Failure) {
-            rollbackTransaction(transaction, replyTo, (Failure) transferResponse);
+    private void handleTransferResponse(long transactionId, ActorRef transaction, Object transferResponse, ActorRef replyTo,
+                                        TransferTrace trace) {
+        TransferTrace.mark(trace, Stage.TRANSFERRED);
+        if (transferResponse instanceof Failure && ((Failure) transferResponse).getCode() == FailureCode.VERSION_MISMATCH) {
+            // a failed precondition is not a transfer, the client may retry it under the same id
+            self().tell(new DiscardTransaction(transactionId, transaction), self());
+            reply(replyTo, transferResponse);
+        } else if (transferResponse instanceof Failure) {
+            rollbackTransaction(transaction, Transaction.ChangeStatus.of(ROLLEDBACK), replyTo, (Failure) transferResponse, trace);
+        } else if (transferResponse instanceof LegsFailed) {
+            LegsFailed legsFailed = (LegsFailed) transferResponse;
+            rollbackTransaction(transaction, new Transaction.RollBackLegs(legsFailed.getLegs()), replyTo,
+                    legsFailed.getFailure(), trace);
         } else {
-            commitTransaction(transaction, replyTo);
+            commitTransaction(transaction, replyTo, trace);
         }
     }
 
-    private void rollbackTransaction(ActorRef transaction, ActorRef replyTo, Failure response) {
-        ask(transaction, new Transaction.ChangeStatus(ROLLEDBACK), timeout)
-                .thenAcceptAsync(updatedTransaction -> replyTransactionRolledBack(replyTo, response, (TransactionInfo) updatedTransaction));
+    /**
+     * @param rollback {@link Transaction.ChangeStatus} to {@code ROLLEDBACK} or {@link Transaction.RollBackLegs}
+     */
+    private void rollbackTransaction(ActorRef transaction, Object rollback, ActorRef replyTo, Failure response,
+                                     TransferTrace trace) {
+        ask(transaction, rollback, timeout)
+                .thenAcceptAsync(updatedTransaction -> {
+                    TransferTrace.mark(trace, Stage.STATUS_CHANGED);
+                    notifyTransactionUpdated((TransactionRecord) updatedTransaction);
+                    replyTransactionRolledBack(replyTo, response, (TransactionRecord) updatedTransaction);
+                }, dispatcher);
+    }
+
+    private void replyTransactionRolledBack(ActorRef replyTo, Failure response, TransactionRecord updatedTransaction) {
+        reply(replyTo, new TransactionRolledBack(updatedTransaction, response.getMessage()));
+    }
+
+    private static void reply(ActorRef replyTo, Object message) {
+        if (replyTo != ActorRef.noSender()) {
+            replyTo.tell(message, replyTo);
+        }
     }
 
-    private void replyTransactionRolledBack(ActorRef replyTo, Failure response, TransactionInfo updatedTransaction) {
-        replyTo.tell(new TransactionRolledBack(updatedTransaction, response.getMessage()), replyTo);
+    private void commitTransaction(ActorRef transaction, ActorRef replyTo, TransferTrace trace) {
+        ask(transaction, Transaction.ChangeStatus.of(COMMITTED), timeout)
+                .thenAcceptAsync(updatedTransaction -> {
+                    TransferTrace.mark(trace, Stage.STATUS_CHANGED);
+                    notifyTransactionUpdated((TransactionRecord) updatedTransaction);
+                    reply(replyTo, updatedTransaction);
+                }, dispatcher);
     }
 
-    private void commitTransaction(ActorRef transaction, ActorRef replyTo) {
-        ask(transaction, new Transaction.ChangeStatus(COMMITTED), timeout)
-                .thenAcceptAsync(updatedTransaction -> replyTo.tell(updatedTransaction, replyTo));
+    private void notifyTransactionUpdated(TransactionRecord updatedTransaction) {
+        self().tell(new TransactionUpdated(updatedTransaction), self());
+    }
+
+    private void onTransactionUpdated(TransactionUpdated transactionUpdated) {
+        TransactionRecord transactionInfo = transactionUpdated.getTransactionInfo();
+        reads.invalidate(transactionInfo.getId());
+        transactionFactory.save(transactionInfo);
+        transactionIndex.updateStatus(transactionInfo.getId(), transactionInfo.getStatus());
+    }
+
+    private void onDiscardTransaction(DiscardTransaction discardTransaction) {
+        long transactionId = discardTransaction.getId();
+        if (transactionsById.get(transactionId) == discardTransaction.getTransaction()) {
+            transactionsById.remove(transactionId);
+            transactionIndex.remove(transactionId);
+            reads.invalidate(transactionId);
+            transactionFactory.delete(transactionId);
+        }
+        context().stop(discardTransaction.getTransaction());
     }
 
     private void onGetTransactionInfo(Transaction.GetTransaction getTransaction) {
         long id = getTransaction.getId();
+        TransactionInfo scheduled = scheduledById.get(id);
+        if (scheduled != null) {
+            sender().tell(scheduled, self());
+            return;
+        }
         ActorRef transaction = transactionsById.get(id);
-        if (transaction == null) {
+        if (transaction != null) {
+            forwardGetTransaction(transaction, getTransaction);
+            return;
+        }
+        TransactionInfo stored = transactionFactory.load(id);
+        if (stored == null) {
             replyTransactionNotFound(id);
             return;
         }
-        forwardGetTransaction(transaction, getTransaction);
+        sender().tell(stored, self());
     }
 
     private void replyTransactionNotFound(long transactionId) {
-        String errorMsg = "Transaction " + transactionId + " does not exist";
-        log().warning(errorMsg);
-        sender().tell(new Failure(errorMsg), sender());
+        log().warning("Transaction {} does not exist", transactionId);
+        sender().tell(new Failure(FailureCode.TRANSACTION_NOT_FOUND, transactionId), sender());
     }
 
     private void forwardGetTransaction(ActorRef transaction, Transaction.GetTransaction getTransaction) {
-        ActorRef replyTo = sender();
-        ask(transaction, getTransaction, timeout)
-                .thenAcceptAsync(transactionInfo -> replyTo.tell(transactionInfo, self()));
+        ReadCoalescer.Flight flight = reads.join(getTransaction.getId(), sender(), self());
+        if (flight != null) {
+            reads.read(flight, ask(transaction, getTransaction, timeout), self());
+        }
     }
 
     private void onDeleteTransaction(DeleteTransaction deleteTransaction) {
         long transactionId = deleteTransaction.getId();
+        if (scheduledById.containsKey(transactionId)) {
+            cancelScheduled(transactionId);
+            return;
+        }
         ActorRef transaction = transactionsById.remove(transactionId);
-        if (transaction == null) {
+        if (transaction == null && transactionFactory.load(transactionId) == null) {
             replyTransactionNotFound(transactionId);
             return;
         }
+        transactionIndex.remove(transactionId);
+        reads.invalidate(transactionId);
+        transactionFactory.delete(transactionId);
         replyTransactionDeleted(transactionId, transaction);
     }
 
+    private void cancelScheduled(long transactionId) {
+        if (journal != null) {
+            try {
+                journal.released(transactionId);
+                journal.flush();
+            } catch (IOException e) {
+                log().error(e, "Could not persist cancellation of scheduled transaction {}", transactionId);
+                sender().tell(new Failure("Could not persist cancellation of scheduled transaction " + transactionId), sender());
+                return;
+            }
+        }
+        scheduledById.remove(transactionId);
+        transactionIndex.remove(transactionId);
+        log().info("Scheduled transaction {} cancelled", transactionId);
+        sender().tell(Success.INSTANCE, sender());
+    }
+
+    /**
+     * @param transaction actor of the transaction, {@code null} for a transaction only kept in the store
+     */
     private void replyTransactionDeleted(long transactionId, ActorRef transaction) {
-        context().stop(transaction);
+        if (transaction != null) {
+            context().stop(transaction);
+        }
         log().info("Transaction {} deleted", transactionId);
-        sender().tell(new Success(), sender());
+        sender().tell(Success.INSTANCE, sender());
+    }
+
+    private void onGetTransactions(GetTransactions getTransactions) {
+        TransactionIndex.Slice slice = transactionIndex.slice(getTransactions.getFilter(),
+                getTransactions.getCursor(), getTransactions.getLimit());
+        ActorRef replyTo = sender();
+        List<CompletableFuture<Object>> transactions = new ArrayList<>(slice.getTransactionIds().length);
+        for (long id : slice.getTransactionIds()) {
+            TransactionInfo scheduled = scheduledById.get(id);
+            if (scheduled != null) {
+                transactions.add(CompletableFuture.completedFuture(scheduled));
+                continue;
+            }
+            ActorRef transaction = transactionsById.get(id);
+            transactions.add(ask(transaction, new Transaction.GetTransaction(id), timeout).toCompletableFuture());
+        }
+        CompletableFuture.allOf(transactions.toArray(new CompletableFuture[0]))
+                .whenCompleteAsync((x, e) -> {
+                    if (e != null) {
+                        log().warning("Could not read a page of transactions: {}", e.getMessage());
+                        replyTo.tell(new Failure("Could not read transactions, try again"), self());
+                    } else {
+                        replyTo.tell(toTransactionPage(transactions, slice.getNextCursor()), self());
+                    }
+                }, dispatcher);
+    }
+
+    private static TransactionPage toTransactionPage(List<CompletableFuture<Object>> transactions, int nextCursor) {
+        List<TransactionInfo> transactionInfos = new ArrayList<>(transactions.size());
+        for (CompletableFuture<Object> transaction : transactions) {
+            transactionInfos.addAll(((TransactionRecord) transaction.join()).toTransactionInfos());
+        }
+        return new TransactionPage(transactionInfos, nextCursor);
+    }
+
+    /**
+     * Transactions only kept in the store have no actor and are left out.
+     */
+    private void onGetFootprint() {
+        List<StoreFootprintDto> footprints = new ArrayList<>(2);
+        footprints.add(StoreFootprintDto.of("transactions", transactionsById.size() + scheduledById.size(),
+                transactionsById.memoryBytes() + scheduledById.memoryBytes() + transactionIndex.memoryBytes()
+                        + transactionsById.size() * TRANSACTION_ACTOR_BYTES
+                        + scheduledById.size() * SCHEDULED_TRANSACTION_BYTES));
+        StoreFootprintDto store = transactionFactory.storeFootprint();
+        if (store != null) {
+            footprints.add(store);
+        }
+        sender().tell(footprints, self());
     }
 
     @Data
-    static class DeleteTransaction {
+    static class DeleteTransaction implements Urgent {
         private final long id;
     }
 
     @Data
     static class TransactionRolledBack {
-        private final TransactionInfo transactionInfo;
+        private final TransactionRecord transactionInfo;
         private final String reason;
     }
+
+    @Data
+    static class GetTransactions implements Urgent {
+        private final TransactionFilter filter;
+        private final int cursor;
+        private final int limit;
+    }
+
+    @Data
+    static class TransactionPage {
+        private final List<TransactionInfo> transactions;
+        private final int nextCursor;
+    }
+
+    private enum Tick {
+        INSTANCE
+    }
+
+    @Data
+    private static class TransactionUpdated implements Urgent {
+        private final TransactionRecord transactionInfo;
+    }
+
+    @Data
+    private static class DiscardTransaction implements Urgent {
+        private final long id;
+        private final ActorRef transaction;
+    }
 }
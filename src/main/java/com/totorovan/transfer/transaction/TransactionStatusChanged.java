@@ -0,0 +1,10 @@
+package com.totorovan.transfer.transaction;
+
+import lombok.Value;
+
+import java.io.Serializable;
+
+@Value
+public class TransactionStatusChanged implements Serializable {
+    private final TransactionRecord transactionInfo;
+}
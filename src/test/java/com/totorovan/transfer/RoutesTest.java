@@ -1,25 +1,44 @@
 package com.totorovan.transfer;
 
 import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.model.ContentTypes;
 import akka.http.javadsl.model.HttpRequest;
 import akka.http.javadsl.model.MediaTypes;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.Accept;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.http.javadsl.model.headers.EntityTag;
+import akka.http.javadsl.model.headers.EntityTagRange;
+import akka.http.javadsl.model.headers.IfMatch;
+import akka.http.javadsl.model.headers.IfNoneMatch;
 import akka.http.javadsl.testkit.JUnitRouteTest;
 import akka.http.javadsl.testkit.TestRoute;
 import com.totorovan.transfer.account.AccountDto;
 import com.totorovan.transfer.account.AccountFactory;
 import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.common.Codecs;
+import com.totorovan.transfer.id.IdAllocator;
+import com.totorovan.transfer.limit.RateLimiter;
+import com.totorovan.transfer.tenant.TenantDto;
+import com.totorovan.transfer.transaction.MultiLegTransactionDto;
+import com.totorovan.transfer.transaction.MultiLegTransactionDto.LegDto;
 import com.totorovan.transfer.transaction.TransactionDto;
 import com.totorovan.transfer.transaction.TransactionFactory;
 import com.totorovan.transfer.transaction.TransactionInfo;
+import com.totorovan.transfer.transaction.TransactionPageDto;
+import com.typesafe.config.ConfigFactory;
 import org.junit.Before;
 
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.concurrent.ExecutionException;
 
 import static akka.pattern.PatternsCS.ask;
 import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class RoutesTest extends JUnitRouteTest {
 
@@ -103,6 +122,262 @@ public class RoutesTest extends JUnitRouteTest {
                 .assertEntityAs(Jackson.unmarshaller(TransactionDto.class), new TransactionDto(1L, 1L, 2L, BigDecimal.ONE, COMMITTED, null));
     }
 
+    @org.junit.Test
+    public void testConditionalGetAndTransferUseAccountVersion() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.ONE), timeout).toCompletableFuture().get();
+        ask(app.getAccountService(), new AccountInfo(2L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
+        String tag = eTagOf("/accounts/1");
+        assertTrue(tag.endsWith(".1\""));
+        appRoute.run(HttpRequest.GET("/accounts/1").addHeader(IfNoneMatch.create(EntityTagRange.create(entityTag(tag)))))
+                .assertStatusCode(StatusCodes.NOT_MODIFIED);
+        String transfer = "{\"id\": 1, \"srcAccountId\": 1, \"targetAccountId\": 2, \"amount\": 1}";
+        appRoute.run(HttpRequest.POST("/transactions").addHeader(IfMatch.create(EntityTagRange.create(entityTag(tag.replace(".1\"", ".2\"")))))
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), transfer))
+                .assertStatusCode(StatusCodes.PRECONDITION_FAILED);
+        appRoute.run(HttpRequest.POST("/transactions").addHeader(IfMatch.create(EntityTagRange.create(EntityTag.create("1", false))))
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), transfer))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+        appRoute.run(HttpRequest.POST("/transactions").addHeader(IfMatch.create(EntityTagRange.create(entityTag(tag))))
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), transfer))
+                .assertStatusCode(StatusCodes.CREATED)
+                .assertEntityAs(Jackson.unmarshaller(TransactionDto.class), new TransactionDto(1L, 1L, 2L, BigDecimal.ONE, COMMITTED, null));
+        appRoute.run(HttpRequest.GET("/accounts/1").addHeader(IfNoneMatch.create(EntityTagRange.create(entityTag(tag)))))
+                .assertStatusCode(StatusCodes.OK)
+                .assertHeaderExists("ETag", tag.replace(".1\"", ".2\""));
+    }
+
+    @org.junit.Test
+    public void testRecreatedAccountDoesNotMatchTagOfTheDeletedOne() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.ONE), timeout).toCompletableFuture().get();
+        ask(app.getAccountService(), new AccountInfo(2L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
+        String tag = eTagOf("/accounts/1");
+        appRoute.run(HttpRequest.DELETE("/accounts/1"))
+                .assertStatusCode(StatusCodes.OK);
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.TEN), timeout).toCompletableFuture().get();
+        appRoute.run(HttpRequest.GET("/accounts/1").addHeader(IfNoneMatch.create(EntityTagRange.create(entityTag(tag)))))
+                .assertStatusCode(StatusCodes.OK);
+        appRoute.run(HttpRequest.POST("/transactions").addHeader(IfMatch.create(EntityTagRange.create(entityTag(tag))))
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(),
+                        "{\"id\": 1, \"srcAccountId\": 1, \"targetAccountId\": 2, \"amount\": 1}"))
+                .assertStatusCode(StatusCodes.PRECONDITION_FAILED);
+    }
+
+    private String eTagOf(String uri) {
+        return appRoute.run(HttpRequest.GET(uri)).assertStatusCode(StatusCodes.OK)
+                .response().getHeader("ETag").get().value();
+    }
+
+    private static EntityTag entityTag(String quoted) {
+        return EntityTag.create(quoted.substring(1, quoted.length() - 1), false);
+    }
+
+    @org.junit.Test
+    public void testDebugReadsCountAccountReads() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.ONE), timeout).toCompletableFuture().get();
+        appRoute.run(HttpRequest.GET("/accounts/1"))
+                .assertStatusCode(StatusCodes.OK);
+        String reads = appRoute.run(HttpRequest.GET("/debug/reads"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+        assertTrue(reads, reads.startsWith("{\"accounts\":{\"requests\":1,\"reads\":1,"));
+    }
+
+    @org.junit.Test
+    public void testFootprintCountsLiveEntities() throws ExecutionException, InterruptedException {
+        for (long id : new long[]{1L, 2L}) {
+            ask(app.getAccountService(), new AccountInfo(id, BigDecimal.ONE), timeout).toCompletableFuture().get();
+            // the account enters the balance index once started
+            appRoute.run(HttpRequest.GET("/accounts/" + id)).assertStatusCode(StatusCodes.OK);
+        }
+        String footprint = appRoute.run(HttpRequest.GET("/debug/footprint"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+        assertTrue(footprint, footprint.startsWith("{\"stores\":[{\"store\":\"accounts\",\"entities\":2,"));
+        assertTrue(footprint, footprint.contains("{\"store\":\"transactions\",\"entities\":0,"));
+        assertTrue(footprint, footprint.contains("{\"store\":\"balanceIndex\",\"entities\":2,\"bytes\":128,\"bytesPerEntity\":64}"));
+    }
+
+    @org.junit.Test
+    public void testReconciliationScanFindsNoDrift() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.TEN), timeout).toCompletableFuture().get();
+        String scan = appRoute.run(HttpRequest.POST("/admin/reconciliation"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+        assertTrue(scan, scan.startsWith("{\"epoch\":1,\"accounts\":1,") && scan.contains("\"drift\":0,"));
+        String report = appRoute.run(HttpRequest.GET("/admin/reconciliation"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+        assertTrue(report, report.startsWith("{\"issued\":10,\"balances\":10,") && report.contains("\"lastScan\":{\"epoch\":1,"));
+    }
+
+    @org.junit.Test
+    public void testServerAssignedIdsTakeClientIdsAsIdempotencyKeys() {
+        app.assignIds(IdAllocator.inMemory(1, 4));
+        TestRoute route = testRoute(app.buildRoutes());
+        String account = "{\"id\": 77, \"balance\": 5}";
+        route.run(HttpRequest.POST("/accounts").withEntity(MediaTypes.APPLICATION_JSON.toContentType(), account))
+                .assertStatusCode(StatusCodes.CREATED)
+                .assertEntity("{\"id\":4,\"balance\":5}");
+        route.run(HttpRequest.POST("/accounts").withEntity(MediaTypes.APPLICATION_JSON.toContentType(), account))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntity("{\"id\":4,\"balance\":5}");
+        route.run(HttpRequest.POST("/accounts").withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"balance\": 1}"))
+                .assertStatusCode(StatusCodes.CREATED)
+                .assertEntity("{\"id\":5,\"balance\":1}");
+
+        String transfer = "{\"id\": 77, \"srcAccountId\": 4, \"targetAccountId\": 5, \"amount\": 2}";
+        String created = route.run(HttpRequest.POST("/transactions").withEntity(MediaTypes.APPLICATION_JSON.toContentType(), transfer))
+                .assertStatusCode(StatusCodes.CREATED)
+                .entityString();
+        assertTrue(created, created.startsWith("{\"id\":6,") && created.contains("\"status\":\"COMMITTED\""));
+        String repeated = route.run(HttpRequest.POST("/transactions").withEntity(MediaTypes.APPLICATION_JSON.toContentType(), transfer))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+        assertTrue(repeated, repeated.startsWith("{\"id\":6,") && repeated.contains("\"status\":\"COMMITTED\""));
+        route.run(HttpRequest.GET("/accounts/5"))
+                .assertEntity("{\"id\":5,\"balance\":3}");
+    }
+
+    @org.junit.Test
+    public void testRateLimitedClientIsAnsweredWithRetryAfter() {
+        app.limitRates(new RateLimiter("X-Api-Key", 10, Collections.singletonMap("accounts", new RateLimiter.Rate(0.5, 2))));
+        TestRoute route = testRoute(app.buildRoutes());
+        for (int i = 0; i < 2; i++) {
+            route.run(HttpRequest.GET("/accounts/1").addHeader(RawHeader.create("X-Api-Key", "batch")))
+                    .assertStatusCode(StatusCodes.NOT_FOUND);
+        }
+        route.run(HttpRequest.GET("/accounts/1").addHeader(RawHeader.create("X-Api-Key", "batch")))
+                .assertStatusCode(StatusCodes.TOO_MANY_REQUESTS)
+                .assertHeaderExists("Retry-After", "2");
+        route.run(HttpRequest.GET("/accounts/1").addHeader(RawHeader.create("X-Api-Key", "other")))
+                .assertStatusCode(StatusCodes.NOT_FOUND);
+        route.run(HttpRequest.GET("/transactions/1").addHeader(RawHeader.create("X-Api-Key", "batch")))
+                .assertStatusCode(StatusCodes.NOT_FOUND);
+    }
+
+    @org.junit.Test
+    public void testTenantsAreServedByTheirOwnServicesAndQuotas() {
+        Application tenanted = new Application(new AccountFactory(), new TransactionFactory(), ConfigFactory.parseString(
+                "tenancy.tenants = \"retail,corporate\"\n"
+                        + "tenant.corporate { per-second = 0.001, burst = 1 }"));
+        try {
+            TestRoute route = testRoute(tenanted.buildRoutes());
+            route.run(HttpRequest.POST("/tenants/retail/accounts").withEntity(MediaTypes.APPLICATION_JSON.toContentType(),
+                    "{\"id\": 1, \"balance\": 5}"))
+                    .assertStatusCode(StatusCodes.CREATED);
+            route.run(HttpRequest.GET("/accounts/1").addHeader(RawHeader.create("X-Tenant", "retail")))
+                    .assertStatusCode(StatusCodes.OK);
+            route.run(HttpRequest.GET("/accounts/1"))
+                    .assertStatusCode(StatusCodes.NOT_FOUND);
+            route.run(HttpRequest.GET("/tenants/corporate/accounts/1"))
+                    .assertStatusCode(StatusCodes.NOT_FOUND);
+            route.run(HttpRequest.GET("/tenants/corporate/accounts/1"))
+                    .assertStatusCode(StatusCodes.TOO_MANY_REQUESTS);
+            route.run(HttpRequest.GET("/tenants/retail/accounts/1"))
+                    .assertStatusCode(StatusCodes.OK);
+            route.run(HttpRequest.GET("/tenants/wholesale/accounts/1"))
+                    .assertStatusCode(StatusCodes.NOT_FOUND);
+            TenantDto[] tenants = route.run(HttpRequest.GET("/admin/tenants"))
+                    .assertStatusCode(StatusCodes.OK)
+                    .entity(Jackson.unmarshaller(TenantDto[].class));
+            assertEquals(Arrays.asList("retail", 3L, 0L, 0, 2L), Arrays.asList(tenants[0].getName(), tenants[0].getRequests(),
+                    tenants[0].getThrottled(), tenants[0].getInFlight(), tenants[0].getAccountReads().getRequests()));
+            assertEquals(Arrays.asList("corporate", 2L, 1L), Arrays.asList(tenants[1].getName(), tenants[1].getRequests(),
+                    tenants[1].getThrottled()));
+        } finally {
+            tenanted.getTenants().all().forEach(tenant -> tenant.getSystem().terminate());
+        }
+    }
+
+    @org.junit.Test
+    public void testAccountsArePagedById() throws ExecutionException, InterruptedException {
+        for (long id : new long[]{3L, 1L, 2L}) {
+            ask(app.getAccountService(), new AccountInfo(id, BigDecimal.ONE), timeout).toCompletableFuture().get();
+        }
+        appRoute.run(HttpRequest.GET("/accounts?limit=2"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntity("{\"accounts\":[{\"id\":1,\"balance\":1},{\"id\":2,\"balance\":1}],\"nextCursor\":\"2\"}");
+        appRoute.run(HttpRequest.DELETE("/accounts/1"))
+                .assertStatusCode(StatusCodes.OK);
+        appRoute.run(HttpRequest.GET("/accounts?cursor=2&limit=2"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntity("{\"accounts\":[{\"id\":3,\"balance\":1}],\"nextCursor\":null}");
+        appRoute.run(HttpRequest.GET("/accounts?cursor=x"))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+    }
+
+    @org.junit.Test
+    public void testBalanceAtReadsBalanceHistory() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.TEN), timeout).toCompletableFuture().get();
+        ask(app.getAccountService(), new AccountInfo(2L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
+        ask(app.getAccountService(), new TransactionInfo(1L, 1L, 2L, BigDecimal.ONE, NEW), timeout).toCompletableFuture().get();
+        String balance = appRoute.run(HttpRequest.GET("/accounts/1/balance"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+        assertTrue(balance, balance.startsWith("{\"id\":1,\"at\":") && balance.endsWith(",\"balance\":9}"));
+        appRoute.run(HttpRequest.GET("/accounts/1/balance?at=0"))
+                .assertStatusCode(StatusCodes.NOT_FOUND);
+        appRoute.run(HttpRequest.GET("/accounts/3/balance"))
+                .assertStatusCode(StatusCodes.NOT_FOUND);
+    }
+
+    @org.junit.Test
+    public void testAccountsAreQueriedByBalance() throws ExecutionException, InterruptedException {
+        for (long id = 1; id <= 3; id++) {
+            ask(app.getAccountService(), new AccountInfo(id, BigDecimal.valueOf(id * 10)), timeout).toCompletableFuture().get();
+            // the account is in the index once it started, which it did when it answered
+            appRoute.run(HttpRequest.GET("/accounts/" + id)).assertStatusCode(StatusCodes.OK);
+        }
+        appRoute.run(HttpRequest.GET("/accounts/top?n=2"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntity("[{\"id\":3,\"balance\":30},{\"id\":2,\"balance\":20}]");
+        appRoute.run(HttpRequest.GET("/accounts?minBalance=15&limit=1"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntity("{\"accounts\":[{\"id\":2,\"balance\":20}],\"nextCursor\":\"200000:2\"}");
+        appRoute.run(HttpRequest.GET("/accounts?minBalance=15&maxBalance=30&cursor=200000:2"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntity("{\"accounts\":[{\"id\":3,\"balance\":30}],\"nextCursor\":null}");
+        appRoute.run(HttpRequest.GET("/accounts?maxBalance=0.00001"))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+        appRoute.run(HttpRequest.GET("/accounts?minBalance=30&maxBalance=20"))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+    }
+
+    @org.junit.Test
+    public void testBulkOperationIsStartedAndReported() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.TEN), timeout).toCompletableFuture().get();
+        appRoute.run(HttpRequest.POST("/admin/bulk-operations")
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"type\": \"FEE\"}"))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+        appRoute.run(HttpRequest.POST("/admin/bulk-operations")
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"type\": \"INTEREST\", \"rate\": 10}"))
+                .assertStatusCode(StatusCodes.ACCEPTED);
+        String progress = appRoute.run(HttpRequest.GET("/admin/bulk-operations/1"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+        assertTrue(progress, progress.startsWith("{\"id\":1,\"type\":\"INTEREST\","));
+        appRoute.run(HttpRequest.GET("/admin/bulk-operations/2"))
+                .assertStatusCode(StatusCodes.NOT_FOUND);
+    }
+
+    @org.junit.Test
+    public void testDebugTracesShowStagesOfTransfer() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.ONE), timeout).toCompletableFuture().get();
+        ask(app.getAccountService(), new AccountInfo(2L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
+        appRoute.run(HttpRequest.POST("/transactions")
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(),
+                        "{\"id\": 1, \"srcAccountId\": 1, \"targetAccountId\": 2, \"amount\": 1}"))
+                .assertStatusCode(StatusCodes.CREATED);
+        String traces = appRoute.run(HttpRequest.GET("/debug/traces?limit=5"))
+                .assertStatusCode(StatusCodes.OK)
+                .entityString();
+        assertTrue(traces, traces.startsWith("[{\"transactionId\":1,\"outcome\":\"COMMITTED\""));
+        assertTrue(traces, traces.contains("\"ACCOUNT_SERVICE\"") && traces.contains("\"DEPOSITED\"")
+                && traces.contains("\"REPLIED\""));
+        appRoute.run(HttpRequest.GET("/debug/traces?limit=0"))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+    }
+
     @org.junit.Test
     public void testFailureTransfer() throws ExecutionException, InterruptedException {
         ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
@@ -115,4 +390,102 @@ public class RoutesTest extends JUnitRouteTest {
                         new TransactionDto(1L, 1L, 2L, BigDecimal.ONE, ROLLEDBACK,
                                 "Insufficient balance to withdraw 1 from account AccountInfo(id=1, balance=0)"));
     }
+
+    @org.junit.Test
+    public void testSuccessfulMultiLegTransfer() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.TEN), timeout).toCompletableFuture().get();
+        ask(app.getAccountService(), new AccountInfo(2L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
+        ask(app.getAccountService(), new AccountInfo(3L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
+        appRoute.run(HttpRequest.POST("/transactions/multi-leg")
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(),
+                        "{\"id\": 1, \"srcAccountId\": 1, \"legs\": [{\"targetAccountId\": 2, \"amount\": 1}, {\"targetAccountId\": 3, \"amount\": 2}]}"))
+                .assertStatusCode(StatusCodes.CREATED)
+                .assertEntityAs(Jackson.unmarshaller(MultiLegTransactionDto.class), new MultiLegTransactionDto(1L, 1L,
+                        Arrays.asList(new LegDto(2L, BigDecimal.ONE, COMMITTED), new LegDto(3L, BigDecimal.valueOf(2L), COMMITTED)),
+                        COMMITTED, null));
+        appRoute.run(HttpRequest.GET("/accounts/1"))
+                .assertEntityAs(Jackson.unmarshaller(AccountDto.class), new AccountDto(1L, BigDecimal.valueOf(7L)));
+    }
+
+    @org.junit.Test
+    public void testMultiLegTransferWithoutLegsReturnsBadRequest() {
+        appRoute.run(HttpRequest.POST("/transactions/multi-leg")
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"id\": 1, \"srcAccountId\": 1, \"legs\": []}"))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+    }
+
+    @org.junit.Test
+    public void testGetAccountNegotiatesCbor() throws InterruptedException, ExecutionException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
+        appRoute.run(HttpRequest.GET("/accounts/1").addHeader(Accept.create(Codecs.APPLICATION_CBOR.toRange())))
+                .assertStatusCode(StatusCodes.OK)
+                .assertContentType(ContentTypes.create(Codecs.APPLICATION_CBOR))
+                .assertEntityAs(Codecs.cborUnmarshaller(AccountDto.class), new AccountDto(1L, BigDecimal.ZERO));
+    }
+
+    @org.junit.Test
+    public void testPostCborTransactionReturnsCbor() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.ONE), timeout).toCompletableFuture().get();
+        ask(app.getAccountService(), new AccountInfo(2L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
+        TransactionDto transactionDto = new TransactionDto(1L, 1L, 2L, BigDecimal.ONE, NEW, null);
+        appRoute.run(HttpRequest.POST("/transactions")
+                .addHeader(Accept.create(Codecs.APPLICATION_CBOR.toRange()))
+                .withEntity(ContentTypes.create(Codecs.APPLICATION_CBOR), Codecs.toCbor(transactionDto)))
+                .assertStatusCode(StatusCodes.CREATED)
+                .assertEntityAs(Codecs.cborUnmarshaller(TransactionDto.class), new TransactionDto(1L, 1L, 2L, BigDecimal.ONE, COMMITTED, null));
+    }
+
+    @org.junit.Test
+    public void testGetAccountTransactionsReturnsPage() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.ONE), timeout).toCompletableFuture().get();
+        ask(app.getAccountService(), new AccountInfo(2L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
+        ask(app.getTransactionService(), new TransactionInfo(1L, 1L, 2L, BigDecimal.ONE, NEW), timeout).toCompletableFuture().get();
+        ask(app.getTransactionService(), new TransactionInfo(2L, 1L, 2L, BigDecimal.ONE, NEW), timeout).toCompletableFuture().get();
+
+        appRoute.run(HttpRequest.GET("/accounts/2/transactions?limit=1"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntityAs(Jackson.unmarshaller(TransactionPageDto.class), new TransactionPageDto(
+                        Collections.singletonList(new TransactionDto(1L, 1L, 2L, BigDecimal.ONE, COMMITTED, null)), 1));
+
+        appRoute.run(HttpRequest.GET("/accounts/2/transactions?cursor=0&status=ROLLEDBACK"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntityAs(Jackson.unmarshaller(TransactionPageDto.class), new TransactionPageDto(
+                        Arrays.asList(new TransactionDto(2L, 1L, 2L, BigDecimal.ONE, ROLLEDBACK, null)), null));
+    }
+
+    @org.junit.Test
+    public void testGetAccountTransactionsRejectsInvalidLimit() {
+        appRoute.run(HttpRequest.GET("/accounts/1/transactions?limit=0"))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+    }
+
+    @org.junit.Test
+    public void testPostTransactionRejectsExecuteAtTooFarAhead() {
+        appRoute.run(HttpRequest.POST("/transactions")
+                .withEntity(MediaTypes.APPLICATION_JSON.toContentType(),
+                        "{\"id\": 1, \"srcAccountId\": 1, \"targetAccountId\": 2, \"amount\": 1, \"status\": \"NEW\", \"executeAt\": " + Long.MAX_VALUE + "}"))
+                .assertStatusCode(StatusCodes.BAD_REQUEST);
+    }
+
+    @org.junit.Test
+    public void testExportTransactionsStreamsCsv() throws ExecutionException, InterruptedException {
+        ask(app.getAccountService(), new AccountInfo(1L, BigDecimal.ONE), timeout).toCompletableFuture().get();
+        ask(app.getAccountService(), new AccountInfo(2L, BigDecimal.ZERO), timeout).toCompletableFuture().get();
+        ask(app.getTransactionService(), new TransactionInfo(1L, 1L, 2L, BigDecimal.ONE, NEW), timeout).toCompletableFuture().get();
+        ask(app.getTransactionService(), new TransactionInfo(2L, 1L, 2L, BigDecimal.ONE, NEW), timeout).toCompletableFuture().get();
+
+        appRoute.run(HttpRequest.GET("/transactions/export?format=csv&status=COMMITTED"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntity("id,srcAccountId,targetAccountId,amount,status\n1,1,2,1,COMMITTED\n");
+    }
+
+    @org.junit.Test
+    public void testExportTransactionsStreamsNdjson() throws ExecutionException, InterruptedException {
+        ask(app.getTransactionService(), new TransactionInfo(1L, 1L, 2L, BigDecimal.ONE, NEW), timeout).toCompletableFuture().get();
+        ask(app.getTransactionService(), new TransactionInfo(2L, 2L, 3L, BigDecimal.ONE, NEW), timeout).toCompletableFuture().get();
+
+        appRoute.run(HttpRequest.GET("/transactions/export?accountId=3"))
+                .assertStatusCode(StatusCodes.OK)
+                .assertEntity("{\"id\":2,\"srcAccountId\":2,\"targetAccountId\":3,\"amount\":1,\"status\":\"ROLLEDBACK\"}\n");
+    }
 }
@@ -4,20 +4,34 @@ import akka.actor.*;
 import akka.testkit.javadsl.TestKit;
 import com.google.common.collect.ImmutableMap;
 import com.totorovan.transfer.account.Account.GetAccount;
+import com.totorovan.transfer.common.Amounts;
 import com.totorovan.transfer.common.Messages.Failure;
 import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.store.AccountStore;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo.Leg;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo.LegsFailed;
 import com.totorovan.transfer.transaction.TransactionInfo;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
 
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.COMMITTED;
 import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.ROLLEDBACK;
 import static java.math.BigDecimal.ONE;
 import static java.math.BigDecimal.ZERO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class AccountServiceTest {
     private static final long ACC_ID_1 = 1L;
@@ -193,6 +207,88 @@ class AccountServiceTest {
         }};
     }
 
+    @Test
+    void testMultiLegTransferCreditsEveryLeg() {
+        new TestKit(system) {{
+            ActorRef accountService = prepareAccountServiceForTransfer(this, new AccountInfo(ACC_ID_1, BigDecimal.valueOf(3L)), new AccountInfo(ACC_ID_2, ZERO));
+
+            accountService.tell(new MultiLegTransactionInfo(1L, ACC_ID_1,
+                    Arrays.asList(new Leg(ACC_ID_2, ONE, NEW), new Leg(ACC_ID_2, ONE, NEW)), NEW), getRef());
+
+            expectMsgClass(Success.class);
+
+            accountService.tell(new GetAccount(ACC_ID_1), getRef());
+            expectMsg(new AccountInfo(ACC_ID_1, ONE));
+
+            accountService.tell(new GetAccount(ACC_ID_2), getRef());
+            expectMsg(new AccountInfo(ACC_ID_2, BigDecimal.valueOf(2L)));
+        }};
+    }
+
+    @Test
+    void testMultiLegTransferRevertsAllLegsIfOneDepositFails() {
+        new TestKit(system) {{
+            AccountInfo acc1 = new AccountInfo(ACC_ID_1, BigDecimal.valueOf(2L));
+            AccountInfo acc2 = new AccountInfo(ACC_ID_2, ZERO);
+            AccountInfo acc3 = new AccountInfo(3L, ZERO);
+            ActorRef accountService = getTestAccountService(ImmutableMap.<Long, ActorRef>builder()
+                    .put(ACC_ID_1, getTestAccount(acc1))
+                    .put(ACC_ID_2, getTestAccount(acc2))
+                    .put(3L, system.actorOf(OnDepositFailureAccount.props()))
+                    .build());
+            for (AccountInfo accountInfo : Arrays.asList(acc1, acc2, acc3)) {
+                accountService.tell(accountInfo, getRef());
+                expectMsgClass(Success.class);
+            }
+
+            accountService.tell(new MultiLegTransactionInfo(1L, ACC_ID_1,
+                    Arrays.asList(new Leg(ACC_ID_2, ONE, NEW), new Leg(3L, ONE, NEW)), NEW), getRef());
+
+            expectMsg(new LegsFailed(new Failure("Always fail on that"), Arrays.asList(new Leg(ACC_ID_2, ONE, ROLLEDBACK),
+                    new Leg(3L, ONE, ROLLEDBACK, "Always fail on that"))));
+
+            awaitAssert(() -> {
+                accountService.tell(new GetAccount(ACC_ID_1), getRef());
+                expectMsg(acc1);
+                accountService.tell(new GetAccount(ACC_ID_2), getRef());
+                expectMsg(acc2);
+                return null;
+            });
+        }};
+    }
+
+    @Test
+    void testMultiLegTransferDoesNotRefundALegWhichTimedOutAndCouldNotBeReverted() {
+        new TestKit(system) {{
+            AccountInfo acc1 = new AccountInfo(ACC_ID_1, BigDecimal.valueOf(2L));
+            AccountInfo acc2 = new AccountInfo(ACC_ID_2, ZERO);
+            AccountInfo acc3 = new AccountInfo(3L, ZERO);
+            ActorRef accountService = getTestAccountService(ImmutableMap.<Long, ActorRef>builder()
+                    .put(ACC_ID_1, getTestAccount(acc1))
+                    .put(ACC_ID_2, getTestAccount(acc2))
+                    .put(3L, system.actorOf(SilentDepositAccount.props()))
+                    .build());
+            for (AccountInfo accountInfo : Arrays.asList(acc1, acc2, acc3)) {
+                accountService.tell(accountInfo, getRef());
+                expectMsgClass(Success.class);
+            }
+
+            accountService.tell(new MultiLegTransactionInfo(1L, ACC_ID_1,
+                    Arrays.asList(new Leg(ACC_ID_2, ONE, NEW), new Leg(3L, ONE, NEW)), NEW), getRef());
+
+            LegsFailed legsFailed = expectMsgClass(Duration.ofSeconds(5), LegsFailed.class);
+            assertEquals(new Leg(ACC_ID_2, ONE, ROLLEDBACK), legsFailed.getLegs().get(0));
+            Leg notReverted = legsFailed.getLegs().get(1);
+            assertEquals(COMMITTED, notReverted.getStatus());
+            assertTrue(notReverted.getStatusReason().startsWith("Not reverted: "), notReverted.getStatusReason());
+
+            accountService.tell(new GetAccount(ACC_ID_1), getRef());
+            expectMsg(new AccountInfo(ACC_ID_1, ONE));
+            accountService.tell(new GetAccount(ACC_ID_2), getRef());
+            expectMsg(acc2);
+        }};
+    }
+
     private ActorRef prepareAccountServiceForTransfer(TestKit testKit, AccountInfo acc1, AccountInfo acc2) {
         ActorRef account1 = getTestAccount(acc1);
         ActorRef account2 = getTestAccount(acc2);
@@ -212,6 +308,57 @@ class AccountServiceTest {
         return accountService;
     }
 
+    @Test
+    void testAccountsAreLoadedFromStoreByNewService() throws IOException {
+        Path directory = Files.createTempDirectory("account-service");
+        Path file = directory.resolve("accounts.log");
+        new TestKit(system) {{
+            try (AccountStore store = AccountStore.open(file, 100)) {
+                ActorRef accountService = system.actorOf(AccountService.props(new AccountFactory(store)));
+                accountService.tell(new AccountInfo(ACC_ID_1, ONE), getRef());
+                expectMsgClass(Success.class);
+                accountService.tell(new AccountInfo(ACC_ID_2, ONE), getRef());
+                expectMsgClass(Success.class);
+                accountService.tell(new TransactionInfo(1L, ACC_ID_1, ACC_ID_2, ONE, NEW), getRef());
+                expectMsgClass(Success.class);
+                system.stop(accountService);
+            }
+            try (AccountStore store = AccountStore.open(file, 100)) {
+                ActorRef accountService = system.actorOf(AccountService.props(new AccountFactory(store)));
+                accountService.tell(new GetAccount(ACC_ID_2), getRef());
+                expectMsg(new AccountInfo(ACC_ID_2, BigDecimal.valueOf(2L)));
+                accountService.tell(new AccountInfo(ACC_ID_1, ONE), getRef());
+                expectMsg(new Failure("Account " + ACC_ID_1 + " already exists"));
+                system.stop(accountService);
+            }
+        }};
+        Files.delete(file);
+        Files.delete(directory);
+    }
+
+    @Test
+    void testStoredAccountsAreInTheBalanceIndexBeforeTheyAreLoaded() throws IOException {
+        Path directory = Files.createTempDirectory("account-service");
+        Path file = directory.resolve("accounts.log");
+        ActorSystem indexed = ActorSystem.create("indexed");
+        try (AccountStore store = AccountStore.open(file, 100)) {
+            store.put(ACC_ID_1, Amounts.toUnits(ONE), 1L);
+            store.put(ACC_ID_2, Amounts.toUnits(BigDecimal.TEN), 1L);
+            new TestKit(indexed) {{
+                indexed.actorOf(AccountService.props(new AccountFactory(store)));
+                awaitAssert(() -> {
+                    assertEquals(Arrays.asList(new BalanceIndex.Entry(Amounts.toUnits(BigDecimal.TEN), ACC_ID_2),
+                            new BalanceIndex.Entry(Amounts.toUnits(ONE), ACC_ID_1)), BalanceIndex.get(indexed).top(2));
+                    return null;
+                });
+            }};
+        } finally {
+            TestKit.shutdownActorSystem(indexed);
+        }
+        Files.delete(file);
+        Files.delete(directory);
+    }
+
     private ActorRef getTestAccountService(Map<Long, ActorRef> accountsById) {
         Props props = AccountService.props(new TestAccountFactory(accountsById));
         return system.actorOf(props);
@@ -231,6 +378,25 @@ class AccountServiceTest {
         }
     }
 
+    /**
+     * Never answers a deposit, so whether it was applied is unknown, and cannot take it back.
+     */
+    static class SilentDepositAccount extends AbstractActor {
+
+        static Props props() {
+            return Props.create(SilentDepositAccount.class, SilentDepositAccount::new);
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(Account.Deposit.class, deposit -> {
+                    })
+                    .match(Account.Withdraw.class, withdraw -> sender().tell(new Failure("Not enough money"), self()))
+                    .build();
+        }
+    }
+
     static class TestAccountFactory extends AccountFactory {
         private Map<Long, ActorRef> accountsById;
 
@@ -240,7 +406,8 @@ class AccountServiceTest {
 
         @Override
         ActorRef get(ActorContext context, AccountInfo accountInfo) {
-            return accountsById.get(accountInfo.getId());
+            ActorRef account = accountsById.get(accountInfo.getId());
+            return account != null ? account : super.get(context, accountInfo);
         }
     }
 }
@@ -15,6 +15,7 @@ import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
 
+import static com.totorovan.transfer.common.Amounts.toUnits;
 import static java.math.BigDecimal.*;
 
 class AccountTest {
@@ -55,9 +56,9 @@ class AccountTest {
             AccountInfo accountInfo = new AccountInfo(ACC_ID, TEN);
             ActorRef account = getTestAccount(accountInfo);
 
-            account.tell(new Withdraw(ONE), getRef());
+            account.tell(new Withdraw(toUnits(ONE)), getRef());
 
-            expectMsg(new Success());
+            expectMsg(Success.INSTANCE);
 
             account.tell(new GetAccount(ACC_ID), getRef());
             expectMsg(new AccountInfo(ACC_ID, new BigDecimal(9)));
@@ -70,7 +71,7 @@ class AccountTest {
             AccountInfo accountInfo = new AccountInfo(ACC_ID, ZERO);
             ActorRef account = getTestAccount(accountInfo);
 
-            account.tell(new Withdraw(ONE), getRef());
+            account.tell(new Withdraw(toUnits(ONE)), getRef());
 
             expectMsg(new Failure("Insufficient balance to withdraw " + ONE + " from account " + accountInfo));
         }};
@@ -82,9 +83,9 @@ class AccountTest {
             AccountInfo accountInfo = new AccountInfo(ACC_ID, ZERO);
             ActorRef account = getTestAccount(accountInfo);
 
-            account.tell(new Deposit(ONE), getRef());
+            account.tell(new Deposit(toUnits(ONE)), getRef());
 
-            expectMsg(new Success());
+            expectMsg(Success.INSTANCE);
 
             account.tell(new GetAccount(ACC_ID), getRef());
             expectMsg(new AccountInfo(1, ONE));
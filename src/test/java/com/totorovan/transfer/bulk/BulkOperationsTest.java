@@ -0,0 +1,155 @@
+package com.totorovan.transfer.bulk;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.testkit.javadsl.TestKit;
+import com.totorovan.transfer.account.Account.GetAccount;
+import com.totorovan.transfer.account.AccountFactory;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.read.ReadMetrics;
+import com.totorovan.transfer.reconcile.ScanDto;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkOperationsTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(1);
+    private ActorSystem system;
+    private Materializer materializer;
+
+    @BeforeEach
+    void setup() {
+        system = ActorSystem.create();
+        materializer = ActorMaterializer.create(system);
+    }
+
+    @AfterEach
+    void shutdown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    private ActorRef createAccounts(TestKit testKit, long... balances) {
+        ActorRef accountService = system.actorOf(AccountService.props(new AccountFactory(), TIMEOUT));
+        for (int id = 0; id < balances.length; id++) {
+            accountService.tell(new AccountInfo(id, BigDecimal.valueOf(balances[id])), testKit.getRef());
+            testKit.expectMsgClass(Success.class);
+        }
+        return accountService;
+    }
+
+    private static BulkProgressDto awaitDone(BulkProgress progress) {
+        for (int i = 0; i < 100 && progress.snapshot().getStatus() == BulkProgress.Status.RUNNING; i++) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return progress.snapshot();
+    }
+
+    @Test
+    void testInterestAndFeeAreAppliedToEveryAccount() {
+        new TestKit(system) {{
+            ActorRef accountService = createAccounts(this, 100, 5, 0);
+            BulkOperations operations = new BulkOperations(accountService, TIMEOUT, 2, 2, 1000);
+
+            BulkProgress interest = operations.start(BulkRule.of(new BulkRuleDto(BulkRule.Type.INTEREST,
+                    BigDecimal.valueOf(1.5), null, null)), materializer).toCompletableFuture().join();
+            assertEquals(BulkProgress.Status.DONE, awaitDone(interest).getStatus(), interest.snapshot().toString());
+            assertEquals(3, interest.snapshot().getApplied());
+
+            BulkProgress fee = operations.start(BulkRule.of(new BulkRuleDto(BulkRule.Type.FEE, null, BigDecimal.TEN,
+                    BulkRule.Overdraft.SKIP)), materializer).toCompletableFuture().join();
+            BulkProgressDto done = awaitDone(fee);
+            assertEquals(3, done.getProcessed());
+            assertEquals(1, done.getApplied());
+            assertEquals(2, done.getSkipped());
+
+            accountService.tell(new GetAccount(0L), getRef());
+            expectMsg(new AccountInfo(0L, new BigDecimal("91.5")));
+            accountService.tell(new GetAccount(1L), getRef());
+            expectMsg(new AccountInfo(1L, new BigDecimal("5.075")));
+
+            // interest and fees change the issued money, so the balances still reconcile
+            accountService.tell(AccountService.Reconcile.INSTANCE, getRef());
+            assertEquals(0, BigDecimal.ZERO.compareTo(expectMsgClass(ScanDto.class).getDrift()));
+        }};
+    }
+
+    @Test
+    void testAppliedRuleIsNotHiddenByCachedReads() {
+        new TestKit(system) {{
+            ActorRef accountService = system.actorOf(AccountService.props(new AccountFactory(), TIMEOUT,
+                    Duration.ofMinutes(1), new ReadMetrics()));
+            accountService.tell(new AccountInfo(0L, BigDecimal.TEN), getRef());
+            expectMsgClass(Success.class);
+            accountService.tell(new GetAccount(0L), getRef());
+            expectMsg(new AccountInfo(0L, BigDecimal.TEN));
+
+            BulkOperations operations = new BulkOperations(accountService, TIMEOUT, 10, 1, 1000);
+            awaitDone(operations.start(BulkRule.of(new BulkRuleDto(BulkRule.Type.FEE, null, BigDecimal.ONE,
+                    BulkRule.Overdraft.SKIP)), materializer).toCompletableFuture().join());
+            accountService.tell(new GetAccount(0L), getRef());
+            expectMsg(new AccountInfo(0L, new BigDecimal("9")));
+        }};
+    }
+
+    @Test
+    void testFinishedRunsAreForgottenAfterRetention() throws InterruptedException {
+        ActorRef accountService = system.actorOf(AccountService.props(new AccountFactory(), TIMEOUT));
+        BulkOperations operations = new BulkOperations(accountService, TIMEOUT, 10, 1, 1000, Duration.ofMillis(1));
+        BulkRule freeze = BulkRule.of(new BulkRuleDto(BulkRule.Type.FREEZE, null, null, null));
+        BulkProgress first = operations.start(freeze, materializer).toCompletableFuture().join();
+        assertSame(first, operations.get(first.getId()));
+        Thread.sleep(10);
+        BulkProgress second = operations.start(freeze, materializer).toCompletableFuture().join();
+        assertNull(operations.get(first.getId()));
+        assertSame(second, operations.get(second.getId()));
+    }
+
+    @Test
+    void testFrozenAccountRefusesTransfersUntilUnfrozen() {
+        new TestKit(system) {{
+            ActorRef accountService = createAccounts(this, 10, 10);
+            BulkOperations operations = new BulkOperations(accountService, TIMEOUT, 10, 1, 1000);
+            awaitDone(operations.start(BulkRule.of(new BulkRuleDto(BulkRule.Type.FREEZE, null, null, null)), materializer)
+                    .toCompletableFuture().join());
+
+            accountService.tell(new TransactionInfo(1L, 0L, 1L, BigDecimal.ONE, NEW), getRef());
+            expectMsg(new Failure("Account 0 is frozen"));
+
+            awaitDone(operations.start(BulkRule.of(new BulkRuleDto(BulkRule.Type.UNFREEZE, null, null, null)), materializer)
+                    .toCompletableFuture().join());
+            accountService.tell(new TransactionInfo(2L, 0L, 1L, BigDecimal.ONE, NEW), getRef());
+            expectMsgClass(Success.class);
+        }};
+    }
+
+    @Test
+    void testThroughputIsCapped() {
+        new TestKit(system) {{
+            ActorRef accountService = createAccounts(this, new long[40]);
+            BulkOperations operations = new BulkOperations(accountService, TIMEOUT, 10, 4, 20);
+
+            BulkProgressDto done = awaitDone(operations.start(BulkRule.of(new BulkRuleDto(BulkRule.Type.FEE, null,
+                    BigDecimal.ONE, BulkRule.Overdraft.PARTIAL)), materializer).toCompletableFuture().join());
+            assertEquals(40, done.getApplied());
+            // a burst of 20 accounts, then 20 accounts per second
+            assertTrue(done.getMillis() >= 900, done.toString());
+        }};
+    }
+}
@@ -0,0 +1,136 @@
+package com.totorovan.transfer.capture;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.ConnectHttp;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.ServerBinding;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.MediaTypes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Route;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.testkit.javadsl.TestKit;
+import com.totorovan.transfer.account.AccountFactory;
+import com.totorovan.transfer.account.AccountRoutes;
+import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.account.BalanceIndex;
+import com.totorovan.transfer.engine.ActorTransferEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrafficReplayTest {
+    private ActorSystem system;
+    private Materializer materializer;
+    private Path file;
+
+    @BeforeEach
+    void setup() throws IOException {
+        system = ActorSystem.create();
+        materializer = ActorMaterializer.create(system);
+        file = Files.createTempFile("capture", ".bin");
+    }
+
+    @AfterEach
+    void shutdown() throws IOException {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+        Files.delete(file);
+    }
+
+    private Route accountRoutes() {
+        Duration timeout = Duration.ofSeconds(1);
+        return new AccountRoutes(new ActorTransferEngine(system.actorOf(AccountService.props(new AccountFactory(), timeout)), timeout),
+                BalanceIndex.get(system)).routes();
+    }
+
+    private String bind(Route route) {
+        ServerBinding binding = Http.get(system).bindAndHandle(route.flow(system, materializer), ConnectHttp.toHost("localhost", 0),
+                materializer).toCompletableFuture().join();
+        return "http://localhost:" + binding.localAddress().getPort();
+    }
+
+    private int send(HttpRequest request) {
+        return Http.get(system).singleRequest(request).toCompletableFuture()
+                .thenApply(response -> {
+                    response.discardEntityBytes(materializer);
+                    return response.status().intValue();
+                }).join();
+    }
+
+    private static CapturedRequest request(String method, String uri, String body) {
+        return new CapturedRequest(0L, method, uri, "application/json", Collections.emptyList(), body.getBytes(StandardCharsets.UTF_8), 200);
+    }
+
+    @Test
+    void testCapturedRequestsReplayWithRecordedStatuses() throws IOException {
+        TrafficCapture capture = TrafficCapture.open(file);
+        String captured = bind(capture.capture(accountRoutes()));
+        send(HttpRequest.POST(captured + "/accounts").withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"id\": 1, \"balance\": 10}"));
+        send(HttpRequest.GET(captured + "/accounts/1"));
+        send(HttpRequest.GET(captured + "/accounts/2"));
+        send(HttpRequest.DELETE(captured + "/accounts/1"));
+        capture.close();
+
+        List<CapturedRequest> requests = TrafficCapture.read(file);
+        assertEquals(Arrays.asList("POST /accounts 201", "GET /accounts/1 200", "GET /accounts/2 404", "DELETE /accounts/1 200"),
+                requests.stream().map(request -> request.getMethod() + " " + request.getUri() + " " + request.getStatus())
+                        .collect(Collectors.toList()));
+        assertEquals("{\"id\": 1, \"balance\": 10}", new String(requests.get(0).getBody(), StandardCharsets.UTF_8));
+
+        ReplayReport replayed;
+        try (TrafficCapture.Reader reader = TrafficCapture.reader(file)) {
+            replayed = new TrafficReplay(system, materializer, bind(accountRoutes()), 20).replay(reader)
+                    .toCompletableFuture().join();
+        }
+        assertEquals(4, replayed.getRequests());
+        assertEquals(0, replayed.getFailed());
+        assertEquals(0, replayed.divergent(), replayed.render());
+
+        String existing = bind(accountRoutes());
+        send(HttpRequest.POST(existing + "/accounts").withEntity(MediaTypes.APPLICATION_JSON.toContentType(), "{\"id\": 1, \"balance\": 10}"));
+        ReplayReport diverged = new TrafficReplay(system, materializer, existing, 20).replay(requests).toCompletableFuture().join();
+        assertEquals(Collections.singletonMap("201 -> 400", 1L), diverged.getDivergences());
+    }
+
+    @Test
+    void testFailedRequestsAreCapturedWithTheirStatus() throws IOException {
+        TrafficCapture capture = TrafficCapture.open(file);
+        String captured = bind(capture.capture(new AllDirectives() {
+            Route failing() {
+                return path("boom", () -> extractRequest(request -> {
+                    throw new IllegalStateException("boom");
+                }));
+            }
+        }.failing()));
+        assertEquals(500, send(HttpRequest.GET(captured + "/boom")));
+        capture.close();
+
+        List<CapturedRequest> requests = TrafficCapture.read(file);
+        assertEquals(1, requests.size());
+        assertEquals(500, requests.get(0).getStatus());
+    }
+
+    @Test
+    void testRequestsAreOrderedByTheirAccountsAndTransactions() {
+        assertEquals(Arrays.asList("transactions:7", "accounts:1", "accounts:2"), TrafficReplay.orderingKeys(
+                request("POST", "/transactions", "{\"id\": 7, \"srcAccountId\": 1, \"targetAccountId\": 2, \"amount\": 1}")));
+        assertEquals(Arrays.asList("accounts:1", "accounts:2", "accounts:3"), TrafficReplay.orderingKeys(
+                request("POST", "/transactions/multi-leg", "{\"srcAccountId\": 1, \"legs\": [{\"targetAccountId\": 2}, {\"targetAccountId\": 3}]}")));
+        assertEquals(Collections.singletonList("accounts:5"), TrafficReplay.orderingKeys(request("GET", "/accounts/5/transactions?limit=2", "")));
+        assertEquals(Collections.emptyList(), TrafficReplay.orderingKeys(request("GET", "/events", "")));
+    }
+}
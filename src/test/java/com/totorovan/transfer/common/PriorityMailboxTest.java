@@ -0,0 +1,131 @@
+package com.totorovan.transfer.common;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import com.totorovan.transfer.common.Messages.Sheddable;
+import com.totorovan.transfer.common.Messages.Urgent;
+import com.typesafe.config.ConfigFactory;
+import lombok.Data;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class PriorityMailboxTest {
+    private static ActorSystem system;
+
+    @BeforeAll
+    static void setup() {
+        system = ActorSystem.create("mailbox", ConfigFactory.parseString(
+                "burst-mailbox { mailbox-type = \"com.totorovan.transfer.common.PriorityMailbox\", urgent-burst = 2 }\n"
+                        + "bounded-mailbox { mailbox-type = \"com.totorovan.transfer.common.PriorityMailbox\", capacity = 1 }")
+                .withFallback(ConfigFactory.load()));
+    }
+
+    @AfterAll
+    static void shutdown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @Test
+    void testUrgentMessagesGoFirstButNeverStarveTheOthers() {
+        new TestKit(system) {{
+            CountDownLatch blocked = new CountDownLatch(1);
+            ActorRef actor = system.actorOf(Props.create(Recorder.class, () -> new Recorder(blocked, getRef()))
+                    .withMailbox("burst-mailbox"));
+            actor.tell("block", getRef());
+            expectMsg("block");
+            actor.tell("n1", getRef());
+            actor.tell("n2", getRef());
+            actor.tell(new Read("u1"), getRef());
+            actor.tell(new Read("u2"), getRef());
+            actor.tell(new Read("u3"), getRef());
+            blocked.countDown();
+
+            expectMsg("u1");
+            expectMsg("u2");
+            expectMsg("n1");
+            expectMsg("u3");
+            expectMsg("n2");
+        }};
+    }
+
+    @Test
+    void testNewRequestsBeyondTheCapacityAreDroppedButOtherMessagesAreKept() {
+        new TestKit(system) {{
+            CountDownLatch blocked = new CountDownLatch(1);
+            ActorRef actor = system.actorOf(Props.create(Recorder.class, () -> new Recorder(blocked, getRef()))
+                    .withMailbox("bounded-mailbox"));
+            actor.tell("block", getRef());
+            expectMsg("block");
+            actor.tell(new Request("r1"), getRef());
+            actor.tell(new Request("r2"), getRef());
+            actor.tell("n1", getRef());
+            actor.tell(new Read("u1"), getRef());
+            blocked.countDown();
+
+            expectMsg("u1");
+            expectMsg("r1");
+            expectMsg("n1");
+            expectNoMessage();
+        }};
+    }
+
+    @Test
+    void testAccountServiceGetsThePriorityMailboxFromTheDeploymentConfig() {
+        new TestKit(system) {{
+            CountDownLatch blocked = new CountDownLatch(1);
+            ActorRef actor = system.actorOf(Props.create(Recorder.class, () -> new Recorder(blocked, getRef())), "accountService");
+            actor.tell("block", getRef());
+            expectMsg("block");
+            actor.tell("n1", getRef());
+            actor.tell(new Read("u1"), getRef());
+            blocked.countDown();
+
+            expectMsg("u1");
+            expectMsg("n1");
+        }};
+    }
+
+    @Data
+    private static class Read implements Urgent {
+        private final String name;
+    }
+
+    @Data
+    private static class Request implements Sheddable {
+        private final String name;
+    }
+
+    /**
+     * Echoes the names of the messages, blocking after the first one until the latch is released.
+     */
+    private static class Recorder extends AbstractActor {
+        private final CountDownLatch blocked;
+        private final ActorRef probe;
+
+        Recorder(CountDownLatch blocked, ActorRef probe) {
+            this.blocked = blocked;
+            this.probe = probe;
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .matchEquals("block", block -> {
+                        probe.tell(block, self());
+                        blocked.await(5, TimeUnit.SECONDS);
+                    })
+                    .match(String.class, name -> probe.tell(name, self()))
+                    .match(Read.class, read -> probe.tell(read.getName(), self()))
+                    .match(Request.class, request -> probe.tell(request.getName(), self()))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.totorovan.transfer.common.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongLongHashMapTest {
+
+    @Test
+    void testPutGetAndRemove() {
+        LongLongHashMap map = new LongLongHashMap();
+
+        assertTrue(map.putIfAbsent(0L, 10L));
+        assertFalse(map.putIfAbsent(0L, 20L));
+        assertEquals(10L, map.put(0L, 30L, -1L));
+        assertEquals(-1L, map.put(-5L, 50L, -1L));
+
+        assertEquals(30L, map.get(0L, -1L));
+        assertEquals(50L, map.get(-5L, -1L));
+        assertEquals(-1L, map.get(7L, -1L));
+        assertEquals(2, map.size());
+
+        assertTrue(map.remove(0L));
+        assertFalse(map.remove(0L));
+        assertFalse(map.containsKey(0L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void testBehavesLikeHashMapUnderRandomChurn() {
+        LongLongHashMap map = new LongLongHashMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                long value = random.nextLong();
+                Long previous = expected.put(key, value);
+                assertEquals(previous == null ? Long.MIN_VALUE : previous, map.put(key, value, Long.MIN_VALUE));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals((long) value, map.get(key, Long.MIN_VALUE)));
+        map.forEach((key, value) -> assertEquals(expected.get(key), Long.valueOf(value)));
+    }
+}
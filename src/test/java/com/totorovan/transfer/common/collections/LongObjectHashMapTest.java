@@ -0,0 +1,57 @@
+package com.totorovan.transfer.common.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongObjectHashMapTest {
+
+    @Test
+    void testPutGetReplaceAndRemove() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+
+        assertTrue(map.putIfAbsent(0L, "a"));
+        assertFalse(map.putIfAbsent(0L, "b"));
+        assertEquals("a", map.put(0L, "c"));
+        assertNull(map.put(-5L, "d"));
+        assertTrue(map.replace(-5L, "e"));
+        assertFalse(map.replace(7L, "f"));
+
+        assertEquals("c", map.get(0L));
+        assertEquals("e", map.get(-5L));
+        assertNull(map.get(7L));
+        assertEquals("g", map.getOrDefault(7L, "g"));
+        assertEquals(2, map.size());
+
+        assertEquals("c", map.remove(0L));
+        assertNull(map.remove(0L));
+        assertFalse(map.containsKey(0L));
+        assertEquals(1, map.size());
+        assertThrows(NullPointerException.class, () -> map.put(1L, null));
+    }
+
+    @Test
+    void testBehavesLikeHashMapUnderRandomChurn() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        map.forEach((key, value) -> assertEquals(expected.get(key), value));
+    }
+}
@@ -0,0 +1,58 @@
+package com.totorovan.transfer.common.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongSortedSetTest {
+
+    @Test
+    void testAddRemoveAndPage() {
+        LongSortedSet set = new LongSortedSet();
+
+        assertArrayEquals(new long[0], set.first(10));
+        assertTrue(set.add(5L));
+        assertTrue(set.add(-3L));
+        assertTrue(set.add(9L));
+        assertFalse(set.add(5L));
+        assertEquals(3, set.size());
+
+        assertArrayEquals(new long[]{-3L, 5L}, set.first(2));
+        assertArrayEquals(new long[]{9L}, set.higher(5L, 2));
+        assertArrayEquals(new long[]{5L, 9L}, set.higher(0L, 10));
+        assertArrayEquals(new long[0], set.higher(9L, 10));
+
+        assertTrue(set.remove(5L));
+        assertFalse(set.remove(5L));
+        assertFalse(set.contains(5L));
+        assertArrayEquals(new long[]{-3L, 9L}, set.first(10));
+    }
+
+    @Test
+    void testBehavesLikeTreeSetUnderRandomChurn() {
+        LongSortedSet set = new LongSortedSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            long value = random.nextInt(20_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        long[] values = set.first(Integer.MAX_VALUE);
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), values);
+        for (int i = 0; i < 100; i++) {
+            long after = random.nextInt(20_000);
+            assertArrayEquals(expected.tailSet(after, false).stream().limit(50).mapToLong(Long::longValue).toArray(),
+                    set.higher(after, 50));
+        }
+    }
+}
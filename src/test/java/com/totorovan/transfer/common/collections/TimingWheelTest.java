@@ -0,0 +1,86 @@
+package com.totorovan.transfer.common.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    @Test
+    void testReleasesOnceDueInTickBatches() {
+        TimingWheel wheel = new TimingWheel(10, 4, 1_005);
+        List<Long> released = new ArrayList<>();
+
+        assertFalse(wheel.add(1L, 1_000));
+        assertTrue(wheel.add(2L, 1_011));
+        assertTrue(wheel.add(3L, 1_019));
+        assertTrue(wheel.add(4L, 1_200));
+        assertEquals(3, wheel.size());
+
+        wheel.advance(1_019, released::add);
+        assertTrue(released.isEmpty());
+        wheel.advance(1_020, released::add);
+        assertEquals(Arrays.asList(2L, 3L), released);
+
+        wheel.advance(1_199, released::add);
+        assertEquals(2, released.size());
+        wheel.advance(1_200, released::add);
+        assertEquals(4L, (long) released.get(2));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testNeverReleasesEarlyOrLaterThanOneTickAcrossLevels() {
+        long tick = 10;
+        TimingWheel wheel = new TimingWheel(tick, 8, 0);
+        Map<Long, Long> deadlines = new HashMap<>();
+        Random random = new Random(42);
+        long now = 0;
+        long nextId = 0;
+
+        while (now < 2_000_000) {
+            for (int i = random.nextInt(5); i > 0; i--) {
+                long deadline = now + random.nextInt(100_000);
+                long id = nextId++;
+                if (wheel.add(id, deadline)) {
+                    deadlines.put(id, deadline);
+                } else {
+                    assertTrue(deadline <= now);
+                }
+            }
+            long previous = now;
+            now += 1 + random.nextInt(40);
+            long advancedTo = now;
+            wheel.advance(now, id -> {
+                Long deadline = deadlines.remove(id);
+                assertNotNull(deadline, "released twice");
+                assertTrue(deadline <= advancedTo, "released early");
+                assertTrue(deadline > previous - previous % tick, "released late");
+            });
+        }
+
+        assertEquals(deadlines.size(), wheel.size());
+        long end = now;
+        deadlines.values().forEach(deadline -> assertTrue(deadline > end - end % tick));
+    }
+
+    @Test
+    void testSaturatesDeadlinesNearTheEndOfTime() {
+        TimingWheel wheel = new TimingWheel(10, 4, 1_000);
+        List<Long> released = new ArrayList<>();
+
+        assertTrue(wheel.add(1L, Long.MAX_VALUE));
+        assertTrue(wheel.add(2L, Long.MAX_VALUE / 2));
+        wheel.advance(1_000_000, released::add);
+
+        assertTrue(released.isEmpty());
+        assertEquals(2, wheel.size());
+    }
+}
@@ -0,0 +1,168 @@
+package com.totorovan.transfer.engine;
+
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.account.BalanceIndex;
+import com.totorovan.transfer.account.BalanceIndex.Entry;
+import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.event.LedgerEvents;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo.Leg;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+import static java.math.BigDecimal.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerTransferEngineTest {
+    private static final long ACC_ID_1 = 1L;
+    private static final long ACC_ID_2 = 2L;
+    private static ActorSystem system;
+
+    @BeforeAll
+    static void setup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterAll
+    static void shutdown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    private static Object await(CompletionStage<Object> response) {
+        return response.toCompletableFuture().join();
+    }
+
+    private LedgerTransferEngine getTestEngine() {
+        return new LedgerTransferEngine(4, LedgerEvents.get(system));
+    }
+
+    @Test
+    void testCreateGetAndDeleteAccount() {
+        LedgerTransferEngine engine = getTestEngine();
+
+        assertEquals(Success.INSTANCE, await(engine.createAccount(new AccountInfo(ACC_ID_1, new BigDecimal("10.50")))));
+        assertEquals(new Failure("Account 1 already exists"), await(engine.createAccount(new AccountInfo(ACC_ID_1, ONE))));
+        assertEquals(new AccountInfo(ACC_ID_1, new BigDecimal("10.5")), await(engine.getAccount(ACC_ID_1)));
+
+        assertEquals(Success.INSTANCE, await(engine.deleteAccount(ACC_ID_1)));
+        assertEquals(new Failure("Account 1 not found"), await(engine.deleteAccount(ACC_ID_1)));
+        assertEquals(new Failure("Account 1 not found"), await(engine.getAccount(ACC_ID_1)));
+    }
+
+    @Test
+    void testTransferMovesMoneyOrFailsWithoutSideEffects() {
+        LedgerTransferEngine engine = getTestEngine();
+        engine.createAccount(new AccountInfo(ACC_ID_1, ONE));
+        engine.createAccount(new AccountInfo(ACC_ID_2, ZERO));
+
+        assertEquals(Success.INSTANCE, await(engine.transfer(new TransactionInfo(1L, ACC_ID_1, ACC_ID_2, ONE, NEW))));
+        assertEquals(new Failure("Insufficient balance to withdraw 1 from account AccountInfo(id=1, balance=0)"),
+                await(engine.transfer(new TransactionInfo(2L, ACC_ID_1, ACC_ID_2, ONE, NEW))));
+        assertEquals(new Failure("Account 3 not found"), await(engine.transfer(new TransactionInfo(3L, ACC_ID_2, 3L, ONE, NEW))));
+        assertTrue(await(engine.transfer(new TransactionInfo(4L, ACC_ID_2, ACC_ID_1, new BigDecimal("0.00001"), NEW))) instanceof Failure);
+
+        assertEquals(new AccountInfo(ACC_ID_1, ZERO), await(engine.getAccount(ACC_ID_1)));
+        assertEquals(new AccountInfo(ACC_ID_2, ONE), await(engine.getAccount(ACC_ID_2)));
+    }
+
+    @Test
+    void testIndexesFollowAccounts() {
+        BalanceIndex index = new BalanceIndex();
+        LedgerTransferEngine engine = new LedgerTransferEngine(4, LedgerEvents.get(system), index);
+        engine.createAccount(new AccountInfo(ACC_ID_1, TEN));
+        engine.createAccount(new AccountInfo(ACC_ID_2, ONE));
+        engine.createAccount(new AccountInfo(3L, ZERO));
+
+        await(engine.transfer(new TransactionInfo(1L, ACC_ID_1, ACC_ID_2, new BigDecimal("9.5"), NEW)));
+        assertEquals(Arrays.asList(new Entry(105_000L, ACC_ID_2), new Entry(5_000L, ACC_ID_1)), index.top(2));
+        assertEquals(Arrays.asList(new Entry(0L, 3L), new Entry(5_000L, ACC_ID_1)), index.range(0L, 10_000L, null, 10));
+        assertEquals(Arrays.asList(new Entry(5_000L, ACC_ID_1)), index.range(0L, 10_000L, new Entry(0L, 3L), 10));
+
+        await(engine.deleteAccount(ACC_ID_2));
+        assertEquals(Arrays.asList(new Entry(5_000L, ACC_ID_1), new Entry(0L, 3L)), index.top(10));
+        assertArrayEquals(new long[]{ACC_ID_1, 3L}, (long[]) await(engine.getAccountIds(null, 10)));
+        assertArrayEquals(new long[]{3L}, (long[]) await(engine.getAccountIds(ACC_ID_1, 10)));
+    }
+
+    @Test
+    void testTransferExpectingOtherSrcVersionFails() {
+        LedgerTransferEngine engine = getTestEngine();
+        engine.createAccount(new AccountInfo(ACC_ID_1, TEN));
+        engine.createAccount(new AccountInfo(ACC_ID_2, ZERO));
+        long incarnation = ((AccountInfo) await(engine.getAccount(ACC_ID_1))).getIncarnation();
+
+        assertEquals(new Failure("Account 1 is at version 1, expected version 2"),
+                await(engine.transfer(new TransactionInfo(1L, ACC_ID_1, ACC_ID_2, ONE, NEW, 0L, 2L, incarnation))));
+        assertEquals(new Failure("Account 1 was recreated since version 1"),
+                await(engine.transfer(new TransactionInfo(1L, ACC_ID_1, ACC_ID_2, ONE, NEW, 0L, 1L, incarnation - 1))));
+        assertEquals(Success.INSTANCE, await(engine.transfer(new TransactionInfo(2L, ACC_ID_1, ACC_ID_2, ONE, NEW, 0L, 1L, incarnation))));
+        assertEquals(2L, ((AccountInfo) await(engine.getAccount(ACC_ID_1))).getVersion());
+        assertEquals(2L, ((AccountInfo) await(engine.getAccount(ACC_ID_2))).getVersion());
+    }
+
+    @Test
+    void testMultiLegTransferIsAllOrNothing() {
+        LedgerTransferEngine engine = getTestEngine();
+        engine.createAccount(new AccountInfo(ACC_ID_1, TEN));
+        engine.createAccount(new AccountInfo(ACC_ID_2, ZERO));
+
+        assertEquals(new Failure("Account 3 not found"), await(engine.transfer(new MultiLegTransactionInfo(1L, ACC_ID_1,
+                Arrays.asList(new Leg(ACC_ID_2, ONE, NEW), new Leg(3L, ONE, NEW)), NEW))));
+        assertEquals(new Failure("Insufficient balance to withdraw 11 from account AccountInfo(id=1, balance=10)"),
+                await(engine.transfer(new MultiLegTransactionInfo(2L, ACC_ID_1,
+                        Arrays.asList(new Leg(ACC_ID_2, TEN, NEW), new Leg(ACC_ID_2, ONE, NEW)), NEW))));
+        assertEquals(new AccountInfo(ACC_ID_2, ZERO), await(engine.getAccount(ACC_ID_2)));
+
+        assertEquals(Success.INSTANCE, await(engine.transfer(new MultiLegTransactionInfo(3L, ACC_ID_1,
+                Arrays.asList(new Leg(ACC_ID_2, ONE, NEW), new Leg(ACC_ID_1, ONE, NEW), new Leg(ACC_ID_2, ONE, NEW)), NEW))));
+        assertEquals(new AccountInfo(ACC_ID_1, new BigDecimal("8")), await(engine.getAccount(ACC_ID_1)));
+        assertEquals(new AccountInfo(ACC_ID_2, new BigDecimal("2")), await(engine.getAccount(ACC_ID_2)));
+    }
+
+    @Test
+    void testConcurrentTransfersConserveMoney() throws InterruptedException {
+        LedgerTransferEngine engine = getTestEngine();
+        int accounts = 16;
+        for (long id = 0; id < accounts; id++) {
+            engine.createAccount(new AccountInfo(id, TEN));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            int offset = thread;
+            executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    long src = (i + offset) % accounts;
+                    long target = (i * 7 + offset * 3) % accounts;
+                    engine.transfer(new TransactionInfo(i, src, target, ONE, NEW));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        BigDecimal total = ZERO;
+        for (long id = 0; id < accounts; id++) {
+            AccountInfo accountInfo = (AccountInfo) await(engine.getAccount(id));
+            assertTrue(accountInfo.getBalance().signum() >= 0);
+            total = total.add(accountInfo.getBalance());
+        }
+        assertEquals(TEN.multiply(BigDecimal.valueOf(accounts)), total);
+    }
+}
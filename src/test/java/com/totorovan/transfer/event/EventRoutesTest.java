@@ -0,0 +1,93 @@
+package com.totorovan.transfer.event;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.http.javadsl.model.sse.ServerSentEvent;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.testkit.javadsl.TestKit;
+import com.totorovan.transfer.account.AccountFactory;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.account.BalanceChanged;
+import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.transaction.TransactionFactory;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import com.totorovan.transfer.transaction.TransactionService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+import static java.math.BigDecimal.ONE;
+import static java.math.BigDecimal.ZERO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventRoutesTest {
+    private static ActorSystem system;
+    private static Materializer materializer;
+
+    @BeforeAll
+    static void setup() {
+        system = ActorSystem.create();
+        materializer = ActorMaterializer.create(system);
+    }
+
+    @AfterAll
+    static void shutdown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @Test
+    void testAccountFeedReceivesOnlyEventsOfThatAccount() throws Exception {
+        CompletionStage<List<ServerSentEvent>> events = new EventRoutes(system, 16).source(1L)
+                .take(2)
+                .runWith(Sink.seq(), materializer);
+
+        LedgerEvents ledgerEvents = LedgerEvents.get(system);
+        ledgerEvents.publish(new BalanceChanged(2L, 1L, 1L, BalanceChanged.DEPOSIT), 2L);
+        ledgerEvents.publish(new BalanceChanged(1L, 1L, 1L, BalanceChanged.DEPOSIT), 1L);
+        ledgerEvents.publish(new BalanceChanged(3L, 1L, 1L, BalanceChanged.DEPOSIT), 3L, 1L);
+
+        List<String> data = events.toCompletableFuture().get(3, TimeUnit.SECONDS).stream()
+                .map(ServerSentEvent::getData)
+                .collect(Collectors.toList());
+        assertEquals(2, data.size());
+        assertTrue(data.get(0).contains("\"accountId\":1"));
+        assertTrue(data.get(1).contains("\"accountId\":3"));
+    }
+
+    @Test
+    void testFirehoseReceivesBalanceAndTransactionStatusChanges() throws Exception {
+        new TestKit(system) {{
+            ActorRef accountService = system.actorOf(AccountService.props(new AccountFactory()));
+            ActorRef transactionService = system.actorOf(TransactionService.props(accountService, new TransactionFactory()));
+            accountService.tell(new AccountInfo(1L, ONE), getRef());
+            expectMsgClass(Success.class);
+            accountService.tell(new AccountInfo(2L, ZERO), getRef());
+            expectMsgClass(Success.class);
+
+            CompletionStage<List<ServerSentEvent>> events = new EventRoutes(system, 16).source(LedgerEvents.FIREHOSE)
+                    .take(3)
+                    .runWith(Sink.seq(), materializer);
+
+            transactionService.tell(new TransactionInfo(1L, 1L, 2L, ONE, NEW), getRef());
+            expectMsgClass(TransactionInfo.class);
+
+            List<String> eventTypes = events.toCompletableFuture().get(3, TimeUnit.SECONDS).stream()
+                    .map(event -> event.getEventType().orElse(""))
+                    .collect(Collectors.toList());
+            assertEquals(3, eventTypes.size());
+            assertEquals(2, eventTypes.stream().filter("BalanceChanged"::equals).count());
+            assertTrue(eventTypes.contains("TransactionStatusChanged"));
+        }};
+    }
+}
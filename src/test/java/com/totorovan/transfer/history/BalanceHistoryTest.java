@@ -0,0 +1,65 @@
+package com.totorovan.transfer.history;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceHistoryTest {
+
+    @Test
+    void testBalanceAtReplaysCheckpointsUpToTimestamp() {
+        BalanceHistory history = new BalanceHistory();
+        assertNull(history.balanceAt(100L));
+
+        history.append(100L, 50L);
+        history.append(110L, -20L);
+        history.append(110L, 30L);
+        // the clock went back, recorded at the last timestamp
+        history.append(105L, 40L);
+
+        assertNull(history.balanceAt(99L));
+        assertEquals(Long.valueOf(50L), history.balanceAt(100L));
+        assertEquals(Long.valueOf(50L), history.balanceAt(109L));
+        assertEquals(Long.valueOf(40L), history.balanceAt(110L));
+        assertEquals(Long.valueOf(40L), history.balanceAt(Long.MAX_VALUE));
+        assertEquals(4L, history.checkpoints());
+        // the first checkpoint and the smallest segment
+        assertEquals(8 + 8 + 4 + 8 + 8 + 32, history.memoryBytes());
+    }
+
+    @Test
+    void testSpilledSegmentsAnswerLikeSegmentsInMemory() throws IOException {
+        Path directory = Files.createTempDirectory("history");
+        Path file = directory.resolve("history.spill");
+        Random random = new Random(42);
+        long[] balances = new long[100_000];
+        try (HistorySpill spill = HistorySpill.open(file, 2)) {
+            BalanceHistory history = new BalanceHistory(spill);
+            BalanceHistory inMemory = new BalanceHistory();
+            long balance = 0;
+            for (int i = 0; i < balances.length; i++) {
+                balance += random.nextInt(2_000_000) - 1_000_000;
+                balances[i] = balance;
+                history.append(i * 10L, balance);
+                inMemory.append(i * 10L, balance);
+            }
+
+            assertTrue(spill.size() > 0);
+            assertTrue(history.memoryBytes() < inMemory.memoryBytes() / 10);
+            for (int i = 0; i < 1_000; i++) {
+                int checkpoint = random.nextInt(balances.length);
+                long timestamp = checkpoint * 10L + random.nextInt(10);
+                assertEquals(Long.valueOf(balances[checkpoint]), history.balanceAt(timestamp));
+                assertEquals(Long.valueOf(balances[checkpoint]), inMemory.balanceAt(timestamp));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.totorovan.transfer.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdAllocatorTest {
+
+    @Test
+    void testIdsAreUniqueAndEncodeTheirShard() {
+        IdAllocator allocator = IdAllocator.inMemory(8, 16);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<Void>> threads = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            threads.add(CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    int shard = i % 8;
+                    long id = allocator.next(shard);
+                    assertTrue(id > 0);
+                    assertEquals(shard, IdAllocator.shardOf(id, 8));
+                    assertTrue(ids.add(id), "id " + id + " handed out twice");
+                }
+            }));
+        }
+        CompletableFuture.allOf(threads.toArray(new CompletableFuture[0])).join();
+        assertEquals(40_000, ids.size());
+    }
+
+    @Test
+    void testRestartNeverHandsOutAnIdAgain() throws IOException {
+        Path path = Files.createTempDirectory("ids").resolve("ids.properties");
+        IdAllocator allocator = IdAllocator.open(path, 4, 8, 2);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(allocator.next());
+        }
+
+        // the first allocator is abandoned as if the process crashed
+        IdAllocator restarted = IdAllocator.open(path, 4, 8, 2);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(ids.add(restarted.next()));
+        }
+    }
+
+    @Test
+    void testStartsAboveTheIdsTakenWithoutIt() {
+        IdAllocator allocator = IdAllocator.inMemory(4, 8);
+        allocator.startAbove(1_000);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(allocator.next() > 1_000);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.totorovan.transfer.id;
+
+import com.totorovan.transfer.id.IdAssignment.Assigned;
+import com.totorovan.transfer.id.IdAssignment.Status;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdAssignmentTest {
+
+    @Test
+    void testKeyIsInProgressUntilCreatedAndDroppedWhenFailed() {
+        IdAssignment ids = new IdAssignment(IdAllocator.inMemory(1, 16));
+
+        Assigned first = ids.assign(7L, 1_000);
+        assertEquals(Status.FRESH, first.getStatus());
+        assertEquals(new Assigned(first.getId(), Status.IN_PROGRESS), ids.assign(7L, 1_000));
+        ids.failed(7L, first.getId());
+
+        Assigned retry = ids.assign(7L, 1_000);
+        assertEquals(Status.FRESH, retry.getStatus());
+        assertNotEquals(first.getId(), retry.getId());
+        ids.created(7L, retry.getId());
+        assertEquals(new Assigned(retry.getId(), Status.CREATED), ids.assign(7L, 1_000));
+    }
+
+    @Test
+    void testKeysAreForgottenOnceExpiredOrOverTheLimit() {
+        IdAssignment ids = new IdAssignment(IdAllocator.inMemory(1, 16), 64, Duration.ofMillis(100));
+        long id = ids.assign(1L, 1_000).getId();
+        ids.created(1L, id);
+
+        assertEquals(Status.CREATED, ids.assign(1L, 1_099).getStatus());
+        assertEquals(Status.FRESH, ids.assign(1L, 1_100).getStatus());
+
+        // a stripe keeps a single key, the key of the same stripe replaces it
+        ids.created(65L, ids.assign(65L, 1_100).getId());
+        assertEquals(Status.FRESH, ids.assign(1L, 1_100).getStatus());
+    }
+
+    @Test
+    void testCreatedKeysSurviveRestart() throws IOException {
+        Path path = Files.createTempDirectory("keys").resolve("keys.log");
+        IdAllocator allocator = IdAllocator.inMemory(1, 16);
+        IdAssignment ids = IdAssignment.open(allocator, 1000, Duration.ofHours(1), path);
+        long created = ids.assign(1L).getId();
+        ids.created(1L, created);
+        ids.assign(2L);
+        ids.failed(3L, ids.assign(3L).getId());
+
+        IdAssignment restarted = IdAssignment.open(allocator, 1000, Duration.ofHours(1), path);
+        assertEquals(new Assigned(created, Status.CREATED), restarted.assign(1L));
+        assertEquals(Status.FRESH, restarted.assign(2L).getStatus());
+        assertEquals(Status.FRESH, restarted.assign(3L).getStatus());
+    }
+}
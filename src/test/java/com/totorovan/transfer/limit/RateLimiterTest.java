@@ -0,0 +1,60 @@
+package com.totorovan.transfer.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    @Test
+    void testBucketTakesBurstThenRefillsAtRate() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        long now = 1_000_000_000L;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.take(now));
+        }
+        assertEquals(100_000_000L, bucket.take(now));
+        assertEquals(40_000_000L, bucket.take(now + 60_000_000L));
+        assertEquals(0, bucket.take(now + 100_000_000L));
+        assertFalse(bucket.isFull(now + 399_999_999L));
+        assertTrue(bucket.isFull(now + 400_000_000L));
+    }
+
+    @Test
+    void testClientsAreLimitedPerRoute() {
+        RateLimiter limiter = new RateLimiter(RateLimiter.DEFAULT_KEY_HEADER, 1,
+                Collections.singletonMap("transactions", new RateLimiter.Rate(0.001, 1)));
+        assertEquals(0, limiter.acquire("/transactions", "a"));
+        assertNotEquals(0, limiter.acquire("/transactions/1", "a"));
+        assertEquals(0, limiter.acquire("/transactionsexport", "a"));
+        assertEquals(0, limiter.acquire("/accounts", "a"));
+        // beyond the tracked clients the others share one bucket
+        assertEquals(0, limiter.acquire("/transactions", "b"));
+        assertNotEquals(0, limiter.acquire("/transactions", "c"));
+    }
+
+    @Test
+    void testBucketRefusesBurstsTooLongToRefill() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1e-12, 2));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1e-9, Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(Double.NaN, 1));
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertEquals(0, bucket.take(Long.MAX_VALUE));
+        assertEquals(1_000_000_000L, bucket.take(Long.MAX_VALUE));
+        assertEquals(0, bucket.take(Long.MAX_VALUE + 1_000_000_000L));
+    }
+
+    @Test
+    void testNewKeysAreLimitedPerAddress() {
+        RateLimiter limiter = new RateLimiter(RateLimiter.DEFAULT_KEY_HEADER, 100, new RateLimiter.Rate(0.001, 2),
+                Collections.singletonMap("transactions", new RateLimiter.Rate(0.001, 1)));
+        assertEquals(0, limiter.acquire("/transactions", "a", "10.0.0.1"));
+        assertEquals(0, limiter.acquire("/transactions", "b", "10.0.0.1"));
+        assertNotEquals(0, limiter.acquire("/transactions", "c", "10.0.0.1"));
+        // a known key is not a new one, another address has its own new keys
+        assertNotEquals(0, limiter.acquire("/transactions", "a", "10.0.0.1"));
+        assertEquals(0, limiter.acquire("/transactions", "c", "10.0.0.2"));
+    }
+}
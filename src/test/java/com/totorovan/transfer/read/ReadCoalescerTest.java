@@ -0,0 +1,76 @@
+package com.totorovan.transfer.read;
+
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadCoalescerTest {
+    private static ActorSystem system;
+
+    @BeforeAll
+    static void setup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterAll
+    static void shutdown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    private static void complete(ReadCoalescer reads, ReadCoalescer.Flight flight, Object value, TestKit self) {
+        reads.read(flight, CompletableFuture.completedFuture(value), self.getRef());
+        reads.complete(self.expectMsgClass(ReadCoalescer.Completed.class), self.getRef());
+    }
+
+    @Test
+    void testConcurrentReadsShareOneRead() {
+        ReadMetrics metrics = new ReadMetrics();
+        ReadCoalescer reads = new ReadCoalescer(Duration.ZERO, metrics);
+        TestKit self = new TestKit(system);
+        TestKit first = new TestKit(system);
+        TestKit second = new TestKit(system);
+
+        ReadCoalescer.Flight flight = reads.join(1L, first.getRef(), self.getRef());
+        assertNotNull(flight);
+        assertNull(reads.join(1L, second.getRef(), self.getRef()));
+        complete(reads, flight, "account 1", self);
+        first.expectMsg("account 1");
+        second.expectMsg("account 1");
+
+        assertNotNull(reads.join(1L, first.getRef(), self.getRef()));
+        assertEquals(new ReadMetricsDto(3, 2, 1, 0, 1.0 / 3), metrics.snapshot());
+    }
+
+    @Test
+    void testCachedReadIsForgottenOnInvalidate() {
+        ReadCoalescer reads = new ReadCoalescer(Duration.ofMinutes(1), new ReadMetrics());
+        TestKit self = new TestKit(system);
+        TestKit waiter = new TestKit(system);
+
+        complete(reads, reads.join(1L, waiter.getRef(), self.getRef()), "version 1", self);
+        waiter.expectMsg("version 1");
+        assertNull(reads.join(1L, waiter.getRef(), self.getRef()));
+        waiter.expectMsg("version 1");
+
+        reads.invalidate(1L);
+        ReadCoalescer.Flight stale = reads.join(1L, waiter.getRef(), self.getRef());
+        reads.invalidate(1L);
+        // a read started before the change is not joined nor cached
+        ReadCoalescer.Flight fresh = reads.join(1L, waiter.getRef(), self.getRef());
+        assertNotNull(fresh);
+        complete(reads, stale, "version 1", self);
+        waiter.expectMsg("version 1");
+        complete(reads, fresh, "version 2", self);
+        waiter.expectMsg("version 2");
+        assertNull(reads.join(1L, waiter.getRef(), self.getRef()));
+        waiter.expectMsg("version 2");
+    }
+}
@@ -0,0 +1,98 @@
+package com.totorovan.transfer.reconcile;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import com.totorovan.transfer.account.AccountFactory;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.account.AccountService;
+import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.transaction.TransactionInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static akka.pattern.PatternsCS.ask;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FullScanTest {
+    private static final int ACCOUNTS = 20;
+    private ActorSystem system;
+
+    @BeforeEach
+    void setup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterEach
+    void shutdown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    private ActorRef createAccounts(TestKit testKit) {
+        ActorRef accountService = system.actorOf(AccountService.props(new AccountFactory()));
+        for (long id = 0; id < ACCOUNTS; id++) {
+            accountService.tell(new AccountInfo(id, BigDecimal.valueOf(100)), testKit.getRef());
+            testKit.expectMsgClass(Success.class);
+        }
+        return accountService;
+    }
+
+    @Test
+    void testScanWhileTransfersRunFindsNoDrift() {
+        new TestKit(system) {{
+            ActorRef accountService = createAccounts(this);
+            List<CompletableFuture<Object>> transfers = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                TransactionInfo transactionInfo = new TransactionInfo(i, i % ACCOUNTS, (i * 7 + 3) % ACCOUNTS, BigDecimal.ONE, NEW);
+                transfers.add(ask(accountService, transactionInfo, Duration.ofSeconds(5)).toCompletableFuture());
+                if (i % 100 == 50) {
+                    accountService.tell(AccountService.Reconcile.INSTANCE, getRef());
+                }
+            }
+            for (int i = 0; i < 5; i++) {
+                ScanDto scan = expectMsgClass(ScanDto.class);
+                assertEquals(0, scan.getMissingAccounts());
+                assertEquals(0, BigDecimal.ZERO.compareTo(scan.getDrift()), scan.toString());
+            }
+            CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).join();
+
+            accountService.tell(AccountService.Reconcile.INSTANCE, getRef());
+            ScanDto scan = expectMsgClass(ScanDto.class);
+            assertEquals(ACCOUNTS, scan.getAccounts());
+            assertEquals(BigDecimal.valueOf(100 * ACCOUNTS), scan.getScanned());
+            assertEquals(scan.getScanned(), scan.getRunningTotal());
+            ReconciliationDto report = MoneySupply.get(system).report();
+            assertEquals(BigDecimal.ZERO, report.getRunningDrift());
+            assertEquals(BigDecimal.ZERO, report.getInTransit());
+            assertEquals(BigDecimal.ZERO, report.getObligations());
+        }};
+    }
+
+    @Test
+    void testDeletedAccountTakesItsBalanceOutOfTheSupply() {
+        new TestKit(system) {{
+            ActorRef accountService = createAccounts(this);
+            accountService.tell(new AccountService.DeleteAccount(0L), getRef());
+            accountService.tell(AccountService.Reconcile.INSTANCE, getRef());
+            expectMsgClass(Success.class);
+
+            // the account stops before or after the cut, either way it is counted at the side of the cut it stopped on
+            ScanDto scan = expectMsgClass(ScanDto.class);
+            assertEquals(0, BigDecimal.ZERO.compareTo(scan.getDrift()), scan.toString());
+
+            accountService.tell(AccountService.Reconcile.INSTANCE, getRef());
+            scan = expectMsgClass(ScanDto.class);
+            assertEquals(BigDecimal.valueOf(100 * (ACCOUNTS - 1)), scan.getScanned());
+            assertEquals(0, BigDecimal.ZERO.compareTo(scan.getDrift()), scan.toString());
+        }};
+    }
+}
@@ -0,0 +1,124 @@
+package com.totorovan.transfer.store;
+
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.common.collections.LongObjectHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountStoreTest {
+    private Path directory;
+    private Path file;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("account-store");
+        file = directory.resolve("accounts.log");
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void testUpdatesAreCoalescedAndSurviveReopen() throws IOException {
+        try (AccountStore store = AccountStore.open(file, 100)) {
+            store.put(1L, 10_000L, 1L);
+            store.put(1L, 20_000L, 2L);
+            store.put(2L, 0L, 1L);
+            store.delete(2L);
+            assertEquals(new AccountInfo(1L, BigDecimal.valueOf(2L), 2L), store.get(1L));
+            assertNull(store.get(2L));
+            store.flush();
+            assertTrue(store.stats().startsWith("4 updates, 50.0% coalesced, 2 records written in 1 batches"), store.stats());
+        }
+        try (AccountStore store = AccountStore.open(file, 100)) {
+            assertEquals(2L, store.get(1L).getVersion());
+            assertEquals(BigDecimal.valueOf(2L), store.get(1L).getBalance());
+            assertNull(store.get(2L));
+        }
+    }
+
+    @Test
+    void testTornTailIsCutOffOnOpen() throws IOException {
+        try (LogStore log = LogStore.open(file)) {
+            LongObjectHashMap<byte[]> batch = new LongObjectHashMap<>();
+            batch.put(1L, new byte[]{1, 2, 3});
+            log.write(batch);
+        }
+        long intact = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            // a second record of which only part of the value reached the disk
+            ByteBuffer torn = ByteBuffer.allocate(20).putInt(8).putLong(2L).putInt(0);
+            torn.flip();
+            channel.write(torn, intact);
+        }
+        try (LogStore log = LogStore.open(file)) {
+            assertArrayEquals(new byte[]{1, 2, 3}, log.get(1L));
+            assertFalse(log.contains(2L));
+            assertEquals(intact, log.fileSize());
+        }
+        assertEquals(intact, Files.size(file));
+    }
+
+    @Test
+    void testBatchWithoutItsCommitIsDroppedOnOpen() throws IOException {
+        try (LogStore log = LogStore.open(file)) {
+            LongObjectHashMap<byte[]> batch = new LongObjectHashMap<>();
+            batch.put(1L, new byte[]{1});
+            log.write(batch);
+        }
+        long intact = Files.size(file);
+        try (LogStore log = LogStore.open(file)) {
+            LongObjectHashMap<byte[]> batch = new LongObjectHashMap<>();
+            batch.put(1L, LogStore.TOMBSTONE);
+            batch.put(2L, new byte[]{2});
+            log.write(batch);
+        }
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            // every record of the batch reached the disk but its commit did not
+            channel.truncate(Files.size(file) - 16);
+        }
+        try (LogStore log = LogStore.open(file)) {
+            assertArrayEquals(new byte[]{1}, log.get(1L));
+            assertFalse(log.contains(2L));
+            assertEquals(intact, log.fileSize());
+        }
+    }
+
+    @Test
+    void testFileWithoutCommitsIsReadAndRewritten() throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer record = ByteBuffer.allocate(17).putInt(1).putLong(1L);
+        crc.update(record.array(), 0, 12);
+        crc.update(new byte[]{7}, 0, 1);
+        record.putInt((int) crc.getValue()).put((byte) 7);
+        Files.write(file, record.array());
+
+        try (LogStore log = LogStore.open(file)) {
+            assertArrayEquals(new byte[]{7}, log.get(1L));
+        }
+        try (LogStore log = LogStore.open(file)) {
+            assertArrayEquals(new byte[]{7}, log.get(1L));
+            assertEquals(16 + 17 + 16, log.fileSize());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.totorovan.transfer.trace;
+
+import com.totorovan.transfer.trace.TransferTrace.Stage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferTracerTest {
+
+    private static TransferTrace trace(TransferTracer tracer, long transactionId, long sleepMillis) throws InterruptedException {
+        TransferTrace trace = tracer.start(transactionId);
+        TransferTrace.mark(trace, Stage.RECEIVED);
+        Thread.sleep(sleepMillis);
+        TransferTrace.mark(trace, Stage.WITHDRAWN);
+        tracer.finish(trace, "COMMITTED");
+        return trace;
+    }
+
+    @Test
+    void testKeepsRecentTracesAndDrainsInFinishingOrder() throws Exception {
+        TransferTracer tracer = new TransferTracer(true, 3);
+        for (long id = 1; id <= 5; id++) {
+            trace(tracer, id, id == 3 ? 20 : 0);
+        }
+
+        List<TransferTrace> slowest = tracer.slowest(2);
+        assertEquals(2, slowest.size());
+        assertEquals(3L, slowest.get(0).getTransactionId());
+        long[] stageNanos = slowest.get(0).getStageNanos();
+        assertEquals(-1, stageNanos[Stage.ACCOUNT_SERVICE.ordinal()]);
+        assertTrue(stageNanos[Stage.WITHDRAWN.ordinal()] >= 20_000_000L);
+
+        List<Long> drained = new ArrayList<>();
+        assertEquals(5, tracer.drain(0, trace -> drained.add(trace.getTransactionId())));
+        // capacity is rounded up to 4, the first trace is overwritten
+        assertEquals(Arrays.asList(2L, 3L, 4L, 5L), drained);
+        assertNull(new TransferTracer(false, 4).start(1L));
+    }
+
+    @Test
+    void testExportsOtlpJsonLines() throws Exception {
+        TransferTracer tracer = new TransferTracer(true, 8);
+        Path file = Files.createTempDirectory("traces").resolve("traces.jsonl");
+        try (OtlpFileExporter exporter = new OtlpFileExporter(tracer, file)) {
+            trace(tracer, 7L, 0);
+            exporter.run();
+            exporter.run();
+            trace(tracer, 8L, 0);
+            exporter.run();
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"resourceSpans\":[{\"resource\":{\"attributes\":[{\"key\":\"service.name\""));
+        assertTrue(lines.get(0).contains("\"name\":\"transfer\""));
+        assertTrue(lines.get(0).contains("{\"key\":\"transaction.id\",\"value\":{\"intValue\":\"7\"}}"));
+        assertTrue(lines.get(0).contains("\"name\":\"WITHDRAWN\""));
+        assertFalse(lines.get(0).contains("\"name\":\"DEPOSITED\""));
+        assertTrue(lines.get(1).contains("{\"intValue\":\"8\"}"));
+    }
+}
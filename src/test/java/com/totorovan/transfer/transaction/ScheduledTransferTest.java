@@ -0,0 +1,146 @@
+package com.totorovan.transfer.transaction;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.common.Messages.Failure;
+import com.totorovan.transfer.common.Messages.FailureCode;
+import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.engine.LedgerTransferEngine;
+import com.totorovan.transfer.event.LedgerEvents;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.COMMITTED;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.NEW;
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.SCHEDULED;
+import static java.math.BigDecimal.ONE;
+import static java.math.BigDecimal.TEN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScheduledTransferTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration TICK = Duration.ofMillis(10);
+    private static ActorSystem system;
+
+    private Path journal;
+
+    @BeforeAll
+    static void setup() {
+        system = ActorSystem.create();
+    }
+
+    @AfterAll
+    static void shutdown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @BeforeEach
+    void createJournal() throws Exception {
+        journal = Files.createTempDirectory("schedule").resolve("scheduled.log");
+    }
+
+    private static LedgerTransferEngine getTestEngine() {
+        LedgerTransferEngine engine = new LedgerTransferEngine(4, LedgerEvents.get(system));
+        engine.createAccount(new AccountInfo(1L, TEN));
+        engine.createAccount(new AccountInfo(2L, TEN));
+        return engine;
+    }
+
+    private Props getTransactionServiceProps(LedgerTransferEngine engine) {
+        return TransactionService.props(engine, new TransactionFactory(), TIMEOUT, TICK, journal);
+    }
+
+    @Test
+    void testScheduledTransferRunsOnceDue() {
+        new TestKit(system) {{
+            LedgerTransferEngine engine = getTestEngine();
+            ActorRef transactionService = system.actorOf(getTransactionServiceProps(engine));
+            long executeAt = System.currentTimeMillis() + 300;
+            TransactionInfo transactionInfo = new TransactionInfo(1L, 1L, 2L, ONE, NEW, executeAt);
+
+            transactionService.tell(transactionInfo, getRef());
+            expectMsg(transactionInfo.withStatus(SCHEDULED));
+            transactionService.tell(new Transaction.GetTransaction(1L), getRef());
+            expectMsg(transactionInfo.withStatus(SCHEDULED));
+            transactionService.tell(transactionInfo, getRef());
+            expectMsg(new Failure(FailureCode.TRANSACTION_ALREADY_EXISTS, 1L));
+
+            awaitAssert(Duration.ofSeconds(3), () -> {
+                transactionService.tell(new Transaction.GetTransaction(1L), getRef());
+                expectMsg(transactionInfo.withStatus(COMMITTED));
+                return null;
+            });
+            assertEquals(new AccountInfo(2L, new BigDecimal("11")), engine.getAccount(2L).toCompletableFuture().join());
+        }};
+    }
+
+    @Test
+    void testPendingTransfersSurviveRestart() throws Exception {
+        new TestKit(system) {{
+            LedgerTransferEngine engine = getTestEngine();
+            long later = System.currentTimeMillis() + 3_600_000;
+            // due while the service was down
+            Files.write(journal, Collections.singletonList("S,3,1,2,2," + (System.currentTimeMillis() - 1)), StandardCharsets.UTF_8);
+            ActorRef transactionService = system.actorOf(getTransactionServiceProps(engine));
+            TransactionInfo pending = new TransactionInfo(1L, 1L, 2L, ONE, NEW, later);
+            transactionService.tell(pending, getRef());
+            expectMsg(pending.withStatus(SCHEDULED));
+            transactionService.tell(new TransactionInfo(2L, 1L, 2L, ONE, NEW, later), getRef());
+            expectMsgClass(TransactionInfo.class);
+            transactionService.tell(new TransactionService.DeleteTransaction(2L), getRef());
+            expectMsg(Success.INSTANCE);
+            awaitAssert(() -> {
+                transactionService.tell(new Transaction.GetTransaction(3L), getRef());
+                assertEquals(COMMITTED, expectMsgClass(TransactionInfo.class).getStatus());
+                return null;
+            });
+            assertEquals(new AccountInfo(1L, new BigDecimal("8")), engine.getAccount(1L).toCompletableFuture().join());
+            watch(transactionService);
+            system.stop(transactionService);
+            expectTerminated(transactionService);
+
+            ActorRef restarted = system.actorOf(getTransactionServiceProps(engine));
+            restarted.tell(new Transaction.GetTransaction(1L), getRef());
+            expectMsg(pending.withStatus(SCHEDULED));
+            restarted.tell(new Transaction.GetTransaction(2L), getRef());
+            expectMsg(new Failure(FailureCode.TRANSACTION_NOT_FOUND, 2L));
+        }};
+    }
+
+    @Test
+    void testFarFutureTransfersStayScheduledAcrossRestart() {
+        new TestKit(system) {{
+            LedgerTransferEngine engine = getTestEngine();
+            ActorRef transactionService = system.actorOf(getTransactionServiceProps(engine));
+            TransactionInfo latest = new TransactionInfo(1L, 1L, 2L, ONE, NEW, Long.MAX_VALUE);
+            TransactionInfo far = new TransactionInfo(2L, 1L, 2L, ONE, NEW, Long.MAX_VALUE / 2);
+            transactionService.tell(latest, getRef());
+            expectMsg(latest.withStatus(SCHEDULED));
+            transactionService.tell(far, getRef());
+            expectMsg(far.withStatus(SCHEDULED));
+            watch(transactionService);
+            system.stop(transactionService);
+            expectTerminated(transactionService);
+
+            ActorRef restarted = system.actorOf(getTransactionServiceProps(engine));
+            restarted.tell(new Transaction.GetTransaction(1L), getRef());
+            expectMsg(latest.withStatus(SCHEDULED));
+            restarted.tell(new Transaction.GetTransaction(2L), getRef());
+            expectMsg(far.withStatus(SCHEDULED));
+            assertEquals(new AccountInfo(1L, TEN), engine.getAccount(1L).toCompletableFuture().join());
+        }};
+    }
+}
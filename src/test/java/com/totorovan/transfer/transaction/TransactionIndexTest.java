@@ -0,0 +1,133 @@
+package com.totorovan.transfer.transaction;
+
+import org.junit.jupiter.api.Test;
+
+import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.*;
+import static java.math.BigDecimal.TEN;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionIndexTest {
+    private static final long ACC_ID_1 = 1L;
+    private static final long ACC_ID_2 = 2L;
+    private static final long ACC_ID_3 = 3L;
+
+    @Test
+    void testSliceReturnsTransactionsOfSourceAndTargetAccountInCreationOrder() {
+        TransactionIndex index = new TransactionIndex();
+        index.add(new TransactionInfo(10L, ACC_ID_1, ACC_ID_2, TEN, NEW));
+        index.add(new TransactionInfo(5L, ACC_ID_3, ACC_ID_1, TEN, NEW));
+        index.add(new TransactionInfo(7L, ACC_ID_2, ACC_ID_3, TEN, NEW));
+
+        assertArrayEquals(new long[]{10L, 5L}, index.slice(TransactionFilter.forAccount(ACC_ID_1, null), 0, 10).getTransactionIds());
+        assertArrayEquals(new long[]{10L, 7L}, index.slice(TransactionFilter.forAccount(ACC_ID_2, null), 0, 10).getTransactionIds());
+        assertArrayEquals(new long[0], index.slice(TransactionFilter.forAccount(42L, null), 0, 10).getTransactionIds());
+    }
+
+    @Test
+    void testSlicePaginatesWithCursor() {
+        TransactionIndex index = new TransactionIndex();
+        for (long id = 1; id <= 5; id++) {
+            index.add(new TransactionInfo(id, ACC_ID_1, ACC_ID_2, TEN, NEW));
+        }
+
+        TransactionIndex.Slice first = index.slice(TransactionFilter.forAccount(ACC_ID_1, null), 0, 2);
+        assertArrayEquals(new long[]{1L, 2L}, first.getTransactionIds());
+
+        TransactionIndex.Slice second = index.slice(TransactionFilter.forAccount(ACC_ID_1, null), first.getNextCursor(), 2);
+        assertArrayEquals(new long[]{3L, 4L}, second.getTransactionIds());
+
+        TransactionIndex.Slice last = index.slice(TransactionFilter.forAccount(ACC_ID_1, null), second.getNextCursor(), 2);
+        assertArrayEquals(new long[]{5L}, last.getTransactionIds());
+        assertEquals(-1, last.getNextCursor());
+    }
+
+    @Test
+    void testReusedIdOnlyShowsItsLatestTransaction() {
+        TransactionIndex index = new TransactionIndex();
+        index.add(new TransactionInfo(7L, ACC_ID_1, ACC_ID_2, TEN, NEW));
+        index.remove(7L);
+        index.add(new TransactionInfo(7L, ACC_ID_3, ACC_ID_2, TEN, NEW));
+
+        assertArrayEquals(new long[0], index.slice(TransactionFilter.forAccount(ACC_ID_1, null), 0, 10).getTransactionIds());
+        assertArrayEquals(new long[]{7L}, index.slice(TransactionFilter.forAccount(ACC_ID_2, null), 0, 10).getTransactionIds());
+        assertArrayEquals(new long[]{7L}, index.slice(TransactionFilter.forAccount(ACC_ID_3, null), 0, 10).getTransactionIds());
+        assertArrayEquals(new long[]{7L}, index.slice(new TransactionFilter(null, null, null, null), 0, 10).getTransactionIds());
+    }
+
+    @Test
+    void testSliceFiltersByStatusAndSkipsRemovedTransactions() {
+        TransactionIndex index = new TransactionIndex();
+        for (long id = 1; id <= 4; id++) {
+            index.add(new TransactionInfo(id, ACC_ID_1, ACC_ID_2, TEN, NEW));
+        }
+        index.updateStatus(1L, COMMITTED);
+        index.updateStatus(2L, ROLLEDBACK);
+        index.updateStatus(3L, COMMITTED);
+        index.remove(3L);
+
+        assertArrayEquals(new long[]{1L}, index.slice(TransactionFilter.forAccount(ACC_ID_1, COMMITTED), 0, 10).getTransactionIds());
+        assertArrayEquals(new long[]{1L, 2L, 4L}, index.slice(TransactionFilter.forAccount(ACC_ID_2, null), 0, 10).getTransactionIds());
+    }
+
+    @Test
+    void testSliceFiltersAllTransactionsByIdRange() {
+        TransactionIndex index = new TransactionIndex();
+        for (long id = 1; id <= 5; id++) {
+            index.add(new TransactionInfo(id, ACC_ID_1, ACC_ID_2, TEN, NEW));
+        }
+
+        TransactionFilter filter = new TransactionFilter(null, null, 2L, 4L);
+        assertArrayEquals(new long[]{2L, 3L, 4L}, index.slice(filter, 0, 10).getTransactionIds());
+    }
+
+    @Test
+    void testSliceBoundsScanForSelectiveFilters() {
+        TransactionIndex index = new TransactionIndex();
+        for (long id = 1; id <= 100; id++) {
+            index.add(new TransactionInfo(id, ACC_ID_1, ACC_ID_2, TEN, NEW));
+        }
+
+        TransactionIndex.Slice slice = index.slice(new TransactionFilter(null, COMMITTED, null, null), 0, 1);
+        assertArrayEquals(new long[0], slice.getTransactionIds());
+        assertEquals(16, slice.getNextCursor());
+    }
+
+    @Test
+    void testRetriesUnderTheSameIdDoNotGrowTheIndexOrEmptyThePages() {
+        TransactionIndex index = new TransactionIndex();
+        int retries = 100 * TransactionIndex.MIN_DEAD_TO_COMPACT;
+        for (int i = 0; i < retries; i++) {
+            index.add(new TransactionInfo(7L, ACC_ID_1, ACC_ID_2, TEN, NEW));
+            index.remove(7L);
+        }
+        index.add(new TransactionInfo(8L, ACC_ID_1, ACC_ID_2, TEN, NEW));
+
+        assertTrue(index.memoryBytes() < retries * 8L, "index of " + index.memoryBytes() + " bytes");
+        assertArrayEquals(new long[]{8L}, index.slice(TransactionFilter.forAccount(ACC_ID_1, null), 0, 1).getTransactionIds());
+        assertArrayEquals(new long[]{8L}, index.slice(TransactionFilter.forAccount(ACC_ID_2, null), 0, 1).getTransactionIds());
+    }
+
+    @Test
+    void testCursorSurvivesDroppingDeadEntries() {
+        TransactionIndex index = new TransactionIndex();
+        for (long id = 1; id <= 4; id++) {
+            index.add(new TransactionInfo(id, ACC_ID_1, ACC_ID_2, TEN, NEW));
+        }
+        TransactionIndex.Slice first = index.slice(TransactionFilter.forAccount(ACC_ID_1, null), 0, 2);
+        assertArrayEquals(new long[]{1L, 2L}, first.getTransactionIds());
+
+        index.remove(1L);
+        index.remove(2L);
+        for (int i = 0; i < TransactionIndex.MIN_DEAD_TO_COMPACT; i++) {
+            index.add(new TransactionInfo(100L, ACC_ID_3, ACC_ID_2, TEN, NEW));
+            index.remove(100L);
+        }
+
+        TransactionIndex.Slice second = index.slice(TransactionFilter.forAccount(ACC_ID_1, null), first.getNextCursor(), 2);
+        assertArrayEquals(new long[]{3L, 4L}, second.getTransactionIds());
+        assertEquals(-1, second.getNextCursor());
+        assertArrayEquals(new long[]{3L, 4L}, index.slice(new TransactionFilter(null, null, null, null), 0, 10).getTransactionIds());
+    }
+}
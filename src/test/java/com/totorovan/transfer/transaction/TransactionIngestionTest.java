@@ -0,0 +1,131 @@
+package com.totorovan.transfer.transaction;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.testkit.javadsl.TestKit;
+import com.totorovan.transfer.account.AccountInfo;
+import com.totorovan.transfer.engine.LedgerTransferEngine;
+import com.totorovan.transfer.event.LedgerEvents;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.math.BigDecimal.TEN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionIngestionTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(1);
+    private static ActorSystem system;
+    private static Materializer materializer;
+
+    private Path directory;
+
+    @BeforeAll
+    static void setup() {
+        system = ActorSystem.create();
+        materializer = ActorMaterializer.create(system);
+    }
+
+    @AfterAll
+    static void shutdown() {
+        TestKit.shutdownActorSystem(system);
+        system = null;
+    }
+
+    @BeforeEach
+    void createDirectory() throws Exception {
+        directory = Files.createTempDirectory("ingestion");
+    }
+
+    private static LedgerTransferEngine getTestEngine() {
+        LedgerTransferEngine engine = new LedgerTransferEngine(4, LedgerEvents.get(system));
+        engine.createAccount(new AccountInfo(1L, TEN));
+        engine.createAccount(new AccountInfo(2L, TEN));
+        return engine;
+    }
+
+    private static TransactionIngestion getTestIngestion(LedgerTransferEngine engine) {
+        ActorRef transactionService = system.actorOf(TransactionService.props(engine, new TransactionFactory(), TIMEOUT));
+        return new TransactionIngestion(transactionService, TIMEOUT, 4, 2);
+    }
+
+    private static IngestionReport ingest(TransactionIngestion ingestion, Path file) {
+        return ingestion.run(file, materializer).toCompletableFuture().join();
+    }
+
+    private Path writeFile(String... lines) throws Exception {
+        Path file = directory.resolve("transfers.csv");
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    @Test
+    void testIngestionWritesResultsInFileOrder() throws Exception {
+        LedgerTransferEngine engine = getTestEngine();
+        Path file = writeFile("id,srcAccountId,targetAccountId,amount", "1,1,2,4", "2,2,1,1", "3,1,2,20", "4,1,2,x", "", "1,1,2,1");
+
+        assertEquals(new IngestionReport(5, 2, 1, 2), ingest(getTestIngestion(engine), file));
+
+        List<String> results = Files.readAllLines(TransactionIngestion.resultsPath(file));
+        assertEquals("line,id,status,reason", results.get(0));
+        assertEquals("2,1,COMMITTED,", results.get(1));
+        assertEquals("3,2,COMMITTED,", results.get(2));
+        assertTrue(results.get(3).startsWith("4,3,ROLLEDBACK,\"Insufficient balance to withdraw 20 "));
+        assertTrue(results.get(4).startsWith("5,,REJECTED,\"Malformed number"));
+        assertEquals("7,1,REJECTED,\"Transaction 1 already been processed\"", results.get(5));
+        assertEquals(6, results.size());
+        assertEquals(new AccountInfo(1L, new BigDecimal("7")), engine.getAccount(1L).toCompletableFuture().join());
+        assertEquals(new IngestionCheckpoint(7, Files.size(TransactionIngestion.resultsPath(file))),
+                IngestionCheckpoint.read(TransactionIngestion.checkpointPath(file)));
+    }
+
+    @Test
+    void testIngestionResumesAfterCheckpoint() throws Exception {
+        LedgerTransferEngine engine = getTestEngine();
+        Path file = writeFile("id,srcAccountId,targetAccountId,amount", "1,1,2,1", "2,1,2,1", "3,1,2,1");
+        String header = "line,id,status,reason\n";
+        String committed = "2,1,COMMITTED,\n";
+        // crashed after checkpointing line 2 and writing part of the result of line 3
+        Files.write(TransactionIngestion.resultsPath(file), (header + committed + "3,2,COMM").getBytes(StandardCharsets.UTF_8));
+        new IngestionCheckpoint(2, header.length() + committed.length()).write(TransactionIngestion.checkpointPath(file));
+
+        assertEquals(new IngestionReport(2, 2, 0, 0), ingest(getTestIngestion(engine), file));
+
+        assertEquals(Arrays.asList("line,id,status,reason", "2,1,COMMITTED,", "3,2,COMMITTED,", "4,3,COMMITTED,"),
+                Files.readAllLines(TransactionIngestion.resultsPath(file)));
+        assertEquals(new AccountInfo(2L, new BigDecimal("12")), engine.getAccount(2L).toCompletableFuture().join());
+
+        assertEquals(new IngestionReport(0, 0, 0, 0), ingest(getTestIngestion(engine), file));
+        assertEquals(4, Files.readAllLines(TransactionIngestion.resultsPath(file)).size());
+    }
+
+    @Test
+    void testLinesAppliedAfterTheCheckpointAreReportedAsAlreadyApplied() throws Exception {
+        LedgerTransferEngine engine = getTestEngine();
+        TransactionIngestion ingestion = getTestIngestion(engine);
+        Path file = writeFile("id,srcAccountId,targetAccountId,amount", "1,1,2,1", "2,1,2,1", "3,1,2,1");
+        assertEquals(new IngestionReport(3, 3, 0, 0), ingest(ingestion, file));
+        // crashed after applying every line but checkpointing only line 2
+        String header = "line,id,status,reason\n";
+        String committed = "2,1,COMMITTED,\n";
+        new IngestionCheckpoint(2, header.length() + committed.length()).write(TransactionIngestion.checkpointPath(file));
+
+        assertEquals(new IngestionReport(2, 0, 0, 0, 2), ingest(ingestion, file));
+
+        assertEquals(Arrays.asList("line,id,status,reason", "2,1,COMMITTED,", "3,2,ALREADY_APPLIED,", "4,3,ALREADY_APPLIED,"),
+                Files.readAllLines(TransactionIngestion.resultsPath(file)));
+        assertEquals(new AccountInfo(2L, new BigDecimal("13")), engine.getAccount(2L).toCompletableFuture().join());
+    }
+}
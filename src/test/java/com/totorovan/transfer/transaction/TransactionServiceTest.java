@@ -2,18 +2,29 @@ package com.totorovan.transfer.transaction;
 
 import akka.actor.*;
 import akka.testkit.javadsl.TestKit;
+import com.totorovan.transfer.account.AccountService.AcceptedTransfer;
 import com.totorovan.transfer.common.Messages.Failure;
 import com.totorovan.transfer.common.Messages.Success;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo.Leg;
+import com.totorovan.transfer.transaction.MultiLegTransactionInfo.LegsFailed;
 import com.totorovan.transfer.transaction.TransactionService.TransactionRolledBack;
+import com.typesafe.config.ConfigFactory;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.totorovan.transfer.transaction.TransactionInfo.TransactionStatus.*;
 import static java.math.BigDecimal.TEN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class TransactionServiceTest {
     private static final long TR_ID = 1L;
@@ -61,6 +72,94 @@ class TransactionServiceTest {
         }};
     }
 
+    @Test
+    void testPageOfTransactionsFailsIfATransactionDoesNotAnswer() {
+        new TestKit(system) {{
+            TestKit silentTransaction = new TestKit(system);
+            ActorRef transactionService = getTestTransactionService(getTestAccountService(false),
+                    Collections.singletonMap(TR_ID, silentTransaction.getRef()));
+            transactionService.tell(new TransactionInfo(TR_ID, 1L, 2L, TEN, NEW), ActorRef.noSender());
+
+            transactionService.tell(new TransactionService.GetTransactions(TransactionFilter.forAccount(1L, null), 0, 10), getRef());
+
+            expectMsgClass(Failure.class);
+        }};
+    }
+
+    @Test
+    void testAcceptedTransfersAreNotDroppedByAFullAccountServiceMailbox() {
+        ActorSystem bounded = ActorSystem.create("bounded", ConfigFactory.parseString("priority-mailbox.capacity = 1")
+                .withFallback(ConfigFactory.load()));
+        try {
+            new TestKit(bounded) {{
+                CountDownLatch blocked = new CountDownLatch(1);
+                ActorRef accountService = bounded.actorOf(BlockingAccountService.props(blocked, getRef()), "accountService");
+                Map<Long, ActorRef> transactions = new HashMap<>();
+                for (long id = 1; id <= 3; id++) {
+                    transactions.put(id, bounded.actorOf(Transaction.props(new TransactionInfo(id, 1L, 2L, TEN, NEW))));
+                }
+                ActorRef transactionService = bounded.actorOf(TransactionService.props(accountService,
+                        new TestTransactionFactory(transactions), Duration.ofSeconds(3)));
+
+                transactionService.tell(new TransactionInfo(1L, 1L, 2L, TEN, NEW), getRef());
+                expectMsg("blocked");
+                transactionService.tell(new TransactionInfo(2L, 1L, 2L, TEN, NEW), getRef());
+                transactionService.tell(new TransactionInfo(3L, 1L, 2L, TEN, NEW), getRef());
+                // answered once both transfers wait in the mailbox of the account service, beyond its capacity of one
+                transactionService.tell(new Transaction.GetTransaction(3L), getRef());
+                expectMsg(new TransactionInfo(3L, 1L, 2L, TEN, NEW));
+                blocked.countDown();
+
+                for (Object reply : receiveN(3)) {
+                    assertEquals(COMMITTED, ((TransactionInfo) reply).getStatus());
+                }
+                transactionService.tell(new Transaction.GetTransaction(3L), getRef());
+                expectMsg(new TransactionInfo(3L, 1L, 2L, TEN, COMMITTED));
+            }};
+        } finally {
+            TestKit.shutdownActorSystem(bounded);
+        }
+    }
+
+    @Test
+    void testCreateTransactionIsRolledBackIfTheTransferIsNotAnswered() {
+        new TestKit(system) {{
+            TransactionInfo trInfo = new TransactionInfo(TR_ID, 1L, 2L, TEN, NEW);
+            ActorRef tr1 = getTestTransaction(trInfo);
+            TestKit silentAccountService = new TestKit(system);
+            ActorRef transactionService = system.actorOf(TransactionService.props(silentAccountService.getRef(),
+                    new TestTransactionFactory(Collections.singletonMap(TR_ID, tr1)), Duration.ofMillis(200)));
+
+            transactionService.tell(trInfo, getRef());
+
+            silentAccountService.expectMsgClass(AcceptedTransfer.class);
+            TransactionRolledBack rolledBack = expectMsgClass(TransactionRolledBack.class);
+            assertEquals(ROLLEDBACK, rolledBack.getTransactionInfo().getStatus());
+        }};
+    }
+
+    @Test
+    void testRolledBackMultiLegTransactionKeepsTheOutcomeOfEveryLeg() {
+        new TestKit(system) {{
+            TestKit accountService = new TestKit(system);
+            ActorRef transactionService = getTestTransactionService(accountService.getRef(), Collections.emptyMap());
+            MultiLegTransactionInfo trInfo = new MultiLegTransactionInfo(TR_ID, 1L,
+                    Arrays.asList(new Leg(2L, TEN, NEW), new Leg(3L, TEN, NEW)), NEW);
+
+            transactionService.tell(trInfo, getRef());
+            accountService.expectMsgClass(AcceptedTransfer.class);
+            List<Leg> legs = Arrays.asList(new Leg(2L, TEN, COMMITTED, "Not reverted: timed out"),
+                    new Leg(3L, TEN, ROLLEDBACK, "Account 3 not found"));
+            accountService.reply(new LegsFailed(new Failure("Account 3 not found"), legs));
+
+            expectMsg(new TransactionRolledBack(trInfo.rolledBack(legs), "Account 3 not found"));
+            transactionService.tell(new TransactionService.GetTransactions(TransactionFilter.forAccount(2L, null), 0, 10), getRef());
+            List<TransactionInfo> rows = expectMsgClass(TransactionService.TransactionPage.class).getTransactions();
+            assertEquals(COMMITTED, rows.get(0).getStatus());
+            assertEquals(ROLLEDBACK, rows.get(1).getStatus());
+        }};
+    }
+
     private ActorRef getTestTransactionService(ActorRef accountService, Map<Long, ActorRef> transactionsById) {
         Props props = TransactionService.props(accountService, new TestTransactionFactory(transactionsById));
         return system.actorOf(props);
@@ -86,11 +185,11 @@ class TransactionServiceTest {
         @Override
         public Receive createReceive() {
             return receiveBuilder()
-                    .match(TransactionInfo.class, x -> {
+                    .match(AcceptedTransfer.class, x -> {
                         if (failOnTransfer) {
-                            sender().tell(new Failure(x.toString()), self());
+                            sender().tell(new Failure(x.getTransfer().toString()), self());
                         } else {
-                            sender().tell(new Success(), self());
+                            sender().tell(Success.INSTANCE, self());
                         }
                     })
                     .build();
@@ -98,6 +197,38 @@ class TransactionServiceTest {
         }
     }
 
+    /**
+     * Answers every transfer, blocking on the first one until the latch is released.
+     */
+    static class BlockingAccountService extends AbstractActor {
+        private final CountDownLatch blocked;
+        private final ActorRef probe;
+        private boolean first = true;
+
+        BlockingAccountService(CountDownLatch blocked, ActorRef probe) {
+            this.blocked = blocked;
+            this.probe = probe;
+        }
+
+        static Props props(CountDownLatch blocked, ActorRef probe) {
+            return Props.create(BlockingAccountService.class, () -> new BlockingAccountService(blocked, probe));
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(AcceptedTransfer.class, x -> {
+                        if (first) {
+                            first = false;
+                            probe.tell("blocked", self());
+                            blocked.await(5, TimeUnit.SECONDS);
+                        }
+                        sender().tell(Success.INSTANCE, self());
+                    })
+                    .build();
+        }
+    }
+
     static class TestTransactionFactory extends TransactionFactory {
         private Map<Long, ActorRef> transactionsById;
 